@@ -0,0 +1,151 @@
+/**
+ * BenchmarkFixtures builds what the benchmarks need without a Spring context or a database: Orekit data loaded
+ * from the bundled orekit-data directory, the TLEs of a GEO (51850), a Starlink LEO (44945) and the ISS (25544),
+ * an in-memory SatelliteRepository, and a SatellitePositionService wired the way OrekitConfig and ExecutorConfig
+ * wire it at startup.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import com.teamtech.satellitevisualizer.service.CzmlWriter;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.PropagatorCache;
+import com.teamtech.satellitevisualizer.service.SatelliteCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.SnapshotWriter;
+import com.teamtech.satellitevisualizer.service.TleArchive;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.orekit.bodies.OneAxisEllipsoid;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.orekit.time.TimeScalesFactory;
+import org.orekit.utils.Constants;
+import org.orekit.utils.IERSConventions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+final class BenchmarkFixtures {
+
+    static final Map<Integer, String> TLES = Map.of(
+            25544, "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994\r\n" +
+                    "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656",
+            44945, "1 44945U 20001AH  25104.58335648  .00211921  00000-0  87018-3 0  9996\r\n" +
+                    "2 44945  53.0431 302.8405 0003981 211.2664 213.7415 15.84888341291374",
+            51850, "1 51850U 22021A   25093.54661021  .00000085  00000-0  00000+0 0  9992\r\n" +
+                    "2 51850   0.0419  20.9525 0000029 187.1507  43.7843  1.00272382 11396");
+
+    // the meters are recorded like in the application, into a registry nobody reads
+    static final SatelliteMetrics METRICS = new SatelliteMetrics(new SimpleMeterRegistry());
+
+    private static boolean loaded;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Loads the bundled Orekit data once per benchmark JVM, like OrekitConfig does at startup.
+     * Benchmarks run from the module directory (mvn -Pbenchmarks), so the data is read from src/main/resources.
+     */
+    static synchronized void loadOrekitData() {
+        if (loaded) return;
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(new File("src/main/resources/orekit-data")));
+        loaded = true;
+    }
+
+    /**
+     * A date close to the epochs of the benchmark TLEs, so every benchmark propagates over the same span.
+     */
+    static AbsoluteDate referenceDate() {
+        return new AbsoluteDate(2025, 4, 14, 12, 0, 0.0, TimeScalesFactory.getUTC());
+    }
+
+    static Frame itrf() {
+        return FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+    }
+
+    static OneAxisEllipsoid earth(Frame itrf) {
+        return new OneAxisEllipsoid(Constants.WGS84_EARTH_EQUATORIAL_RADIUS, Constants.WGS84_EARTH_FLATTENING, itrf);
+    }
+
+    static EphemerisStore ephemerisStore(Frame itrf, ExecutorService executor) {
+        return new EphemerisStore(new PropagatorCache(1000, 4), new FrameTransforms(FramesFactory.getTEME(), itrf, METRICS, 4096),
+                itrf, TimeScalesFactory.getUTC(), executor, METRICS, 60, 120, 64, 30);
+    }
+
+    /**
+     * @return A repository holding the satellites in memory, only the methods the service uses are implemented.
+     */
+    static SatelliteRepository repository(Map<Integer, SatelliteData> satellites) {
+        Map<Integer, SatelliteData> store = new ConcurrentHashMap<>(satellites);
+        return (SatelliteRepository) Proxy.newProxyInstance(SatelliteRepository.class.getClassLoader(),
+                new Class<?>[] {SatelliteRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findBySatid" -> store.get((Integer) args[0]);
+                    case "findBySatidIn" -> {
+                        List<SatelliteData> found = new ArrayList<>();
+                        for (Object satId : (Collection<?>) args[0]) {
+                            SatelliteData satellite = store.get((Integer) satId);
+                            if (satellite != null) found.add(satellite);
+                        }
+                        yield found;
+                    }
+                    case "findAll" -> new ArrayList<>(store.values());
+                    case "save" -> args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemorySatelliteRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * @return A SatellitePositionService reading from the given repository, with the shared Orekit objects.
+     */
+    static SatellitePositionService positionService(SatelliteRepository repository) {
+        TimeScale utc = TimeScalesFactory.getUTC();
+        Frame itrf = itrf();
+        ExecutorService executor = ForkJoinPool.commonPool();
+        SatellitePositionService service = new SatellitePositionService();
+        ReflectionTestUtils.setField(service, "satelliteRepository", repository);
+        SatelliteCache satelliteCache = new SatelliteCache(repository, METRICS, 10_000, 600);
+        ReflectionTestUtils.setField(service, "satelliteCache", satelliteCache);
+        // never flushed, the benchmarks measure the reads queueing their snapshots, not the database writes
+        ReflectionTestUtils.setField(service, "snapshotWriter",
+                new SnapshotWriter(null, satelliteCache, METRICS, true, 10_000, 500));
+        // an empty archive, dates before a TLE epoch keep propagating from the current TLE
+        ReflectionTestUtils.setField(service, "tleArchive",
+                new TleArchive(Mockito.mock(MongoTemplate.class), utc, 10_000));
+        ReflectionTestUtils.setField(service, "utc", utc);
+        ReflectionTestUtils.setField(service, "itrf", itrf);
+        ReflectionTestUtils.setField(service, "earth", earth(itrf));
+        ReflectionTestUtils.setField(service, "ephemerisStore", ephemerisStore(itrf, executor));
+        ReflectionTestUtils.setField(service, "frameTransforms",
+                new FrameTransforms(FramesFactory.getTEME(), itrf, METRICS, 4096));
+        ReflectionTestUtils.setField(service, "propagationExecutor", executor);
+        ReflectionTestUtils.setField(service, "czmlWriter", new CzmlWriter());
+        ReflectionTestUtils.setField(service, "satelliteMetrics", METRICS);
+        ReflectionTestUtils.setField(service, "maxVisibilitySatellites", 2000);
+        return service;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * BenchmarkRunner runs the JMH benchmarks once single-threaded and once with one thread per CPU core,
+ * and writes the results of each run as JSON (target/jmh/results-<n>-threads.json) so they can be diffed
+ * between releases. Arguments after the result directory are regular JMH command line options, e.g. a benchmark
+ * regex or "-t 8" to run with a single, given thread count.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        File resultDirectory = new File(args.length > 0 ? args[0] : "target/jmh");
+        if (!resultDirectory.isDirectory() && !resultDirectory.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + resultDirectory);
+        }
+        CommandLineOptions commandLine = new CommandLineOptions(Arrays.copyOfRange(args, Math.min(1, args.length), args.length));
+
+        int[] threadCounts = commandLine.getThreads().hasValue()
+                ? new int[] {commandLine.getThreads().get()}
+                : new int[] {1, Runtime.getRuntime().availableProcessors()};
+        for (int threads : threadCounts) {
+            File result = new File(resultDirectory, "results-" + threads + (threads == 1 ? "-thread" : "-threads") + ".json");
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Conjunction screening of a synthetic catalog over one hour at a 5 km threshold, for a few sampling steps: a shorter
+ * step propagates the catalog more often, a longer one lets more pairs through the grid to the refinement.
+ * The catalog is made of LEO satellites between 400 and 1400 km on the usual inclinations, far more crowded than the
+ * real one, and the pool has one thread per CPU core.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.service.ConjunctionScreener;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import org.hipparchus.util.FastMath;
+import org.openjdk.jmh.annotations.*;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ConjunctionBenchmark {
+
+    private static final double[] INCLINATIONS = {43, 51.6, 53, 70, 87.9, 97.5};
+
+    @Param({"10000", "30000"})
+    private int satellites;
+
+    @Param({"10", "20", "30"})
+    private double step;
+
+    private ForkJoinPool pool;
+    private TLE iss;
+    private List<Integer> satIds;
+    private List<TLE> tles;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.loadOrekitData();
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        iss = SatellitePositionService.parseTLE(BenchmarkFixtures.TLES.get(25544)).orElseThrow();
+
+        Random random = new Random(1);
+        satIds = new ArrayList<>(satellites);
+        tles = new ArrayList<>(satellites);
+        for (int k = 0; k < satellites; k++) {
+            double a = TLEConstants.EARTH_RADIUS * 1000 + 400_000 + 1_000_000 * Math.pow(random.nextDouble(), 2);
+            double inclination = INCLINATIONS[random.nextInt(INCLINATIONS.length)] + random.nextGaussian();
+            tles.add(new TLE(100000 + k, 'U', 2025, 1, "A", 0, 999, iss.getDate(),
+                    Math.sqrt(TLEConstants.MU / (a * a * a)), 0, 0, 0.001 * random.nextDouble(),
+                    FastMath.toRadians(inclination), 2 * FastMath.PI * random.nextDouble(),
+                    2 * FastMath.PI * random.nextDouble(), 2 * FastMath.PI * random.nextDouble(), 1, 1e-4));
+            satIds.add(100000 + k);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ConjunctionScreener.Result screen() {
+        return new ConjunctionScreener(pool).screen(satIds, tles, iss.getDate(), 3600, 5000, step);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Conversions between geodetic and Earth-fixed cartesian coordinates on the WGS84 ellipsoid, and from TEME to ITRF
+ * through Orekit's frame tree versus the transform of the date shared by every satellite.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.openjdk.jmh.annotations.*;
+import org.orekit.bodies.GeodeticPoint;
+import org.orekit.bodies.OneAxisEllipsoid;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.propagation.SpacecraftState;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.utils.PVCoordinates;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"25544", "44945", "51850"})
+    private int satId;
+
+    private SatellitePositionService service;
+    private OneAxisEllipsoid earth;
+    private Frame itrf;
+    private AbsoluteDate date;
+    private Vector3D position;
+    private GeodeticPoint geodeticPoint;
+    private SpacecraftState state;
+    private FrameTransforms frameTransforms;
+    private final double[] pv = new double[6];
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.loadOrekitData();
+        service = BenchmarkFixtures.positionService(BenchmarkFixtures.repository(Map.of()));
+        itrf = BenchmarkFixtures.itrf();
+        earth = BenchmarkFixtures.earth(itrf);
+        date = BenchmarkFixtures.referenceDate();
+
+        TLE tle = SatellitePositionService.parseTLE(BenchmarkFixtures.TLES.get(satId)).orElseThrow();
+        state = TLEPropagator.selectExtrapolator(tle).propagate(date);
+        position = state.getPVCoordinates(itrf).getPosition();
+        geodeticPoint = earth.transform(position, itrf, date);
+        frameTransforms = new FrameTransforms(FramesFactory.getTEME(), itrf, BenchmarkFixtures.METRICS, 4096);
+    }
+
+    // what every state paid before the transforms were shared
+    @Benchmark
+    public PVCoordinates temeToItrf() {
+        return state.getPVCoordinates(itrf);
+    }
+
+    // the transform of the date already computed for another satellite
+    @Benchmark
+    public double[] sharedTemeToItrf() {
+        PVCoordinates teme = state.getPVCoordinates();
+        frameTransforms.temeToItrf(date).toItrf(teme.getPosition(), teme.getVelocity(), pv, 0);
+        return pv;
+    }
+
+    @Benchmark
+    public PositionSamples convertToCartesian() {
+        return service.convertToCartesian(geodeticPoint);
+    }
+
+    @Benchmark
+    public Vector3D geodeticToCartesian() {
+        return earth.transform(geodeticPoint);
+    }
+
+    @Benchmark
+    public GeodeticPoint cartesianToGeodetic() {
+        return earth.transform(position, itrf, date);
+    }
+}
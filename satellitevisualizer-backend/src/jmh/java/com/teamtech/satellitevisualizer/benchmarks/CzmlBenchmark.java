@@ -0,0 +1,103 @@
+/**
+ * The getCzml endpoint: the 90 minute, 60 second step propagation loop, straight from SGP4 and from the
+ * ephemeris store, the adaptive sampling of one orbit within 1 m, and the serialization of the CZML document.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.service.CzmlSampler;
+import com.teamtech.satellitevisualizer.service.CzmlWriter;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.openjdk.jmh.annotations.*;
+import org.orekit.frames.Frame;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CzmlBenchmark {
+
+    private static final double STEP = 60;
+    private static final int COUNT = 91;
+
+    @Param({"25544", "44945", "51850"})
+    private int satId;
+
+    private TLE tle;
+    private Frame itrf;
+    private AbsoluteDate start;
+    private AbsoluteDate end;
+    private EphemerisStore ephemerisStore;
+    private CzmlWriter czmlWriter;
+    private CzmlSampler czmlSampler;
+    private double[] offsets;
+    private double[] xyz;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.loadOrekitData();
+        tle = SatellitePositionService.parseTLE(BenchmarkFixtures.TLES.get(satId)).orElseThrow();
+        itrf = BenchmarkFixtures.itrf();
+        start = BenchmarkFixtures.referenceDate();
+        end = start.shiftedBy(STEP * (COUNT - 1));
+        ephemerisStore = BenchmarkFixtures.ephemerisStore(itrf, ForkJoinPool.commonPool());
+        czmlWriter = new CzmlWriter();
+        czmlSampler = new CzmlSampler(ephemerisStore, 1, 100_000);
+
+        offsets = new double[COUNT];
+        xyz = ephemerisStore.positions(satId, tle, start, STEP, COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            offsets[i] = i * STEP;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadPropagator {
+        TLEPropagator propagator;
+
+        @Setup
+        public void setUp(CzmlBenchmark benchmark) {
+            propagator = TLEPropagator.selectExtrapolator(benchmark.tle);
+        }
+    }
+
+    // one SGP4 propagation and frame transform per sample, as getCzml did before the ephemeris store
+    @Benchmark
+    public double[] propagationLoop(ThreadPropagator state) {
+        double[] positions = new double[3 * COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            Vector3D position = state.propagator.propagate(start.shiftedBy(i * STEP)).getPVCoordinates(itrf).getPosition();
+            positions[3 * i] = position.getX();
+            positions[3 * i + 1] = position.getY();
+            positions[3 * i + 2] = position.getZ();
+        }
+        return positions;
+    }
+
+    @Benchmark
+    public double[] ephemerisWindow() {
+        return ephemerisStore.positions(satId, tle, start, STEP, COUNT);
+    }
+
+    @Benchmark
+    public CzmlSampler.Samples adaptiveSamples() {
+        return czmlSampler.sample(satId, tle, start, CzmlSampler.defaultWindow(tle), 1, 5);
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        czmlWriter.write(OutputStream.nullOutputStream(), satId, start, end, offsets, xyz);
+    }
+}
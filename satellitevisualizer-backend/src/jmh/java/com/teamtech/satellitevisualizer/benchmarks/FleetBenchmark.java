@@ -0,0 +1,104 @@
+/**
+ * Positions of a whole fleet at one date: one TLEPropagator per satellite through Orekit's frame tree (what every
+ * satellite cost before), the SGP4 batch on one thread with the shared TEME to ITRF rotation, and computePositions
+ * as the /positions endpoint and the live stream call it (batch chunks in parallel, geodetic conversion included).
+ * The fleet is made of LEO satellites spread around the ISS elements.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.Sgp4Batch;
+import org.hipparchus.util.FastMath;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FleetBenchmark {
+
+    @Param({"1000", "10000"})
+    private int satellites;
+
+    private SatellitePositionService service;
+    private Frame itrf;
+    private AbsoluteDate date;
+    private List<TLE> tles;
+    private List<TLEPropagator> propagators;
+    private Sgp4Batch batch;
+    private FrameTransforms frameTransforms;
+    private double[] xyz;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.loadOrekitData();
+        itrf = BenchmarkFixtures.itrf();
+        date = BenchmarkFixtures.referenceDate();
+
+        TLE iss = SatellitePositionService.parseTLE(BenchmarkFixtures.TLES.get(25544)).orElseThrow();
+        tles = new ArrayList<>(satellites);
+        propagators = new ArrayList<>(satellites);
+        Map<Integer, SatelliteData> fleet = new HashMap<>();
+        for (int i = 0; i < satellites; i++) {
+            double spread = i * 2 * FastMath.PI / satellites;
+            TLE tle = new TLE(100000 + i, 'U', 2025, 1, "A", 0, 999, iss.getDate(),
+                    iss.getMeanMotion() * (0.95 + 0.1 * i / satellites), 0, 0, iss.getE(), iss.getI() + spread / 8,
+                    iss.getPerigeeArgument(), iss.getRaan() + spread * 7, iss.getMeanAnomaly() + spread * 13, 1,
+                    iss.getBStar());
+            tles.add(tle);
+            propagators.add(TLEPropagator.selectExtrapolator(tle));
+            fleet.put(tle.getSatelliteNumber(), new SatelliteData(tle.getSatelliteNumber(), "SAT " + i,
+                    tle.getLine1() + "\r\n" + tle.getLine2(), null, null));
+        }
+        service = BenchmarkFixtures.positionService(BenchmarkFixtures.repository(fleet));
+        batch = new Sgp4Batch(tles);
+        frameTransforms = new FrameTransforms(FramesFactory.getTEME(), itrf, BenchmarkFixtures.METRICS, 4096);
+        xyz = new double[3 * satellites];
+    }
+
+    @Benchmark
+    public void orekit(Blackhole blackhole) {
+        for (TLEPropagator propagator : propagators) {
+            blackhole.consume(propagator.propagate(date).getPVCoordinates(itrf));
+        }
+    }
+
+    @Benchmark
+    public double[] batch() {
+        batch.propagate(date, 0, satellites, xyz, null);
+        frameTransforms.temeToItrf(date).rotatePositions(xyz, 0, satellites);
+        return xyz;
+    }
+
+    // the batch built from the TLEs every time, like every chunk of computePositions does
+    @Benchmark
+    public double[] batchWithSetup() {
+        Sgp4Batch fresh = new Sgp4Batch(tles);
+        fresh.propagate(date, 0, satellites, xyz, null);
+        frameTransforms.temeToItrf(date).rotatePositions(xyz, 0, satellites);
+        return xyz;
+    }
+
+    @Benchmark
+    public List<SatellitePosition> computePositions() {
+        return service.computePositions(null, date);
+    }
+}
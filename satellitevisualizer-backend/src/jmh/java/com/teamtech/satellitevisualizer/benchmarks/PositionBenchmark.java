@@ -0,0 +1,80 @@
+/**
+ * Position of one satellite: computeLLA as the /tle endpoint calls it (current time, ephemeris store already
+ * holding the satellite's window, repository in memory), computePosition at a fixed date outside of the window
+ * (pooled propagator), and a bare SGP4 propagation as the baseline.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import org.openjdk.jmh.annotations.*;
+import org.orekit.frames.Frame;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.utils.PVCoordinates;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionBenchmark {
+
+    @Param({"25544", "44945", "51850"})
+    private int satId;
+
+    private SatellitePositionService service;
+    private TLE tle;
+    private AbsoluteDate date;
+    private Frame itrf;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.loadOrekitData();
+        String tleData = BenchmarkFixtures.TLES.get(satId);
+        service = BenchmarkFixtures.positionService(BenchmarkFixtures.repository(
+                Map.of(satId, new SatelliteData(satId, "SAT " + satId, tleData, null, null))));
+        tle = SatellitePositionService.parseTLE(tleData).orElseThrow();
+        date = BenchmarkFixtures.referenceDate();
+        itrf = BenchmarkFixtures.itrf();
+
+        // the first call queues the satellite, the refresh builds its window like the scheduled task does
+        service.computeLLA(tle, satId);
+        ((EphemerisStore) ReflectionTestUtils.getField(service, "ephemerisStore")).refresh();
+    }
+
+    // propagators are not thread-safe, every benchmark thread has its own
+    @State(Scope.Thread)
+    public static class ThreadPropagator {
+        TLEPropagator propagator;
+
+        @Setup
+        public void setUp(PositionBenchmark benchmark) {
+            propagator = TLEPropagator.selectExtrapolator(benchmark.tle);
+        }
+    }
+
+    @Benchmark
+    public SatelliteData computeLLA() {
+        return service.computeLLA(tle, satId);
+    }
+
+    @Benchmark
+    public SatellitePosition computePosition() {
+        return service.computePosition(tle, satId, date);
+    }
+
+    @Benchmark
+    public PVCoordinates propagate(ThreadPropagator state) {
+        return state.propagator.propagate(date).getPVCoordinates(itrf);
+    }
+}
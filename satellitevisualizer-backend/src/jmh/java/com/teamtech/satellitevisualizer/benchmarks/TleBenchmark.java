@@ -0,0 +1,37 @@
+/**
+ * Parsing of the TLE strings stored in the database into Orekit TLE objects.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import org.openjdk.jmh.annotations.*;
+import org.orekit.propagation.analytical.tle.TLE;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TleBenchmark {
+
+    @Param({"25544", "44945", "51850"})
+    private int satId;
+
+    private String tleData;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.loadOrekitData();
+        tleData = BenchmarkFixtures.TLES.get(satId);
+    }
+
+    @Benchmark
+    public Optional<TLE> parseTLE() {
+        return SatellitePositionService.parseTLE(tleData);
+    }
+}
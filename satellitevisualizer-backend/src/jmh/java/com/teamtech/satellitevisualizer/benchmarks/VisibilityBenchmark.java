@@ -0,0 +1,49 @@
+/**
+ * The line of sight check between two satellites at the current time: their TLEs read from an in-memory repository
+ * (cached after the first call), both positions brought to now and the line tested against the ellipsoid.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisibilityBenchmark {
+
+    // LEO-LEO, LEO-GEO and LEO-GEO with the Starlink satellite
+    @Param({"25544:44945", "25544:51850", "44945:51850"})
+    private String pair;
+
+    private SatellitePositionService service;
+    private int satId1;
+    private int satId2;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.loadOrekitData();
+        satId1 = Integer.parseInt(pair.substring(0, pair.indexOf(':')));
+        satId2 = Integer.parseInt(pair.substring(pair.indexOf(':') + 1));
+
+        Map<Integer, SatelliteData> satellites = new HashMap<>();
+        for (int satId : new int[] {satId1, satId2}) {
+            satellites.put(satId, new SatelliteData(satId, "SAT " + satId, BenchmarkFixtures.TLES.get(satId), null, null));
+        }
+        service = BenchmarkFixtures.positionService(BenchmarkFixtures.repository(satellites));
+    }
+
+    @Benchmark
+    public boolean isVisible() {
+        return service.isVisible(satId1, satId2);
+    }
+}
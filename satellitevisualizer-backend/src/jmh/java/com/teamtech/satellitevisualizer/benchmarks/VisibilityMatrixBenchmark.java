@@ -0,0 +1,87 @@
+/**
+ * The visibility matrix of a synthetic constellation at one instant, pruned by angle in a grid of directions against
+ * the line of sight test of every pair, both building the same adjacency lists. The "leo" satellites are between 340
+ * and 1340 km, the "mixed" ones have one in ten in MEO or GEO, which see most of the others: there the lists
+ * themselves take most of the time. The satellites are spread uniformly over their spheres.
+ */
+
+package com.teamtech.satellitevisualizer.benchmarks;
+
+import com.teamtech.satellitevisualizer.service.LineOfSight;
+import org.openjdk.jmh.annotations.*;
+import org.orekit.utils.Constants;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisibilityMatrixBenchmark {
+
+    @Param({"500", "2000", "5000"})
+    private int satellites;
+
+    @Param({"leo", "mixed"})
+    private String population;
+
+    private LineOfSight lineOfSight;
+    private double[] xyz;
+
+    @Setup
+    public void setUp() {
+        lineOfSight = new LineOfSight(Constants.WGS84_EARTH_EQUATORIAL_RADIUS, Constants.WGS84_EARTH_FLATTENING, 0);
+        Random random = new Random(1);
+        xyz = new double[3 * satellites];
+        for (int k = 0; k < satellites; k++) {
+            double altitude = 340_000 + 1_000_000 * random.nextDouble();
+            if (population.equals("mixed") && k % 20 < 2) {
+                altitude = k % 20 == 0 ? 20_200_000 : 35_786_000;
+            }
+            double radius = Constants.WGS84_EARTH_EQUATORIAL_RADIUS + altitude;
+            double x = random.nextGaussian();
+            double y = random.nextGaussian();
+            double z = random.nextGaussian();
+            double norm = Math.sqrt(x * x + y * y + z * z);
+            xyz[3 * k] = radius * x / norm;
+            xyz[3 * k + 1] = radius * y / norm;
+            xyz[3 * k + 2] = radius * z / norm;
+        }
+    }
+
+    @Benchmark
+    public int[][] adjacency() {
+        return lineOfSight.adjacency(xyz, satellites);
+    }
+
+    // the same lists from testing every pair, each row grown as its links are found
+    @Benchmark
+    public int[][] everyPair() {
+        int[][] adjacency = new int[satellites][16];
+        int[] degree = new int[satellites];
+        for (int i = 0; i < satellites; i++) {
+            for (int j = i + 1; j < satellites; j++) {
+                if (lineOfSight.isClear(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2],
+                        xyz[3 * j], xyz[3 * j + 1], xyz[3 * j + 2])) {
+                    add(adjacency, degree, i, j);
+                    add(adjacency, degree, j, i);
+                }
+            }
+        }
+        for (int k = 0; k < satellites; k++) {
+            adjacency[k] = Arrays.copyOf(adjacency[k], degree[k]);
+        }
+        return adjacency;
+    }
+
+    private static void add(int[][] adjacency, int[] degree, int k, int other) {
+        if (degree[k] == adjacency[k].length) {
+            adjacency[k] = Arrays.copyOf(adjacency[k], 2 * degree[k]);
+        }
+        adjacency[k][degree[k]++] = other;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * ComputeProperties.java
+ * This class holds the satellite.compute.* settings: the size of the pool the controller endpoints run their
+ * propagation and database work on, and the lane of every endpoint (how many of its requests may wait or run at once,
+ * how long one may wait, and its priority over the other lanes).
+ *
+ */
+
+package com.teamtech.satellitevisualizer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "satellite.compute")
+public class ComputeProperties {
+    // 0 = one thread per CPU core, the work is mostly propagation
+    private int threads = 0;
+    private Map<String, Lane> lanes = new HashMap<>();
+
+    @Data
+    public static class Lane {
+        // requests of the lane waiting or running, more are rejected with a 429
+        private int maxQueued = 16;
+        // requests that waited longer than this for a thread are rejected with a 503 instead of being computed
+        private long maxWaitMs = 5000;
+        // lower runs first when requests of several lanes are waiting
+        private int priority = 1;
+    }
+
+    /**
+     * @return The settings of a lane, the defaults if it is not configured.
+     */
+    public Lane lane(String name) {
+        return lanes.getOrDefault(name, new Lane());
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * ExecutorConfig.java
+ * This class defines the thread pool used to propagate many satellites in parallel (e.g. the batch position endpoint).
+ * The pool has a fixed number of threads (satellite.propagation.threads, defaults to the number of CPU cores since
+ * propagation is CPU bound) and a bounded queue (satellite.propagation.queue-capacity). When the queue is full
+ * the submitting thread runs the task itself, which slows producers down instead of failing requests.
+ *
+ * It also defines the small pool that sends live position frames to the SSE subscribers, kept apart from
+ * the propagation pool so a slow client never holds a propagation thread.
+ *
+ * The compute pool runs the work of the controller endpoints off the servlet threads (see ComputeLanes). Its queue
+ * orders the waiting requests by lane priority, it is bounded by the admission limits of the lanes rather than by
+ * a capacity of its own.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+@EnableConfigurationProperties(ComputeProperties.class)
+public class ExecutorConfig {
+
+    @Value("${satellite.propagation.threads:0}")
+    private int threads;
+
+    @Value("${satellite.propagation.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${satellite.stream.sender-threads:4}")
+    private int senderThreads;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService propagationExecutor() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreads("propagation-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor computeExecutor(ComputeProperties properties) {
+        int poolSize = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                namedThreads("compute-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // at most one send task per subscriber is ever queued, so the queue is bounded by the number of subscribers
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService streamExecutor() {
+        return Executors.newFixedThreadPool(senderThreads, namedThreads("stream-"));
+    }
+
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * MongoConfig.java
+ * This class registers the custom MongoDB conversions of the application.
+ *
+ * PositionSamples are stored as a small document holding the dimension and the components (and time tags, if any)
+ * as packed little-endian doubles in BSON binary fields, 8 bytes per value instead of a boxed Double and a BSON array
+ * element per value. Satellites written before that, where the coordinates are nested arrays of doubles, are still
+ * read through SatelliteCoordinatesConverter, registered on the coordinate properties of SatelliteData.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.config;
+
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.core.convert.MongoConversionContext;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.MongoValueConverter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+@Configuration
+public class MongoConfig {
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        SatelliteCoordinatesConverter coordinates = new SatelliteCoordinatesConverter();
+        return MongoCustomConversions.create(adapter -> adapter
+                .registerConverters(List.of(new PositionSamplesWriter(), new PositionSamplesReader()))
+                .configurePropertyConversions(registrar -> registrar
+                        .registerConverter(SatelliteData.class, "geodeticCoordinates", coordinates)
+                        .registerConverter(SatelliteData.class, "xyzCoordinates", coordinates)));
+    }
+
+    @WritingConverter
+    public static class PositionSamplesWriter implements Converter<PositionSamples, Document> {
+        @Override
+        public Document convert(PositionSamples samples) {
+            Document document = new Document("dim", samples.getDimension());
+            document.put("values", new Binary(pack(samples.getValues())));
+            if (samples.hasTimes()) {
+                document.put("times", new Binary(pack(samples.getTimes())));
+            }
+            return document;
+        }
+    }
+
+    @ReadingConverter
+    public static class PositionSamplesReader implements Converter<Document, PositionSamples> {
+        @Override
+        public PositionSamples convert(Document document) {
+            Binary times = document.get("times", Binary.class);
+            return new PositionSamples(document.getInteger("dim", 3),
+                    times == null ? null : unpack(times.getData()),
+                    unpack(document.get("values", Binary.class).getData()));
+        }
+    }
+
+    // reads coordinates stored as [[a, b, c], ...] before they were packed as well as packed ones, per property since
+    // a reading converter from List would not start from a type the store supports
+    public static class SatelliteCoordinatesConverter implements MongoValueConverter<PositionSamples, Object> {
+        private final PositionSamplesWriter writer = new PositionSamplesWriter();
+        private final PositionSamplesReader reader = new PositionSamplesReader();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public PositionSamples read(Object value, MongoConversionContext context) {
+            if (value instanceof List<?> samples) {
+                return PositionSamples.fromNestedList((List<List<Number>>) samples);
+            }
+            return reader.convert((Document) value);
+        }
+
+        @Override
+        public Object write(PositionSamples samples, MongoConversionContext context) {
+            return writer.convert(samples);
+        }
+    }
+
+    static byte[] pack(double[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asDoubleBuffer().put(values);
+        return buffer.array();
+    }
+
+    static double[] unpack(byte[] data) {
+        double[] values = new double[data.length / Double.BYTES];
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values);
+        return values;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * N2yoConfig.java
+ * This class defines the HTTP client and the rate limiter shared by everything that calls the N2YO API,
+ * instead of creating a new RestTemplate for every request, and the worker pool of the scheduled TLE refresh,
+ * whose size bounds the number of concurrent N2YO requests (n2yo.refresh.concurrency).
+ *
+ */
+
+package com.teamtech.satellitevisualizer.config;
+
+import com.teamtech.satellitevisualizer.service.TokenBucket;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableConfigurationProperties(N2yoProperties.class)
+public class N2yoConfig {
+
+    @Bean
+    public RestTemplate n2yoRestTemplate(RestTemplateBuilder builder, N2yoProperties properties) {
+        Duration timeout = Duration.ofMillis(properties.getApi().getTimeoutMs());
+        return builder
+                .connectTimeout(timeout)
+                .readTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Token bucket holding the hourly request quota of the API key, refilled continuously over the hour.
+     */
+    @Bean
+    public TokenBucket n2yoRateLimiter(N2yoProperties properties) {
+        int perHour = properties.getApi().getRequestsPerHour();
+        return new TokenBucket(perHour, perHour / 3600.0);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService n2yoRefreshExecutor(N2yoProperties properties) {
+        return Executors.newFixedThreadPool(Math.max(1, properties.getRefresh().getConcurrency()),
+                ExecutorConfig.namedThreads("tle-refresh-"));
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * N2yoProperties.java
+ * This class holds the n2yo.* settings: the API key and base URL, the request quota of the API key,
+ * and how the scheduled TLE refresh spreads its requests (concurrency, retries, Mongo write batches).
+ *
+ */
+
+package com.teamtech.satellitevisualizer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "n2yo")
+public class N2yoProperties {
+    private Api api = new Api();
+    private Refresh refresh = new Refresh();
+
+    @Data
+    public static class Api {
+        private String key;
+        private String baseUrl = "https://api.n2yo.com/rest/v1/satellite/";
+        // N2YO allows 1000 TLE requests per hour and per API key
+        private int requestsPerHour = 1000;
+        private long timeoutMs = 10000;
+    }
+
+    @Data
+    public static class Refresh {
+        private int concurrency = 4;
+        private int maxAttempts = 3;
+        private long backoffMs = 500;
+        private int batchSize = 200;
+    }
+}
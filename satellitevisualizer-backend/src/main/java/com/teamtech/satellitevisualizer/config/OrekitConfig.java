@@ -1,13 +1,244 @@
+/**
+ * OrekitConfig.java
+ * This class loads the Orekit data (leap seconds, Earth orientation parameters, ...) exactly once at startup and
+ * exposes the time scales, frames and Earth model that the services share.
+ *
+ * The data location is read from the orekit.data.location property. It can either be a classpath location
+ * (classpath:orekit-data, the default, which also works from inside the packaged jar) or an external directory
+ * (file:/opt/orekit-data or a plain path).
+ * The UTC-TAI history and the IERS 2010 EOP, all that SGP4 and the ITRF need, are read from the compact bundle of
+ * orekit.data.bundle (see OrekitDataBundle) when there is one. The data location is then only listed and crawled if a
+ * feature asks for another dataset (other IERS conventions, atmosphere, gravity field, ...), which is timed and logged
+ * like the bundled datasets are.
+ * Orekit frames and time scales are immutable once loaded, so the beans are safe to share between request threads.
+ */
+
 package com.teamtech.satellitevisualizer.config;
 
-import jakarta.annotation.PostConstruct;
+import org.orekit.bodies.OneAxisEllipsoid;
+import org.orekit.data.ClasspathCrawler;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataLoader;
+import org.orekit.data.DataProvider;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.data.LazyLoadedDataContext;
+import org.orekit.frames.Frame;
+import org.orekit.frames.LazyLoadedEop;
+import org.orekit.frames.LazyLoadedFrames;
+import org.orekit.time.LazyLoadedTimeScales;
+import org.orekit.time.TimeScale;
+import org.orekit.utils.Constants;
+import org.orekit.utils.IERSConventions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 @Configuration
 public class OrekitConfig {
-    @PostConstruct
-    public void init() {
-        System.setProperty("orekit.data.path", "src/main/resources/orekit-data");
+    private static final Logger log = LoggerFactory.getLogger(OrekitConfig.class);
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final String FILE_PREFIX = "file:";
+
+    @Value("${orekit.data.location:classpath:orekit-data}")
+    private String dataLocation;
+
+    // empty to read everything from the data location
+    @Value("${orekit.data.bundle:classpath:orekit-bundle.bin}")
+    private String bundleLocation;
+
+    /**
+     * Sets up the default Orekit data context (the bundle for the UTC-TAI history and IERS 2010 EOP, a lazily created
+     * provider for the configured location for everything else) and forces the data that every propagation needs
+     * to load, so the first request does not pay for it.
+     * The default context is used because Orekit's static factories (FramesFactory, TimeScalesFactory) read from it.
+     *
+     * @return the loaded default DataContext
+     * @throws IOException if the bundle cannot be read
+     */
+    @Bean
+    public DataContext orekitDataContext() throws IOException {
+        long start = System.nanoTime();
+
+        LazyLoadedDataContext context = DataContext.getDefault();
+        DataProvidersManager manager = context.getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new TimedProvider());
+
+        OrekitDataBundle bundle = readBundle();
+        if (bundle != null) {
+            LazyLoadedTimeScales timeScales = context.getTimeScales();
+            timeScales.clearUTCTAIOffsetsLoaders();
+            timeScales.addUTCTAIOffsetsLoader(bundle.offsetsLoader());
+
+            LazyLoadedFrames frames = context.getFrames();
+            frames.clearEOPHistoryLoaders();
+            frames.addEOPHistoryLoader(OrekitDataBundle.CONVENTIONS, bundle.eopLoader(timeScales::getUTC));
+            // Orekit only falls back to its default loaders when none is registered at all, the other conventions
+            // get theirs from the data location, parsed the first time something needs them
+            LazyLoadedEop fallback = new LazyLoadedEop(manager);
+            for (IERSConventions conventions : IERSConventions.values()) {
+                if (conventions != OrekitDataBundle.CONVENTIONS) {
+                    frames.addEOPHistoryLoader(conventions, (converter, history) ->
+                            history.addAll(fallback.getEOPHistory(conventions, false, timeScales).getEntries()));
+                }
+            }
+        }
+
+        timed("UTC-TAI history", () -> context.getTimeScales().getUTC());
+        timed("IERS 2010 EOP", () -> context.getFrames().getEOPHistory(IERSConventions.IERS_2010, true));
+        // mostly the IERS 2010 precession-nutation series Orekit builds from its own resources
+        timed("ITRF", () -> context.getFrames().getITRF(IERSConventions.IERS_2010, true));
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("Loaded Orekit data from {} in {} ms", bundle != null ? bundleLocation : dataLocation, elapsedMs);
+        return context;
+    }
+
+    @Bean
+    public TimeScale utc(DataContext orekitDataContext) {
+        return orekitDataContext.getTimeScales().getUTC();
+    }
+
+    @Bean
+    public Frame itrf(DataContext orekitDataContext) {
+        return orekitDataContext.getFrames().getITRF(IERSConventions.IERS_2010, true);
+    }
+
+    // the frame SGP4 states are expressed in
+    @Bean
+    public Frame teme(DataContext orekitDataContext) {
+        return orekitDataContext.getFrames().getTEME();
     }
 
-}
\ No newline at end of file
+    @Bean
+    public Frame eme2000(DataContext orekitDataContext) {
+        return orekitDataContext.getFrames().getEME2000();
+    }
+
+    /**
+     * WGS84 ellipsoid attached to the ITRF frame, used to convert between cartesian and geodetic coordinates.
+     */
+    @Bean
+    public OneAxisEllipsoid earth(@Qualifier("itrf") Frame itrf) {
+        return new OneAxisEllipsoid(
+                Constants.WGS84_EARTH_EQUATORIAL_RADIUS,
+                Constants.WGS84_EARTH_FLATTENING,
+                itrf);
+    }
+
+    private OrekitDataBundle readBundle() throws IOException {
+        if (bundleLocation == null || bundleLocation.isBlank()) {
+            return null;
+        }
+        Resource resource = new DefaultResourceLoader().getResource(bundleLocation);
+        if (!resource.exists()) {
+            log.warn("Orekit data bundle {} not found, reading everything from {}", bundleLocation, dataLocation);
+            return null;
+        }
+        long start = System.nanoTime();
+        try (InputStream in = resource.getInputStream()) {
+            OrekitDataBundle bundle = OrekitDataBundle.read(in);
+            log.info("Read Orekit data bundle {} ({} UTC-TAI offsets, {} EOP entries, built {} from {}) in {} ms",
+                    bundleLocation, bundle.getOffsetCount(), bundle.getEopCount(), bundle.getCreated(),
+                    bundle.getSource(), (System.nanoTime() - start) / 1_000_000);
+            return bundle;
+        }
+    }
+
+    private static void timed(String dataset, Runnable load) {
+        long start = System.nanoTime();
+        load.run();
+        log.info("Loaded Orekit {} in {} ms", dataset, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Feeds Orekit from the configured location, which is only listed the first time a dataset is asked for,
+     * and logs how long every dataset took to load.
+     */
+    private final class TimedProvider implements DataProvider {
+        private DataProvider provider;
+
+        @Override
+        public boolean feed(Pattern supported, DataLoader visitor, DataProvidersManager manager) {
+            long start = System.nanoTime();
+            boolean loaded = provider().feed(supported, visitor, manager);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            // Orekit asks every provider for datasets it may not hold, only an actual load is worth an INFO line
+            if (loaded) {
+                log.info("Loaded Orekit dataset {} ({}) from {} in {} ms", visitor.getClass().getSimpleName(),
+                        supported, dataLocation, elapsedMs);
+            } else {
+                log.debug("No Orekit dataset {} ({}) in {}, looked in {} ms", visitor.getClass().getSimpleName(),
+                        supported, dataLocation, elapsedMs);
+            }
+            return loaded;
+        }
+
+        private synchronized DataProvider provider() {
+            if (provider == null) {
+                try {
+                    provider = createProvider();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot list the Orekit data at " + dataLocation, e);
+                }
+            }
+            return provider;
+        }
+    }
+
+    /**
+     * Creates the data provider for the configured location.
+     * A classpath location that resolves to a real directory (running from the IDE or target/classes) is crawled
+     * directly, otherwise (running from the packaged jar) every file below it is listed and read through the classloader.
+     */
+    private DataProvider createProvider() throws IOException {
+        if (!dataLocation.startsWith(CLASSPATH_PREFIX)) {
+            String path = dataLocation.startsWith(FILE_PREFIX) ? dataLocation.substring(FILE_PREFIX.length()) : dataLocation;
+            return new DirectoryCrawler(requireDirectory(new File(path)));
+        }
+
+        String base = dataLocation.substring(CLASSPATH_PREFIX.length()).replaceAll("^/+|/+$", "");
+        ClassPathResource root = new ClassPathResource(base);
+        if (root.exists() && root.isFile()) {
+            return new DirectoryCrawler(requireDirectory(root.getFile()));
+        }
+
+        List<String> names = new ArrayList<>();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (Resource resource : resolver.getResources("classpath*:" + base + "/**/*")) {
+            String url = resource.getURL().toString();
+            int index = url.lastIndexOf("/" + base + "/");
+            if (resource.isReadable() && index >= 0 && !url.endsWith("/")) {
+                names.add(url.substring(index + 1));
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IllegalStateException("No Orekit data found at " + dataLocation);
+        }
+        return new ClasspathCrawler(names.toArray(new String[0]));
+    }
+
+    private static File requireDirectory(File directory) {
+        if (!directory.isDirectory()) {
+            throw new IllegalStateException("Orekit data directory not found: " + directory.getAbsolutePath());
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * OrekitDataBundle.java
+ * This class holds the Orekit data every propagation needs at startup (the UTC-TAI history and the IERS 2010 Earth
+ * orientation parameters) preprocessed into one compact binary file, so the backend does not crawl and parse the
+ * text files of orekit-data (finals2000A.all alone is 3.6 MB of fixed-width text) on every cold start.
+ *
+ * The bundle is generated from the orekit-data directory by the orekit-bundle build profile, after update.sh
+ * refreshed the data:
+ *   mvn -Porekit-bundle -DskipTests process-classes
+ * It is written to src/main/resources/orekit-bundle.bin and committed with the data it was built from.
+ *
+ * Layout (big-endian, written with a DataOutputStream and read back from a ByteBuffer): the magic "OKDB", the format
+ * version, the creation time and a description of the source files, then the UTC-TAI offsets (start date, MJD
+ * reference, offset, slope) and the EOP entries (MJD, UT1-UTC, LOD, pole, both nutation corrections and the ITRF
+ * version). The values are the ones Orekit parsed, bit for bit, so the frames built from the bundle are the frames
+ * built from the text files.
+ */
+
+package com.teamtech.satellitevisualizer.config;
+
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.data.LazyLoadedDataContext;
+import org.orekit.frames.EOPEntry;
+import org.orekit.frames.EOPHistoryLoader;
+import org.orekit.frames.ITRFVersion;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.DateComponents;
+import org.orekit.time.OffsetModel;
+import org.orekit.time.TAIUTCDatFilesLoader;
+import org.orekit.time.TimeScale;
+import org.orekit.time.UTCTAIOffsetsLoader;
+import org.orekit.utils.IERSConventions;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+public final class OrekitDataBundle {
+
+    private static final int MAGIC = 0x4F4B4442; // "OKDB"
+    public static final int FORMAT_VERSION = 1;
+
+    // the conventions of the bundled EOP, the ones the ITRF bean uses
+    public static final IERSConventions CONVENTIONS = IERSConventions.IERS_2010;
+
+    private final Instant created;
+    private final String source;
+    private final List<OffsetModel> offsets;
+    private final List<Eop> eop;
+
+    private OrekitDataBundle(Instant created, String source, List<OffsetModel> offsets, List<Eop> eop) {
+        this.created = created;
+        this.source = source;
+        this.offsets = offsets;
+        this.eop = eop;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    /**
+     * @return The files the bundle was built from, as Orekit loaded them.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public int getOffsetCount() {
+        return offsets.size();
+    }
+
+    public int getEopCount() {
+        return eop.size();
+    }
+
+    /**
+     * @return The UTC-TAI history, for LazyLoadedTimeScales.addUTCTAIOffsetsLoader.
+     */
+    public UTCTAIOffsetsLoader offsetsLoader() {
+        return () -> offsets;
+    }
+
+    /**
+     * Returns the EOP history of the bundle, for LazyLoadedFrames.addEOPHistoryLoader with CONVENTIONS.
+     * @param utc The UTC scale the entry dates are built in, only read when the history is first needed.
+     */
+    public EOPHistoryLoader eopLoader(Supplier<TimeScale> utc) {
+        return (converter, history) -> {
+            TimeScale scale = utc.get();
+            for (Eop e : eop) {
+                AbsoluteDate date = new AbsoluteDate(
+                        new DateComponents(DateComponents.MODIFIED_JULIAN_EPOCH, e.mjd), scale);
+                history.add(new EOPEntry(e.mjd, e.dt, e.lod, e.x, e.y, e.ddPsi, e.ddEps, e.dx, e.dy, e.itrf, date));
+            }
+        };
+    }
+
+    /**
+     * Reads a bundle.
+     * @throws IOException if the stream cannot be read, is not a bundle or is of another format version.
+     */
+    public static OrekitDataBundle read(InputStream stream) throws IOException {
+        // one read and plain buffer accesses, the bundle is a little over a megabyte
+        ByteBuffer in = ByteBuffer.wrap(stream.readAllBytes());
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not an Orekit data bundle");
+            }
+            int version = in.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Orekit data bundle of format " + version + ", expected " + FORMAT_VERSION);
+            }
+            Instant created = Instant.ofEpochMilli(in.getLong());
+            byte[] sourceBytes = new byte[in.getShort() & 0xFFFF];
+            in.get(sourceBytes);
+            String source = new String(sourceBytes, StandardCharsets.UTF_8);
+
+            int offsetCount = in.getInt();
+            List<OffsetModel> offsets = new ArrayList<>(offsetCount);
+            for (int i = 0; i < offsetCount; i++) {
+                DateComponents start = new DateComponents(in.getInt(), in.getInt(), in.getInt());
+                offsets.add(new OffsetModel(start, in.getInt(), in.getDouble(), in.getDouble()));
+            }
+
+            ITRFVersion[] versions = ITRFVersion.values();
+            int eopCount = in.getInt();
+            List<Eop> eop = new ArrayList<>(eopCount);
+            for (int i = 0; i < eopCount; i++) {
+                eop.add(new Eop(in.getInt(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(),
+                        in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), versions[in.get() & 0xFF]));
+            }
+            return new OrekitDataBundle(created, source, Collections.unmodifiableList(offsets),
+                    Collections.unmodifiableList(eop));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated Orekit data bundle", e);
+        }
+    }
+
+    /**
+     * Writes the UTC-TAI history and IERS 2010 EOP of a data context as a bundle.
+     * @param context A context reading the full orekit-data, e.g. through a DirectoryCrawler.
+     * @param root The orekit-data directory, the source files are recorded relative to it.
+     * @param out Receives the bundle, not closed.
+     */
+    public static void write(LazyLoadedDataContext context, Path root, OutputStream out) throws IOException {
+        // the offsets as parsed, UTCScale only keeps them combined with the leap seconds
+        List<OffsetModel> offsets = new TAIUTCDatFilesLoader(TAIUTCDatFilesLoader.DEFAULT_SUPPORTED_NAMES,
+                context.getDataProvidersManager()).loadOffsets();
+        List<EOPEntry> entries = context.getFrames().getEOPHistory(CONVENTIONS, false).getEntries();
+        String source = context.getDataProvidersManager().getLoadedDataNames().stream()
+                .map(name -> root.toAbsolutePath().relativize(Path.of(name).toAbsolutePath()).toString())
+                .sorted()
+                .collect(Collectors.joining(", "));
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeLong(System.currentTimeMillis());
+        data.writeUTF(source);
+
+        data.writeInt(offsets.size());
+        for (OffsetModel offset : offsets) {
+            data.writeInt(offset.getStart().getYear());
+            data.writeInt(offset.getStart().getMonth());
+            data.writeInt(offset.getStart().getDay());
+            data.writeInt(offset.getMJDRef());
+            data.writeDouble(offset.getOffset());
+            data.writeDouble(offset.getSlope());
+        }
+
+        data.writeInt(entries.size());
+        for (EOPEntry entry : entries) {
+            data.writeInt(entry.getMjd());
+            data.writeDouble(entry.getUT1MinusUTC());
+            data.writeDouble(entry.getLOD());
+            data.writeDouble(entry.getX());
+            data.writeDouble(entry.getY());
+            data.writeDouble(entry.getDdPsi());
+            data.writeDouble(entry.getDdEps());
+            data.writeDouble(entry.getDx());
+            data.writeDouble(entry.getDy());
+            data.writeByte(entry.getITRFType().ordinal());
+        }
+        data.flush();
+    }
+
+    /**
+     * The build step of the orekit-bundle profile.
+     * @param args The orekit-data directory and the bundle file to write.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: OrekitDataBundle <orekit-data directory> <bundle file>");
+        }
+        LazyLoadedDataContext context = new LazyLoadedDataContext();
+        context.getDataProvidersManager().addProvider(new DirectoryCrawler(new File(args[0])));
+        File target = new File(args[1]);
+        try (OutputStream out = new FileOutputStream(target)) {
+            write(context, Path.of(args[0]), out);
+        }
+        System.out.println("Wrote " + target + " (" + target.length() / 1024 + " KB) from "
+                + context.getDataProvidersManager().getLoadedDataNames().size() + " files of " + args[0]);
+    }
+
+    private record Eop(int mjd, double dt, double lod, double x, double y,
+                       double ddPsi, double ddEps, double dx, double dy, ITRFVersion itrf) {
+    }
+}
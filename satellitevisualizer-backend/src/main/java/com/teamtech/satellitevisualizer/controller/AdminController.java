@@ -0,0 +1,155 @@
+/**
+ * AdminController handles the maintenance endpoints of the backend, such as loading a whole satellite catalog
+ * into the MongoDB repository.
+ *
+ * @RestController indicates that this class is a RESTful web service controller.
+ * @RequestMapping("/api/admin") is the base URL path for accessing all endpoints in this controller.
+ */
+
+package com.teamtech.satellitevisualizer.controller;
+
+import com.teamtech.satellitevisualizer.models.CacheStats;
+import com.teamtech.satellitevisualizer.models.IngestReport;
+import com.teamtech.satellitevisualizer.models.RefreshReport;
+import com.teamtech.satellitevisualizer.models.ScreeningReport;
+import com.teamtech.satellitevisualizer.service.CatalogIngestService;
+import com.teamtech.satellitevisualizer.service.ConjunctionService;
+import com.teamtech.satellitevisualizer.service.SatelliteCache;
+import com.teamtech.satellitevisualizer.service.TleRefreshService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    @Autowired
+    private CatalogIngestService catalogIngestService;
+
+    @Autowired
+    private TleRefreshService tleRefreshService;
+
+    @Autowired
+    private SatelliteCache satelliteCache;
+
+    @Autowired
+    private ConjunctionService conjunctionService;
+
+    /**
+     * Ingests a CelesTrak-style TLE catalog file (2LE or 3LE) into the database
+     * @param file the name of the file, relative to satellite.ingest.directory
+     * @return ResponseEntity containing the IngestReport, a 400 status if the name points outside of the
+     * ingest directory or a 404 status if the file does not exist
+     */
+    @PostMapping("/ingest")
+    public ResponseEntity<?> ingest(@RequestParam String file) {
+        Path path;
+        try {
+            path = catalogIngestService.resolve(file);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        if (!Files.isRegularFile(path)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Catalog file not found: " + file);
+        }
+
+        try {
+            return ResponseEntity.ok(catalogIngestService.ingest(path));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to ingest catalog: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the progress of the running ingest, or the report of the last one
+     * @return ResponseEntity containing the IngestReport or a 404 status if nothing was ingested yet
+     */
+    @GetMapping("/ingest")
+    public ResponseEntity<IngestReport> getIngestReport() {
+        IngestReport report = catalogIngestService.getLastReport();
+        return report == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(report);
+    }
+
+    /**
+     * Starts a refresh of every satellite's TLE from the N2YO API in the background
+     * @return ResponseEntity with a 202 status, or a 409 status if a refresh is already running
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<String> refresh() {
+        if (!tleRefreshService.refreshTLEs()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("A TLE refresh is already running");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body("TLE refresh started");
+    }
+
+    /**
+     * Returns the report of the last TLE refresh
+     * @return ResponseEntity containing the RefreshReport or a 404 status if no refresh finished yet
+     */
+    @GetMapping("/refresh")
+    public ResponseEntity<RefreshReport> getRefreshReport() {
+        RefreshReport report = tleRefreshService.getLastReport();
+        return report == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(report);
+    }
+
+    /**
+     * Returns the hit/miss statistics of the satellite cache
+     * @return ResponseEntity containing the CacheStats
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<CacheStats> getCacheStats() {
+        return ResponseEntity.ok(satelliteCache.getStats());
+    }
+
+    /**
+     * Empties the satellite cache, e.g. after the satellites collection was edited by hand
+     * @return ResponseEntity with a 204 status
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> clearCache() {
+        satelliteCache.clear();
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Starts a conjunction screening of the whole catalog in the background, its close approaches replacing the ones
+     * stored for the window
+     * @param from optional ISO-8601 start of the window, now by default
+     * @param hours optional length of the window in hours, satellite.conjunction.window-hours by default
+     * @param thresholdKm optional largest miss distance in km, satellite.conjunction.threshold-km by default
+     * @return ResponseEntity with a 202 status, a 400 status if the window or the threshold is invalid,
+     * or a 409 status if a screening is already running
+     */
+    @PostMapping("/conjunctions")
+    public ResponseEntity<String> screenConjunctions(@RequestParam(required = false) String from,
+                                                     @RequestParam(required = false) Double hours,
+                                                     @RequestParam(required = false) Double thresholdKm) {
+        try {
+            if (!conjunctionService.start(from == null ? null : Instant.parse(from), hours, thresholdKm)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("A conjunction screening is already running");
+            }
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body("Conjunction screening started");
+    }
+
+    /**
+     * Returns the progress of the running conjunction screening, or the report of the last one
+     * @return ResponseEntity containing the ScreeningReport or a 404 status if no screening was started yet
+     */
+    @GetMapping("/conjunctions")
+    public ResponseEntity<ScreeningReport> getScreeningReport() {
+        ScreeningReport report = conjunctionService.getLastReport();
+        return report == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(report);
+    }
+}
@@ -4,46 +4,65 @@
  *
  * @RestController indicates that this class is a RESTful web service controller.
  * @RequestMapping("/api/satellite") is the base URL path for accessing all endpoints in this controller.
+ *
+ * Endpoints that propagate orbits or read the database return a CompletableFuture: their work runs on a lane of
+ * the compute pool (see ComputeLanes) and the servlet thread is released right away. A full lane answers 429.
  */
 
 package com.teamtech.satellitevisualizer.controller;
 
+import com.teamtech.satellitevisualizer.models.PositionSeries;
 import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.models.VisibilityMatrix;
+import com.teamtech.satellitevisualizer.service.ComputeLanes;
+import com.teamtech.satellitevisualizer.service.ConjunctionService;
+import com.teamtech.satellitevisualizer.service.CzmlSampler;
+import com.teamtech.satellitevisualizer.service.CzmlWriter;
+import com.teamtech.satellitevisualizer.service.EphemerisPayloadCache;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.HistoryService;
+import com.teamtech.satellitevisualizer.service.PositionStreamService;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
 import com.teamtech.satellitevisualizer.service.SatelliteService;
 import com.teamtech.satellitevisualizer.service.SatellitePositionService;
-import org.orekit.bodies.BodyShape;
-import org.orekit.bodies.OneAxisEllipsoid;
-import org.orekit.frames.FramesFactory;
-import org.orekit.propagation.Propagator;
-import org.orekit.propagation.SpacecraftState;
+import com.teamtech.satellitevisualizer.service.SubpointIndex;
 import org.orekit.propagation.analytical.tle.TLE;
-import org.orekit.propagation.analytical.tle.TLEPropagator;
 import org.orekit.time.AbsoluteDate;
-import org.orekit.time.TimeScalesFactory;
-import org.orekit.utils.Constants;
-import org.orekit.utils.IERSConventions;
+import org.orekit.time.TimeScale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/satellite")
 public class SatelliteController {
+    private static final Logger log = LoggerFactory.getLogger(SatelliteController.class);
 
     @Autowired
     private SatelliteService satelliteService;
@@ -51,6 +70,39 @@ public class SatelliteController {
     @Autowired
     private SatellitePositionService satellitePositionService;
 
+    @Autowired
+    private EphemerisStore ephemerisStore;
+
+    @Autowired
+    private CzmlWriter czmlWriter;
+
+    @Autowired
+    private CzmlSampler czmlSampler;
+
+    @Autowired
+    private EphemerisPayloadCache ephemerisPayloadCache;
+
+    @Autowired
+    private PositionStreamService positionStreamService;
+
+    @Autowired
+    private SatelliteMetrics satelliteMetrics;
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private ComputeLanes computeLanes;
+
+    @Autowired
+    private SubpointIndex subpointIndex;
+
+    @Autowired
+    private ConjunctionService conjunctionService;
+
+    @Autowired
+    private TimeScale utc;
+
     /**
      * Fetches TLE data for a satellite based on its NORAD ID
      * @param noradId the NORAD ID of the satellite
@@ -73,23 +125,26 @@ public class SatelliteController {
      */
     @CrossOrigin(origins = "http://localhost:3000")
     @GetMapping("/{noradId}/tle")
-    public ResponseEntity<Map<String, Object>> getTLE(@PathVariable int noradId) {
-        System.out.println("Fetching TLE for NORAD ID: " + noradId);
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getTLE(@PathVariable int noradId) {
+        return computeLanes.submit("tle", () -> tle(noradId));
+    }
+
+    private ResponseEntity<Map<String, Object>> tle(int noradId) {
+        log.debug("Fetching TLE for satellite {}", noradId);
         SatelliteData satellite = satelliteService.getSatelliteBySatid(noradId);
-        System.out.println(satellite);
         if (satellite != null) {
             Map<String, Object> response = new HashMap<>();
             response.put("tle", satellite.getTle());
 
             SatelliteData updatedSatellite = satellitePositionService.getCurrentLLA(noradId);
             if (updatedSatellite == null) {
-                System.err.printf("Failed to update geodetic coordinates for satellite %d\n", noradId);
+                log.warn("Failed to update geodetic coordinates for satellite {}", noradId);
                 response.put("error", "Failed to update geodetic coordinates.");
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
             }
             response.put("currentLLA", updatedSatellite.getGeodeticCoordinates());
 
-            SatelliteData xyzUpdatedSatellite = satellitePositionService.getXYZ(updatedSatellite.getSatid());
+            SatelliteData xyzUpdatedSatellite = satellitePositionService.getXYZ(updatedSatellite);
             response.put("currentXYZ", xyzUpdatedSatellite.getXyzCoordinates());
 
             return ResponseEntity.ok(response);
@@ -100,80 +155,513 @@ public class SatelliteController {
         }
     }
 
-    private static final BodyShape EARTH = new OneAxisEllipsoid(
-            Constants.WGS84_EARTH_EQUATORIAL_RADIUS,
-            Constants.WGS84_EARTH_FLATTENING,
-            FramesFactory.getITRF(IERSConventions.IERS_2010, true));
+    /**
+     * Computes the current position of many satellites in one call, all at the same epoch
+     * @param ids comma separated NORAD IDs, or "all" for every satellite in the database
+     * @param at optional ISO-8601 instant (e.g. 2025-04-14T12:00:00.5Z) to compute the positions at, defaults to now
+     * @return ResponseEntity containing the epoch and the LLA / ECEF position of every satellite found,
+     * or a 400 status if the IDs or the instant cannot be parsed
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping("/positions")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getPositions(@RequestParam(defaultValue = "all") List<String> ids,
+                                                                               @RequestParam(required = false) String at) {
+        Map<String, Object> response = new HashMap<>();
+        List<Integer> satIds = null;
+        Instant epoch;
+        try {
+            if (!(ids.size() == 1 && "all".equalsIgnoreCase(ids.get(0).trim()))) {
+                satIds = new ArrayList<>(ids.size());
+                for (String id : ids) {
+                    satIds.add(Integer.parseInt(id.trim()));
+                }
+            }
+            epoch = at == null ? Instant.now() : Instant.parse(at);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            response.put("error", "Invalid request: " + e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response));
+        }
+
+        List<Integer> requested = satIds;
+        return computeLanes.submit("positions", () -> {
+            List<SatellitePosition> positions = satellitePositionService.computePositions(requested,
+                    satellitePositionService.toAbsoluteDate(epoch));
+            response.put("epoch", epoch.toString());
+            response.put("count", positions.size());
+            response.put("positions", positions);
+            return ResponseEntity.ok(response);
+        });
+    }
 
     /**
-     * Generates a CZML file for a satellite's orbit based on its NORAD ID
-     * @param noradId of the satellite
-     * @return ResponseEntity<String> containing the CZML data or a 404 status if satellite is not found
+     * Finds the satellites currently over a latitude / longitude box, from the subpoint index refreshed every tick.
+     * The lookup takes microseconds and runs on the servlet thread, nothing is read from the database.
+     * @param minLat southern edge in degrees
+     * @param maxLat northern edge in degrees
+     * @param minLon western edge in degrees, in [-180, 180]
+     * @param maxLon eastern edge in degrees, in [-180, 180], less than minLon for a box across the antimeridian
+     * @return ResponseEntity containing the epoch of the indexed positions and the LLA / ECEF position of every
+     * satellite in the box, a 400 status if the box is invalid, or a 503 status until the index is first built
      */
     @CrossOrigin(origins = "http://localhost:3000")
-    @GetMapping("/{noradId}/czml")
-    public ResponseEntity<String> getCzml(@PathVariable int noradId) {
+    @GetMapping("/region/bbox")
+    public ResponseEntity<Map<String, Object>> getRegionBox(@RequestParam double minLat, @RequestParam double maxLat,
+                                                            @RequestParam double minLon, @RequestParam double maxLon) {
+        if (!isLatitude(minLat) || !isLatitude(maxLat) || minLat > maxLat || !isLongitude(minLon) || !isLongitude(maxLon)) {
+            return regionError(HttpStatus.BAD_REQUEST, "Invalid box: latitudes in [-90, 90] with minLat <= maxLat, "
+                    + "longitudes in [-180, 180]");
+        }
+        return regionResponse(subpointIndex.withinBox(minLat, maxLat, minLon, maxLon));
+    }
+
+    /**
+     * Finds the satellites currently within a ground distance of a point, from the subpoint index refreshed every
+     * tick. The lookup takes microseconds and runs on the servlet thread, nothing is read from the database.
+     * @param lat latitude of the center in degrees
+     * @param lon longitude of the center in degrees
+     * @param radiusKm great-circle distance from the center to the sub-satellite points in km
+     * @return ResponseEntity containing the epoch of the indexed positions and the LLA / ECEF position of every
+     * satellite in the circle, a 400 status if the circle is invalid, or a 503 status until the index is first built
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping("/region/radius")
+    public ResponseEntity<Map<String, Object>> getRegionRadius(@RequestParam double lat, @RequestParam double lon,
+                                                               @RequestParam double radiusKm) {
+        if (!isLatitude(lat) || !isLongitude(lon) || !(radiusKm >= 0)) {
+            return regionError(HttpStatus.BAD_REQUEST, "Invalid circle: lat in [-90, 90], lon in [-180, 180], "
+                    + "radiusKm >= 0");
+        }
+        return regionResponse(subpointIndex.withinRadius(lat, lon, radiusKm));
+    }
+
+    private static ResponseEntity<Map<String, Object>> regionResponse(SubpointIndex.Matches matches) {
+        if (matches == null) {
+            return regionError(HttpStatus.SERVICE_UNAVAILABLE, "Satellite positions not indexed yet, try again later");
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("epoch", matches.epoch().toString());
+        response.put("count", matches.positions().size());
+        response.put("positions", matches.positions());
+        return ResponseEntity.ok(response);
+    }
+
+    private static ResponseEntity<Map<String, Object>> regionError(HttpStatus status, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", message);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    private static boolean isLatitude(double lat) {
+        return lat >= -90 && lat <= 90;
+    }
+
+    private static boolean isLongitude(double lon) {
+        return lon >= -180 && lon <= 180;
+    }
+
+    // upper bound on the events of one conjunctions response
+    private static final int MAX_CONJUNCTIONS = 10_000;
+
+    /**
+     * Returns the close approaches found by the conjunction screenings (see POST /api/admin/conjunctions)
+     * @param satId optional NORAD ID, only the close approaches of that satellite are returned
+     * @param from optional ISO-8601 start of the range of TCAs, now by default
+     * @param to optional ISO-8601 end of the range, 24 hours after the start by default
+     * @param maxDistanceKm optional largest miss distance in km, every stored event by default
+     * @param limit the largest number of events to return, the earliest first, 1000 by default
+     * @return ResponseEntity containing the ConjunctionEvents in TCA order, or a 400 status if the parameters are invalid
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping("/conjunctions")
+    public CompletableFuture<ResponseEntity<?>> getConjunctions(@RequestParam(required = false) Integer satId,
+                                                                @RequestParam(required = false) String from,
+                                                                @RequestParam(required = false) String to,
+                                                                @RequestParam(required = false) Double maxDistanceKm,
+                                                                @RequestParam(defaultValue = "1000") int limit) {
+        Instant start;
+        Instant end;
         try {
-            // Retrieve TLE data using existing logic
-            SatelliteData satellite = satelliteService.getSatelliteBySatid(noradId);
-            if (satellite == null || satellite.getTle() == null || satellite.getTle().isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body("TLE not found for: " + noradId);
+            start = from == null ? Instant.now() : Instant.parse(from);
+            end = to == null ? start.plus(Duration.ofHours(24)) : Instant.parse(to);
+        } catch (DateTimeParseException e) {
+            return badRequest("Invalid range: " + e.getMessage());
+        }
+        double maxDistance = maxDistanceKm == null ? ConjunctionService.MAX_THRESHOLD_KM : maxDistanceKm;
+        if (start.isAfter(end) || !(maxDistance >= 0) || limit < 1 || limit > MAX_CONJUNCTIONS) {
+            return badRequest("Invalid request: " + start + " to " + end + ", " + maxDistance + " km, limit " + limit);
+        }
+        return computeLanes.submit("conjunctions",
+                () -> ResponseEntity.ok(conjunctionService.find(satId, start, end, maxDistance, limit)));
+    }
+
+    /**
+     * Opens a Server-Sent Events stream of live positions for a set of satellites.
+     * A "positions" event with the epoch and the LLA / ECEF position of each satellite is pushed every tick.
+     * @param ids the NORAD IDs to follow
+     * @return SseEmitter the events are sent through
+     * @throws ResponseStatusException with a 503 status if the server already has the maximum number of subscribers
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPositions(@RequestParam Set<Integer> ids) {
+        SseEmitter emitter = positionStreamService.subscribe(ids);
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many live position subscribers");
+        }
+        return emitter;
+    }
+
+    // upper bound on the points of one history response
+    private static final int MAX_HISTORY_POINTS = 100_000;
+
+    /**
+     * Returns the recorded trajectory of a satellite over a time range, downsampled to a bounded number of points
+     * @param noradId the NORAD ID of the satellite
+     * @param from optional ISO-8601 start of the range, 24 hours before the end by default
+     * @param to optional ISO-8601 end of the range, now by default
+     * @param maxPoints the largest number of points to return, 1000 by default
+     * @param tolerance optional error bound in meters, the points are then kept where the trajectory needs them
+     * instead of one every (to - from) / maxPoints
+     * @return ResponseEntity containing the PositionHistory, or a 400 status if the parameters are invalid
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping("/{noradId}/history")
+    public CompletableFuture<ResponseEntity<?>> getHistory(@PathVariable int noradId,
+                                                           @RequestParam(required = false) String from,
+                                                           @RequestParam(required = false) String to,
+                                                           @RequestParam(defaultValue = "1000") int maxPoints,
+                                                           @RequestParam(required = false) Double tolerance) {
+        Instant end;
+        Instant start;
+        try {
+            end = to == null ? Instant.now() : Instant.parse(to);
+            start = from == null ? end.minus(Duration.ofHours(24)) : Instant.parse(from);
+        } catch (DateTimeParseException e) {
+            return badRequest("Invalid range: " + e.getMessage());
+        }
+        if (start.isAfter(end) || maxPoints < 2 || maxPoints > MAX_HISTORY_POINTS
+                || (tolerance != null && !(tolerance > 0))) {
+            return badRequest("Invalid request: " + start + " to " + end + ", " + maxPoints + " points, tolerance " + tolerance);
+        }
+        return computeLanes.submit("history",
+                () -> ResponseEntity.ok(historyService.history(noradId, start, end, maxPoints, tolerance)));
+    }
+
+    // upper bound on the samples of one position series
+    private static final int MAX_SERIES_SAMPLES = 100_000;
+
+    /**
+     * Computes the positions of a satellite at many dates in one call, returned as columns
+     * @param noradId the NORAD ID of the satellite
+     * @param times optional comma separated ISO-8601 instants (e.g. 2025-04-14T12:00:00.25Z), fractions of a second included
+     * @param start ISO-8601 start of an evenly spaced range, used when no times are given
+     * @param end ISO-8601 end of the range, inclusive
+     * @param step the time between two samples of the range in seconds, 60 seconds by default
+     * @return ResponseEntity containing the PositionSeries, a 404 status if the satellite has no TLE
+     * or a 400 status if the dates are invalid or there are more than MAX_SERIES_SAMPLES of them
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping("/{noradId}/series")
+    public CompletableFuture<ResponseEntity<?>> getSeries(@PathVariable int noradId,
+                                                          @RequestParam(required = false) List<String> times,
+                                                          @RequestParam(required = false) String start,
+                                                          @RequestParam(required = false) String end,
+                                                          @RequestParam(defaultValue = "60") double step) {
+        if (times != null && !times.isEmpty()) {
+            return computeSeries(noradId, times);
+        }
+        if (start == null || end == null) {
+            return badRequest("Either times or start and end are required");
+        }
+        Instant first;
+        Instant last;
+        try {
+            first = Instant.parse(start);
+            last = Instant.parse(end);
+        } catch (DateTimeParseException e) {
+            return badRequest("Invalid range: " + e.getMessage());
+        }
+        double span = secondsBetween(first, last);
+        if (span < 0 || !(step > 0) || span / step >= MAX_SERIES_SAMPLES) {
+            return badRequest("Invalid range: " + first + " to " + last + " every " + step + " seconds");
+        }
+        double[] offsets = new double[(int) (span / step) + 1];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = i * step;
+        }
+        return series(noradId, first, offsets);
+    }
+
+    /**
+     * Computes the positions of a satellite at the dates listed in the request body, for lists too long for a URL
+     * @param noradId the NORAD ID of the satellite
+     * @param times the ISO-8601 instants, as a JSON array of strings
+     * @return the same responses as GET /{noradId}/series
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @PostMapping("/{noradId}/series")
+    public CompletableFuture<ResponseEntity<?>> postSeries(@PathVariable int noradId, @RequestBody List<String> times) {
+        return computeSeries(noradId, times);
+    }
+
+    private CompletableFuture<ResponseEntity<?>> computeSeries(int noradId, List<String> times) {
+        if (times.isEmpty() || times.size() > MAX_SERIES_SAMPLES) {
+            return badRequest("Expected 1 to " + MAX_SERIES_SAMPLES + " times, got " + times.size());
+        }
+        Instant[] instants = new Instant[times.size()];
+        try {
+            for (int i = 0; i < instants.length; i++) {
+                instants[i] = Instant.parse(times.get(i).trim());
+            }
+        } catch (DateTimeParseException e) {
+            return badRequest("Invalid time: " + e.getMessage());
+        }
+        Instant first = instants[0];
+        for (Instant instant : instants) {
+            if (instant.isBefore(first)) first = instant;
+        }
+        // offsets from the earliest date, in the order the dates were given
+        double[] offsets = new double[instants.length];
+        for (int i = 0; i < instants.length; i++) {
+            offsets[i] = secondsBetween(first, instants[i]);
+        }
+        return series(noradId, first, offsets);
+    }
+
+    private CompletableFuture<ResponseEntity<?>> series(int noradId, Instant epoch, double[] offsets) {
+        return computeLanes.submit("series", () -> {
+            PositionSeries series = satellitePositionService.computeSeries(noradId, epoch, offsets);
+            if (series == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("TLE not found for: " + noradId);
             }
+            return ResponseEntity.ok(series);
+        });
+    }
+
+    private static CompletableFuture<ResponseEntity<?>> badRequest(String message) {
+        return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(message));
+    }
+
+    // keeps the nanoseconds, which a double of seconds holds to well under a microsecond over years
+    private static double secondsBetween(Instant from, Instant to) {
+        return (to.getEpochSecond() - from.getEpochSecond()) + (to.getNano() - from.getNano()) / 1e9;
+    }
+
+    // upper bound on the samples of one CZML document
+    private static final int MAX_CZML_SAMPLES = 1_000_000;
+    // upper bounds on the window and interpolation degree of one CZML document
+    private static final double MAX_CZML_WINDOW_SECONDS = 7 * 86400;
+    private static final int MAX_CZML_DEGREE = 9;
+    // fixed-step samples fetched from the ephemeris store at a time, each chunk fits in one ephemeris window
+    private static final int CZML_CHUNK_SIZE = 512;
 
-            String tleData = satellite.getTle();
-            List<List<Double>> states = new ArrayList<>();
-
-            String[] tleLines = tleData.split("\\r\\n");
-            Propagator propagator = TLEPropagator.selectExtrapolator(new TLE(tleLines[0], tleLines[1]));
-
-            // Propagate orbit for 90 minutes
-            OffsetDateTime now = Instant.now().atOffset(ZoneOffset.UTC);
-            OffsetDateTime nowPlus90Min = now.plus(Duration.ofMinutes(90));
-            AbsoluteDate nowAbsolute = new AbsoluteDate(now.getYear(), now.getMonthValue(), now.getDayOfMonth(), now.getHour(), now.getMinute(),
-                    now.getSecond(), TimeScalesFactory.getUTC());
-            AbsoluteDate finalDate = new AbsoluteDate(nowPlus90Min.getYear(), nowPlus90Min.getMonthValue(), nowPlus90Min.getDayOfMonth(),
-                    nowPlus90Min.getHour(), nowPlus90Min.getMinute(), nowPlus90Min.getSecond(), TimeScalesFactory.getUTC());
-            AbsoluteDate currentTime = nowAbsolute;
-            double offset = 0;
-            while (currentTime.compareTo(finalDate) <= 0) {
-                SpacecraftState state = propagator.propagate(currentTime);
-
-                List<Double> cartesianLla = satellitePositionService.convertToCartesian(EARTH.transform(state.getPVCoordinates().getPosition(),
-                        FramesFactory.getEME2000(), currentTime));
-                cartesianLla.set(0, offset);
-                states.add(cartesianLla);
-                // Propagate every 60 seconds
-                offset += 60;
-                currentTime = currentTime.shiftedBy(60);
+    /**
+     * Streams the CZML document of a satellite's orbit based on its NORAD ID.
+     * Without a step, the samples are picked by the CzmlSampler: as few as needed for Cesium to interpolate the
+     * orbit within the tolerance, over one orbital period by default.
+     * @param noradId of the satellite
+     * @param minutes how far ahead to propagate the orbit, one orbital period (90 minutes with a step) by default
+     * @param step optional fixed time between two samples in seconds, instead of adaptive sampling
+     * @param tolerance the largest interpolation error in meters of adaptive sampling, satellite.czml.tolerance-meters by default
+     * @param degree the LAGRANGE interpolation degree Cesium uses, 5 by default
+     * @return ResponseEntity streaming the CZML data, a 404 status if satellite is not found
+     * or a 400 status if the window, step, tolerance or degree are invalid
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping("/{noradId}/czml")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getCzml(@PathVariable int noradId,
+                                                                            @RequestParam(required = false) Double minutes,
+                                                                            @RequestParam(required = false) Double step,
+                                                                            @RequestParam(required = false) Double tolerance,
+                                                                            @RequestParam(defaultValue = "5") int degree) {
+        return computeLanes.submit("czml", () -> czml(noradId, minutes, step, tolerance, degree));
+    }
+
+    private ResponseEntity<StreamingResponseBody> czml(int noradId, Double minutes, Double step, Double tolerance, int degree) {
+        // Retrieve TLE data using existing logic
+        SatelliteData satellite = satelliteService.getSatelliteBySatid(noradId);
+        if (satellite == null || satellite.getTle() == null || satellite.getTle().isEmpty()) {
+            return textBody(HttpStatus.NOT_FOUND, "TLE not found for: " + noradId);
+        }
+
+        String tleData = satellite.getTle();
+        TLE tle = new TLE(SatellitePositionService.getLine1(tleData), SatellitePositionService.getLine2(tleData));
+
+        double window = orbitWindow(tle, minutes, step);
+        double maxError = tolerance != null ? tolerance : czmlSampler.getDefaultTolerance();
+        String invalid = validateOrbitRequest(window, step, maxError, degree);
+        if (invalid != null) {
+            return textBody(HttpStatus.BAD_REQUEST, invalid);
+        }
+
+        OffsetDateTime now = Instant.now().atOffset(ZoneOffset.UTC);
+        AbsoluteDate nowAbsolute = new AbsoluteDate(now.getYear(), now.getMonthValue(), now.getDayOfMonth(), now.getHour(), now.getMinute(),
+                now.getSecond(), utc);
+        AbsoluteDate finalDate = nowAbsolute.shiftedBy(window);
+
+        // sampled here, on the compute thread, only the writing is left to the response
+        double[] offsets;
+        double[] xyz;
+        if (step != null) {
+            int count = (int) (window / step) + 1;
+            // Earth-fixed positions interpolated from the ephemeris store
+            offsets = new double[count];
+            xyz = new double[3 * count];
+            for (int first = 0; first < count; first += CZML_CHUNK_SIZE) {
+                int size = Math.min(CZML_CHUNK_SIZE, count - first);
+                double[] chunk = ephemerisStore.positions(noradId, tle, nowAbsolute.shiftedBy(first * step),
+                        step, size);
+                System.arraycopy(chunk, 0, xyz, 3 * first, 3 * size);
             }
-            // Write propagated orbit to CZML file
-            satellitePositionService.writeCZML(nowAbsolute, finalDate, states, noradId);
-            Path filePath = Paths.get("orbit.czml");
-            if (!Files.exists(filePath)) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("CZML file not found for: " + noradId);
+            for (int i = 0; i < count; i++) {
+                offsets[i] = i * step;
             }
+        } else {
+            CzmlSampler.Samples samples = czmlSampler.sample(noradId, tle, nowAbsolute, window, maxError, degree);
+            offsets = samples.offsets();
+            xyz = samples.xyz();
+        }
+        StreamingResponseBody body = out -> {
+            long bytes = czmlWriter.write(out, noradId, nowAbsolute, finalDate, offsets, xyz, degree);
+            satelliteMetrics.recordCzml(bytes, offsets.length);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
 
-            String czmlContent = Files.readString(filePath);
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(czmlContent);
+    // a plain text error, for the endpoints streaming their response
+    private static ResponseEntity<StreamingResponseBody> textBody(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
 
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to load CZML: " + e.getMessage());
+    /**
+     * Returns a satellite's orbit as packed binary samples (see EphemerisPayloadCache for the layout), gzipped when
+     * the client accepts it. The response has an ETag made of the NORAD ID, the TLE epoch and the window, which starts
+     * on a multiple of satellite.ephemeris-payload.align-seconds, so a conditional request for an unchanged orbit
+     * gets a 304 without anything being computed, and payloads already built are served from memory. The gzipped
+     * representation's ETag ends in "-gz", as its bytes differ from the identity one's.
+     * @param noradId of the satellite
+     * @param minutes how far ahead to propagate the orbit, as for the CZML document
+     * @param step optional fixed time between two samples in seconds, instead of adaptive sampling
+     * @param tolerance the largest interpolation error in meters of adaptive sampling
+     * @param degree the LAGRANGE interpolation degree the samples are picked for, 5 by default
+     * @param precision "float64" (the default) or "float32", half the size for about a meter of rounding in LEO
+     * @return ResponseEntity containing the payload, a 304 status if the client has it already, a 404 status if the
+     * satellite has no TLE or a 400 status if the parameters are invalid
+     */
+    @CrossOrigin(origins = "http://localhost:3000", exposedHeaders = {HttpHeaders.ETAG})
+    @GetMapping("/{noradId}/ephemeris")
+    public CompletableFuture<ResponseEntity<?>> getEphemeris(@PathVariable int noradId,
+                                                             @RequestParam(required = false) Double minutes,
+                                                             @RequestParam(required = false) Double step,
+                                                             @RequestParam(required = false) Double tolerance,
+                                                             @RequestParam(defaultValue = "5") int degree,
+                                                             @RequestParam(defaultValue = "float64") String precision,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return computeLanes.submit("ephemeris",
+                () -> ephemeris(noradId, minutes, step, tolerance, degree, precision, acceptEncoding, ifNoneMatch));
+    }
+
+    private ResponseEntity<?> ephemeris(int noradId, Double minutes, Double step, Double tolerance, int degree,
+                                        String precision, String acceptEncoding, String ifNoneMatch) {
+        Optional<TLE> tle = satellitePositionService.fetchTLE(noradId);
+        if (tle.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("TLE not found for: " + noradId);
+        }
+        double window = orbitWindow(tle.get(), minutes, step);
+        double maxError = tolerance != null ? tolerance : czmlSampler.getDefaultTolerance();
+        String invalid = validateOrbitRequest(window, step, maxError, degree);
+        if (invalid == null && !"float64".equals(precision) && !"float32".equals(precision)) {
+            invalid = "Invalid precision: " + precision;
+        }
+        if (invalid != null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(invalid);
+        }
+
+        Instant now = Instant.now();
+        EphemerisPayloadCache.Request request = new EphemerisPayloadCache.Request(noradId, tle.get(),
+                ephemerisPayloadCache.align(now), window, step, maxError, degree, "float32".equals(precision));
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = ephemerisPayloadCache.etag(request, gzip);
+        CacheControl cacheControl = CacheControl.maxAge(ephemerisPayloadCache.secondsUntilRealigned(now), TimeUnit.SECONDS);
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+
+        EphemerisPayloadCache.Payload payload = ephemerisPayloadCache.get(request);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(payload.gzipped());
+        }
+        // inflated while it is written, the payload is only kept gzipped
+        return response.contentLength(payload.length())
+                .body(new InputStreamResource(EphemerisPayloadCache.uncompressed(payload)));
+    }
+
+    // whether an If-None-Match header lists the ETag, weak or strong
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // one orbital period by default, 90 minutes for fixed-step sampling as the CZML endpoint always did
+    private static double orbitWindow(TLE tle, Double minutes, Double step) {
+        return minutes != null ? minutes * 60 : step != null ? 90 * 60 : CzmlSampler.defaultWindow(tle);
+    }
+
+    // the reason an orbit request is invalid, or null
+    private static String validateOrbitRequest(double window, Double step, double tolerance, int degree) {
+        if (!(window > 0) || window > MAX_CZML_WINDOW_SECONDS || degree < 1 || degree > MAX_CZML_DEGREE
+                || (step != null && (!(step > 0) || window / step >= MAX_CZML_SAMPLES)) || !(tolerance > 0)) {
+            return "Invalid request: " + window / 60 + " minutes, step " + step + ", tolerance " + tolerance
+                    + " m, degree " + degree;
         }
+        return null;
     }
 
+    // upper bound on the grazing height of a line of sight, well above any atmosphere
+    private static final double MAX_GRAZING_KM = 1000;
+
     /**
      * Checks if two satellites are visible to each other based on their NORAD IDs
      * @param noradId1 the NORAD ID of the first satellite
      * @param noradId2 the NORAD ID of the second satellite
-     * @return ResponseEntity<String> containing visibility status or a 404 status if either satellite is not found
+     * @param at optional ISO-8601 instant to check the visibility at, defaults to now
+     * @param grazingKm optional height in km the line of sight must stay above, defaults to 0 (the surface)
+     * @return ResponseEntity<String> containing visibility status, a 404 status if either satellite is not found
+     * or a 400 status if the instant or the height is invalid
      */
     @CrossOrigin(origins = "http://localhost:3000")
     @GetMapping("/{noradId1}/{noradId2}/visible-check")
-    public ResponseEntity<String> getVisibility(@PathVariable int noradId1, @PathVariable int noradId2) {
+    public CompletableFuture<ResponseEntity<?>> getVisibility(@PathVariable int noradId1, @PathVariable int noradId2,
+                                                              @RequestParam(required = false) String at,
+                                                              @RequestParam(defaultValue = "0") double grazingKm) {
+        Instant epoch;
+        try {
+            epoch = at == null ? Instant.now() : Instant.parse(at);
+        } catch (DateTimeParseException e) {
+            return badRequest("Invalid time: " + e.getMessage());
+        }
+        if (!(grazingKm >= 0 && grazingKm <= MAX_GRAZING_KM)) {
+            return badRequest("The grazing height must be in [0, " + MAX_GRAZING_KM + "] km, got " + grazingKm);
+        }
+        return computeLanes.submit("visibility", () -> visibility(noradId1, noradId2, epoch, grazingKm));
+    }
+
+    private ResponseEntity<String> visibility(int noradId1, int noradId2, Instant epoch, double grazingKm) {
         try {
             SatelliteData satellite1 = satelliteService.getSatelliteBySatid(noradId1);
             SatelliteData satellite2 = satelliteService.getSatelliteBySatid(noradId2);
@@ -184,7 +672,8 @@ public class SatelliteController {
             }
 
             // Check visibility
-            boolean isVisible = satellitePositionService.isVisible(noradId1, noradId2);
+            boolean isVisible = satellitePositionService.isVisible(noradId1, noradId2,
+                    satellitePositionService.toAbsoluteDate(epoch), grazingKm * 1000);
             return ResponseEntity.ok("Visibility: " + isVisible);
 
         } catch (Exception e) {
@@ -192,4 +681,55 @@ public class SatelliteController {
                     .body("Error checking visibility: " + e.getMessage());
         }
     }
+
+    /**
+     * Computes which of many satellites see each other, all at the same epoch, for link analysis of a constellation
+     * @param ids comma separated NORAD IDs, or "all" for every satellite in the database, which is only accepted for a
+     * catalog of at most satellite.visibility.max-satellites satellites
+     * @param at optional ISO-8601 instant to check the visibility at, defaults to now
+     * @param grazingKm optional height in km the lines of sight must stay above, defaults to 0 (the surface)
+     * @return ResponseEntity containing the epoch, the satellites found and for each of them the indices of the
+     * satellites it sees, or a 400 status if the request is invalid or has too many satellites
+     */
+    @CrossOrigin(origins = "http://localhost:3000")
+    @GetMapping("/visibility")
+    public CompletableFuture<ResponseEntity<?>> getVisibilityMatrix(@RequestParam(defaultValue = "all") List<String> ids,
+                                                                    @RequestParam(required = false) String at,
+                                                                    @RequestParam(defaultValue = "0") double grazingKm) {
+        List<Integer> satIds = null;
+        Instant epoch;
+        try {
+            if (!(ids.size() == 1 && "all".equalsIgnoreCase(ids.get(0).trim()))) {
+                satIds = new ArrayList<>(ids.size());
+                for (String id : ids) {
+                    satIds.add(Integer.parseInt(id.trim()));
+                }
+            }
+            epoch = at == null ? Instant.now() : Instant.parse(at);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return badRequest("Invalid request: " + e.getMessage());
+        }
+        if (!(grazingKm >= 0 && grazingKm <= MAX_GRAZING_KM)) {
+            return badRequest("The grazing height must be in [0, " + MAX_GRAZING_KM + "] km, got " + grazingKm);
+        }
+
+        List<Integer> requested = satIds;
+        return computeLanes.submit("visibility", () -> {
+            VisibilityMatrix matrix;
+            try {
+                matrix = satellitePositionService.computeVisibility(requested,
+                        satellitePositionService.toAbsoluteDate(epoch), grazingKm * 1000);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("epoch", epoch.toString());
+            response.put("grazingKm", grazingKm);
+            response.put("count", matrix.getSatids().length);
+            response.put("links", matrix.getLinks());
+            response.put("satids", matrix.getSatids());
+            response.put("adjacency", matrix.getAdjacency());
+            return ResponseEntity.ok(response);
+        });
+    }
 }
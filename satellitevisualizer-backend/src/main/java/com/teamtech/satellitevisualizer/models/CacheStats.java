@@ -0,0 +1,26 @@
+/**
+ * CacheStats.java
+ * This class is a snapshot of the satellite cache statistics: how many entries it holds, how many lookups were
+ * served from it or had to go to the database, and how many entries were evicted, expired or invalidated.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheStats {
+    private int size;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+    private double hitRate;
+}
@@ -0,0 +1,33 @@
+/**
+ * ConjunctionEvent.java
+ * This class represents one close approach between two satellites found by a conjunction screening, in the
+ * conjunctions collection: the time of closest approach (TCA), the distance between the satellites at that time in
+ * kilometers and their relative speed in km/s. satid1 is the lower NORAD ID of the pair.
+ * A screening replaces the events stored for the window it covered, so the events follow the latest TLEs.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@Document(collection = "conjunctions")
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConjunctionEvent {
+    @Id
+    private String id;
+    private int satid1;
+    private int satid2;
+    private Instant tca;
+    private double missDistanceKm;
+    private double relativeSpeedKms;
+    private Instant screenedAt;
+}
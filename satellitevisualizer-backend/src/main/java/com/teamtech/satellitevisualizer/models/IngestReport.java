@@ -0,0 +1,44 @@
+/**
+ * IngestReport.java
+ * This class summarizes a catalog ingest run: how much of the file was read, how many entries were rejected,
+ * skipped because their epoch did not change, or written to the database, and how long it took.
+ * While an ingest is running a copy is published after every batch, so it doubles as a progress report.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class IngestReport {
+    private String file;
+    private boolean running;
+    private long lines;
+    private long entries;
+    private long checksumErrors;
+    private long malformed;
+    private long unchanged;
+    private long upserted;
+    private long batches;
+    private long elapsedMs;
+    private double entriesPerSecond;
+    private String error;
+
+    public IngestReport(IngestReport other) {
+        this.file = other.file;
+        this.running = other.running;
+        this.lines = other.lines;
+        this.entries = other.entries;
+        this.checksumErrors = other.checksumErrors;
+        this.malformed = other.malformed;
+        this.unchanged = other.unchanged;
+        this.upserted = other.upserted;
+        this.batches = other.batches;
+        this.elapsedMs = other.elapsedMs;
+        this.entriesPerSecond = other.entriesPerSecond;
+        this.error = other.error;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * PositionHistory.java
+ * This class holds the recorded trajectory of a satellite over a time range, as returned by the history endpoint.
+ * The samples are time-tagged with their offset in seconds from the start of the range: lla holds
+ * [t, latitude, longitude, altitude km] and xyz holds [t, x, y, z] in the Earth-fixed frame, in meters.
+ * recordedPoints is the number of points recorded in the range, before downsampling.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PositionHistory {
+    private int satid;
+    private String from;
+    private String to;
+    // "stride" or "error"
+    private String downsampling;
+    private int recordedPoints;
+    private PositionSamples lla;
+    private PositionSamples xyz;
+}
@@ -0,0 +1,35 @@
+/**
+ * PositionRecord.java
+ * This class represents one recorded position of a satellite in the position_history collection, a MongoDB
+ * time-series collection with the date as time field and the NORAD ID as meta field, so MongoDB groups the
+ * records of a satellite into compressed buckets by itself.
+ * The geodetic coordinates are in degrees and kilometers, the cartesian ones are Earth-fixed (ITRF) in meters.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.time.Instant;
+
+@Data
+@Document(collection = "position_history")
+@TimeSeries(collection = "position_history", timeField = "t", metaField = "satid", granularity = Granularity.MINUTES)
+@AllArgsConstructor
+@NoArgsConstructor
+public class PositionRecord {
+    private Instant t;
+    private int satid;
+    private double lat;
+    private double lon;
+    private double alt;
+    private double x;
+    private double y;
+    private double z;
+}
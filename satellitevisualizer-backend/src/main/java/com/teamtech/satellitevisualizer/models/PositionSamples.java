@@ -0,0 +1,167 @@
+/**
+ * PositionSamples.java
+ * This class holds a series of position samples (geodetic or cartesian coordinates, optionally time-tagged)
+ * packed in primitive arrays instead of nested lists of boxed doubles.
+ * Component c of sample i is values[i * dimension + c], and its time tag (seconds, relative to whatever epoch
+ * the owner uses) is times[i].
+ *
+ * In MongoDB the samples are stored as packed little-endian binary (see MongoConfig), and in JSON they are written
+ * in the nested array layout the API has always returned: [[a, b, c], ...], or [[t, a, b, c], ...] when time-tagged.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+@JsonSerialize(using = PositionSamples.NestedArraySerializer.class)
+public final class PositionSamples {
+
+    private final int dimension;
+    private final double[] times;
+    private final double[] values;
+
+    /**
+     * @param dimension The number of components of a sample, 3 for positions.
+     * @param times The time tag of every sample, or null if the samples are not time-tagged.
+     * @param values The components of every sample one after the other.
+     */
+    public PositionSamples(int dimension, double[] times, double[] values) {
+        if (dimension <= 0 || values.length % dimension != 0) {
+            throw new IllegalArgumentException(values.length + " values is not a multiple of dimension " + dimension);
+        }
+        if (times != null && times.length != values.length / dimension) {
+            throw new IllegalArgumentException("Expected " + values.length / dimension + " time tags, got " + times.length);
+        }
+        this.dimension = dimension;
+        this.times = times;
+        this.values = values;
+    }
+
+    /**
+     * @return A single sample without time tag, e.g. PositionSamples.of(lat, lon, alt).
+     */
+    public static PositionSamples of(double... point) {
+        return new PositionSamples(point.length, null, point.clone());
+    }
+
+    /**
+     * Builds samples from the nested list layout the coordinates used to be stored in.
+     * @param samples The samples, all with the same number of components.
+     * @return The packed samples, or null if the list is null.
+     */
+    public static PositionSamples fromNestedList(List<? extends List<? extends Number>> samples) {
+        if (samples == null) return null;
+        if (samples.isEmpty()) return new PositionSamples(3, null, new double[0]);
+        int dimension = samples.get(0).size();
+        double[] values = new double[samples.size() * dimension];
+        for (int i = 0; i < samples.size(); i++) {
+            List<? extends Number> sample = samples.get(i);
+            if (sample.size() != dimension) {
+                throw new IllegalArgumentException("Sample " + i + " has " + sample.size() + " components, expected " + dimension);
+            }
+            for (int c = 0; c < dimension; c++) {
+                values[i * dimension + c] = sample.get(c).doubleValue();
+            }
+        }
+        return new PositionSamples(dimension, null, values);
+    }
+
+    public int size() {
+        return values.length / dimension;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public boolean hasTimes() {
+        return times != null;
+    }
+
+    public double get(int index, int component) {
+        return values[index * dimension + component];
+    }
+
+    public double time(int index) {
+        return times[index];
+    }
+
+    /**
+     * @return The backing array of components, not copied.
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return The backing array of time tags, not copied, or null.
+     */
+    public double[] getTimes() {
+        return times;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PositionSamples other)) return false;
+        return dimension == other.dimension && Arrays.equals(times, other.times) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * dimension + Arrays.hashCode(times)) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) builder.append(", ");
+            builder.append('[');
+            if (times != null) builder.append(times[i]).append(", ");
+            for (int c = 0; c < dimension; c++) {
+                if (c > 0) builder.append(", ");
+                builder.append(get(i, c));
+            }
+            builder.append(']');
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Writes the samples as nested JSON arrays without boxing them.
+     */
+    public static class NestedArraySerializer extends StdSerializer<PositionSamples> {
+        private static final long serialVersionUID = 1L;
+
+        public NestedArraySerializer() {
+            super(PositionSamples.class);
+        }
+
+        @Override
+        public void serialize(PositionSamples samples, JsonGenerator json, SerializerProvider provider) throws IOException {
+            json.writeStartArray();
+            for (int i = 0; i < samples.size(); i++) {
+                json.writeStartArray();
+                if (samples.times != null) json.writeNumber(samples.times[i]);
+                for (int c = 0; c < samples.dimension; c++) {
+                    json.writeNumber(samples.get(i, c));
+                }
+                json.writeEndArray();
+            }
+            json.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * PositionSeries.java
+ * This class holds the positions of one satellite at many dates in columns, one primitive array per coordinate,
+ * so thousands of samples are returned without an object per sample.
+ * times[i] is the offset in seconds of sample i from epoch (fractions of a second included), lat, lon are in degrees,
+ * alt in km and x, y, z in meters in the Earth-fixed frame.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PositionSeries {
+    private int satid;
+    private String epoch;
+    private double[] times;
+    private double[] lat;
+    private double[] lon;
+    private double[] alt;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+}
@@ -0,0 +1,25 @@
+/**
+ * RefreshReport.java
+ * This class summarizes a TLE refresh run against the N2YO API: how many satellites were checked, how many had
+ * a new TLE, kept the same one or could not be refreshed, how many requests and retries it took, and how long.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RefreshReport {
+    private long checked;
+    private long changed;
+    private long unchanged;
+    private long failed;
+    private long requests;
+    private long retries;
+    private long elapsedMs;
+}
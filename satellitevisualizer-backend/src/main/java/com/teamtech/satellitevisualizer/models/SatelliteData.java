@@ -6,6 +6,7 @@
  * The satid or NORAD catalog number is how satellites are identified, which is an integer ranging
  * from 1 to 43235 and counting.
  * The tle is the TLE (two-line element) of the satellite represented on a single line string.
+ * The coordinates are PositionSamples, stored packed in primitive arrays (see MongoConfig for the MongoDB layout).
  *
  * The @Document annotation indicates that this class is a MongoDB document and specifies the collection name.
  * The @Data annotation generates getters, setters, equals, hashCode, and toString methods automatically.
@@ -19,8 +20,6 @@ import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
-import java.util.List;
-
 @Data
 @Document(collection = "satellites")
 @AllArgsConstructor
@@ -30,8 +29,8 @@ public class SatelliteData {
     private int satid;
     private String satname;
     private String tle;
-    private List<List<Double>> geodeticCoordinates;
-    private List<List<Double>> xyzCoordinates;
+    private PositionSamples geodeticCoordinates;
+    private PositionSamples xyzCoordinates;
 
     public int getSatid() {
         return satid;
@@ -57,19 +56,19 @@ public class SatelliteData {
         this.tle = tle;
     }
 
-    public List<List<Double>> getGeodeticCoordinates() {
+    public PositionSamples getGeodeticCoordinates() {
         return geodeticCoordinates;
     }
 
-    public void setGeodeticCoordinates(List<List<Double>> geodeticCoordinates) {
+    public void setGeodeticCoordinates(PositionSamples geodeticCoordinates) {
         this.geodeticCoordinates = geodeticCoordinates;
     }
 
-    public List<List<Double>> getXyzCoordinates() {
+    public PositionSamples getXyzCoordinates() {
         return xyzCoordinates;
     }
 
-    public void setXYZCoordinates(List<List<Double>> xyzCoordinates) {
+    public void setXYZCoordinates(PositionSamples xyzCoordinates) {
         this.xyzCoordinates = xyzCoordinates;
     }
 }
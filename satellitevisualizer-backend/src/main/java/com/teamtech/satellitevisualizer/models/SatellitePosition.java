@@ -0,0 +1,23 @@
+/**
+ * SatellitePosition.java
+ * This class represents the position of a satellite at a single instant, as returned by the batch position endpoint.
+ * It is computed on the fly from the satellite's TLE and is not stored in the MongoDB database.
+ * The lla array holds the latitude and longitude in degrees and the altitude in km, the xyz array holds the
+ * Earth-fixed (ITRF) cartesian coordinates in meters.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SatellitePosition {
+    private int satid;
+    private double[] lla;
+    private double[] xyz;
+}
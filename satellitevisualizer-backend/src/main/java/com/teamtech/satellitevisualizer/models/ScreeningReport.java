@@ -0,0 +1,31 @@
+/**
+ * ScreeningReport.java
+ * This class summarizes a conjunction screening run: the window and threshold screened, how many satellites and
+ * pairs every filter kept (satellites left by the apogee / perigee filter, pairs within reach of each other in the
+ * sampling grid, candidates left by the linear motion filter and refined), the close approaches found and how long
+ * it took. While a screening is running the same object is returned with running set.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class ScreeningReport {
+    private String from;
+    private String to;
+    private double thresholdKm;
+    private double stepSeconds;
+    private boolean running;
+    private long satellites;
+    private long screened;
+    private long samples;
+    private long gridPairs;
+    private long candidates;
+    private long conjunctions;
+    private long elapsedMs;
+    private String error;
+}
@@ -0,0 +1,29 @@
+/**
+ * TleRecord.java
+ * This class represents one archived element set of a satellite in the tle_archive collection.
+ * Element sets are only ever added to the archive, never updated or removed, and are unique per satellite and
+ * epoch (the epoch being read from the first line of the TLE, in UTC).
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@Document(collection = "tle_archive")
+@AllArgsConstructor
+@NoArgsConstructor
+public class TleRecord {
+    @Id
+    private String id;
+    private int satid;
+    private Instant epoch;
+    private String tle;
+}
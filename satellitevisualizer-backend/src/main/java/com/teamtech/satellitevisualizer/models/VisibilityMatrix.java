@@ -0,0 +1,24 @@
+/**
+ * VisibilityMatrix.java
+ * This class represents which satellites see each other at a single instant, as returned by the visibility endpoint.
+ * It is computed on the fly from the satellites' TLEs and is not stored in the MongoDB database.
+ * The satids array holds the satellites that could be propagated, adjacency[k] the indices in satids of the
+ * satellites that satids[k] sees (in no particular order, both ways), and links the number of pairs that see each
+ * other.
+ *
+ */
+
+package com.teamtech.satellitevisualizer.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class VisibilityMatrix {
+    private int[] satids;
+    private long links;
+    private int[][] adjacency;
+}
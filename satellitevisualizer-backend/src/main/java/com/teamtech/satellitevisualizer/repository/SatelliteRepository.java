@@ -12,7 +12,13 @@ import com.teamtech.satellitevisualizer.models.SatelliteData;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface SatelliteRepository extends MongoRepository<SatelliteData, String> {
     SatelliteData findBySatid(int satid);
+
+    // loads many satellites with a single $in query
+    List<SatelliteData> findBySatidIn(Collection<Integer> satids);
 }
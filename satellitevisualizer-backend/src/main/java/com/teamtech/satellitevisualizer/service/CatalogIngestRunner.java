@@ -0,0 +1,27 @@
+/**
+ * CatalogIngestRunner lets a catalog file be ingested from the command line, e.g.
+ * java -jar satellitevisualizer-backend.jar --ingest=active.txt
+ * The file is resolved inside satellite.ingest.directory, like the admin endpoint does.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CatalogIngestRunner implements ApplicationRunner {
+
+    @Autowired
+    private CatalogIngestService catalogIngestService;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!args.containsOption("ingest")) return;
+        for (String fileName : args.getOptionValues("ingest")) {
+            catalogIngestService.ingest(catalogIngestService.resolve(fileName));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * CatalogIngestService loads a whole satellite catalog from a local TLE file (CelesTrak-style 2LE or 3LE text)
+ * into the satellites collection, instead of fetching satellites one at a time from N2YO.
+ *
+ * The file is streamed through TleParser and written in batches of satellite.ingest.batch-size: for each batch
+ * the stored TLEs are loaded with one query, entries whose epoch has not changed are skipped, and the others are
+ * written with a single unordered Mongo bulk upsert. The new TLEs, and the ones they replace, are then added to the
+ * TleArchive. Files are only read from satellite.ingest.directory.
+ *
+ * The report is only updated by the ingest thread. A copy of it is published after every batch, so readers of
+ * getLastReport never see a report that is still being written.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.IngestReport;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Service
+public class CatalogIngestService {
+    private static final Logger log = LoggerFactory.getLogger(CatalogIngestService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TleArchive tleArchive;
+
+    @Value("${satellite.ingest.directory:catalog}")
+    private String ingestDirectory;
+
+    @Value("${satellite.ingest.batch-size:1000}")
+    private int batchSize;
+
+    // a copy of the report of the ingest in progress, or of the last one
+    private volatile IngestReport lastReport;
+
+    /**
+     * Resolves a file name inside the ingest directory, refusing anything that would point outside of it.
+     * @param fileName The name (or relative path) of the catalog file.
+     * @return The path of the file.
+     * @throws IllegalArgumentException if the name escapes the ingest directory.
+     */
+    public Path resolve(String fileName) {
+        Path directory = Paths.get(ingestDirectory).toAbsolutePath().normalize();
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.startsWith(directory)) {
+            throw new IllegalArgumentException("Catalog files must be inside " + directory);
+        }
+        return file;
+    }
+
+    /**
+     * Ingests a catalog file. Only one ingest runs at a time.
+     * @param file The TLE file to read.
+     * @return The report of the run.
+     * @throws IOException If the file cannot be read.
+     */
+    public synchronized IngestReport ingest(Path file) throws IOException {
+        IngestReport report = new IngestReport();
+        report.setFile(file.toString());
+        report.setRunning(true);
+        publish(report);
+
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            TleParser parser = new TleParser(reader);
+            List<TleParser.Entry> batch = new ArrayList<>(batchSize);
+            TleParser.Entry entry;
+            while ((entry = parser.next()) != null) {
+                report.setEntries(report.getEntries() + 1);
+                batch.add(entry);
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, report);
+                    updateProgress(report, parser, start);
+                    publish(report);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch, report);
+            }
+            updateProgress(report, parser, start);
+        } catch (IOException | RuntimeException e) {
+            report.setError(e.getMessage());
+            throw e;
+        } finally {
+            report.setRunning(false);
+            publish(report);
+        }
+
+        log.info("Ingested {}: entries={} upserted={} unchanged={} rejected={} elapsedMs={}",
+                file, report.getEntries(), report.getUpserted(), report.getUnchanged(),
+                report.getChecksumErrors() + report.getMalformed(), report.getElapsedMs());
+        return lastReport;
+    }
+
+    public IngestReport getLastReport() {
+        return lastReport;
+    }
+
+    private void publish(IngestReport report) {
+        lastReport = new IngestReport(report);
+    }
+
+    private void writeBatch(List<TleParser.Entry> batch, IngestReport report) {
+        // a catalog file can list the same satellite twice, the last entry wins
+        Map<Integer, TleParser.Entry> entries = new HashMap<>(batch.size() * 2);
+        for (TleParser.Entry entry : batch) {
+            entries.put(entry.satId(), entry);
+        }
+
+        Query existingQuery = new Query(where("satid").in(entries.keySet()));
+        existingQuery.fields().include("tle");
+        List<TleArchive.Entry> archived = new ArrayList<>(entries.size());
+        for (SatelliteData existing : mongoTemplate.find(existingQuery, SatelliteData.class)) {
+            TleParser.Entry entry = entries.get(existing.getSatid());
+            if (TleParser.sameEpoch(entry.line1(), TleParser.line(existing.getTle(), 0))) {
+                entries.remove(existing.getSatid());
+                report.setUnchanged(report.getUnchanged() + 1);
+            } else if (existing.getTle() != null) {
+                archived.add(new TleArchive.Entry(existing.getSatid(), existing.getTle()));
+            }
+        }
+        report.setBatches(report.getBatches() + 1);
+        if (entries.isEmpty()) return;
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SatelliteData.class);
+        for (TleParser.Entry entry : entries.values()) {
+            Update update = new Update().set("tle", entry.tle());
+            if (entry.name() != null) {
+                update.set("satname", entry.name());
+            }
+            bulk.upsert(new Query(where("satid").is(entry.satId())), update);
+        }
+        bulk.execute();
+        report.setUpserted(report.getUpserted() + entries.size());
+
+        for (TleParser.Entry entry : entries.values()) {
+            archived.add(new TleArchive.Entry(entry.satId(), entry.tle()));
+        }
+        tleArchive.archiveAll(archived);
+
+        for (Integer satId : entries.keySet()) {
+            eventPublisher.publishEvent(new TleUpdatedEvent(satId));
+        }
+    }
+
+    private static void updateProgress(IngestReport report, TleParser parser, long start) {
+        report.setLines(parser.getLines());
+        report.setChecksumErrors(parser.getChecksumErrors());
+        report.setMalformed(parser.getMalformed());
+        report.setElapsedMs((System.nanoTime() - start) / 1_000_000);
+        report.setEntriesPerSecond(report.getElapsedMs() > 0 ? report.getEntries() * 1000.0 / report.getElapsedMs() : 0);
+        if (report.isRunning()) {
+            log.info("Ingest progress: entries={} upserted={}", report.getEntries(), report.getUpserted());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * ComputeLanes runs the work of the controller endpoints (propagation, database reads) on the compute pool instead of
+ * the servlet threads, so a burst of heavy requests cannot take every Tomcat thread and stall the cheap ones.
+ *
+ * Every endpoint submits to its own lane, configured under satellite.compute.lanes.<name>:
+ *  - max-queued: the requests of the lane waiting or running at once. One more is rejected straight away with a
+ *    429, on the servlet thread, without being queued.
+ *  - max-wait-ms: a request that waited longer than this for a compute thread is rejected with a 503 when it is
+ *    finally picked, instead of being computed for a client that has probably given up.
+ *  - priority: waiting requests of a lower priority lane run first, so a TLE lookup queued behind a dozen CZML
+ *    documents waits for one of them at most.
+ *
+ * The time every request waited for a thread and the time it ran are recorded by lane (satellite.compute.wait,
+ * satellite.compute.time), as are the rejections (satellite.compute.rejected).
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.config.ComputeProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Service
+public class ComputeLanes {
+    private static final Logger log = LoggerFactory.getLogger(ComputeLanes.class);
+
+    private final ThreadPoolExecutor computeExecutor;
+    private final ComputeProperties properties;
+    private final SatelliteMetrics metrics;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    // breaks priority ties in submission order
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ComputeLanes(@Qualifier("computeExecutor") ThreadPoolExecutor computeExecutor,
+                        ComputeProperties properties,
+                        SatelliteMetrics metrics) {
+        this.computeExecutor = computeExecutor;
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues work on a lane.
+     * @param lane The name of the lane, usually the endpoint's.
+     * @param work What to compute, on a compute thread.
+     * @return The result of the work, completed with a ResponseStatusException (503) if it waited too long
+     * or with whatever exception the work threw.
+     * @throws ResponseStatusException with a 429 status if the lane is full, or a 503 status if the pool is shut down.
+     */
+    public <T> CompletableFuture<T> submit(String lane, Supplier<T> work) {
+        Lane l = lane(lane);
+        if (!l.permits.tryAcquire()) {
+            metrics.recordComputeRejected(lane, "full");
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many " + lane + " requests in progress, try again later");
+        }
+        Task<T> task = new Task<>(l, work);
+        try {
+            computeExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            l.permits.release();
+            metrics.recordComputeRejected(lane, "shutdown");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server shutting down");
+        }
+        return task.result;
+    }
+
+    /**
+     * @return The requests of a lane waiting or running.
+     */
+    public int inFlight(String lane) {
+        return lane(lane).inFlight();
+    }
+
+    private Lane lane(String name) {
+        return lanes.computeIfAbsent(name, n -> {
+            Lane lane = new Lane(n, properties.lane(n));
+            metrics.bindComputeLane(n, lane::inFlight);
+            return lane;
+        });
+    }
+
+    private static final class Lane {
+        final String name;
+        final int maxQueued;
+        final long maxWaitNanos;
+        final int priority;
+        final Semaphore permits;
+
+        Lane(String name, ComputeProperties.Lane settings) {
+            this.name = name;
+            this.maxQueued = Math.max(1, settings.getMaxQueued());
+            this.maxWaitNanos = settings.getMaxWaitMs() * 1_000_000;
+            this.priority = settings.getPriority();
+            this.permits = new Semaphore(maxQueued);
+        }
+
+        int inFlight() {
+            return maxQueued - permits.availablePermits();
+        }
+    }
+
+    // ordered by lane priority then submission, for the priority queue of the compute pool
+    private final class Task<T> implements Runnable, Comparable<Task<?>> {
+        final Lane lane;
+        final Supplier<T> work;
+        final long seq = sequence.getAndIncrement();
+        final long submitted = System.nanoTime();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Task(Lane lane, Supplier<T> work) {
+            this.lane = lane;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            T value = null;
+            Throwable failure = null;
+            try {
+                long start = System.nanoTime();
+                long waited = start - submitted;
+                metrics.recordComputeWait(lane.name, waited);
+                if (waited > lane.maxWaitNanos) {
+                    metrics.recordComputeRejected(lane.name, "timeout");
+                    log.debug("Dropped a {} request after {} ms in the queue", lane.name, waited / 1_000_000);
+                    failure = new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, try again later");
+                } else {
+                    try {
+                        value = work.get();
+                    } catch (RuntimeException | Error e) {
+                        failure = e;
+                    } finally {
+                        metrics.recordComputeTime(lane.name, System.nanoTime() - start);
+                    }
+                }
+            } finally {
+                // before completing, so the lane has room again by the time the caller sees the result
+                lane.permits.release();
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(value);
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = Integer.compare(lane.priority, other.lane.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
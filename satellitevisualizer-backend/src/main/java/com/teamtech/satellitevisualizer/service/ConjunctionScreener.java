@@ -0,0 +1,448 @@
+/**
+ * ConjunctionScreener finds the close approaches between the satellites of a catalog over a time window: every
+ * local minimum of the distance between two satellites that is under a threshold, with its time of closest approach
+ * (TCA). Comparing every pair at every step is out of the question (450 million pairs per step for 30k objects), so
+ * the pairs go through cheap filters first and only the few that survive are refined:
+ *
+ *  1. Apogee / perigee: two orbits whose radius bands (from the mean elements, padded by RADIAL_MARGIN for the
+ *     short-period terms) are further apart than the threshold can never meet. Satellites whose band overlaps no
+ *     other one are not propagated at all, and the test is repeated for every pair the grid finds.
+ *  2. Grid: the window is sampled every step seconds, all the satellites propagated at once by an Sgp4Batch (SDP4
+ *     through TLEPropagator for the deep-space ones), and filed in a hash grid of cubic cells. A TCA is at most half
+ *     a step from a sample, and no satellite is faster than at its perigee, so at that sample the pair is closer
+ *     than threshold + (vMax1 + vMax2) * step / 2: only the cells that close to a satellite are visited.
+ *  3. Linear motion: the pair's relative position and velocity at the sample give its closest approach on a straight
+ *     line within half a step, off the real one by at most MAX_ACCELERATION * (step / 2)^2. Most grid pairs pass
+ *     hundreds of kilometers apart and stop here.
+ *  4. Refinement: the TCA is the root of the range rate (relative position . relative velocity) going from negative
+ *     to positive, found with a Brent solver between the two ends of the sample's half step, with TLEPropagator.
+ *
+ * Distances are compared in TEME, where SGP4 gives them: the rotation to the Earth-fixed frame does not change them.
+ * The samples are propagated and gridded, and the candidates refined, in parallel on a ForkJoinPool.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.hipparchus.analysis.UnivariateFunction;
+import org.hipparchus.analysis.solvers.AllowedSolution;
+import org.hipparchus.analysis.solvers.BracketingNthOrderBrentSolver;
+import org.hipparchus.exception.MathRuntimeException;
+import org.orekit.errors.OrekitException;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEConstants;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.utils.PVCoordinates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+public final class ConjunctionScreener {
+    private static final Logger log = LoggerFactory.getLogger(ConjunctionScreener.class);
+
+    // how far the radius of a satellite strays from the perigee and apogee of its mean elements, in meters
+    private static final double RADIAL_MARGIN = 50_000;
+    // the speed at perigee of the mean elements, raised for the perturbations
+    private static final double SPEED_MARGIN = 1.02;
+    // gravity at the Earth's surface rounded up, no satellite accelerates more (m/s^2)
+    private static final double MAX_ACCELERATION = 10;
+    // TCA accuracy in seconds
+    private static final double TIME_ACCURACY = 1e-6;
+    private static final int MAX_EVALUATIONS = 100;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pool The pool the samples and the candidates are processed on.
+     */
+    public ConjunctionScreener(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Screens a catalog.
+     * @param satIds The NORAD ID of every satellite.
+     * @param tles The element set of every satellite, in the order of the IDs.
+     * @param start The start of the window.
+     * @param duration The length of the window in seconds.
+     * @param threshold The largest miss distance reported, in meters.
+     * @param step The time between two samples in seconds, a shorter step propagates more and refines less.
+     * @return The close approaches in TCA order and the counts of every stage.
+     */
+    public Result screen(List<Integer> satIds, List<TLE> tles, AbsoluteDate start, double duration,
+                         double threshold, double step) {
+        int n = tles.size();
+        double[] low = new double[n];
+        double[] high = new double[n];
+        double[] maxSpeed = new double[n];
+        for (int k = 0; k < n; k++) {
+            TLE tle = tles.get(k);
+            double a = Math.cbrt(TLEConstants.MU / (tle.getMeanMotion() * tle.getMeanMotion()));
+            double perigee = a * (1 - tle.getE());
+            low[k] = perigee - RADIAL_MARGIN;
+            high[k] = a * (1 + tle.getE()) + RADIAL_MARGIN;
+            maxSpeed[k] = SPEED_MARGIN * Math.sqrt(TLEConstants.MU * (2 / Math.max(perigee, 1) - 1 / a));
+        }
+        int[] active = overlapping(low, high, threshold);
+
+        List<TLE> activeTles = new ArrayList<>(active.length);
+        double largestSpeed = 0;
+        for (int k : active) {
+            activeTles.add(tles.get(k));
+            largestSpeed = Math.max(largestSpeed, maxSpeed[k]);
+        }
+        Sampling sampling = new Sampling(active, activeTles, low, high, maxSpeed, start, duration, threshold, step,
+                threshold + largestSpeed * step);
+
+        // stages 2 and 3, contiguous runs of samples per task, the half steps of the samples covering the window
+        int samples = Math.max(0, (int) Math.ceil(duration / step - 0.5)) + 1;
+        int tasks = Math.min(samples, 4 * pool.getParallelism());
+        List<List<Candidate>> found = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            found.add(new ArrayList<>());
+        }
+        inParallel(tasks, t -> sampling.run(t * samples / tasks, (t + 1) * samples / tasks, found.get(t)));
+        List<Candidate> candidates = new ArrayList<>();
+        found.forEach(candidates::addAll);
+
+        // stage 4, the candidates of a pair together so its propagators are built once
+        candidates.sort(Comparator.comparingInt(Candidate::i).thenComparingInt(Candidate::j));
+        List<int[]> pairs = new ArrayList<>();
+        for (int from = 0, to; from < candidates.size(); from = to) {
+            to = from + 1;
+            while (to < candidates.size() && candidates.get(to).i == candidates.get(from).i
+                    && candidates.get(to).j == candidates.get(from).j) {
+                to++;
+            }
+            pairs.add(new int[] {from, to});
+        }
+        List<List<Conjunction>> refined = new ArrayList<>(pairs.size());
+        for (int p = 0; p < pairs.size(); p++) {
+            refined.add(new ArrayList<>(1));
+        }
+        inParallel(pairs.size(), p -> refine(candidates.subList(pairs.get(p)[0], pairs.get(p)[1]), satIds, tles,
+                start, duration, threshold, step, refined.get(p)));
+
+        List<Conjunction> conjunctions = new ArrayList<>();
+        refined.forEach(conjunctions::addAll);
+        conjunctions.sort(Comparator.comparing(Conjunction::tca));
+        return new Result(conjunctions, n, active.length, samples, sampling.gridPairs.sum(), candidates.size());
+    }
+
+    /**
+     * The satellites whose radius band, widened by the threshold, overlaps the band of another satellite.
+     */
+    private static int[] overlapping(double[] low, double[] high, double threshold) {
+        int n = low.length;
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(k -> low[k]));
+
+        boolean[] keep = new boolean[n];
+        double highest = Double.NEGATIVE_INFINITY;
+        for (int s = 0; s < n; s++) {
+            int k = order[s];
+            // a band starting lower and reaching this one, or the next band starting within this one
+            if (highest + threshold >= low[k] || (s + 1 < n && low[order[s + 1]] <= high[k] + threshold)) {
+                keep[k] = true;
+            }
+            highest = Math.max(highest, high[k]);
+        }
+        int count = 0;
+        int[] active = new int[n];
+        for (int k = 0; k < n; k++) {
+            if (keep[k]) active[count++] = k;
+        }
+        return Arrays.copyOf(active, count);
+    }
+
+    // stage 4 for the candidates of one pair
+    private static void refine(List<Candidate> candidates, List<Integer> satIds, List<TLE> tles, AbsoluteDate start,
+                               double duration, double threshold, double step, List<Conjunction> conjunctions) {
+        int i = candidates.get(0).i;
+        int j = candidates.get(0).j;
+        TLEPropagator first;
+        TLEPropagator second;
+        try {
+            first = TLEPropagator.selectExtrapolator(tles.get(i));
+            second = TLEPropagator.selectExtrapolator(tles.get(j));
+        } catch (OrekitException e) {
+            log.debug("Failed to initialize the propagators of {} and {}: {}", satIds.get(i), satIds.get(j), e.getMessage());
+            return;
+        }
+        UnivariateFunction rangeRate = t -> {
+            AbsoluteDate date = start.shiftedBy(t);
+            PVCoordinates relative = new PVCoordinates(first.getPVCoordinates(date), second.getPVCoordinates(date));
+            return relative.getPosition().dotProduct(relative.getVelocity());
+        };
+        BracketingNthOrderBrentSolver solver = new BracketingNthOrderBrentSolver(TIME_ACCURACY, 5);
+
+        for (Candidate candidate : candidates) {
+            // the half step around the sample, a TCA on its lower end belongs to it and one on its upper end doesn't
+            double lower = Math.max(0, (candidate.sample - 0.5) * step);
+            double upper = Math.min(duration, (candidate.sample + 0.5) * step);
+            if (lower >= upper) continue;
+            try {
+                double lowerRate = rangeRate.value(lower);
+                double upperRate = rangeRate.value(upper);
+                if (lowerRate > 0 || upperRate <= 0) continue;
+                double tca = lowerRate == 0 ? lower
+                        : solver.solve(MAX_EVALUATIONS, rangeRate, lower, upper, AllowedSolution.ANY_SIDE);
+
+                AbsoluteDate date = start.shiftedBy(tca);
+                PVCoordinates relative = new PVCoordinates(first.getPVCoordinates(date), second.getPVCoordinates(date));
+                double distance = relative.getPosition().getNorm();
+                if (distance <= threshold) {
+                    conjunctions.add(new Conjunction(satIds.get(i), satIds.get(j), date, distance,
+                            relative.getVelocity().getNorm()));
+                }
+            } catch (OrekitException | MathRuntimeException e) {
+                log.debug("Failed to refine the approach of {} and {}: {}", satIds.get(i), satIds.get(j), e.getMessage());
+            }
+        }
+    }
+
+    // runs task(0) to task(count - 1) on the pool and waits for all of them
+    private void inParallel(int count, IntConsumer task) {
+        List<ForkJoinTask<?>> forks = new ArrayList<>(count);
+        for (int t = 0; t < count; t++) {
+            int index = t;
+            forks.add(pool.submit(() -> task.accept(index)));
+        }
+        for (ForkJoinTask<?> fork : forks) {
+            fork.join();
+        }
+    }
+
+    /**
+     * Stages 2 and 3: the satellites that passed the radius filter, propagated to the samples and gridded.
+     * The batch is only read while propagating, so every task shares it.
+     */
+    private static final class Sampling {
+        private final int[] active;
+        private final List<TLE> tles;
+        private final Sgp4Batch batch;
+        private final double[] low;
+        private final double[] high;
+        private final double[] maxSpeed;
+        private final AbsoluteDate start;
+        private final double duration;
+        private final double threshold;
+        private final double step;
+        // the largest distance at a sample of a pair that can come within the threshold, the size of half a cell
+        private final double reach;
+        private final LongAdder gridPairs = new LongAdder();
+
+        Sampling(int[] active, List<TLE> tles, double[] low, double[] high, double[] maxSpeed, AbsoluteDate start,
+                 double duration, double threshold, double step, double reach) {
+            this.active = active;
+            this.tles = tles;
+            this.batch = new Sgp4Batch(tles);
+            this.low = low;
+            this.high = high;
+            this.maxSpeed = maxSpeed;
+            this.start = start;
+            this.duration = duration;
+            this.threshold = threshold;
+            this.step = step;
+            this.reach = reach;
+        }
+
+        // samples [from, to)
+        void run(int from, int to, List<Candidate> candidates) {
+            int m = active.length;
+            double[] xyz = new double[3 * m];
+            double[] vxyz = new double[3 * m];
+            // SDP4 for the deep-space satellites, one propagator per task as they are not thread-safe
+            TLEPropagator[] deepSpace = new TLEPropagator[m];
+            Grid grid = new Grid(m, 2 * reach);
+            for (int s = from; s < to; s++) {
+                AbsoluteDate date = start.shiftedBy(s * step);
+                batch.propagate(date, 0, m, xyz, vxyz);
+                for (int k = 0; k < m; k++) {
+                    if (!batch.isNearEarth(k)) {
+                        propagateDeepSpace(k, date, deepSpace, xyz, vxyz);
+                    }
+                }
+                grid.build(xyz);
+                scan(s, xyz, vxyz, grid, candidates);
+            }
+        }
+
+        private void propagateDeepSpace(int k, AbsoluteDate date, TLEPropagator[] deepSpace, double[] xyz, double[] vxyz) {
+            try {
+                if (deepSpace[k] == null) {
+                    deepSpace[k] = TLEPropagator.selectExtrapolator(tles.get(k));
+                }
+                PVCoordinates pv = deepSpace[k].getPVCoordinates(date);
+                xyz[3 * k] = pv.getPosition().getX();
+                xyz[3 * k + 1] = pv.getPosition().getY();
+                xyz[3 * k + 2] = pv.getPosition().getZ();
+                vxyz[3 * k] = pv.getVelocity().getX();
+                vxyz[3 * k + 1] = pv.getVelocity().getY();
+                vxyz[3 * k + 2] = pv.getVelocity().getZ();
+            } catch (OrekitException e) {
+                // left out of the sample like the satellites SGP4 gives up on
+                xyz[3 * k] = Double.NaN;
+            }
+        }
+
+        private void scan(int s, double[] xyz, double[] vxyz, Grid grid, List<Candidate> candidates) {
+            double cell = grid.cell;
+            double halfStep = step / 2;
+            // the largest distance between the linear and the real relative trajectories within half a step
+            double curvature = MAX_ACCELERATION * halfStep * halfStep;
+            // the part of the window the sample covers, relative to the sample
+            double earliest = Math.max(-halfStep, -s * step);
+            double latest = Math.min(halfStep, duration - s * step);
+
+            for (int a = 0; a < active.length; a++) {
+                double x = xyz[3 * a];
+                double y = xyz[3 * a + 1];
+                double z = xyz[3 * a + 2];
+                if (Double.isNaN(x)) continue;
+                int ka = active[a];
+                long x0 = (long) Math.floor((x - reach) / cell);
+                long y0 = (long) Math.floor((y - reach) / cell);
+                long z0 = (long) Math.floor((z - reach) / cell);
+                long x1 = (long) Math.floor((x + reach) / cell);
+                long y1 = (long) Math.floor((y + reach) / cell);
+                long z1 = (long) Math.floor((z + reach) / cell);
+                for (long cx = x0; cx <= x1; cx++) {
+                    for (long cy = y0; cy <= y1; cy++) {
+                        for (long cz = z0; cz <= z1; cz++) {
+                            for (int b = grid.first(Grid.key(cx, cy, cz)); b >= 0; b = grid.next[b]) {
+                                // every pair once, from its lower index
+                                if (b <= a) continue;
+                                int kb = active[b];
+                                if (low[ka] > high[kb] + threshold || low[kb] > high[ka] + threshold) continue;
+
+                                double dx = xyz[3 * b] - x;
+                                double dy = xyz[3 * b + 1] - y;
+                                double dz = xyz[3 * b + 2] - z;
+                                double pairReach = threshold + (maxSpeed[ka] + maxSpeed[kb]) * halfStep;
+                                if (dx * dx + dy * dy + dz * dz > pairReach * pairReach) continue;
+                                gridPairs.increment();
+
+                                // closest approach of the straight relative trajectory within the sample's half step
+                                double dvx = vxyz[3 * b] - vxyz[3 * a];
+                                double dvy = vxyz[3 * b + 1] - vxyz[3 * a + 1];
+                                double dvz = vxyz[3 * b + 2] - vxyz[3 * a + 2];
+                                double dv2 = dvx * dvx + dvy * dvy + dvz * dvz;
+                                double t = dv2 > 0 ? -(dx * dvx + dy * dvy + dz * dvz) / dv2 : 0;
+                                t = Math.max(earliest, Math.min(latest, t));
+                                double mx = dx + dvx * t;
+                                double my = dy + dvy * t;
+                                double mz = dz + dvz * t;
+                                double bound = threshold + curvature;
+                                if (mx * mx + my * my + mz * mz <= bound * bound) {
+                                    candidates.add(new Candidate(ka, kb, s));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The satellites of one sample hashed by cubic cell: an open-addressing table from the cell to its first
+     * satellite, the others chained through next. The cell coordinates wrap past 2^20 cells per axis, which only
+     * makes far apart satellites share a cell, and the distance test drops them.
+     */
+    private static final class Grid {
+        private final double cell;
+        private final long[] keys;
+        private final int[] heads;
+        private final int[] next;
+        private final int mask;
+
+        Grid(int size, double cell) {
+            this.cell = cell;
+            int capacity = Integer.highestOneBit(Math.max(2, 2 * size - 1)) << 1;
+            this.keys = new long[capacity];
+            this.heads = new int[capacity];
+            this.next = new int[size];
+            this.mask = capacity - 1;
+        }
+
+        void build(double[] xyz) {
+            Arrays.fill(heads, -1);
+            for (int k = 0; k < next.length; k++) {
+                next[k] = -1;
+                if (Double.isNaN(xyz[3 * k])) continue;
+                long key = key((long) Math.floor(xyz[3 * k] / cell), (long) Math.floor(xyz[3 * k + 1] / cell),
+                        (long) Math.floor(xyz[3 * k + 2] / cell));
+                int slot = slot(key);
+                if (heads[slot] < 0) {
+                    keys[slot] = key;
+                } else {
+                    next[k] = heads[slot];
+                }
+                heads[slot] = k;
+            }
+        }
+
+        // the first satellite of a cell, -1 if it is empty
+        int first(long key) {
+            return heads[slot(key)];
+        }
+
+        private int slot(long key) {
+            int slot = (int) (mix(key) & mask);
+            while (heads[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        static long key(long cx, long cy, long cz) {
+            return (cx & 0x1FFFFF) << 42 | (cy & 0x1FFFFF) << 21 | (cz & 0x1FFFFF);
+        }
+
+        private static long mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 32);
+        }
+    }
+
+    /**
+     * A pair (satellites i < j of the catalog) that may come within the threshold in the half step around a sample.
+     */
+    private record Candidate(int i, int j, int sample) {
+    }
+
+    /**
+     * A close approach.
+     * @param satId1 The NORAD ID of the first satellite, in catalog order.
+     * @param satId2 The NORAD ID of the second satellite.
+     * @param tca The time of closest approach.
+     * @param missDistance The distance at the TCA in meters.
+     * @param relativeSpeed The relative speed at the TCA in m/s.
+     */
+    public record Conjunction(int satId1, int satId2, AbsoluteDate tca, double missDistance, double relativeSpeed) {
+    }
+
+    /**
+     * The close approaches found and how many satellites and pairs every stage kept.
+     * @param satellites The satellites of the catalog.
+     * @param screened The satellites left by the apogee / perigee filter.
+     * @param samples The samples of the window.
+     * @param gridPairs The pairs within reach at a sample, counted at every sample.
+     * @param candidates The pairs and samples left by the linear motion filter, each refined.
+     */
+    public record Result(List<Conjunction> conjunctions, int satellites, int screened, int samples,
+                         long gridPairs, long candidates) {
+    }
+}
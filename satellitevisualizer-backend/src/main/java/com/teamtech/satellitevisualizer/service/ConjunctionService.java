@@ -0,0 +1,266 @@
+/**
+ * ConjunctionService screens the whole catalog for close approaches over a time window and stores them in the
+ * conjunctions collection, where GET /api/satellite/conjunctions reads them back.
+ *
+ * A screening loads the TLE of every satellite with one query (the archived element set nearest to the start of
+ * the window for a window in the past, see SatellitePositionService.selectTLE) and hands them to ConjunctionScreener,
+ * on a fork-join pool of satellite.conjunction.threads created for the run. The events found replace the ones stored
+ * for the window, written in batches of satellite.conjunction.batch-size before the older ones are deleted, so the
+ * window is never empty while it is rewritten. Only one screening runs at a time, on its
+ * own thread when started from the admin endpoint, and its report stays available until the next one.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.ConjunctionEvent;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.ScreeningReport;
+import org.orekit.errors.OrekitException;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Service
+public class ConjunctionService {
+    private static final Logger log = LoggerFactory.getLogger(ConjunctionService.class);
+
+    // the grid cells grow with the threshold, beyond this nearly every pair of a shell would be refined
+    public static final double MAX_THRESHOLD_KM = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final SatellitePositionService satellitePositionService;
+    private final SatelliteMetrics metrics;
+    private final TimeScale utc;
+    private final double defaultThresholdKm;
+    private final double defaultWindowHours;
+    private final double maxWindowHours;
+    private final double stepSeconds;
+    private final int threads;
+    private final int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ScreeningReport lastReport;
+    private volatile boolean indexReady;
+
+    public ConjunctionService(MongoTemplate mongoTemplate,
+                              SatellitePositionService satellitePositionService,
+                              SatelliteMetrics metrics,
+                              TimeScale utc,
+                              @Value("${satellite.conjunction.threshold-km:5}") double defaultThresholdKm,
+                              @Value("${satellite.conjunction.window-hours:24}") double defaultWindowHours,
+                              @Value("${satellite.conjunction.max-window-hours:168}") double maxWindowHours,
+                              @Value("${satellite.conjunction.step-seconds:20}") double stepSeconds,
+                              @Value("${satellite.conjunction.threads:0}") int threads,
+                              @Value("${satellite.conjunction.batch-size:1000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.satellitePositionService = satellitePositionService;
+        this.metrics = metrics;
+        this.utc = utc;
+        this.defaultThresholdKm = defaultThresholdKm;
+        this.defaultWindowHours = defaultWindowHours;
+        this.maxWindowHours = maxWindowHours;
+        this.stepSeconds = stepSeconds;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Starts a screening on its own thread, unless one is already running.
+     * @param from The start of the window, now if null.
+     * @param hours The length of the window in hours, satellite.conjunction.window-hours if null.
+     * @param thresholdKm The largest miss distance reported in km, satellite.conjunction.threshold-km if null.
+     * @return Whether the screening was started, false if another one is running.
+     * @throws IllegalArgumentException if the window or the threshold is out of bounds.
+     */
+    public boolean start(Instant from, Double hours, Double thresholdKm) {
+        Instant start = from == null ? Instant.now() : from;
+        double windowHours = hours == null ? defaultWindowHours : hours;
+        double threshold = thresholdKm == null ? defaultThresholdKm : thresholdKm;
+        validate(windowHours, threshold);
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                screen(start, windowHours, threshold);
+            } catch (RuntimeException e) {
+                log.error("Conjunction screening failed", e);
+            } finally {
+                running.set(false);
+            }
+        }, "conjunction-screening");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Screens the catalog and stores the close approaches found, waiting for the screening to finish.
+     * @param from The start of the window.
+     * @param hours The length of the window in hours.
+     * @param thresholdKm The largest miss distance reported in km.
+     * @return The report of the run.
+     * @throws IllegalArgumentException if the window or the threshold is out of bounds.
+     */
+    public ScreeningReport screen(Instant from, double hours, double thresholdKm) {
+        validate(hours, thresholdKm);
+        Instant to = from.plus(Duration.ofMillis((long) (hours * 3_600_000)));
+        ScreeningReport report = new ScreeningReport();
+        report.setFrom(from.toString());
+        report.setTo(to.toString());
+        report.setThresholdKm(thresholdKm);
+        report.setStepSeconds(stepSeconds);
+        report.setRunning(true);
+        lastReport = report;
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads, ConjunctionService::namedThread, null, false);
+        try {
+            AbsoluteDate date = satellitePositionService.toAbsoluteDate(from);
+            List<Integer> satIds = new ArrayList<>();
+            List<TLE> tles = new ArrayList<>();
+            loadCatalog(date, satIds, tles);
+
+            ConjunctionScreener.Result result = new ConjunctionScreener(pool)
+                    .screen(satIds, tles, date, hours * 3600, thresholdKm * 1000, stepSeconds);
+            report.setSatellites(result.satellites());
+            report.setScreened(result.screened());
+            report.setSamples(result.samples());
+            report.setGridPairs(result.gridPairs());
+            report.setCandidates(result.candidates());
+            report.setConjunctions(result.conjunctions().size());
+
+            replace(from, to, result.conjunctions());
+        } catch (RuntimeException e) {
+            report.setError(e.getMessage());
+            throw e;
+        } finally {
+            pool.shutdown();
+            report.setElapsedMs((System.nanoTime() - start) / 1_000_000);
+            report.setRunning(false);
+            metrics.recordScreening(report.getElapsedMs(), report.getGridPairs(), report.getCandidates(),
+                    report.getConjunctions());
+        }
+
+        log.info("Screened {} satellites from {} to {} at {} km: screened={} gridPairs={} candidates={} "
+                        + "conjunctions={} elapsedMs={}", report.getSatellites(), from, to, thresholdKm,
+                report.getScreened(), report.getGridPairs(), report.getCandidates(), report.getConjunctions(),
+                report.getElapsedMs());
+        return report;
+    }
+
+    public ScreeningReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Returns the stored close approaches of a time range, the ones of a satellite or of every satellite.
+     * @param satId The NORAD ID of one of the satellites, or null for all of them.
+     * @param from The start of the range, inclusive.
+     * @param to The end of the range, inclusive.
+     * @param maxDistanceKm The largest miss distance returned in km.
+     * @param limit The largest number of events returned, the earliest first.
+     * @return The events in TCA order.
+     */
+    public List<ConjunctionEvent> find(Integer satId, Instant from, Instant to, double maxDistanceKm, int limit) {
+        Criteria criteria = where("tca").gte(from).lte(to).and("missDistanceKm").lte(maxDistanceKm);
+        if (satId != null) {
+            criteria.orOperator(where("satid1").is(satId), where("satid2").is(satId));
+        }
+        return mongoTemplate.find(new Query(criteria).with(Sort.by("tca")).limit(limit), ConjunctionEvent.class);
+    }
+
+    private void validate(double hours, double thresholdKm) {
+        if (!(hours > 0 && hours <= maxWindowHours)) {
+            throw new IllegalArgumentException("The window must be longer than 0 and at most " + maxWindowHours + " hours");
+        }
+        if (!(thresholdKm > 0 && thresholdKm <= MAX_THRESHOLD_KM)) {
+            throw new IllegalArgumentException("The threshold must be over 0 and at most " + MAX_THRESHOLD_KM + " km");
+        }
+    }
+
+    private void loadCatalog(AbsoluteDate date, List<Integer> satIds, List<TLE> tles) {
+        Query query = new Query();
+        query.fields().include("tle");
+        for (SatelliteData satellite : mongoTemplate.find(query, SatelliteData.class)) {
+            Optional<TLE> tle = SatellitePositionService.parseTLE(satellite.getTle());
+            if (tle.isEmpty()) continue;
+            try {
+                tles.add(satellitePositionService.selectTLE(satellite.getSatid(), tle.get(), date));
+                satIds.add(satellite.getSatid());
+            } catch (OrekitException e) {
+                log.warn("Failed to select the TLE of satellite {}: {}", satellite.getSatid(), e.getMessage());
+            }
+        }
+    }
+
+    // the new events are written in batches, then those of the window found by an earlier screening are dropped
+    private void replace(Instant from, Instant to, List<ConjunctionScreener.Conjunction> conjunctions) {
+        ensureIndex();
+        // stored to the millisecond, the older events are told apart by this exact value
+        Instant screenedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<ConjunctionEvent> batch = new ArrayList<>(Math.min(batchSize, conjunctions.size()));
+        for (ConjunctionScreener.Conjunction conjunction : conjunctions) {
+            boolean ordered = conjunction.satId1() < conjunction.satId2();
+            batch.add(new ConjunctionEvent(null,
+                    ordered ? conjunction.satId1() : conjunction.satId2(),
+                    ordered ? conjunction.satId2() : conjunction.satId1(),
+                    conjunction.tca().toDate(utc).toInstant(),
+                    conjunction.missDistance() / 1000,
+                    conjunction.relativeSpeed() / 1000,
+                    screenedAt));
+            if (batch.size() == batchSize) {
+                mongoTemplate.insert(batch, ConjunctionEvent.class);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            mongoTemplate.insert(batch, ConjunctionEvent.class);
+        }
+        mongoTemplate.remove(new Query(where("tca").gte(from).lte(to).and("screenedAt").lt(screenedAt)),
+                ConjunctionEvent.class);
+    }
+
+    private void ensureIndex() {
+        if (indexReady) return;
+        mongoTemplate.indexOps(ConjunctionEvent.class).ensureIndex(new Index().on("tca", Sort.Direction.ASC));
+        mongoTemplate.indexOps(ConjunctionEvent.class).ensureIndex(new Index()
+                .on("satid1", Sort.Direction.ASC)
+                .on("tca", Sort.Direction.ASC));
+        mongoTemplate.indexOps(ConjunctionEvent.class).ensureIndex(new Index()
+                .on("satid2", Sort.Direction.ASC)
+                .on("tca", Sort.Direction.ASC));
+        indexReady = true;
+    }
+
+    private static ForkJoinWorkerThread namedThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("conjunction-" + thread.getPoolIndex());
+        return thread;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * CzmlSampler picks the samples of a CZML orbit so that Cesium's LAGRANGE interpolation between them stays within a
+ * tolerance of the SGP4 trajectory, instead of sampling every satellite every 60 seconds.
+ *
+ * The window defaults to one orbital period (from the TLE mean motion), kept between 90 minutes and a day, so LEO,
+ * MEO and GEO satellites all get a full revolution. Sampling starts with a step of an eighth of the period and is
+ * checked by propagating the middle of every interval and comparing it with the value Cesium would interpolate there
+ * from the same samples. The error of that first grid gives the step the tolerance needs, the orbit is sampled again
+ * with it and checked the same way. While the error is still over the tolerance the step is halved, the midpoints
+ * becoming samples of the finer grid. A GEO satellite, nearly still in the Earth-fixed frame, ends up
+ * with a few samples per day while a LEO satellite gets the few dozen per orbit it needs.
+ *
+ * Samples are capped at satellite.czml.max-samples, the error of a capped orbit is then over the tolerance.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.AbsoluteDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CzmlSampler {
+    private static final Logger log = LoggerFactory.getLogger(CzmlSampler.class);
+
+    public static final double MIN_WINDOW_SECONDS = 90 * 60;
+    public static final double MAX_WINDOW_SECONDS = 86400;
+
+    private final EphemerisStore ephemerisStore;
+    private final double defaultTolerance;
+    private final int maxSamples;
+
+    /**
+     * The samples of one orbit.
+     * @param offsets The seconds since the start of every sample, evenly spaced.
+     * @param xyz The Earth-fixed x, y, z of every sample one after the other, in meters.
+     * @param maxError The largest distance in meters between an interval midpoint and its interpolated position.
+     * @param propagations The number of positions propagated to pick the samples, checks included.
+     */
+    public record Samples(double[] offsets, double[] xyz, double maxError, int propagations) {
+        public int size() {
+            return offsets.length;
+        }
+    }
+
+    public CzmlSampler(EphemerisStore ephemerisStore,
+                       @Value("${satellite.czml.tolerance-meters:1}") double defaultTolerance,
+                       @Value("${satellite.czml.max-samples:100000}") int maxSamples) {
+        this.ephemerisStore = ephemerisStore;
+        this.defaultTolerance = defaultTolerance;
+        this.maxSamples = maxSamples;
+    }
+
+    public double getDefaultTolerance() {
+        return defaultTolerance;
+    }
+
+    /**
+     * @param tle The satellite's TLE.
+     * @return The orbital period in seconds, from the mean motion.
+     */
+    public static double period(TLE tle) {
+        return 2 * Math.PI / tle.getMeanMotion();
+    }
+
+    /**
+     * @param tle The satellite's TLE.
+     * @return One orbital period in seconds, kept between MIN_WINDOW_SECONDS and MAX_WINDOW_SECONDS.
+     */
+    public static double defaultWindow(TLE tle) {
+        return Math.min(MAX_WINDOW_SECONDS, Math.max(MIN_WINDOW_SECONDS, period(tle)));
+    }
+
+    /**
+     * Picks the samples of a satellite's orbit over a window.
+     * @param satId The satellite NORAD ID.
+     * @param tle The TLE to propagate.
+     * @param start The date of the first sample.
+     * @param window The length of the window in seconds, the last sample is at its end.
+     * @param tolerance The largest interpolation error allowed, in meters.
+     * @param degree The degree of the LAGRANGE interpolation Cesium will use, degree + 1 samples at least are returned.
+     * @return The samples.
+     */
+    public Samples sample(int satId, TLE tle, AbsoluteDate start, double window, double tolerance, int degree) {
+        int intervals = Math.max(degree, (int) Math.ceil(window / (period(tle) / 8)));
+        double[] xyz = ephemerisStore.propagate(satId, tle, start, grid(intervals + 1, 0, window / intervals));
+        int propagations = intervals + 1;
+        boolean calibrated = false;
+
+        while (true) {
+            double step = window / intervals;
+            double[] midXyz = ephemerisStore.propagate(satId, tle, start, grid(intervals, step / 2, step));
+            propagations += intervals;
+            double maxError = maxError(xyz, midXyz, intervals, degree);
+            if (maxError <= tolerance || 2 * intervals + 1 > maxSamples) {
+                if (maxError > tolerance) {
+                    log.debug("CZML samples of satellite {} capped at {}, error {} m over the {} m tolerance",
+                            satId, intervals + 1, maxError, tolerance);
+                }
+                return new Samples(grid(intervals + 1, 0, step), xyz, maxError, propagations);
+            }
+
+            // the interpolation error goes as step^(degree + 1), so the error of the first grid tells roughly which
+            // step is needed: starting over from it beats halving many times
+            if (!calibrated) {
+                calibrated = true;
+                double scale = 0.9 * Math.pow(tolerance / maxError, 1.0 / (degree + 1));
+                int predicted = (int) Math.min(maxSamples - 1, Math.ceil(intervals / scale));
+                if (predicted > 2 * intervals) {
+                    intervals = predicted;
+                    xyz = ephemerisStore.propagate(satId, tle, start, grid(intervals + 1, 0, window / intervals));
+                    propagations += intervals + 1;
+                    continue;
+                }
+            }
+
+            // the midpoints become samples of a grid twice as fine
+            double[] finer = new double[3 * (2 * intervals + 1)];
+            for (int i = 0; i < intervals; i++) {
+                System.arraycopy(xyz, 3 * i, finer, 6 * i, 3);
+                System.arraycopy(midXyz, 3 * i, finer, 6 * i + 3, 3);
+            }
+            System.arraycopy(xyz, 3 * intervals, finer, 6 * intervals, 3);
+            intervals *= 2;
+            xyz = finer;
+        }
+    }
+
+    private static double[] grid(int count, double first, double step) {
+        double[] offsets = new double[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = first + i * step;
+        }
+        return offsets;
+    }
+
+    /**
+     * The largest distance between the midpoint of every interval and the position interpolated there from the
+     * samples, picking the degree + 1 samples around the interval the way Cesium's SampledProperty does.
+     */
+    private static double maxError(double[] xyz, double[] midXyz, int intervals, int degree) {
+        int count = intervals + 1;
+        double[] weights = new double[degree + 1];
+        double maxSquared = 0;
+        for (int i = 0; i < intervals; i++) {
+            int first = Math.max(0, Math.min(i - degree / 2, count - (degree + 1)));
+            // position of the midpoint in steps from the first sample used
+            double u = i + 0.5 - first;
+            for (int j = 0; j <= degree; j++) {
+                double w = 1;
+                for (int k = 0; k <= degree; k++) {
+                    if (k != j) w *= (u - k) / (j - k);
+                }
+                weights[j] = w;
+            }
+            double squared = 0;
+            for (int c = 0; c < 3; c++) {
+                double interpolated = 0;
+                for (int j = 0; j <= degree; j++) {
+                    interpolated += weights[j] * xyz[3 * (first + j) + c];
+                }
+                double d = interpolated - midXyz[3 * i + c];
+                squared += d * d;
+            }
+            maxSquared = Math.max(maxSquared, squared);
+        }
+        return Math.sqrt(maxSquared);
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * CzmlWriter streams the CZML document describing a satellite's orbit straight into an output stream
+ * (usually the HTTP response), using Jackson's streaming JsonGenerator.
+ *
+ * Samples are pulled one at a time from a SampleSource, so a long window with a high sample rate is written
+ * in constant memory, and nothing is shared between calls so concurrent requests cannot see each other's output.
+ * The document has the same layout as the orbit.czml file the backend used to write: a document packet and one
+ * satellite packet with its cartesian (Earth-fixed) positions, label, path and point.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import org.orekit.time.AbsoluteDate;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+@Component
+public class CzmlWriter {
+
+    public static final int DEFAULT_INTERPOLATION_DEGREE = 5;
+
+    // thread-safe and relatively expensive to create, so one per application
+    private final JsonFactory jsonFactory = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    /**
+     * Provides the samples of an orbit in order.
+     */
+    @FunctionalInterface
+    public interface SampleSource {
+        /**
+         * Fills target with the sample at the given index: seconds since the CZML epoch, then x, y, z in meters.
+         */
+        void sample(int index, double[] target);
+    }
+
+    /**
+     * Writes the orbit from primitive arrays.
+     * @param out The stream to write to, it is flushed but not closed.
+     * @param noradId The NORAD ID of the satellite.
+     * @param initialDate The epoch of the samples (start of availability).
+     * @param finalDate The end of availability.
+     * @param offsets The seconds since initialDate of every sample.
+     * @param xyz The cartesian positions, x, y, z of every sample one after the other.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs while writing to the stream.
+     */
+    public long write(OutputStream out, int noradId, AbsoluteDate initialDate, AbsoluteDate finalDate,
+                      double[] offsets, double[] xyz) throws IOException {
+        return write(out, noradId, initialDate, finalDate, offsets, xyz, DEFAULT_INTERPOLATION_DEGREE);
+    }
+
+    /**
+     * Writes the orbit from primitive arrays, to be interpolated with the given LAGRANGE degree.
+     * @see #write(OutputStream, int, AbsoluteDate, AbsoluteDate, double[], double[])
+     */
+    public long write(OutputStream out, int noradId, AbsoluteDate initialDate, AbsoluteDate finalDate,
+                      double[] offsets, double[] xyz, int interpolationDegree) throws IOException {
+        if (xyz.length != 3 * offsets.length) {
+            throw new IllegalArgumentException("Expected " + 3 * offsets.length + " coordinates, got " + xyz.length);
+        }
+        return write(out, noradId, initialDate, finalDate, offsets.length, interpolationDegree, (index, target) -> {
+            target[0] = offsets[index];
+            target[1] = xyz[3 * index];
+            target[2] = xyz[3 * index + 1];
+            target[3] = xyz[3 * index + 2];
+        });
+    }
+
+    /**
+     * Writes the orbit, pulling the samples from a source as they are written.
+     * The positions are interpolated by Cesium using the LAGRANGE algorithm with DEFAULT_INTERPOLATION_DEGREE.
+     * @param out The stream to write to, it is flushed but not closed.
+     * @param noradId The NORAD ID of the satellite.
+     * @param initialDate The epoch of the samples (start of availability).
+     * @param finalDate The end of availability.
+     * @param count The number of samples.
+     * @param samples Where the samples come from.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs while writing to the stream.
+     */
+    public long write(OutputStream out, int noradId, AbsoluteDate initialDate, AbsoluteDate finalDate,
+                      int count, SampleSource samples) throws IOException {
+        return write(out, noradId, initialDate, finalDate, count, DEFAULT_INTERPOLATION_DEGREE, samples);
+    }
+
+    /**
+     * Writes the orbit, pulling the samples from a source, to be interpolated with the given LAGRANGE degree.
+     * @see #write(OutputStream, int, AbsoluteDate, AbsoluteDate, int, SampleSource)
+     */
+    public long write(OutputStream out, int noradId, AbsoluteDate initialDate, AbsoluteDate finalDate,
+                      int count, int interpolationDegree, SampleSource samples) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        try (JsonGenerator json = jsonFactory.createGenerator(counted)) {
+            json.writeStartArray();
+
+            json.writeStartObject();
+            json.writeStringField("id", "document");
+            json.writeStringField("version", "1.0");
+            json.writeEndObject();
+
+            json.writeStartObject();
+            json.writeStringField("id", "Satellite " + noradId);
+            json.writeStringField("availability", initialDate + "/" + finalDate);
+
+            // the satellite's position at each time step
+            json.writeObjectFieldStart("position");
+            json.writeStringField("interpolationAlgorithm", "LAGRANGE");
+            json.writeNumberField("interpolationDegree", interpolationDegree);
+            json.writeStringField("epoch", initialDate.toString());
+            json.writeArrayFieldStart("cartesian");
+            double[] sample = new double[4];
+            for (int i = 0; i < count; i++) {
+                samples.sample(i, sample);
+                json.writeNumber(sample[0]);
+                json.writeNumber(sample[1]);
+                json.writeNumber(sample[2]);
+                json.writeNumber(sample[3]);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+
+            // the satellite's label
+            json.writeObjectFieldStart("label");
+            json.writeStringField("text", "Sat " + noradId);
+            json.writeStringField("font", "14px Helvetica");
+            writeRgba(json, "fillColor", 255, 255, 0, 255);
+            writeRgba(json, "outlineColor", 0, 0, 0, 255);
+            json.writeNumberField("outlineWidth", 2);
+            json.writeStringField("style", "FILL");
+            json.writeStringField("horizontalOrigin", "LEFT");
+            json.writeStringField("verticalOrigin", "BOTTOM");
+            json.writeObjectFieldStart("pixelOffset");
+            json.writeArrayFieldStart("cartesian2");
+            json.writeNumber(10);
+            json.writeNumber(-10);
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndObject();
+
+            json.writeObjectFieldStart("path");
+            json.writeArrayFieldStart("show");
+            json.writeStartObject();
+            json.writeBooleanField("boolean", true);
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+
+            json.writeObjectFieldStart("point");
+            json.writeNumberField("pixelSize", 10);
+            writeRgba(json, "color", 255, 255, 0, 255);
+            json.writeEndObject();
+
+            json.writeStringField("description", "Satellite " + noradId);
+            json.writeEndObject();
+
+            json.writeEndArray();
+        }
+        out.flush();
+        return counted.count;
+    }
+
+    private static void writeRgba(JsonGenerator json, String field, int r, int g, int b, int a) throws IOException {
+        json.writeObjectFieldStart(field);
+        json.writeArrayFieldStart("rgba");
+        json.writeNumber(r);
+        json.writeNumber(g);
+        json.writeNumber(b);
+        json.writeNumber(a);
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    // the generator writes its buffer in large chunks, so counting them costs nothing
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * EphemerisPayloadCache builds the compact binary representation of a satellite's orbit served by the ephemeris
+ * endpoint, and keeps the payloads it built so clients asking for an orbit again do not cost another propagation.
+ *
+ * A payload is little-endian, a 40 byte header followed by the samples:
+ *   0  4 bytes  magic "SVEP"
+ *   4  1 byte   format version, 1
+ *   5  1 byte   bytes per value, 4 (float32) or 8 (float64)
+ *   6  2 bytes  LAGRANGE interpolation degree the samples were picked for
+ *   8  4 bytes  NORAD ID
+ *  12  4 bytes  number of samples
+ *  16  8 bytes  date of the first sample, milliseconds since 1970-01-01T00:00:00Z (float64)
+ *  24  8 bytes  time between two samples in seconds (float64)
+ *  32  8 bytes  epoch of the TLE, milliseconds since 1970-01-01T00:00:00Z (float64)
+ *  40           x, y, z of every sample one after the other, Earth-fixed, in meters
+ * float32 values keep positions to about a meter in LEO and a few meters in GEO, at half the size.
+ *
+ * Every payload is identified by an ETag made of what it depends on: the NORAD ID, the TLE epoch, the window (start
+ * and length), the step or tolerance, the degree and the precision. Windows start on a multiple of
+ * satellite.ephemeris-payload.align-seconds so requests made close together share one payload. Payloads are kept
+ * gzipped, least recently used evicted first once they take more than satellite.ephemeris-payload.max-memory-mb,
+ * and those of a satellite are dropped when a TleUpdatedEvent is published for it (its ETags change anyway).
+ * The gzipped and the identity representations of a payload are different bytes, so they get different ETags, and
+ * the identity one is inflated while it is written rather than kept a second time.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class EphemerisPayloadCache {
+
+    public static final int HEADER_BYTES = 40;
+    private static final byte[] MAGIC = "SVEP".getBytes(StandardCharsets.US_ASCII);
+    private static final byte VERSION = 1;
+
+    private final EphemerisStore ephemerisStore;
+    private final CzmlSampler czmlSampler;
+    private final TimeScale utc;
+    private final long alignMillis;
+    private final long maxBytes;
+
+    // access-ordered so the eldest entry is always the least recently used one, guarded by synchronized methods
+    private final Map<String, Payload> payloads = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * What a payload is built from.
+     * @param start The date of the first sample, aligned (see align).
+     * @param window The length of the window in seconds.
+     * @param step The time between two samples in seconds, or null to pick the samples within the tolerance.
+     * @param tolerance The largest interpolation error in meters, only used without a step.
+     * @param singlePrecision Whether the values are written as float32 rather than float64.
+     */
+    public record Request(int satId, TLE tle, Instant start, double window, Double step, double tolerance,
+                          int degree, boolean singlePrecision) {
+        public String etag(TimeScale utc) {
+            return "\"" + satId + "-" + tle.getDate().toDate(utc).getTime() + "-" + start.toEpochMilli() + "-" + window
+                    + (step != null ? "-s" + step : "-e" + tolerance) + "-d" + degree + (singlePrecision ? "-f32" : "-f64")
+                    + "\"";
+        }
+    }
+
+    /**
+     * @param gzipped The gzipped payload.
+     * @param length The size of the payload before compression.
+     */
+    public record Payload(String etag, int satId, byte[] gzipped, int length, int samples) {
+    }
+
+    public EphemerisPayloadCache(EphemerisStore ephemerisStore,
+                                 CzmlSampler czmlSampler,
+                                 TimeScale utc,
+                                 SatelliteMetrics metrics,
+                                 @Value("${satellite.ephemeris-payload.align-seconds:60}") long alignSeconds,
+                                 @Value("${satellite.ephemeris-payload.max-memory-mb:32}") long maxMemoryMb) {
+        this.ephemerisStore = ephemerisStore;
+        this.czmlSampler = czmlSampler;
+        this.utc = utc;
+        this.alignMillis = Math.max(1, alignSeconds) * 1000;
+        this.maxBytes = maxMemoryMb * 1024 * 1024;
+        metrics.bindEphemerisPayloads(this);
+    }
+
+    /**
+     * @return The start of the window a payload requested at the given time covers, so that requests made within
+     * the same satellite.ephemeris-payload.align-seconds share their payload.
+     */
+    public Instant align(Instant now) {
+        long millis = now.toEpochMilli();
+        return Instant.ofEpochMilli(millis - Math.floorMod(millis, alignMillis));
+    }
+
+    /**
+     * @return The seconds until the window of a payload requested at the given time moves on.
+     */
+    public long secondsUntilRealigned(Instant now) {
+        return (alignMillis - Math.floorMod(now.toEpochMilli(), alignMillis)) / 1000;
+    }
+
+    public String etag(Request request) {
+        return request.etag(utc);
+    }
+
+    /**
+     * @return The ETag of one representation of a request's payload: the gzipped one has a "-gz" suffix.
+     */
+    public String etag(Request request, boolean gzipped) {
+        String etag = etag(request);
+        return gzipped ? etag.substring(0, etag.length() - 1) + "-gz\"" : etag;
+    }
+
+    /**
+     * Returns the payload of a request, building it only if it is not cached.
+     * Two requests building the same payload at the same time both build it, the payloads are the same.
+     * @param request What to build.
+     * @return The payload.
+     */
+    public Payload get(Request request) {
+        String etag = etag(request);
+        synchronized (this) {
+            Payload payload = payloads.get(etag);
+            if (payload != null) {
+                hits++;
+                return payload;
+            }
+            misses++;
+        }
+
+        Payload payload = build(request, etag);
+        store(payload);
+        return payload;
+    }
+
+    @EventListener
+    public void onTleUpdated(TleUpdatedEvent event) {
+        invalidate(event.satId());
+    }
+
+    public synchronized void invalidate(int satId) {
+        payloads.values().removeIf(payload -> {
+            if (payload.satId() != satId) return false;
+            bytes -= payload.gzipped().length;
+            return true;
+        });
+    }
+
+    public synchronized int size() {
+        return payloads.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private synchronized void store(Payload payload) {
+        if (payload.gzipped().length > maxBytes) return;
+        Payload replaced = payloads.put(payload.etag(), payload);
+        if (replaced != null) {
+            bytes -= replaced.gzipped().length;
+        }
+        bytes += payload.gzipped().length;
+
+        Iterator<Payload> eldest = payloads.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Payload evicted = eldest.next();
+            if (evicted == payload) continue;
+            eldest.remove();
+            bytes -= evicted.gzipped().length;
+        }
+    }
+
+    private Payload build(Request request, String etag) {
+        AbsoluteDate start = new AbsoluteDate(Date.from(request.start()), utc);
+        double step;
+        double[] xyz;
+        if (request.step() != null) {
+            step = request.step();
+            int count = (int) (request.window() / step) + 1;
+            xyz = ephemerisStore.positions(request.satId(), request.tle(), start, step, count);
+        } else {
+            CzmlSampler.Samples samples = czmlSampler.sample(request.satId(), request.tle(), start, request.window(),
+                    request.tolerance(), request.degree());
+            step = samples.offsets()[1];
+            xyz = samples.xyz();
+        }
+
+        byte[] encoded = encode(request, step, xyz);
+        return new Payload(etag, request.satId(), gzip(encoded), encoded.length, xyz.length / 3);
+    }
+
+    private byte[] encode(Request request, double step, double[] xyz) {
+        int valueBytes = request.singlePrecision() ? Float.BYTES : Double.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + xyz.length * valueBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .put((byte) valueBytes)
+                .putShort((short) request.degree())
+                .putInt(request.satId())
+                .putInt(xyz.length / 3)
+                .putDouble(request.start().toEpochMilli())
+                .putDouble(step)
+                .putDouble(request.tle().getDate().toDate(utc).getTime());
+        if (request.singlePrecision()) {
+            for (double value : xyz) {
+                buffer.putFloat((float) value);
+            }
+        } else {
+            buffer.asDoubleBuffer().put(xyz);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return The payload inflated as it is read, for the clients that do not accept gzip.
+     */
+    public static InputStream uncompressed(Payload payload) {
+        try {
+            return new GZIPInputStream(new ByteArrayInputStream(payload.gzipped()));
+        } catch (IOException e) {
+            // in memory, cannot happen
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            // in memory, cannot happen
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * EphemerisStore keeps a rolling window of precomputed position/velocity samples for the satellites that are being
+ * looked at, so repeated position and CZML requests are served by interpolation instead of running SGP4 again.
+ *
+ * Samples are Earth-fixed (ITRF) positions and velocities taken every satellite.ephemeris.step-seconds, from slightly
+ * before now until satellite.ephemeris.horizon-minutes ahead. Values between two samples are computed with cubic
+ * Hermite interpolation, which uses the velocities as well as the positions and stays well under a meter of error
+ * for LEO satellites with the default 60 s step.
+ *
+ * A satellite starts being tracked the first time its position is asked for, its window is then built in the
+ * background (position reads never wait for it) and rolled forward as time passes. Satellites nobody asked about for
+ * satellite.ephemeris.idle-minutes are evicted, and the least recently used ones are evicted when the store would go
+ * over satellite.ephemeris.max-memory-mb.
+ *
+ * Every window is on the same grid, so the TEME to ITRF transform of a sample date is computed once for all the
+ * satellites (see FrameTransforms), as is the one of a date many satellites are propagated to directly.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.orekit.frames.Frame;
+import org.orekit.propagation.SpacecraftState;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.orekit.utils.PVCoordinates;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+@Service
+public class EphemerisStore {
+
+    // x, y, z, vx, vy, vz per sample
+    private static final int SAMPLE_SIZE = 6;
+
+    private final PropagatorCache propagatorCache;
+    private final FrameTransforms frameTransforms;
+    private final Frame itrf;
+    private final TimeScale utc;
+    private final ExecutorService propagationExecutor;
+    private final SatelliteMetrics metrics;
+
+    private final double step;
+    private final double horizon;
+    private final long maxSamples;
+    private final long idleMillis;
+
+    private final Map<Integer, Ephemeris> ephemerides = new ConcurrentHashMap<>();
+    // satellites that were asked for but whose window is not built yet
+    private final Map<Integer, TLE> pending = new ConcurrentHashMap<>();
+    private long storedSamples;
+
+    public EphemerisStore(PropagatorCache propagatorCache,
+                          FrameTransforms frameTransforms,
+                          @Qualifier("itrf") Frame itrf,
+                          TimeScale utc,
+                          @Qualifier("propagationExecutor") ExecutorService propagationExecutor,
+                          SatelliteMetrics metrics,
+                          @Value("${satellite.ephemeris.step-seconds:60}") double stepSeconds,
+                          @Value("${satellite.ephemeris.horizon-minutes:120}") double horizonMinutes,
+                          @Value("${satellite.ephemeris.max-memory-mb:64}") long maxMemoryMb,
+                          @Value("${satellite.ephemeris.idle-minutes:30}") long idleMinutes) {
+        this.propagatorCache = propagatorCache;
+        this.frameTransforms = frameTransforms;
+        this.itrf = itrf;
+        this.utc = utc;
+        this.propagationExecutor = propagationExecutor;
+        this.metrics = metrics;
+        this.step = stepSeconds;
+        this.horizon = horizonMinutes * 60;
+        this.maxSamples = maxMemoryMb * 1024 * 1024 / (SAMPLE_SIZE * Double.BYTES);
+        this.idleMillis = idleMinutes * 60_000;
+    }
+
+    /**
+     * Returns the Earth-fixed position of a satellite at the given date, interpolated from the stored samples when
+     * they cover it. Otherwise the satellite is propagated directly and queued so its window gets built in the background.
+     * @param satId The satellite NORAD ID.
+     * @param tle The satellite's current TLE.
+     * @param date The date to get the position at.
+     * @return The ITRF position in meters.
+     */
+    public Vector3D position(int satId, TLE tle, AbsoluteDate date) {
+        Ephemeris ephemeris = lookup(satId, tle);
+        double t = secondsSinceJ2000(date);
+        if (ephemeris != null && ephemeris.covers(t, t)) {
+            double[] xyz = new double[3];
+            ephemeris.interpolate(t, xyz, 0);
+            return new Vector3D(xyz[0], xyz[1], xyz[2]);
+        }
+        // a window is only ever built around now, dates it would not cover (e.g. with an archived TLE) are just propagated
+        double now = secondsSinceJ2000(new AbsoluteDate(new Date(), utc));
+        if (t >= now - step && t <= now + horizon) {
+            pending.putIfAbsent(satId, tle);
+        }
+        double[] pv = new double[SAMPLE_SIZE];
+        propagatorCache.withPropagator(satId, tle, propagator -> {
+            propagateShared(propagator, date, pv, 0);
+            return pv;
+        });
+        return new Vector3D(pv[0], pv[1], pv[2]);
+    }
+
+    /**
+     * Returns evenly spaced Earth-fixed positions of a satellite, as x, y, z triplets one after the other.
+     * If the samples do not cover the requested span but it fits in the horizon, the window is built right away
+     * since most of its samples are needed anyway.
+     * @param satId The satellite NORAD ID.
+     * @param tle The satellite's current TLE.
+     * @param start The date of the first position.
+     * @param stepSeconds The time between two positions.
+     * @param count The number of positions.
+     * @return An array of 3 * count ITRF coordinates in meters.
+     */
+    public double[] positions(int satId, TLE tle, AbsoluteDate start, double stepSeconds, int count) {
+        double first = secondsSinceJ2000(start);
+        double last = first + stepSeconds * (count - 1);
+
+        Ephemeris ephemeris = lookup(satId, tle);
+        if ((ephemeris == null || !ephemeris.covers(first, last)) && last - first <= horizon) {
+            ephemeris = build(satId, tle, first, ephemeris);
+        }
+
+        double[] xyz = new double[3 * count];
+        double[] pv = new double[SAMPLE_SIZE];
+        for (int i = 0; i < count; i++) {
+            double t = first + stepSeconds * i;
+            if (ephemeris != null && ephemeris.covers(t, t)) {
+                ephemeris.interpolate(t, xyz, 3 * i);
+            } else {
+                AbsoluteDate date = start.shiftedBy(stepSeconds * i);
+                propagatorCache.withPropagator(satId, tle, propagator -> {
+                    propagateShared(propagator, date, pv, 0);
+                    return pv;
+                });
+                System.arraycopy(pv, 0, xyz, 3 * i, 3);
+            }
+        }
+        return xyz;
+    }
+
+    /**
+     * Propagates a satellite to arbitrary dates with one propagator, without going through the stored samples,
+     * for callers that need exact SGP4 positions at times that are not on a regular grid.
+     * @param satId The satellite NORAD ID.
+     * @param tle The TLE to propagate.
+     * @param start The reference date of the offsets.
+     * @param offsets The offset of every date from start in seconds, in any order, fractions of a second included.
+     * @return An array of 3 * offsets.length ITRF coordinates in meters, in the order of the offsets.
+     */
+    public double[] propagate(int satId, TLE tle, AbsoluteDate start, double[] offsets) {
+        double[] xyz = new double[3 * offsets.length];
+        propagatorCache.withPropagator(satId, tle, propagator -> {
+            for (int i = 0; i < offsets.length; i++) {
+                Vector3D position = propagateTimed(propagator, start.shiftedBy(offsets[i])).getPosition();
+                xyz[3 * i] = position.getX();
+                xyz[3 * i + 1] = position.getY();
+                xyz[3 * i + 2] = position.getZ();
+            }
+            return xyz;
+        });
+        return xyz;
+    }
+
+    @EventListener
+    public void onTleUpdated(TleUpdatedEvent event) {
+        invalidate(event.satId());
+    }
+
+    public synchronized void invalidate(int satId) {
+        pending.remove(satId);
+        Ephemeris removed = ephemerides.remove(satId);
+        if (removed != null) {
+            storedSamples -= removed.count;
+        }
+    }
+
+    public int size() {
+        return ephemerides.size();
+    }
+
+    public synchronized long getStoredSamples() {
+        return storedSamples;
+    }
+
+    /**
+     * Builds the windows of newly requested satellites, rolls the windows that are running out forward and
+     * evicts the satellites nobody asked about recently.
+     */
+    @Scheduled(fixedDelayString = "${satellite.ephemeris.refresh-ms:5000}")
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        double t = secondsSinceJ2000(new AbsoluteDate(new Date(now), utc));
+
+        List<CompletableFuture<Ephemeris>> builds = new ArrayList<>();
+        for (Ephemeris ephemeris : ephemerides.values()) {
+            if (now - ephemeris.lastAccess > idleMillis) {
+                invalidate(ephemeris.satId);
+            } else if (ephemeris.end() - t < horizon / 2) {
+                builds.add(CompletableFuture.supplyAsync(
+                        () -> build(ephemeris.satId, ephemeris.tle, t, ephemeris), propagationExecutor));
+            }
+        }
+        for (Map.Entry<Integer, TLE> entry : pending.entrySet()) {
+            pending.remove(entry.getKey());
+            builds.add(CompletableFuture.supplyAsync(
+                    () -> build(entry.getKey(), entry.getValue(), t, lookup(entry.getKey(), entry.getValue())),
+                    propagationExecutor));
+        }
+        builds.forEach(CompletableFuture::join);
+    }
+
+    private Ephemeris lookup(int satId, TLE tle) {
+        Ephemeris ephemeris = ephemerides.get(satId);
+        if (ephemeris == null) return null;
+        if (!ephemeris.tle.getDate().equals(tle.getDate())) {
+            // samples were computed from another element set
+            return null;
+        }
+        ephemeris.lastAccess = System.currentTimeMillis();
+        return ephemeris;
+    }
+
+    /**
+     * Computes a window starting one step before the given time, reusing the samples of the previous window
+     * that fall on the same grid.
+     */
+    private Ephemeris build(int satId, TLE tle, double from, Ephemeris previous) {
+        double start = Math.floor(from / step) * step - step;
+        int count = (int) Math.ceil((horizon + 2 * step) / step) + 1;
+        if (count > maxSamples) return null;
+
+        double[] samples = new double[SAMPLE_SIZE * count];
+        AbsoluteDate startDate = AbsoluteDate.J2000_EPOCH.shiftedBy(start);
+        propagatorCache.withPropagator(satId, tle, propagator -> {
+            for (int i = 0; i < count; i++) {
+                double t = start + i * step;
+                if (previous != null && previous.tle.getDate().equals(tle.getDate()) && previous.copySample(t, samples, SAMPLE_SIZE * i)) {
+                    continue;
+                }
+                propagateShared(propagator, startDate.shiftedBy(i * step), samples, SAMPLE_SIZE * i);
+            }
+            return samples;
+        });
+
+        Ephemeris ephemeris = new Ephemeris(satId, tle, start, step, count, samples);
+        store(ephemeris);
+        return ephemeris;
+    }
+
+    private synchronized void store(Ephemeris ephemeris) {
+        Ephemeris replaced = ephemerides.put(ephemeris.satId, ephemeris);
+        if (replaced != null) {
+            storedSamples -= replaced.count;
+        }
+        storedSamples += ephemeris.count;
+
+        // over budget, drop the least recently used satellites other than the one just stored
+        if (storedSamples > maxSamples) {
+            List<Ephemeris> byAccess = new ArrayList<>(ephemerides.values());
+            byAccess.sort(Comparator.comparingLong(e -> e.lastAccess));
+            for (Ephemeris candidate : byAccess) {
+                if (storedSamples <= maxSamples) break;
+                if (candidate != ephemeris && ephemerides.remove(candidate.satId, candidate)) {
+                    storedSamples -= candidate.count;
+                }
+            }
+        }
+    }
+
+    /**
+     * Propagates to a date other satellites are propagated to as well, the TEME to ITRF transform coming from
+     * frameTransforms. SGP4 and the transform are timed separately.
+     * @param target Receives x, y, z, vx, vy, vz in ITRF.
+     */
+    private void propagateShared(TLEPropagator propagator, AbsoluteDate date, double[] target, int offset) {
+        long start = System.nanoTime();
+        SpacecraftState state = propagator.propagate(date);
+        long propagated = System.nanoTime();
+        if (state.getFrame() == frameTransforms.getTeme()) {
+            PVCoordinates pv = state.getPVCoordinates();
+            frameTransforms.temeToItrf(date).toItrf(pv.getPosition(), pv.getVelocity(), target, offset);
+        } else {
+            PVCoordinates pv = state.getPVCoordinates(itrf);
+            target[offset] = pv.getPosition().getX();
+            target[offset + 1] = pv.getPosition().getY();
+            target[offset + 2] = pv.getPosition().getZ();
+            target[offset + 3] = pv.getVelocity().getX();
+            target[offset + 4] = pv.getVelocity().getY();
+            target[offset + 5] = pv.getVelocity().getZ();
+        }
+        metrics.recordPropagation(propagated - start);
+        metrics.recordFrameTransform(System.nanoTime() - propagated);
+    }
+
+    // for dates no other satellite needs, which would only churn the shared transforms
+    private PVCoordinates propagateTimed(TLEPropagator propagator, AbsoluteDate date) {
+        long start = System.nanoTime();
+        SpacecraftState state = propagator.propagate(date);
+        long propagated = System.nanoTime();
+        PVCoordinates pv = state.getPVCoordinates(itrf);
+        metrics.recordPropagation(propagated - start);
+        metrics.recordFrameTransform(System.nanoTime() - propagated);
+        return pv;
+    }
+
+    private static double secondsSinceJ2000(AbsoluteDate date) {
+        return date.durationFrom(AbsoluteDate.J2000_EPOCH);
+    }
+
+    /**
+     * Samples of one satellite on a regular grid, immutable once built.
+     */
+    private static final class Ephemeris {
+        private final int satId;
+        private final TLE tle;
+        private final double start;
+        private final double step;
+        private final int count;
+        private final double[] samples;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Ephemeris(int satId, TLE tle, double start, double step, int count, double[] samples) {
+            this.satId = satId;
+            this.tle = tle;
+            this.start = start;
+            this.step = step;
+            this.count = count;
+            this.samples = samples;
+        }
+
+        double end() {
+            return start + step * (count - 1);
+        }
+
+        boolean covers(double from, double to) {
+            return from >= start && to <= end();
+        }
+
+        boolean copySample(double t, double[] target, int targetOffset) {
+            double index = (t - start) / step;
+            int i = (int) Math.round(index);
+            if (i < 0 || i >= count || Math.abs(index - i) > 1e-9) return false;
+            System.arraycopy(samples, SAMPLE_SIZE * i, target, targetOffset, SAMPLE_SIZE);
+            return true;
+        }
+
+        /**
+         * Cubic Hermite interpolation of the position between the two samples around t.
+         */
+        void interpolate(double t, double[] target, int targetOffset) {
+            int i = Math.min((int) ((t - start) / step), count - 2);
+            double s = (t - (start + i * step)) / step;
+            double s2 = s * s;
+            double s3 = s2 * s;
+            double h00 = 2 * s3 - 3 * s2 + 1;
+            double h10 = (s3 - 2 * s2 + s) * step;
+            double h01 = -2 * s3 + 3 * s2;
+            double h11 = (s3 - s2) * step;
+
+            int a = SAMPLE_SIZE * i;
+            int b = a + SAMPLE_SIZE;
+            for (int k = 0; k < 3; k++) {
+                target[targetOffset + k] = h00 * samples[a + k] + h10 * samples[a + 3 + k]
+                        + h01 * samples[b + k] + h11 * samples[b + 3 + k];
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * FrameTransforms converts SGP4 output (TEME) to the Earth-fixed frame (ITRF) with one transform per instant shared by
+ * every satellite, instead of each state going through Orekit's frame tree on its own.
+ *
+ * At a given date the TEME to ITRF transform (precession, nutation, Earth rotation and polar motion, with the EOP
+ * interpolated for that date) is the same whatever the satellite, and it costs more than the SGP4 propagation itself.
+ * The transform of a date is computed once, reduced to its rotation matrix and rotation rate, and kept so that the
+ * other satellites at that date (all the windows of the ephemeris store share one grid, a fleet snapshot one date)
+ * only pay a matrix multiply. The least recently used dates are dropped beyond satellite.frames.cache-size.
+ *
+ * Both frames are centered on the Earth, so the transform has no translation and a position is only rotated.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.orekit.frames.Frame;
+import org.orekit.frames.Transform;
+import org.orekit.time.AbsoluteDate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+public class FrameTransforms {
+
+    private final Frame teme;
+    private final Frame itrf;
+    private final int maxSize;
+
+    // access-ordered so the eldest entry is always the least recently used one, guarded by synchronized methods
+    private final Map<AbsoluteDate, InstantTransform> transforms;
+    private long hits;
+    private long misses;
+
+    public FrameTransforms(@Qualifier("teme") Frame teme,
+                           @Qualifier("itrf") Frame itrf,
+                           SatelliteMetrics metrics,
+                           @Value("${satellite.frames.cache-size:4096}") int maxSize) {
+        this.teme = teme;
+        this.itrf = itrf;
+        this.maxSize = maxSize;
+        this.transforms = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<AbsoluteDate, InstantTransform> eldest) {
+                return size() > FrameTransforms.this.maxSize;
+            }
+        };
+        metrics.bindFrameTransforms(this);
+    }
+
+    /**
+     * @return The frame the transforms convert from, the one SGP4 states are expressed in.
+     */
+    public Frame getTeme() {
+        return teme;
+    }
+
+    /**
+     * Returns the TEME to ITRF transform of a date, computing it only if no satellite needed it yet.
+     * Two threads asking for the same new date at the same time both compute it, the results are the same.
+     * @param date The date of the transform.
+     * @return The transform.
+     */
+    public InstantTransform temeToItrf(AbsoluteDate date) {
+        synchronized (this) {
+            InstantTransform transform = transforms.get(date);
+            if (transform != null) {
+                hits++;
+                return transform;
+            }
+            misses++;
+        }
+        InstantTransform transform = new InstantTransform(teme.getTransformTo(itrf, date));
+        synchronized (this) {
+            transforms.put(date, transform);
+        }
+        return transform;
+    }
+
+    public synchronized int size() {
+        return transforms.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * The TEME to ITRF transform of one date as a plain rotation matrix and rotation rate.
+     */
+    public static final class InstantTransform {
+        // row-major
+        private final double[] m = new double[9];
+        // rotation rate of ITRF with respect to TEME, in ITRF
+        private final double wx;
+        private final double wy;
+        private final double wz;
+
+        InstantTransform(Transform transform) {
+            double[][] matrix = transform.getRotation().getMatrix();
+            for (int i = 0; i < 3; i++) {
+                System.arraycopy(matrix[i], 0, m, 3 * i, 3);
+            }
+            Vector3D rate = transform.getRotationRate();
+            wx = rate.getX();
+            wy = rate.getY();
+            wz = rate.getZ();
+        }
+
+        /**
+         * Rotates positions to ITRF in place.
+         * @param xyz x, y, z triplets one after the other, in TEME.
+         * @param offset The index of the first x.
+         * @param count The number of positions.
+         */
+        public void rotatePositions(double[] xyz, int offset, int count) {
+            for (int i = offset; i < offset + 3 * count; i += 3) {
+                double x = xyz[i];
+                double y = xyz[i + 1];
+                double z = xyz[i + 2];
+                xyz[i] = m[0] * x + m[1] * y + m[2] * z;
+                xyz[i + 1] = m[3] * x + m[4] * y + m[5] * z;
+                xyz[i + 2] = m[6] * x + m[7] * y + m[8] * z;
+            }
+        }
+
+        /**
+         * Converts a position and velocity to ITRF, the velocity relative to the rotating Earth.
+         * @param position The TEME position.
+         * @param velocity The TEME velocity.
+         * @param target Receives x, y, z, vx, vy, vz in ITRF.
+         * @param offset The index of x in target.
+         */
+        public void toItrf(Vector3D position, Vector3D velocity, double[] target, int offset) {
+            double px = position.getX();
+            double py = position.getY();
+            double pz = position.getZ();
+            double x = m[0] * px + m[1] * py + m[2] * pz;
+            double y = m[3] * px + m[4] * py + m[5] * pz;
+            double z = m[6] * px + m[7] * py + m[8] * pz;
+
+            double vx = velocity.getX();
+            double vy = velocity.getY();
+            double vz = velocity.getZ();
+            target[offset] = x;
+            target[offset + 1] = y;
+            target[offset + 2] = z;
+            // R v - w x (R p)
+            target[offset + 3] = m[0] * vx + m[1] * vy + m[2] * vz - (wy * z - wz * y);
+            target[offset + 4] = m[3] * vx + m[4] * vy + m[5] * vz - (wz * x - wx * z);
+            target[offset + 5] = m[6] * vx + m[7] * vy + m[8] * vz - (wx * y - wy * x);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/**
+ * HistoryService records the trajectory of the tracked satellites in the position_history time-series collection
+ * and serves it back over a time range, downsampled, so replays read stored points instead of propagating again.
+ *
+ * Tracked satellites are the ones listed in satellite.history.satellites plus the ones watched over the live
+ * position stream. Every satellite.history.step-seconds their positions are computed at a date aligned on the step
+ * (so the records of all satellites share one time grid) and buffered. The buffer is written with one bulk insert
+ * once satellite.history.batch-size records wait, every satellite.history.flush-ms, and on shutdown. MongoDB then
+ * groups the records of each satellite into buckets by itself, and drops them after satellite.history.retention-days.
+ *
+ * Range queries return a bounded number of points, downsampled either by time stride (the first record of each of
+ * maxPoints equal time slots) or within an error bound (see TrajectorySimplifier), capped by the stride afterwards.
+ * Stride queries only hold maxPoints records in memory, however long the range is.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.PositionHistory;
+import com.teamtech.satellitevisualizer.models.PositionRecord;
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Service
+public class HistoryService {
+    private static final Logger log = LoggerFactory.getLogger(HistoryService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final SatellitePositionService satellitePositionService;
+    private final PositionStreamService positionStreamService;
+    private final SatelliteMetrics metrics;
+    private final boolean enabled;
+    private final Set<Integer> satellites;
+    private final long stepMillis;
+    private final int batchSize;
+    private final Duration retention;
+
+    // records waiting to be written, guarded by synchronized (this)
+    private final List<PositionRecord> buffer = new ArrayList<>();
+    private volatile boolean collectionReady;
+
+    public HistoryService(MongoTemplate mongoTemplate,
+                          SatellitePositionService satellitePositionService,
+                          PositionStreamService positionStreamService,
+                          SatelliteMetrics metrics,
+                          @Value("${satellite.history.enabled:true}") boolean enabled,
+                          @Value("${satellite.history.satellites:}") Set<Integer> satellites,
+                          @Value("${satellite.history.step-seconds:60}") long stepSeconds,
+                          @Value("${satellite.history.batch-size:1000}") int batchSize,
+                          @Value("${satellite.history.retention-days:30}") long retentionDays) {
+        this.mongoTemplate = mongoTemplate;
+        this.satellitePositionService = satellitePositionService;
+        this.positionStreamService = positionStreamService;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.satellites = Set.copyOf(satellites);
+        this.stepMillis = Math.max(1, stepSeconds) * 1000;
+        this.batchSize = Math.max(1, batchSize);
+        this.retention = Duration.ofDays(retentionDays);
+    }
+
+    /**
+     * @return The satellites whose positions are recorded: the configured ones and the ones watched live.
+     */
+    public Set<Integer> getTrackedSatellites() {
+        Set<Integer> tracked = new TreeSet<>(satellites);
+        tracked.addAll(positionStreamService.getWatchedSatellites());
+        return tracked;
+    }
+
+    /**
+     * Computes the positions of the tracked satellites at the current step of the time grid and buffers them.
+     */
+    @Scheduled(fixedRateString = "#{${satellite.history.step-seconds:60} * 1000}")
+    public void record() {
+        if (!enabled) return;
+        Set<Integer> tracked = getTrackedSatellites();
+        if (tracked.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        Instant epoch = Instant.ofEpochMilli(now - now % stepMillis);
+        List<PositionRecord> records = new ArrayList<>(tracked.size());
+        for (SatellitePosition position : satellitePositionService.computePositions(tracked,
+                satellitePositionService.toAbsoluteDate(epoch))) {
+            double[] lla = position.getLla();
+            double[] xyz = position.getXyz();
+            records.add(new PositionRecord(epoch, position.getSatid(), lla[0], lla[1], lla[2], xyz[0], xyz[1], xyz[2]));
+        }
+
+        List<PositionRecord> full = null;
+        synchronized (this) {
+            buffer.addAll(records);
+            if (buffer.size() >= batchSize) {
+                full = drain();
+            }
+        }
+        if (full != null) {
+            write(full);
+        }
+    }
+
+    /**
+     * Writes the buffered records.
+     */
+    @Scheduled(fixedDelayString = "${satellite.history.flush-ms:300000}")
+    public void flush() {
+        List<PositionRecord> batch;
+        synchronized (this) {
+            if (buffer.isEmpty()) return;
+            batch = drain();
+        }
+        write(batch);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public synchronized int getBufferedRecords() {
+        return buffer.size();
+    }
+
+    /**
+     * Returns the recorded trajectory of a satellite over a time range.
+     * @param satId The satellite NORAD ID.
+     * @param from The start of the range, inclusive.
+     * @param to The end of the range, inclusive.
+     * @param maxPoints The largest number of points to return.
+     * @param tolerance The error bound in meters for error-bounded downsampling, or null to downsample by stride.
+     * @return The downsampled trajectory, with no samples if nothing was recorded in the range.
+     */
+    public PositionHistory history(int satId, Instant from, Instant to, int maxPoints, Double tolerance) {
+        long slotMillis = Math.max(1, (to.toEpochMilli() - from.toEpochMilli()) / maxPoints + 1);
+        // error-bounded downsampling needs every point, the stride is applied while reading otherwise
+        Points points = new Points(from, tolerance == null ? slotMillis : 0);
+
+        Query query = new Query(where("satid").is(satId).and("t").gte(from).lte(to)).with(Sort.by("t"));
+        try (Stream<PositionRecord> records = mongoTemplate.stream(query, PositionRecord.class)) {
+            records.forEach(points::add);
+        }
+        // records not written yet
+        List<PositionRecord> buffered = new ArrayList<>();
+        synchronized (this) {
+            for (PositionRecord record : buffer) {
+                if (record.getSatid() == satId && !record.getT().isBefore(from) && !record.getT().isAfter(to)) {
+                    buffered.add(record);
+                }
+            }
+        }
+        buffered.sort(Comparator.comparing(PositionRecord::getT));
+        buffered.forEach(points::add);
+
+        int[] selected = null;
+        if (tolerance != null) {
+            selected = TrajectorySimplifier.simplify(points.times(), points.xyz(), tolerance);
+            if (selected.length > maxPoints) {
+                selected = points.stride(selected, slotMillis / 1000.0);
+            }
+        }
+        return new PositionHistory(satId, from.toString(), to.toString(), tolerance == null ? "stride" : "error",
+                points.recorded, points.samples(points.lla, selected), points.samples(points.xyz, selected));
+    }
+
+    private List<PositionRecord> drain() {
+        List<PositionRecord> batch = new ArrayList<>(buffer);
+        buffer.clear();
+        return batch;
+    }
+
+    private void write(List<PositionRecord> batch) {
+        try {
+            ensureCollection();
+            for (int from = 0; from < batch.size(); from += batchSize) {
+                List<PositionRecord> chunk = batch.subList(from, Math.min(from + batchSize, batch.size()));
+                mongoTemplate.insert(chunk, PositionRecord.class);
+                metrics.recordHistoryRecords("written", chunk.size());
+            }
+        } catch (RuntimeException e) {
+            // the positions can still be propagated on request, a lost batch only leaves a gap in the replay
+            log.warn("Failed to write {} history records: {}", batch.size(), e.getMessage());
+            metrics.recordHistoryRecords("dropped", batch.size());
+        }
+    }
+
+    // the collection has to be created explicitly to be a time-series one, done lazily so startup never waits on Mongo
+    private void ensureCollection() {
+        if (collectionReady) return;
+        synchronized (this) {
+            if (collectionReady) return;
+            if (!mongoTemplate.collectionExists(PositionRecord.class)) {
+                mongoTemplate.createCollection(PositionRecord.class, CollectionOptions.timeSeries("t", options -> options
+                        .metaField("satid")
+                        .granularity(Granularity.MINUTES)
+                        .expireAfter(retention)));
+                log.info("Created the position_history time-series collection, records expire after {}", retention);
+            }
+            collectionReady = true;
+        }
+    }
+
+    /**
+     * Points of one history query in primitive arrays, optionally keeping only the first point of each time slot.
+     */
+    private static final class Points {
+        private final long start;
+        private final long slotMillis;
+        private long lastSlot = -1;
+        private long lastOffset = -1;
+        private int recorded;
+        private int size;
+        private double[] times = new double[64];
+        private double[] lla = new double[3 * 64];
+        private double[] xyz = new double[3 * 64];
+
+        Points(Instant start, long slotMillis) {
+            this.start = start.toEpochMilli();
+            this.slotMillis = slotMillis;
+        }
+
+        void add(PositionRecord record) {
+            recorded++;
+            long offset = record.getT().toEpochMilli() - start;
+            // a record both written and still buffered is only counted once
+            if (offset <= lastOffset) {
+                recorded--;
+                return;
+            }
+            lastOffset = offset;
+            if (slotMillis > 0) {
+                long slot = offset / slotMillis;
+                if (slot == lastSlot) return;
+                lastSlot = slot;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, 2 * size);
+                lla = Arrays.copyOf(lla, 6 * size);
+                xyz = Arrays.copyOf(xyz, 6 * size);
+            }
+            times[size] = offset / 1000.0;
+            lla[3 * size] = record.getLat();
+            lla[3 * size + 1] = record.getLon();
+            lla[3 * size + 2] = record.getAlt();
+            xyz[3 * size] = record.getX();
+            xyz[3 * size + 1] = record.getY();
+            xyz[3 * size + 2] = record.getZ();
+            size++;
+        }
+
+        double[] times() {
+            return Arrays.copyOf(times, size);
+        }
+
+        double[] xyz() {
+            return Arrays.copyOf(xyz, 3 * size);
+        }
+
+        // the first of the given points in each time slot
+        int[] stride(int[] indices, double slotSeconds) {
+            int[] result = new int[indices.length];
+            int count = 0;
+            long lastSlot = -1;
+            for (int index : indices) {
+                long slot = (long) (times[index] / slotSeconds);
+                if (slot != lastSlot) {
+                    result[count++] = index;
+                    lastSlot = slot;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        PositionSamples samples(double[] values, int[] indices) {
+            int count = indices == null ? size : indices.length;
+            double[] sampleTimes = new double[count];
+            double[] sampleValues = new double[3 * count];
+            for (int i = 0; i < count; i++) {
+                int index = indices == null ? i : indices[i];
+                sampleTimes[i] = times[index];
+                System.arraycopy(values, 3 * index, sampleValues, 3 * i, 3);
+            }
+            return new PositionSamples(3, sampleTimes, sampleValues);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * LineOfSight tells whether two satellites see each other, i.e. whether the segment between their Earth-fixed
+ * positions misses the Earth, in closed form: scaling z by a / b turns the ellipsoid into a sphere of radius a and
+ * keeps segments straight, so the segment is clear when its point nearest the center is outside that sphere. That is
+ * a dozen flops instead of marching along the line, and it is exact on the ellipsoid instead of a sphere.
+ *
+ * A grazing height raises both semi-axes, for links that must stay above the denser atmosphere: the raised surface is
+ * itself taken as an ellipsoid, off the true constant-height surface by less than a meter for a few hundred km.
+ *
+ * The visibility matrix of many satellites is pruned before the exact test. A satellite at radius r sees the inscribed
+ * sphere (radius b) up to the angle acos(b / r) from the point below it, so two satellites further apart in angle than
+ * the sum of theirs cannot see each other. Pruning on the distance between the satellites instead would hardly prune
+ * a LEO shell, whose satellites all lie within the reach of each other's horizons. The satellites are filed from the
+ * lowest up in a grid of their directions (unit vectors), and every one only looks in the cells within twice its
+ * angle, so every pair is visited once at most and a LEO satellite only visits the part of the sky it may see.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public final class LineOfSight {
+
+    // cells along the chord a typical satellite looks within, and along an axis of the grid at most
+    private static final int CELLS_PER_CHORD = 4;
+    private static final int MAX_CELLS = 32;
+
+    private final double equatorialRadius;
+    private final double polarRadius;
+    // z scale turning the ellipsoid into a sphere of the equatorial radius
+    private final double zScale;
+
+    /**
+     * @param equatorialRadius The equatorial radius of the Earth in meters.
+     * @param flattening The flattening of the Earth.
+     * @param grazingHeight The height in meters the line between two satellites must stay above, 0 for the surface.
+     */
+    public LineOfSight(double equatorialRadius, double flattening, double grazingHeight) {
+        if (!(grazingHeight >= 0)) {
+            throw new IllegalArgumentException("The grazing height must be positive, got " + grazingHeight);
+        }
+        this.equatorialRadius = equatorialRadius + grazingHeight;
+        this.polarRadius = equatorialRadius * (1 - flattening) + grazingHeight;
+        this.zScale = this.equatorialRadius / this.polarRadius;
+    }
+
+    /**
+     * Tells whether the segment between two points misses the (raised) ellipsoid. A point under the surface sees
+     * nothing.
+     * @return true if the two points see each other.
+     */
+    public boolean isClear(double x1, double y1, double z1, double x2, double y2, double z2) {
+        z1 *= zScale;
+        z2 *= zScale;
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+        double length2 = dx * dx + dy * dy + dz * dz;
+        // where the line is nearest the center, clamped to the segment
+        double t = length2 > 0 ? -(x1 * dx + y1 * dy + z1 * dz) / length2 : 0;
+        if (t < 0) {
+            t = 0;
+        } else if (t > 1) {
+            t = 1;
+        }
+        double x = x1 + t * dx;
+        double y = y1 + t * dy;
+        double z = z1 + t * dz;
+        return x * x + y * y + z * z > equatorialRadius * equatorialRadius;
+    }
+
+    /**
+     * Computes which satellites see each other.
+     * @param xyz The Earth-fixed x, y, z of every satellite in meters, satellite k at 3k. A satellite with NaN
+     *            coordinates sees nothing.
+     * @param count The number of satellites.
+     * @return The satellites every satellite sees, as indices in no particular order, both ways.
+     */
+    public int[][] adjacency(double[] xyz, int count) {
+        // the direction of every satellite, and the cosine and sine of the angle it sees the inscribed sphere up to
+        double[] direction = new double[3 * count];
+        double[] cos = new double[count];
+        double[] sin = new double[count];
+        List<Integer> order = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            double r = Math.sqrt(xyz[3 * k] * xyz[3 * k] + xyz[3 * k + 1] * xyz[3 * k + 1] + xyz[3 * k + 2] * xyz[3 * k + 2]);
+            // NaN and satellites inside the inscribed sphere are left out
+            if (!(r > polarRadius)) continue;
+            for (int axis = 0; axis < 3; axis++) {
+                direction[3 * k + axis] = xyz[3 * k + axis] / r;
+            }
+            cos[k] = polarRadius / r;
+            sin[k] = Math.sqrt(1 - cos[k] * cos[k]);
+            order.add(k);
+        }
+        Links links = new Links(count);
+        if (order.size() < 2) {
+            return links.toAdjacency();
+        }
+
+        // lowest first, so the satellites already filed see the inscribed sphere up to a smaller angle than the next
+        // one: both are within twice its angle, a chord of 2 sin on the unit sphere
+        order.sort(Comparator.comparingDouble(k -> -cos[k]));
+        double[] chords = new double[order.size()];
+        for (int n = 0; n < chords.length; n++) {
+            chords[n] = 2 * sin[order.get(n)];
+        }
+        Arrays.sort(chords);
+        Grid grid = new Grid(count, chords[chords.length / 2] / CELLS_PER_CHORD);
+
+        for (int i : order) {
+            double xi = direction[3 * i];
+            double yi = direction[3 * i + 1];
+            double zi = direction[3 * i + 2];
+            // the cells whose center is close enough for one of their points to be within the chord
+            double chord = 2 * sin[i];
+            double reach = chord + grid.halfDiagonal;
+            int x0 = grid.cell(xi - chord), x1 = grid.cell(xi + chord);
+            int y0 = grid.cell(yi - chord), y1 = grid.cell(yi + chord);
+            int z0 = grid.cell(zi - chord), z1 = grid.cell(zi + chord);
+            for (int cx = x0; cx <= x1; cx++) {
+                double dx = grid.center(cx) - xi;
+                for (int cy = y0; cy <= y1; cy++) {
+                    double dy = grid.center(cy) - yi;
+                    for (int cz = z0; cz <= z1; cz++) {
+                        double dz = grid.center(cz) - zi;
+                        if (dx * dx + dy * dy + dz * dz > reach * reach) continue;
+                        for (int j = grid.first(cx, cy, cz); j >= 0; j = grid.next[j]) {
+                            // further apart than the sum of their angles, the inscribed sphere is between them
+                            double dot = xi * direction[3 * j] + yi * direction[3 * j + 1] + zi * direction[3 * j + 2];
+                            if (dot < cos[i] * cos[j] - sin[i] * sin[j]) continue;
+                            if (isClear(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2],
+                                    xyz[3 * j], xyz[3 * j + 1], xyz[3 * j + 2])) {
+                                links.add(i, j);
+                            }
+                        }
+                    }
+                }
+            }
+            grid.add(i, grid.cell(xi), grid.cell(yi), grid.cell(zi));
+        }
+        return links.toAdjacency();
+    }
+
+    /**
+     * The satellites filed so far by direction, in cubic cells over [-1, 1] on every axis, each cell a linked list.
+     */
+    private static final class Grid {
+        private final int size;
+        private final double cell;
+        private final double halfDiagonal;
+        private final int[] heads;
+        private final int[] next;
+
+        Grid(int count, double cell) {
+            this.size = Math.max(1, Math.min(MAX_CELLS, (int) Math.ceil(2 / cell)));
+            this.cell = 2.0 / size;
+            this.halfDiagonal = this.cell * Math.sqrt(3) / 2;
+            this.heads = new int[size * size * size];
+            this.next = new int[count];
+            Arrays.fill(heads, -1);
+        }
+
+        // the cell of a coordinate, clamped to the grid
+        int cell(double coordinate) {
+            int c = (int) Math.floor((coordinate + 1) / cell);
+            return c < 0 ? 0 : Math.min(c, size - 1);
+        }
+
+        double center(int c) {
+            return (c + 0.5) * cell - 1;
+        }
+
+        // the last satellite filed in a cell, -1 if it is empty
+        int first(int cx, int cy, int cz) {
+            return heads[(cx * size + cy) * size + cz];
+        }
+
+        void add(int k, int cx, int cy, int cz) {
+            int c = (cx * size + cy) * size + cz;
+            next[k] = heads[c];
+            heads[c] = k;
+        }
+    }
+
+    /**
+     * The links found, every row growing as its links are found until the adjacency lists are trimmed.
+     */
+    private static final class Links {
+        private final int[][] rows;
+        private final int[] degree;
+
+        Links(int count) {
+            this.rows = new int[count][];
+            this.degree = new int[count];
+        }
+
+        void add(int i, int j) {
+            append(i, j);
+            append(j, i);
+        }
+
+        private void append(int k, int other) {
+            if (rows[k] == null) {
+                rows[k] = new int[16];
+            } else if (degree[k] == rows[k].length) {
+                rows[k] = Arrays.copyOf(rows[k], 2 * degree[k]);
+            }
+            rows[k][degree[k]++] = other;
+        }
+
+        int[][] toAdjacency() {
+            for (int k = 0; k < rows.length; k++) {
+                rows[k] = rows[k] == null ? new int[0] : Arrays.copyOf(rows[k], degree[k]);
+            }
+            return rows;
+        }
+    }
+}
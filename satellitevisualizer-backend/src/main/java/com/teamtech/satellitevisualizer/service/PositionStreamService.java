@@ -0,0 +1,211 @@
+/**
+ * PositionStreamService pushes live satellite positions to clients over Server-Sent Events.
+ *
+ * Clients subscribe to a set of NORAD IDs. A single scheduled tick (every satellite.stream.tick-ms) computes the
+ * position of every satellite that at least one client watches, once, no matter how many clients watch it, and
+ * then fans a frame out to each subscriber with only the satellites it asked for. The watched satellites are only
+ * read from the database and prepared for SGP4 again when the watched set changes or after a TleUpdatedEvent.
+ *
+ * Every subscriber holds at most one pending frame. If a client is still busy receiving the previous frame when
+ * the next tick comes, the pending frame is replaced by the newer one (the stale one is dropped), so a slow client
+ * only ever falls one frame behind and never makes the tick or the other clients wait.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import org.orekit.time.AbsoluteDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+public class PositionStreamService {
+    private static final Logger log = LoggerFactory.getLogger(PositionStreamService.class);
+
+    private final SatellitePositionService satellitePositionService;
+    private final SatelliteRepository satelliteRepository;
+    private final ExecutorService streamExecutor;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // slots taken by subscribers, reserved before a subscriber is added so concurrent subscribes cannot exceed the limit
+    private final AtomicInteger slots = new AtomicInteger();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    // the watched satellites prepared for SGP4, only touched by the tick
+    private final AtomicBoolean catalogChanged = new AtomicBoolean(true);
+    private Set<Integer> preparedIds = Set.of();
+    private SatellitePositionService.PreparedSatellites prepared;
+
+    public PositionStreamService(SatellitePositionService satellitePositionService,
+                                 SatelliteRepository satelliteRepository,
+                                 @Qualifier("streamExecutor") ExecutorService streamExecutor,
+                                 @Value("${satellite.stream.max-subscribers:1000}") int maxSubscribers,
+                                 @Value("${satellite.stream.timeout-minutes:30}") long timeoutMinutes) {
+        this.satellitePositionService = satellitePositionService;
+        this.satelliteRepository = satelliteRepository;
+        this.streamExecutor = streamExecutor;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMinutes * 60_000;
+    }
+
+    /**
+     * Registers a client for the given satellites.
+     * @param satIds The NORAD IDs the client wants positions for.
+     * @return The emitter frames are sent through, or null if the maximum number of subscribers is reached.
+     */
+    public SseEmitter subscribe(Set<Integer> satIds) {
+        int taken;
+        do {
+            taken = slots.get();
+            if (taken >= maxSubscribers) return null;
+        } while (!slots.compareAndSet(taken, taken + 1));
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, Set.copyOf(satIds));
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    // releases the subscriber's slot once, whichever of completion, timeout, error or a failed send comes first
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            slots.decrementAndGet();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return The satellites at least one subscriber watches.
+     */
+    public Set<Integer> getWatchedSatellites() {
+        Set<Integer> watched = new TreeSet<>();
+        for (Subscriber subscriber : subscribers) {
+            watched.addAll(subscriber.satIds);
+        }
+        return watched;
+    }
+
+    /**
+     * Computes the positions of every watched satellite once and hands each subscriber its frame, reloading and
+     * preparing the watched satellites first if the watched set or a TLE changed since the last tick.
+     */
+    @Scheduled(fixedRateString = "${satellite.stream.tick-ms:1000}")
+    public void tick() {
+        if (subscribers.isEmpty()) return;
+
+        Set<Integer> watched = getWatchedSatellites();
+
+        Instant epoch = Instant.now();
+        AbsoluteDate date = satellitePositionService.toAbsoluteDate(epoch);
+        if (catalogChanged.getAndSet(false) || !watched.equals(preparedIds)) {
+            try {
+                prepared = satellitePositionService.prepare(satelliteRepository.findBySatidIn(watched), date);
+                preparedIds = watched;
+            } catch (DataAccessException e) {
+                catalogChanged.set(true);
+                log.warn("Failed to load the watched satellites: {}", e.getMessage());
+                return;
+            }
+        }
+        Map<Integer, SatellitePosition> positions = new HashMap<>();
+        for (SatellitePosition position : satellitePositionService.computePositionsOf(prepared, date)) {
+            positions.put(position.getSatid(), position);
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            List<SatellitePosition> frame = new ArrayList<>(subscriber.satIds.size());
+            for (Integer satId : subscriber.satIds) {
+                SatellitePosition position = positions.get(satId);
+                if (position != null) frame.add(position);
+            }
+            Map<String, Object> event = new HashMap<>();
+            event.put("epoch", epoch.toString());
+            event.put("positions", frame);
+            subscriber.offer(event);
+        }
+    }
+
+    @EventListener
+    public void onTleUpdated(TleUpdatedEvent event) {
+        catalogChanged.set(true);
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<Integer> satIds;
+        private final AtomicReference<Map<String, Object>> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, Set<Integer> satIds) {
+            this.emitter = emitter;
+            this.satIds = satIds;
+        }
+
+        void offer(Map<String, Object> frame) {
+            if (pending.getAndSet(frame) != null) {
+                droppedFrames.incrementAndGet();
+            }
+            if (sending.compareAndSet(false, true)) {
+                streamExecutor.execute(this::drain);
+            }
+        }
+
+        // sends the latest pending frame until there is none left, only one drain runs per subscriber at a time
+        private void drain() {
+            while (true) {
+                Map<String, Object> frame = pending.getAndSet(null);
+                if (frame == null) {
+                    sending.set(false);
+                    // a frame offered between the getAndSet and the set(false) would otherwise wait a whole tick
+                    if (pending.get() == null || !sending.compareAndSet(false, true)) return;
+                    continue;
+                }
+                try {
+                    emitter.send(SseEmitter.event().name("positions").data(frame, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    // client went away
+                    remove(this);
+                    emitter.completeWithError(e);
+                    sending.set(false);
+                    return;
+                }
+            }
+        }
+    }
+}
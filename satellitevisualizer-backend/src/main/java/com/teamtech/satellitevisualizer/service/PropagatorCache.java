@@ -0,0 +1,116 @@
+/**
+ * PropagatorCache keeps SGP4 propagators for recently used satellites so they are not re-initialised on every request.
+ * Entries are keyed by the satellite's NORAD ID and the epoch of its TLE, the cache holds at most
+ * satellite.propagator-cache.max-size entries and evicts the least recently used one when it is full.
+ *
+ * Orekit propagators keep internal state and are not thread-safe, so every entry holds a small pool of propagators
+ * built from the same TLE. A propagator is borrowed by one thread for the duration of withPropagator and returned
+ * to the pool afterwards, which lets many request threads propagate the same satellite at the same time.
+ * Entries of a satellite are dropped when a TleUpdatedEvent is published for it.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+@Component
+public class PropagatorCache {
+
+    private final int maxSize;
+    private final int poolSize;
+
+    // access-ordered so the eldest entry is always the least recently used one, guarded by synchronized methods
+    private final Map<Key, Entry> entries;
+
+    public PropagatorCache(@Value("${satellite.propagator-cache.max-size:1000}") int maxSize,
+                           @Value("${satellite.propagator-cache.pool-size:4}") int poolSize) {
+        this.maxSize = maxSize;
+        this.poolSize = poolSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > PropagatorCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Runs an action with a propagator for the given TLE, building one only if no idle propagator is cached.
+     * The propagator must not escape the action, it is handed to other threads once the action returns.
+     * @param satId The satellite NORAD ID.
+     * @param tle The TLE the propagator is built from.
+     * @param action The work to do with the propagator.
+     * @return The result of the action.
+     */
+    public <T> T withPropagator(int satId, TLE tle, Function<TLEPropagator, T> action) {
+        Entry entry = entryFor(satId, tle);
+        TLEPropagator propagator = entry.borrow();
+        try {
+            return action.apply(propagator);
+        } finally {
+            entry.release(propagator);
+        }
+    }
+
+    @EventListener
+    public void onTleUpdated(TleUpdatedEvent event) {
+        invalidate(event.satId());
+    }
+
+    /**
+     * Drops every cached propagator of a satellite, called whenever a new TLE is stored for it.
+     * @param satId The satellite NORAD ID.
+     */
+    public synchronized void invalidate(int satId) {
+        entries.keySet().removeIf(key -> key.satId() == satId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Entry entryFor(int satId, TLE tle) {
+        return entries.computeIfAbsent(new Key(satId, tle.getDate()), key -> new Entry(tle, poolSize));
+    }
+
+    private record Key(int satId, AbsoluteDate epoch) {
+    }
+
+    /**
+     * Propagators built from one TLE. Idle ones wait in a bounded queue, extra ones created under contention
+     * are simply dropped when the queue is already full.
+     */
+    private static final class Entry {
+        private final TLE tle;
+        private final BlockingQueue<TLEPropagator> idle;
+
+        Entry(TLE tle, int poolSize) {
+            this.tle = tle;
+            this.idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        }
+
+        TLEPropagator borrow() {
+            TLEPropagator propagator = idle.poll();
+            return propagator != null ? propagator : TLEPropagator.selectExtrapolator(tle);
+        }
+
+        void release(TLEPropagator propagator) {
+            idle.offer(propagator);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * SatelliteCache is a read-through cache in front of SatelliteRepository.findBySatid, so the handful of lookups one
+ * request makes for the same satellite (the controller, fetchTLE, computeLLA, getXYZ, ...) hit MongoDB only once.
+ * Every entry holds the satellite document together with its parsed TLE, so the TLE is not parsed again either.
+ * Satellites that do not exist are cached too, until something is saved for them.
+ *
+ * The cache holds at most satellite.cache.max-size entries and evicts the least recently used one when it is full,
+ * entries expire satellite.cache.ttl-seconds after they were loaded. Writes made through save() replace the entry
+ * with the saved document, and entries of a satellite are dropped when a TleUpdatedEvent is published for it
+ * (fetchAndSaveTLE, the TLE refresh and the catalog ingest all write behind the repository's back). The coordinates
+ * the SnapshotWriter persists are copied into the cached entries, which keep their TLE and their age.
+ *
+ * Lookups that miss load the document outside of the lock. A load that races with an invalidation is not cached,
+ * so a document read before a write can never replace the one written.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.CacheStats;
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+@Component
+public class SatelliteCache {
+
+    private final SatelliteRepository satelliteRepository;
+    private final int maxSize;
+    private final long ttlNanos;
+
+    // access-ordered so the eldest entry is always the least recently used one, guarded by synchronized methods
+    private final Map<Integer, Entry> entries;
+    // bumped by every write and invalidation, a load only caches its result if nothing changed while it ran
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    public SatelliteCache(SatelliteRepository satelliteRepository,
+                          SatelliteMetrics metrics,
+                          @Value("${satellite.cache.max-size:10000}") int maxSize,
+                          @Value("${satellite.cache.ttl-seconds:600}") double ttlSeconds) {
+        this.satelliteRepository = satelliteRepository;
+        this.maxSize = maxSize;
+        this.ttlNanos = (long) (ttlSeconds * 1e9);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() <= SatelliteCache.this.maxSize) return false;
+                evictions++;
+                return true;
+            }
+        };
+        metrics.bindSatelliteCache(this);
+    }
+
+    /**
+     * Returns a satellite's document, loading it from the database if it is not cached.
+     * The document is shared with other callers, save it through save() after changing it.
+     * @param satId The satellite NORAD ID.
+     * @return The SatelliteData, or null if there is no such satellite.
+     */
+    public SatelliteData get(int satId) {
+        return entry(satId).satellite();
+    }
+
+    /**
+     * Returns a satellite's parsed TLE, loading the satellite from the database if it is not cached.
+     * @param satId The satellite NORAD ID.
+     * @return The TLE, or an empty Optional if there is no such satellite or its TLE is missing or invalid.
+     */
+    public Optional<TLE> getTLE(int satId) {
+        return Optional.ofNullable(entry(satId).tle());
+    }
+
+    /**
+     * Saves a satellite to the database and caches the saved document.
+     * Its TLE is only parsed again if it changed.
+     * @param satellite The satellite to save.
+     * @return The saved SatelliteData.
+     */
+    public SatelliteData save(SatelliteData satellite) {
+        SatelliteData saved = satelliteRepository.save(satellite);
+        synchronized (this) {
+            generation++;
+            Entry previous = entries.get(saved.getSatid());
+            TLE tle = previous != null && previous.satellite() != null
+                    && Objects.equals(previous.satellite().getTle(), saved.getTle())
+                    ? previous.tle()
+                    : parse(saved);
+            entries.put(saved.getSatid(), new Entry(saved, tle, System.nanoTime()));
+        }
+        return saved;
+    }
+
+    @EventListener
+    public void onTleUpdated(TleUpdatedEvent event) {
+        invalidate(event.satId());
+    }
+
+    /**
+     * Drops the cached document of a satellite, called whenever it is written without going through save().
+     * @param satId The satellite NORAD ID.
+     */
+    public synchronized void invalidate(int satId) {
+        generation++;
+        if (entries.remove(satId) != null) {
+            invalidations++;
+        }
+    }
+
+    /**
+     * Replaces the coordinates of a cached satellite after they were written, keeping its TLE and when it was loaded.
+     * Nothing is loaded if the satellite is not cached, and in-flight loads of other satellites are not affected.
+     * @param satId The satellite NORAD ID.
+     * @param geodeticCoordinates The written geodetic coordinates, or null if they were not written.
+     * @param xyzCoordinates The written cartesian coordinates, or null if they were not written.
+     */
+    public synchronized void updateCoordinates(int satId, PositionSamples geodeticCoordinates,
+                                               PositionSamples xyzCoordinates) {
+        Entry entry = entries.get(satId);
+        if (entry == null || entry.satellite() == null) return;
+        // a copy, the cached document is shared with callers
+        SatelliteData satellite = entry.satellite();
+        SatelliteData updated = new SatelliteData(satId, satellite.getSatname(), satellite.getTle(),
+                geodeticCoordinates != null ? geodeticCoordinates : satellite.getGeodeticCoordinates(),
+                xyzCoordinates != null ? xyzCoordinates : satellite.getXyzCoordinates());
+        entries.put(satId, new Entry(updated, entry.tle(), entry.loadedAt()));
+    }
+
+    public synchronized void clear() {
+        generation++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized CacheStats getStats() {
+        long lookups = hits + misses;
+        return new CacheStats(entries.size(), maxSize, hits, misses, evictions, expirations, invalidations,
+                lookups == 0 ? 0 : (double) hits / lookups);
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions + expirations;
+    }
+
+    private Entry entry(int satId) {
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(satId);
+            if (entry != null && System.nanoTime() - entry.loadedAt() < ttlNanos) {
+                hits++;
+                return entry;
+            }
+            if (entry != null) {
+                entries.remove(satId);
+                expirations++;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        SatelliteData satellite = satelliteRepository.findBySatid(satId);
+        Entry loaded = new Entry(satellite, parse(satellite), System.nanoTime());
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(satId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    private static TLE parse(SatelliteData satellite) {
+        return satellite == null ? null : SatellitePositionService.parseTLE(satellite.getTle()).orElse(null);
+    }
+
+    private record Entry(SatelliteData satellite, TLE tle, long loadedAt) {
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * SatelliteMetrics holds the Micrometer meters of the application, exposed through /actuator/metrics
+ * and /actuator/prometheus:
+ *  - satellite.propagation: time spent in SGP4 (TLEPropagator.propagate)
+ *  - satellite.frame.transform: time spent converting propagated states to the Earth-fixed frame
+ *  - satellite.frame.transforms: TEME to ITRF transforms shared between satellites (hit) or computed (miss)
+ *  - satellite.n2yo.errors / satellite.n2yo.retries: failed and retried N2YO requests, by reason
+ *  - satellite.refresh.duration and satellite.refresh.tles: duration and outcome of the TLE refresh cycles
+ *  - satellite.czml.bytes / satellite.czml.samples: size of the CZML documents written
+ *  - satellite.cache.requests / satellite.cache.evictions / satellite.cache.size: the satellite cache statistics
+ *  - satellite.ephemeris.payload.requests / satellite.ephemeris.payload.bytes: the binary ephemeris payload cache
+ *  - satellite.history.records: position history records written to / dropped from the time-series collection
+ *  - satellite.compute.wait / satellite.compute.time / satellite.compute.rejected / satellite.compute.in-flight: the
+ *    requests of every compute lane, time spent waiting for a compute thread versus running on it
+ *  - satellite.region.index / satellite.region.satellites: rebuilds of the subpoint index and the satellites in it
+ *  - satellite.conjunction.screening / satellite.conjunction.pairs: duration of the conjunction screenings and the
+ *    pairs every stage kept
+ *  - satellite.snapshot.queue.depth / satellite.snapshot.snapshots / satellite.snapshot.flush: the write-behind
+ *    of position snapshots
+ *
+ * The N2YO call latency (http.client.requests), the repository latency (spring.data.repository.invocations)
+ * and the Mongo command latency (mongodb.driver.commands) are recorded by Spring Boot's own instrumentation.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Component
+public class SatelliteMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer propagation;
+    private final Timer frameTransform;
+    private final Timer refresh;
+    private final Timer snapshotFlush;
+    private final Timer regionIndex;
+    private final Timer screening;
+    private final Counter n2yoRetries;
+    private final DistributionSummary czmlBytes;
+    private final DistributionSummary czmlSamples;
+
+    public SatelliteMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.propagation = Timer.builder("satellite.propagation")
+                .description("SGP4 propagation of one state")
+                .register(registry);
+        this.frameTransform = Timer.builder("satellite.frame.transform")
+                .description("Conversion of a propagated state to the Earth-fixed frame")
+                .register(registry);
+        this.refresh = Timer.builder("satellite.refresh.duration")
+                .description("Duration of a full TLE refresh from N2YO")
+                .register(registry);
+        this.snapshotFlush = Timer.builder("satellite.snapshot.flush")
+                .description("Bulk write of the pending position snapshots")
+                .register(registry);
+        this.regionIndex = Timer.builder("satellite.region.index")
+                .description("Rebuild of the subpoint index from the positions of a tick")
+                .register(registry);
+        this.screening = Timer.builder("satellite.conjunction.screening")
+                .description("Duration of a conjunction screening of the catalog")
+                .register(registry);
+        this.n2yoRetries = Counter.builder("satellite.n2yo.retries")
+                .description("N2YO requests retried after a failure")
+                .register(registry);
+        this.czmlBytes = DistributionSummary.builder("satellite.czml.bytes")
+                .description("Size of the CZML documents written")
+                .baseUnit("bytes")
+                .register(registry);
+        this.czmlSamples = DistributionSummary.builder("satellite.czml.samples")
+                .description("Position samples per CZML document")
+                .register(registry);
+    }
+
+    public void recordPropagation(long nanos) {
+        propagation.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFrameTransform(long nanos) {
+        frameTransform.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param reason What went wrong: an HTTP status code, "io" or "parse".
+     */
+    public void recordN2yoError(String reason) {
+        registry.counter("satellite.n2yo.errors", "reason", reason).increment();
+    }
+
+    public void recordN2yoRetry() {
+        n2yoRetries.increment();
+    }
+
+    public void recordRefresh(long elapsedMs, long changed, long unchanged, long failed) {
+        refresh.record(elapsedMs, TimeUnit.MILLISECONDS);
+        registry.counter("satellite.refresh.tles", "result", "changed").increment(changed);
+        registry.counter("satellite.refresh.tles", "result", "unchanged").increment(unchanged);
+        registry.counter("satellite.refresh.tles", "result", "failed").increment(failed);
+    }
+
+    public void recordCzml(long bytes, int samples) {
+        czmlBytes.record(bytes);
+        czmlSamples.record(samples);
+    }
+
+    /**
+     * @param result "written", or "dropped" when the insert failed.
+     */
+    public void recordHistoryRecords(String result, int records) {
+        registry.counter("satellite.history.records", "result", result).increment(records);
+    }
+
+    public void recordComputeWait(String lane, long nanos) {
+        Timer.builder("satellite.compute.wait")
+                .description("Time a request waited for a compute thread")
+                .tag("lane", lane)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordComputeTime(String lane, long nanos) {
+        Timer.builder("satellite.compute.time")
+                .description("Time a request ran on a compute thread")
+                .tag("lane", lane)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param reason "full" when the lane had too many requests (429), "timeout" when the request waited too long
+     * and "shutdown" when the pool no longer accepts work (503).
+     */
+    public void recordComputeRejected(String lane, String reason) {
+        registry.counter("satellite.compute.rejected", "lane", lane, "reason", reason).increment();
+    }
+
+    /**
+     * Registers a gauge of the requests of a compute lane waiting or running, sampled on every scrape.
+     */
+    public void bindComputeLane(String lane, Supplier<Number> inFlight) {
+        Gauge.builder("satellite.compute.in-flight", inFlight)
+                .description("Requests of a compute lane waiting or running")
+                .tag("lane", lane)
+                .register(registry);
+    }
+
+    public void recordRegionIndex(long nanos) {
+        regionIndex.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers a gauge reading the size of the subpoint index, sampled on every scrape.
+     */
+    public void bindSubpointIndex(SubpointIndex index) {
+        Gauge.builder("satellite.region.satellites", index, SubpointIndex::size)
+                .description("Satellites in the subpoint index")
+                .register(registry);
+    }
+
+    public void recordScreening(long elapsedMs, long gridPairs, long candidates, long conjunctions) {
+        screening.record(elapsedMs, TimeUnit.MILLISECONDS);
+        registry.counter("satellite.conjunction.pairs", "stage", "grid").increment(gridPairs);
+        registry.counter("satellite.conjunction.pairs", "stage", "candidate").increment(candidates);
+        registry.counter("satellite.conjunction.pairs", "stage", "conjunction").increment(conjunctions);
+    }
+
+    public void recordSnapshotFlush(long nanos) {
+        snapshotFlush.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers meters reading the state of the snapshot write-behind queue, they are sampled on every scrape.
+     */
+    public void bindSnapshotWriter(SnapshotWriter writer) {
+        Gauge.builder("satellite.snapshot.queue.depth", writer, SnapshotWriter::getQueueDepth)
+                .description("Satellites with a snapshot waiting to be written")
+                .register(registry);
+        FunctionCounter.builder("satellite.snapshot.snapshots", writer, SnapshotWriter::getQueued)
+                .description("Snapshots queued for a satellite that had none pending")
+                .tag("result", "queued")
+                .register(registry);
+        FunctionCounter.builder("satellite.snapshot.snapshots", writer, SnapshotWriter::getMerged)
+                .description("Snapshots merged into the pending snapshot of the same satellite")
+                .tag("result", "merged")
+                .register(registry);
+        FunctionCounter.builder("satellite.snapshot.snapshots", writer, SnapshotWriter::getDropped)
+                .description("Snapshots dropped because the queue was full or the write failed")
+                .tag("result", "dropped")
+                .register(registry);
+        FunctionCounter.builder("satellite.snapshot.snapshots", writer, SnapshotWriter::getWritten)
+                .description("Snapshots written to the database")
+                .tag("result", "written")
+                .register(registry);
+    }
+
+    /**
+     * Registers meters reading the statistics of the satellite cache, they are sampled on every scrape.
+     */
+    public void bindSatelliteCache(SatelliteCache cache) {
+        FunctionCounter.builder("satellite.cache.requests", cache, SatelliteCache::hits)
+                .description("Satellite lookups served from the cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("satellite.cache.requests", cache, SatelliteCache::misses)
+                .description("Satellite lookups that went to the database")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("satellite.cache.evictions", cache, SatelliteCache::evictions)
+                .description("Satellite cache entries evicted because the cache was full or expired")
+                .register(registry);
+        Gauge.builder("satellite.cache.size", cache, SatelliteCache::size)
+                .description("Satellites in the cache")
+                .register(registry);
+    }
+
+    /**
+     * Registers meters reading the statistics of the shared frame transforms, they are sampled on every scrape.
+     */
+    public void bindFrameTransforms(FrameTransforms transforms) {
+        FunctionCounter.builder("satellite.frame.transforms", transforms, FrameTransforms::hits)
+                .description("TEME to ITRF transforms reused from another satellite at the same date")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("satellite.frame.transforms", transforms, FrameTransforms::misses)
+                .description("TEME to ITRF transforms computed")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * Registers meters reading the statistics of the ephemeris payload cache, they are sampled on every scrape.
+     */
+    public void bindEphemerisPayloads(EphemerisPayloadCache cache) {
+        FunctionCounter.builder("satellite.ephemeris.payload.requests", cache, EphemerisPayloadCache::hits)
+                .description("Ephemeris payloads served from the cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("satellite.ephemeris.payload.requests", cache, EphemerisPayloadCache::misses)
+                .description("Ephemeris payloads that had to be built")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("satellite.ephemeris.payload.bytes", cache, EphemerisPayloadCache::getBytes)
+                .description("Gzipped size of the cached ephemeris payloads")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
@@ -6,73 +6,97 @@
 
 package com.teamtech.satellitevisualizer.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.PositionSeries;
 import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.models.VisibilityMatrix;
 import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
 import org.hipparchus.geometry.euclidean.threed.Vector3D;
 import org.hipparchus.ode.events.Action;
 import org.hipparchus.util.FastMath;
-import org.orekit.bodies.BodyShape;
 import org.orekit.bodies.GeodeticPoint;
 import org.orekit.bodies.OneAxisEllipsoid;
-import org.orekit.data.DataContext;
-import org.orekit.data.DataProvidersManager;
-import org.orekit.data.DirectoryCrawler;
 import org.orekit.errors.OrekitException;
 import org.orekit.frames.Frame;
-import org.orekit.frames.FramesFactory;
 import org.orekit.frames.TopocentricFrame;
 import org.orekit.orbits.KeplerianOrbit;
 import org.orekit.orbits.Orbit;
 import org.orekit.orbits.PositionAngle;
-import org.orekit.propagation.Propagator;
-import org.orekit.propagation.SpacecraftState;
-import org.orekit.propagation.analytical.tle.SGP4;
 import org.orekit.propagation.analytical.tle.TLE;
 import org.orekit.propagation.events.ElevationDetector;
 import org.orekit.propagation.events.EventDetector;
 import org.orekit.propagation.events.handlers.EventHandler;
 import org.orekit.time.AbsoluteDate;
-import org.orekit.time.TimeScalesFactory;
-import org.orekit.utils.Constants;
-import org.orekit.utils.IERSConventions;
-import org.orekit.utils.PVCoordinates;
+import org.orekit.time.TimeScale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
-import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.ResponseEntity;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
 @Service
 public class SatellitePositionService {
-    @Value("${n2yo.api.key}")
-    private String apiKey;
+    private static final Logger log = LoggerFactory.getLogger(SatellitePositionService.class);
 
     @Autowired
     private SatelliteRepository satelliteRepository;
 
-    /**
-     * Loads Orekit data from the specified directory.
-     * This method is called to initialize the Orekit library with the necessary data files.
-     */
-    private void loadOrekitData() {
-        File orekitData = new File("src/main/resources/orekit-data");
-        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
-        manager.addProvider(new DirectoryCrawler(orekitData));
-    }
+    // single satellite lookups and writes go through the cache, batch queries go to the repository
+    @Autowired
+    private SatelliteCache satelliteCache;
+
+    // the coordinates computed by reads are persisted in the background
+    @Autowired
+    private SnapshotWriter snapshotWriter;
+
+    // past element sets, for positions before the current TLE's epoch
+    @Autowired
+    private TleArchive tleArchive;
+
+    // Orekit data is loaded once at startup by OrekitConfig, these are the shared frames and time scale
+    @Autowired
+    private TimeScale utc;
+
+    @Autowired
+    @Qualifier("itrf")
+    private Frame itrf;
+
+    @Autowired
+    private OneAxisEllipsoid earth;
+
+    @Autowired
+    private EphemerisStore ephemerisStore;
+
+    @Autowired
+    private FrameTransforms frameTransforms;
+
+    @Autowired
+    private CzmlWriter czmlWriter;
+
+    @Autowired
+    private SatelliteMetrics satelliteMetrics;
+
+    @Autowired
+    @Qualifier("propagationExecutor")
+    private ExecutorService propagationExecutor;
+
+    // upper bound on the satellites of one visibility matrix, its size grows with the square of their number
+    @Value("${satellite.visibility.max-satellites:2000}")
+    private int maxVisibilitySatellites;
 
     /**
      * Separates a tle string into two lines and constructs a TLE object out of them.
@@ -82,23 +106,18 @@ public class SatellitePositionService {
     public static Optional<TLE> parseTLE(String tleData) {
         // blank data
         if (tleData == null || tleData.isBlank()) return Optional.empty();
-        System.out.println("TLE data" + tleData);
         // splits by newline
-        String[] lines = tleData.split("\\r?\\n");
-        if (lines.length < 2) {
-            System.out.println("Invalid TLE data: Less than 2 lines");
+        String line1 = TleParser.line(tleData, 0);
+        String line2 = TleParser.line(tleData, 1);
+        if (line2 == null) {
+            log.debug("Invalid TLE data, less than 2 lines: {}", tleData);
             return Optional.empty(); // invalid tle
         }
 
-        String line1 = lines[0].trim();
-        String line2 = lines[1].trim();
-        System.out.println("line1: " + line1);
-        System.out.println("line2: " + line2);
-
         try {
             return Optional.of(new TLE(line1, line2));
         } catch (Exception e) {
-            System.out.println("Error creating TLE: " + e.getMessage());
+            log.debug("Invalid TLE line1=\"{}\" line2=\"{}\": {}", line1, line2, e.getMessage());
             return Optional.empty();
         }
     }
@@ -107,42 +126,60 @@ public class SatellitePositionService {
         if (tleData == null || tleData.isBlank()) {
             throw new IllegalArgumentException("Invalid TLE data: Cannot be null or blank.");
         }
-        String[] lines = tleData.split("\\r?\\n");
-        if (lines.length < 2) {
+        if (TleParser.line(tleData, 1) == null) {
             throw new IllegalArgumentException("Invalid TLE data: Less than 2 lines.");
         }
-        return lines[0].trim();
+        return TleParser.line(tleData, 0);
     }
 
     public static String getLine2(String tleData) {
         if (tleData == null || tleData.isBlank()) {
             throw new IllegalArgumentException("Invalid TLE data: Cannot be null or blank.");
         }
-        String[] lines = tleData.split("\\r?\\n");
-        if (lines.length < 2) {
+        if (TleParser.line(tleData, 1) == null) {
             throw new IllegalArgumentException("Invalid TLE data: Less than 2 lines.");
         }
-        return lines[1].trim();
+        return TleParser.line(tleData, 1);
     }
 
     /**
-     * Fetches TLE data for a satellite from the database based on its NORAD ID.
+     * Fetches TLE data for a satellite based on its NORAD ID, parsed once and kept in the satellite cache.
      * @param satId The satellite NORAD ID.
      * @return An Optional containing the TLE object if found, or an empty Optional if not found.
      */
     public Optional<TLE> fetchTLE(int satId) {
-        System.out.println("satId: " + satId);
-        SatelliteData satelliteData = satelliteRepository.findBySatid(satId);
-        System.out.println("satelliteData: " + satelliteData);
-        Optional<TLE> resTLE = Optional.ofNullable(satelliteData)
-                .flatMap(sat -> {
-                    System.out.println("Parsing TLE for satellite: " + sat);
-                    return parseTLE(sat.getTle());
-                });
-        System.out.println("resTLE: " + resTLE);
+        Optional<TLE> resTLE = satelliteCache.getTLE(satId);
+        log.debug("Fetched TLE satId={} valid={}", satId, resTLE.isPresent());
         return resTLE;
     }
 
+    /**
+     * Fetches the TLE of a satellite that best describes its orbit at the given date: the current one for dates
+     * from its epoch on, the archived one whose epoch is the nearest otherwise.
+     * @param satId The satellite NORAD ID.
+     * @param date The date the satellite will be propagated to.
+     * @return An Optional containing the TLE object if found, or an empty Optional if not found.
+     */
+    public Optional<TLE> fetchTLE(int satId, AbsoluteDate date) {
+        return fetchTLE(satId).map(current -> selectTLE(satId, current, date));
+    }
+
+    /**
+     * Picks the element set to propagate a satellite to the given date with. The current TLE is the newest one,
+     * so the archive is only looked up for dates before its epoch.
+     * @param satId The satellite NORAD ID.
+     * @param current The satellite's current TLE.
+     * @param date The date the satellite will be propagated to.
+     * @return The archived TLE whose epoch is nearer to the date than the current one's, or the current TLE.
+     */
+    public TLE selectTLE(int satId, TLE current, AbsoluteDate date) {
+        double offset = date.durationFrom(current.getDate());
+        if (offset >= 0) return current;
+        return tleArchive.nearest(satId, date)
+                .filter(archived -> FastMath.abs(date.durationFrom(archived.getDate())) < -offset)
+                .orElse(current);
+    }
+
     public double parseEccentricity(String line) {
         // Extract the eccentricity from the TLE line
         String eccString = line.substring(26, 33).trim();
@@ -181,11 +218,10 @@ public class SatellitePositionService {
     }
 
     public SatelliteData getCurrentLLA(int satId) {
-        loadOrekitData();
         Optional<TLE> optionalTLE = fetchTLE(satId);
 
         if (optionalTLE.isEmpty()) {
-            System.err.println("TLE data not found for satellite ID: " + satId);
+            log.warn("TLE data not found for satellite {}", satId);
             return null;
         }
 
@@ -193,287 +229,406 @@ public class SatellitePositionService {
 
     /**
      * Computes the latitude, longitude, and altitude of a satellite based on its TLE data.
+     * Nothing is written on the way, the coordinates are handed to the SnapshotWriter to be persisted later.
      * @param tle The TLE data of the satellite.
      * @param satId The satellite norad ID.
-     * @return A SatelliteData object containing the geodetic coordinates.
+     * @return A copy of the satellite's SatelliteData containing the new geodetic coordinates.
      */
     public SatelliteData computeLLA(TLE tle, int satId) {
         try {
-            Propagator propagator = SGP4.selectExtrapolator(tle);
-
-            Frame earthFrame = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
-            OneAxisEllipsoid earth = new OneAxisEllipsoid(
-                    Constants.WGS84_EARTH_EQUATORIAL_RADIUS,
-                    Constants.WGS84_EARTH_FLATTENING,
-                    earthFrame
-            );
-
-            OffsetDateTime offsetDateTime = Instant.now().atOffset(ZoneOffset.UTC);
-            int year = offsetDateTime.getYear();
-            int month = offsetDateTime.getMonthValue();
-            int day = offsetDateTime.getDayOfMonth();
-            int hour = offsetDateTime.getHour();
-            int minute = offsetDateTime.getMinute();
-            int second = offsetDateTime.getSecond();
-            AbsoluteDate currentDate = new AbsoluteDate(
-                    year, month, day, hour, minute, second, TimeScalesFactory.getUTC()
-            );
-
-            SpacecraftState state = propagator.propagate(currentDate);
-            PVCoordinates pvCoordinates = state.getPVCoordinates(earthFrame);
-
-            GeodeticPoint geodeticPoint = earth.transform(
-                    pvCoordinates.getPosition(),
-                    earthFrame,
-                    currentDate
-            );
-
-            double latitude = FastMath.toDegrees(geodeticPoint.getLatitude());
-            double longitude = FastMath.toDegrees(geodeticPoint.getLongitude());
-            double altitudeKm = geodeticPoint.getAltitude() / 1000.0;
-
-            SatelliteData satelliteData = satelliteRepository.findBySatid(satId);
-            if (satelliteData != null) {
-                List<List<Double>> coordinates = List.of(Arrays.asList(latitude, longitude, altitudeKm));
-                satelliteData.setGeodeticCoordinates(coordinates);
-                satelliteRepository.save(satelliteData);
-            }
+            // now to the millisecond, not truncated to the second
+            AbsoluteDate currentDate = toAbsoluteDate(Instant.now());
 
-            return satelliteData;
+            double[] lla = computePosition(tle, satId, currentDate).getLla();
+
+            SatelliteData satelliteData = satelliteCache.get(satId);
+            if (satelliteData == null) return null;
+
+            // the cached document is shared between requests, so the result is a copy
+            PositionSamples geodeticCoordinates = PositionSamples.of(lla);
+            snapshotWriter.offer(satId, geodeticCoordinates, null);
+            return new SatelliteData(satelliteData.getSatid(), satelliteData.getSatname(), satelliteData.getTle(),
+                    geodeticCoordinates, satelliteData.getXyzCoordinates());
 
         } catch (OrekitException e) {
-            e.getMessage();
+            log.warn("Failed to compute the position of satellite {}: {}", satId, e.getMessage());
             return null;
         }
     }
 
-    private static final BodyShape EARTH = new OneAxisEllipsoid(
-            Constants.WGS84_EARTH_EQUATORIAL_RADIUS,
-            Constants.WGS84_EARTH_FLATTENING,
-            FramesFactory.getITRF(IERSConventions.IERS_2010, true));
+    /**
+     * Computes a satellite's geodetic and Earth-fixed cartesian position at the given date, interpolated from
+     * the ephemeris store when it has samples around that date and propagated otherwise.
+     * Nothing is read from or written to the database.
+     * @param tle The TLE data of the satellite.
+     * @param satId The satellite norad ID.
+     * @param date The date to compute the position at.
+     * @return The satellite's position at that date.
+     */
+    public SatellitePosition computePosition(TLE tle, int satId, AbsoluteDate date) {
+        return toPosition(satId, ephemerisStore.position(satId, tle, date), date);
+    }
+
+    private SatellitePosition toPosition(int satId, Vector3D position, AbsoluteDate date) {
+        GeodeticPoint geodeticPoint = earth.transform(position, itrf, date);
+
+        double latitude = FastMath.toDegrees(geodeticPoint.getLatitude());
+        double longitude = FastMath.toDegrees(geodeticPoint.getLongitude());
+        double altitudeKm = geodeticPoint.getAltitude() / 1000.0;
+
+        return new SatellitePosition(satId,
+                new double[] {latitude, longitude, altitudeKm},
+                new double[] {position.getX(), position.getY(), position.getZ()});
+    }
 
     /**
-     * Computes the cartesian coordinates of a satellite based on its geodetic coordinates.
+     * Computes the positions of many satellites at the same date.
+     * All TLEs are loaded with a single query and propagated in parallel on the propagation executor,
+     * from the archived element sets nearest to the date when it is in the past (see selectTLE).
+     * Every chunk of satellites is propagated at once by an Sgp4Batch and rotated to ITRF with the transform of the
+     * date, the deep-space satellites (and any SGP4 gives up on) going through computePosition one by one.
+     * Satellites without a valid TLE, or whose propagation fails, are left out of the result.
+     * @param satIds The satellite norad IDs, or null for every satellite in the database.
+     * @param date The date to compute the positions at.
+     * @return The positions, in the order the satellites were loaded.
+     */
+    public List<SatellitePosition> computePositions(Collection<Integer> satIds, AbsoluteDate date) {
+        List<SatelliteData> satellites = satIds == null
+                ? satelliteRepository.findAll()
+                : satelliteRepository.findBySatidIn(satIds);
+        return computePositionsOf(satellites, date);
+    }
+
+    /**
+     * Computes the positions of satellites already loaded at the same date, the way computePositions does.
+     * @param satellites The satellites, with their current TLE.
+     * @param date The date to compute the positions at.
+     * @return The positions, in the order of the satellites.
+     */
+    public List<SatellitePosition> computePositionsOf(List<SatelliteData> satellites, AbsoluteDate date) {
+        return inParallel(chunks(satellites), chunk -> positions(prepareChunk(chunk, date), date));
+    }
+
+    /**
+     * Parses, selects (see selectTLE) and initializes the TLEs of satellites once, for callers that compute the
+     * positions of the same satellites again and again, such as the subpoint index every second. The element sets
+     * are the ones for the given date: prepare again when a TLE changes or the dates move far from it.
+     * @param satellites The satellites, with their current TLE.
+     * @param date The date the element sets are selected for.
+     * @return The satellites ready to propagate, without those whose TLE is missing or invalid.
+     */
+    public PreparedSatellites prepare(List<SatelliteData> satellites, AbsoluteDate date) {
+        return new PreparedSatellites(inParallel(chunks(satellites), chunk -> List.of(prepareChunk(chunk, date))));
+    }
+
+    /**
+     * Computes the positions of prepared satellites at the same date, the way computePositionsOf does, without
+     * parsing or initializing anything.
+     * @param satellites The satellites, from prepare.
+     * @param date The date to compute the positions at.
+     * @return The positions, in the order of the satellites.
+     */
+    public List<SatellitePosition> computePositionsOf(PreparedSatellites satellites, AbsoluteDate date) {
+        return inParallel(satellites.chunks, chunk -> positions(chunk, date));
+    }
+
+    // a few chunks per thread keeps the threads busy without paying the task overhead per satellite
+    private static <T> List<List<T>> chunks(List<T> items) {
+        int chunkSize = Math.max(16, items.size() / (Runtime.getRuntime().availableProcessors() * 4) + 1);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            chunks.add(items.subList(from, Math.min(from + chunkSize, items.size())));
+        }
+        return chunks;
+    }
+
+    // runs the task of every chunk on the propagation executor, the results in the order of the chunks
+    private <T, R> List<R> inParallel(List<T> chunks, Function<T, List<R>> task) {
+        List<CompletableFuture<List<R>>> futures = new ArrayList<>(chunks.size());
+        for (T chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(chunk), propagationExecutor));
+        }
+        List<R> results = new ArrayList<>();
+        for (CompletableFuture<List<R>> future : futures) {
+            results.addAll(future.join());
+        }
+        return results;
+    }
+
+    private PreparedChunk prepareChunk(List<SatelliteData> satellites, AbsoluteDate date) {
+        List<Integer> satIds = new ArrayList<>(satellites.size());
+        List<TLE> tles = new ArrayList<>(satellites.size());
+        for (SatelliteData satellite : satellites) {
+            Optional<TLE> tle = parseTLE(satellite.getTle());
+            if (tle.isEmpty()) continue;
+            try {
+                tles.add(selectTLE(satellite.getSatid(), tle.get(), date));
+                satIds.add(satellite.getSatid());
+            } catch (OrekitException e) {
+                log.warn("Failed to select the TLE of satellite {}: {}", satellite.getSatid(), e.getMessage());
+            }
+        }
+        return new PreparedChunk(satIds, tles, new Sgp4Batch(tles));
+    }
+
+    private List<SatellitePosition> positions(PreparedChunk chunk, AbsoluteDate date) {
+        Sgp4Batch batch = chunk.batch();
+        double[] xyz = new double[3 * batch.size()];
+        batch.propagate(date, 0, batch.size(), xyz, null);
+        frameTransforms.temeToItrf(date).rotatePositions(xyz, 0, batch.size());
+
+        List<SatellitePosition> positions = new ArrayList<>(batch.size());
+        for (int k = 0; k < batch.size(); k++) {
+            int satId = chunk.satIds().get(k);
+            try {
+                if (Double.isNaN(xyz[3 * k])) {
+                    positions.add(computePosition(chunk.tles().get(k), satId, date));
+                } else {
+                    positions.add(toPosition(satId, new Vector3D(xyz[3 * k], xyz[3 * k + 1], xyz[3 * k + 2]), date));
+                }
+            } catch (OrekitException e) {
+                log.warn("Failed to propagate satellite {}: {}", satId, e.getMessage());
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Satellites whose TLEs are parsed and initialized for SGP4, see prepare. Propagating them only reads the
+     * initialized elements, so they can be shared between threads.
+     */
+    public static final class PreparedSatellites {
+        private final List<PreparedChunk> chunks;
+        private final int size;
+
+        private PreparedSatellites(List<PreparedChunk> chunks) {
+            this.chunks = chunks;
+            this.size = chunks.stream().mapToInt(chunk -> chunk.satIds().size()).sum();
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    private record PreparedChunk(List<Integer> satIds, List<TLE> tles, Sgp4Batch batch) {
+    }
+
+    /**
+     * Computes the positions of one satellite at many dates, e.g. for analysis jobs that need thousands of samples.
+     * Every date is propagated exactly (not interpolated) with a single propagator, from the element set selected
+     * for the epoch (see selectTLE), and converted to geodetic coordinates on the shared Earth model.
+     * Nothing is read from or written to the database besides the TLE lookup.
      * @param satId The satellite norad ID.
-     * @return A SatelliteData object containing the cartesian coordinates.
+     * @param epoch The reference date of the offsets, usually the earliest one.
+     * @param offsets The offset of every date from the epoch in seconds, fractions of a second included.
+     * @return The positions in columns, in the order of the offsets, or null if the satellite has no valid TLE.
+     */
+    public PositionSeries computeSeries(int satId, Instant epoch, double[] offsets) {
+        AbsoluteDate start = toAbsoluteDate(epoch);
+        Optional<TLE> tle = fetchTLE(satId, start);
+        if (tle.isEmpty()) {
+            log.warn("TLE data not found for satellite {}", satId);
+            return null;
+        }
+
+        int count = offsets.length;
+        double[] xyz = ephemerisStore.propagate(satId, tle.get(), start, offsets);
+        double[] lat = new double[count];
+        double[] lon = new double[count];
+        double[] alt = new double[count];
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] z = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = xyz[3 * i];
+            y[i] = xyz[3 * i + 1];
+            z[i] = xyz[3 * i + 2];
+            GeodeticPoint geodeticPoint = earth.transform(new Vector3D(x[i], y[i], z[i]), itrf, start.shiftedBy(offsets[i]));
+            lat[i] = FastMath.toDegrees(geodeticPoint.getLatitude());
+            lon[i] = FastMath.toDegrees(geodeticPoint.getLongitude());
+            alt[i] = geodeticPoint.getAltitude() / 1000.0;
+        }
+        return new PositionSeries(satId, epoch.toString(), offsets.clone(), lat, lon, alt, x, y, z);
+    }
+
+    /**
+     * Converts a java Instant into an Orekit date in UTC, keeping the sub-second part.
+     * @param instant The instant to convert.
+     * @return The corresponding AbsoluteDate.
+     */
+    public AbsoluteDate toAbsoluteDate(Instant instant) {
+        return new AbsoluteDate(Date.from(Instant.ofEpochSecond(instant.getEpochSecond())), utc)
+                .shiftedBy(instant.getNano() / 1e9);
+    }
+
+    /**
+     * Computes the cartesian coordinates of a satellite based on its stored geodetic coordinates.
+     * @param satId The satellite norad ID.
+     * @return A copy of the satellite's SatelliteData containing the cartesian coordinates.
      */
     public SatelliteData getXYZ(int satId) {
-        double latitude=0, longitude=0, altitudeKm=0;
-        SatelliteData satelliteData = satelliteRepository.findBySatid(satId);
+        return getXYZ(satelliteCache.get(satId));
+    }
 
+    /**
+     * Computes the cartesian coordinates of a satellite based on the geodetic coordinates it holds, e.g. the ones
+     * just returned by computeLLA. Nothing is written on the way, the coordinates are handed to the SnapshotWriter.
+     * @param satelliteData The satellite.
+     * @return A copy of the SatelliteData containing the cartesian coordinates.
+     */
+    public SatelliteData getXYZ(SatelliteData satelliteData) {
+        double latitude=0, longitude=0, altitudeKm=0;
         if (satelliteData == null) return null;
+        int satId = satelliteData.getSatid();
 
-        List<List<Double>> coords = satelliteData.getGeodeticCoordinates();
-        System.out.println("Geodetic Coordinates: " + coords);
+        PositionSamples coords = satelliteData.getGeodeticCoordinates();
         Vector3D cartesianPoint = new Vector3D(0, 0, 0); // Initialize to zero vector
 
-        if (coords != null && !coords.isEmpty() && coords.get(0).size() == 3) {
+        if (coords != null && !coords.isEmpty() && coords.getDimension() == 3) {
             // to be edited with the specific current / future coords
-            latitude = coords.get(0).get(0);
-            longitude = coords.get(0).get(1);
-            altitudeKm = coords.get(0).get(2);
+            latitude = coords.get(0, 0);
+            longitude = coords.get(0, 1);
+            altitudeKm = coords.get(0, 2);
 
             double latitudeRad = Math.toRadians(latitude);
             double longitudeRad = Math.toRadians(longitude);
             double altitudeMeters = altitudeKm * 1000;
 
-            System.out.println("Latitude: " + latitude + ", Longitude: " + longitude + ", Altitude (km): " + altitudeKm);
             GeodeticPoint geodeticPoint = new GeodeticPoint(latitudeRad, longitudeRad, altitudeMeters);
 
             // Transform the GeodeticPoint to a Cartesian point
-            cartesianPoint = EARTH.transform(geodeticPoint);
+            cartesianPoint = earth.transform(geodeticPoint);
         }
 
         double x = cartesianPoint.getX();
         double y = cartesianPoint.getY();
         double z = cartesianPoint.getZ();
 
-        System.out.println("Cartesian Coordinates: (" + x + ", " + y + ", " + z + ")");
-
-        List<List<Double>> coordinates = List.of(Arrays.asList(x, y, z));
-        satelliteData.setXYZCoordinates(coordinates);
-        satelliteRepository.save(satelliteData);
+        if (log.isDebugEnabled()) {
+            log.debug("Cartesian coordinates satId={} lla=[{}, {}, {}] xyz=[{}, {}, {}]",
+                    satId, latitude, longitude, altitudeKm, x, y, z);
+        }
 
-        return satelliteData;
+        PositionSamples xyzCoordinates = PositionSamples.of(x, y, z);
+        snapshotWriter.offer(satId, null, xyzCoordinates);
+        return new SatelliteData(satId, satelliteData.getSatname(), satelliteData.getTle(),
+                satelliteData.getGeodeticCoordinates(), xyzCoordinates);
     }
 
     /**
      * Converts geodetic coordinates to Cartesian coordinates.
      * @param geodeticPoint The geodetic point containing latitude, longitude, and altitude.
-     * @return A list of Cartesian coordinates (x, y, z).
+     * @return A single untimed sample with the Cartesian coordinates (x, y, z): a geodetic point carries no date.
      */
-    public List<Double> convertToCartesian(GeodeticPoint geodeticPoint) {
+    public PositionSamples convertToCartesian(GeodeticPoint geodeticPoint) {
         Vector3D cartesianPoint = new Vector3D(0, 0, 0);
         if (geodeticPoint != null) {
-            cartesianPoint = EARTH.transform(geodeticPoint);
+            cartesianPoint = earth.transform(geodeticPoint);
         }
         double x = cartesianPoint.getX();
         double y = cartesianPoint.getY();
         double z = cartesianPoint.getZ();
-        System.out.println("Converted Cartesian Coordinates: (" + x + ", " + y + ", " + z + ")");
-        return new ArrayList<>(List.of(0D, x, y, z)); // 0D is a placeholder for time, can be replaced with actual time if needed
+        return PositionSamples.of(x, y, z);
     }
 
     /**
-     * Writes the propagated orbit of a satellite to a CZML file.
+     * Writes the propagated orbit of a satellite as CZML to the given stream.
      *
+     * @param out         The stream to write to (e.g. the HTTP response), it is flushed but not closed.
      * @param initialDate The initial date of the propagation.
      * @param finalDate   The final date of the propagation.
-     * @param states      A list of spacecraft states representing the satellite's state at different points in time.
-     *                    The states must be ordered by date, from earliest to latest.
+     * @param states      The x, y, z samples representing the satellite's position at different points in time,
+     *                    time-tagged with their offset in seconds from initialDate and ordered from earliest to latest.
      * @param noradId     The NORAD ID of the satellite.
      *
-     * The method generates "orbit.czml" in the root directory of the backend project. It stores the
-     * satellite's position at each time step in Cartesian coordinate format (x, y, z). The positions are
-     * interpolated using the LAGRANGE algorithm with a degree of 5.
+     * The positions are streamed by CzmlWriter in Cartesian coordinate format (x, y, z) and are interpolated
+     * using the LAGRANGE algorithm with a degree of 5. Use CzmlWriter directly to write from primitive arrays.
      *
-     * @throws IOException If an I/O error occurs while writing to the file.
+     * @throws IOException If an I/O error occurs while writing to the stream.
      */
-    public void writeCZML(AbsoluteDate initialDate, AbsoluteDate finalDate, List<List<Double>> states, int noradId) {
-        try (FileWriter writer = new FileWriter("orbit.czml")) {
-            // Write the CZML header
-            writer.write("[\n");
-            writer.write("{\"id\":\"document\",\"version\":\"1.0\"},\n");
-
-            // Write the satellite's path
-            writer.write("{\"id\":\"Satellite " + noradId + "\",\"availability\":\"" + initialDate + "/" + finalDate + "\",\n");
-            writer.write("\"position\":{\"interpolationAlgorithm\":\"LAGRANGE\",\"interpolationDegree\":5,\"epoch\":\"" + initialDate + "\",\"cartesian\":[");
-
-            // Write the satellite's position at each time step
-            for (int i = 0; i < states.size(); i++) {
-                List<Double> offsetLla = states.get(i);
-                writer.write("\n" + offsetLla.get(0) + "," + offsetLla.get(1) + "," + offsetLla.get(2) + "," + offsetLla.get(3));
-                if (i < states.size() - 1) {
-                    writer.write(",");
-                }
-            }
-
-            // Write the CZML footer
-            writer.write("\n]},\n");
-
-            // Write the satellite's label
-            writer.write("\"label\":{"
-                    + "\"text\":\"Sat " + noradId + "\","
-                    + "\"font\":\"14px Helvetica\","
-                    + "\"fillColor\":{\"rgba\":[255,255,0,255]},"
-                    + "\"outlineColor\":{\"rgba\":[0,0,0,255]},"
-                    + "\"outlineWidth\":2,"
-                    + "\"style\":\"FILL\","
-                    + "\"horizontalOrigin\":\"LEFT\","
-                    + "\"verticalOrigin\":\"BOTTOM\","
-                    + "\"pixelOffset\":{\"cartesian2\":[10,-10]}"
-                    + "},\n");
-
-            writer.write("\"path\":{\"show\":[{\"boolean\":true}]},\n");
-            writer.write("\"point\":{\"pixelSize\":10,\"color\":{\"rgba\":[255,255,0,255]}},\n");
-            writer.write("\"description\":\"Satellite " + noradId + "\"}\n");
-            writer.write("]\n");
-        } catch (IOException e2) {
-            e2.printStackTrace();
+    public void writeCZML(OutputStream out, AbsoluteDate initialDate, AbsoluteDate finalDate, PositionSamples states, int noradId)
+            throws IOException {
+        if (!states.hasTimes() || states.getDimension() != 3) {
+            throw new IllegalArgumentException("CZML states must be time-tagged x, y, z samples");
         }
+        long bytes = czmlWriter.write(out, noradId, initialDate, finalDate, states.getTimes(), states.getValues());
+        satelliteMetrics.recordCzml(bytes, states.size());
     }
 
     /**
-     * Checks if two satellites are visible to each other based on their positions.
+     * Checks if two satellites see each other now, see isVisible(int, int, AbsoluteDate, double).
      * @param satId1 The first satellite's NORAD ID.
      * @param satId2 The second satellite's NORAD ID.
      * @return true if the satellites are visible to each other, false otherwise.
      */
     public boolean isVisible(int satId1, int satId2) {
-        OffsetDateTime now = Instant.now().atOffset(ZoneOffset.UTC);
-        int hour = now.getHour();
-        int minute = now.getMinute();
-        int second = now.getSecond();
-
-        // gets interested satellites in db
-        SatelliteData sat1 = satelliteRepository.findBySatid(satId1);
-        SatelliteData sat2 = satelliteRepository.findBySatid(satId2);
-
-        // calculates xyz
-        double x1 = sat1.getXyzCoordinates().get(0).get(0);
-        double y1 = sat1.getXyzCoordinates().get(0).get(1);
-        double z1 = sat1.getXyzCoordinates().get(0).get(2);
-        double x2 = sat2.getXyzCoordinates().get(0).get(0);
-        double y2 = sat2.getXyzCoordinates().get(0).get(1);
-        double z2 = sat2.getXyzCoordinates().get(0).get(2);
-
-        // calculates change
-        double dx = x2 - x1;
-        double dy = y2 - y1;
-        double dz = z2 - z1;
-        System.out.println("dx: " + dx + " dy: " + dy + " dz: " + dz);
-        double distance = FastMath.sqrt(dx * dx + dy * dy + dz * dz);
-        System.out.println("distance: " + distance);
-
-        double x_dot = dx / distance;
-        double y_dot = dy / distance;
-        double z_dot = dz / distance;
-        System.out.printf("x_dot: %.2f, y_dot: %.2f, z_dot: %.2f\n", x_dot, y_dot, z_dot);
-
-        double earthRadius = 6378137.0;
-        double step = 10000; // in meters
-
-        boolean visible = true;
-        for (double i = 0; i <= distance; i += step) {
-            double x = x1 + x_dot * i;
-            double y = y1 + y_dot * i;
-            double z = z1 + z_dot * i;
-            System.out.printf("x: %.2f, y: %.2f, z: %.2f\n", x, y, z);
-
-            double r = FastMath.sqrt(x * x + y * y + z * z);
-            System.out.printf("r: %.2f\n", r);
-
-            if (r <= earthRadius) {
-                System.out.println("smaller than earth radius: " + r);
-                visible = false;
-                System.out.println("satellites cannot see each other at time: " + hour + ":" + minute + ":" + second);
-                break;
-            }
-        }
+        return isVisible(satId1, satId2, toAbsoluteDate(Instant.now()), 0);
+    }
 
-        if (visible) {
-            System.out.println("satellites are visible to each other at time: " + hour + ":" + minute + ":" + second);
+    /**
+     * Checks if two satellites see each other at a date: both are brought to that date (see computePosition) and
+     * the line between them is tested against the WGS84 ellipsoid in closed form, see LineOfSight.
+     * @param satId1 The first satellite's NORAD ID.
+     * @param satId2 The second satellite's NORAD ID.
+     * @param date The date to check the visibility at.
+     * @param grazingHeight The height in meters the line of sight must stay above, e.g. for the atmosphere.
+     * @return true if the satellites are visible to each other, false otherwise or if either has no valid TLE.
+     */
+    public boolean isVisible(int satId1, int satId2, AbsoluteDate date, double grazingHeight) {
+        Optional<TLE> tle1 = fetchTLE(satId1, date);
+        Optional<TLE> tle2 = fetchTLE(satId2, date);
+        if (tle1.isEmpty() || tle2.isEmpty()) {
+            log.warn("TLE data not found for satellite {} or {}", satId1, satId2);
+            return false;
         }
 
+        double[] xyz1 = computePosition(tle1.get(), satId1, date).getXyz();
+        double[] xyz2 = computePosition(tle2.get(), satId2, date).getXyz();
+        boolean visible = new LineOfSight(earth.getEquatorialRadius(), earth.getFlattening(), grazingHeight)
+                .isClear(xyz1[0], xyz1[1], xyz1[2], xyz2[0], xyz2[1], xyz2[2]);
+
+        log.debug("Visibility satId1={} satId2={} grazingHeight={} m visible={} at {}",
+                satId1, satId2, grazingHeight, visible, date);
         return visible;
     }
 
     /**
-     * Gets new TLE data for all satellites from the N2YO API and updates the database every 24 hours.
+     * Computes which of many satellites see each other at the same date, their positions computed the way
+     * computePositions does and every pair tested against the WGS84 ellipsoid, the pairs further apart than their
+     * horizons allow pruned first (see LineOfSight).
+     * The number of satellites is checked before any of them is loaded, so every satellite of the database only works
+     * for a catalog of at most satellite.visibility.max-satellites.
+     * @param satIds The satellite norad IDs, or null for every satellite in the database.
+     * @param date The date to check the visibility at.
+     * @param grazingHeight The height in meters the lines of sight must stay above, e.g. for the atmosphere.
+     * @return The adjacency lists of the satellites found.
+     * @throws IllegalArgumentException if there are more than satellite.visibility.max-satellites satellites.
      */
-    @Scheduled(fixedRate = 86400000) // 24 hours in ms
-    public void refreshTLEs() {
-        // get all satellites from the db
-        List<SatelliteData> allSatellites = satelliteRepository.findAll();
-        for (SatelliteData satellite : allSatellites) {
-            int satId = satellite.getSatid();
-
-            try {
-                // sends api request to get new tle
-                String url = String.format("https://api.n2yo.com/rest/v1/satellite/tle/%d&apiKey=%s", satId, apiKey);
-                RestTemplate restTemplate = new RestTemplate();
-                ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-
-                if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    JsonNode root = objectMapper.readTree(response.getBody());
-
-                    // saves new tle to db
-                    String newTle = root.get("tle").asText();
-                    satellite.setTle(newTle);
-                    satelliteRepository.save(satellite);
-
-                    System.out.printf("updated for satellite %d\n", satId);
-                    SatelliteData updatedSatellite = getCurrentLLA(satId);
-                    if (updatedSatellite == null) {
-                        System.err.printf("Failed to update geodetic coordinates for satellite %d\n", satId);
-                        continue;
-                    }
-                    getXYZ(satId);
-                }
-            } catch (Exception e) {
-                System.err.printf("failed for satellite %d: %s\n", satId, e.getMessage());
-            }
+    public VisibilityMatrix computeVisibility(Collection<Integer> satIds, AbsoluteDate date, double grazingHeight) {
+        LineOfSight lineOfSight = new LineOfSight(earth.getEquatorialRadius(), earth.getFlattening(), grazingHeight);
+        long requested = satIds == null ? satelliteRepository.count() : satIds.stream().distinct().count();
+        if (requested > maxVisibilitySatellites) {
+            throw new IllegalArgumentException("Expected at most " + maxVisibilitySatellites + " satellites, got "
+                    + requested);
+        }
+        List<SatelliteData> satellites = satIds == null
+                ? satelliteRepository.findAll()
+                : satelliteRepository.findBySatidIn(satIds);
+
+        List<SatellitePosition> positions = computePositionsOf(satellites, date);
+        int count = positions.size();
+        int[] ids = new int[count];
+        double[] xyz = new double[3 * count];
+        for (int k = 0; k < count; k++) {
+            ids[k] = positions.get(k).getSatid();
+            System.arraycopy(positions.get(k).getXyz(), 0, xyz, 3 * k, 3);
+        }
+        int[][] adjacency = lineOfSight.adjacency(xyz, count);
+        long links = 0;
+        for (int[] row : adjacency) {
+            links += row.length;
         }
+        return new VisibilityMatrix(ids, links / 2, adjacency);
     }
-}
\ No newline at end of file
+}
@@ -3,45 +3,73 @@
  * It contains methods to fetch TLE data from the API and optionally save it to the database
  *
  * @Service tag indicates that this class is a service component of the application, which contains the core logic.
- * @Autowired annotation is used for dependency injection for SatelliteRepository interface.
+ * @Autowired annotation is used for dependency injection for SatelliteCache, which reads through to SatelliteRepository.
  */
 
 package com.teamtech.satellitevisualizer.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtech.satellitevisualizer.config.N2yoProperties;
 import com.teamtech.satellitevisualizer.models.SatelliteData;
-import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
 import com.teamtech.satellitevisualizer.controller.SatelliteResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.ResponseEntity;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class SatelliteService {
+    private static final Logger log = LoggerFactory.getLogger(SatelliteService.class);
+
+    // Base URL and key of the N2YO API (n2yo.api.*)
+    @Autowired
+    private N2yoProperties n2yoProperties;
+
+    // HTTP client and rate limiter shared with the scheduled TLE refresh
+    @Autowired
+    private RestTemplate n2yoRestTemplate;
+
+    @Autowired
+    private TokenBucket n2yoRateLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SatelliteMetrics satelliteMetrics;
+
+    // read-through cache in front of SatelliteRepository
+    @Autowired
+    private SatelliteCache satelliteCache;
 
-    // Base URL for the N2YO API to fetch the TLE data
-    private final String BASE_URL = "https://api.n2yo.com/rest/v1/satellite/tle/";
-    @Value("${n2yo.api.key}")
-    private String API_KEY;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    private SatelliteRepository satelliteRepository;
+    private TleArchive tleArchive;
 
     @Autowired
-    public SatelliteService(SatelliteRepository satelliteRepository) {
-        this.satelliteRepository = satelliteRepository;
+    public SatelliteService(SatelliteCache satelliteCache) {
+        this.satelliteCache = satelliteCache;
     }
 
     /**
-     * Retrieves a SatelliteData object from MongoDB database based on the satellite's NORAD ID
+     * Retrieves a SatelliteData object based on the satellite's NORAD ID, from the cache or the MongoDB database
      * @param noradId the NORAD ID of the satellite
      * @return SatelliteData object
      */
     public SatelliteData getSatelliteBySatid(int noradId) {
-        return satelliteRepository.findBySatid(noradId);
+        return satelliteCache.get(noradId);
     }
 
     /**
@@ -51,13 +79,24 @@ public class SatelliteService {
      * @throws @exception if TLE fetch fails
      */
     public SatelliteResponse getSatelliteTLE(int noradId) throws Exception {
-        String url = BASE_URL + noradId + "?apiKey=" + API_KEY;
+        // a URI template, so the request metrics are tagged without the ID or the API key
+        String url = n2yoProperties.getApi().getBaseUrl() + "tle/{noradId}&apiKey={apiKey}";
 
-        RestTemplate restTemplate = new RestTemplate();
-        ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.readValue(response.getBody(), SatelliteResponse.class);
+        n2yoRateLimiter.acquire();
+        try {
+            ResponseEntity<String> response = n2yoRestTemplate.getForEntity(url, String.class,
+                    noradId, n2yoProperties.getApi().getKey());
+            return objectMapper.readValue(response.getBody(), SatelliteResponse.class);
+        } catch (HttpStatusCodeException e) {
+            satelliteMetrics.recordN2yoError(String.valueOf(e.getStatusCode().value()));
+            throw e;
+        } catch (RestClientException e) {
+            satelliteMetrics.recordN2yoError("io");
+            throw e;
+        } catch (JsonProcessingException e) {
+            satelliteMetrics.recordN2yoError("parse");
+            throw e;
+        }
     }
 
     /**
@@ -66,8 +105,8 @@ public class SatelliteService {
      * @return SatelliteData object
      */
     public SatelliteData saveSatelliteData(SatelliteData satellite) {
-        System.out.println("Saving satellite: " + satellite);
-        return satelliteRepository.save(satellite);
+        log.debug("Saving satellite {}", satellite.getSatid());
+        return satelliteCache.save(satellite);
     }
 
     /**
@@ -77,7 +116,7 @@ public class SatelliteService {
      * @throws @exception if TLE fetch fails
      */
     public SatelliteData fetchAndSaveTLE(int noradId) throws Exception {
-        System.out.println("Fetching and saving TLE for NORAD ID: " + noradId);
+        log.info("Fetching and saving TLE for satellite {}", noradId);
         SatelliteResponse satelliteResponse = getSatelliteTLE(noradId);
 
         SatelliteData satellite = new SatelliteData();
@@ -85,6 +124,18 @@ public class SatelliteService {
         satellite.setSatname(satelliteResponse.getInfo().getSatname());
         satellite.setTle(satelliteResponse.getTle());
 
-        return saveSatelliteData(satellite);
+        // the TLE being replaced is archived too, in case it predates the archive
+        SatelliteData previous = satelliteCache.get(satellite.getSatid());
+        List<TleArchive.Entry> archived = new ArrayList<>(2);
+        if (previous != null && previous.getTle() != null) {
+            archived.add(new TleArchive.Entry(previous.getSatid(), previous.getTle()));
+        }
+        archived.add(new TleArchive.Entry(satellite.getSatid(), satellite.getTle()));
+
+        SatelliteData saved = saveSatelliteData(satellite);
+        tleArchive.archiveAll(archived);
+        // cached propagators and ephemerides were built from the previous TLE
+        eventPublisher.publishEvent(new TleUpdatedEvent(saved.getSatid()));
+        return saved;
     }
 }
\ No newline at end of file
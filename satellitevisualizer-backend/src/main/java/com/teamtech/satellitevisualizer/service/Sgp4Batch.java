@@ -0,0 +1,444 @@
+/**
+ * Sgp4Batch propagates many near-Earth satellites with SGP4 at once, the elements and coefficients of every satellite
+ * kept in primitive arrays (one array per quantity, satellite k at index k) rather than in one TLEPropagator each.
+ *
+ * Propagating a satellite to a date only reads those arrays and writes the TEME position and velocity into the
+ * caller's arrays: no SpacecraftState, PVCoordinates, AbsoluteDate or Vector3D is created, and a range of satellites
+ * [from, to) can be handed to every worker of a pool. The equations and constants are the ones of Orekit's SGP4 and
+ * TLEPropagator (Spacetrack report #3 with the Vallado corrections, WGS72), so the results match
+ * TLEPropagator.propagate to well under a millimeter (see Sgp4BatchTests), Orekit staying the reference.
+ *
+ * Deep-space satellites (period of 225 minutes or more) need SDP4's lunar and solar terms, which the batch does not
+ * have: they get NaN coordinates like the satellites SGP4 fails on, and go through TLEPropagator as before.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEConstants;
+import org.orekit.time.AbsoluteDate;
+
+import java.util.List;
+
+public final class Sgp4Batch {
+
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double XKE = TLEConstants.XKE;
+    private static final double CK2 = TLEConstants.CK2;
+    private static final double CK4 = TLEConstants.CK4;
+    private static final double A3OVK2 = TLEConstants.A3OVK2;
+    private static final double EARTH_RADIUS = TLEConstants.EARTH_RADIUS;
+    private static final double RE = TLEConstants.NORMALIZED_EQUATORIAL_RADIUS;
+    // km and km/min (in Earth radii) to m and m/s
+    private static final double POSITION_SCALE = 1000 * EARTH_RADIUS;
+    private static final double VELOCITY_SCALE = 1000 * EARTH_RADIUS / 60;
+
+    private final int size;
+    private final AbsoluteDate reference;
+
+    // epoch of every TLE in seconds from the reference
+    private final double[] epoch;
+    // mean elements at epoch
+    private final double[] e0;
+    private final double[] i0;
+    private final double[] m0;
+    private final double[] argp0;
+    private final double[] raan0;
+    private final double[] bstar;
+    // recovered semi-major axis (Earth radii) and mean motion (rad/min)
+    private final double[] a0dp;
+    private final double[] xn0dp;
+    // secular rates and drag coefficients
+    private final double[] xmdot;
+    private final double[] omgdot;
+    private final double[] xnodot;
+    private final double[] xnodcf;
+    private final double[] t2cof;
+    private final double[] c1;
+    private final double[] c4;
+    private final double[] c5;
+    private final double[] eta;
+    private final double[] omgcof;
+    private final double[] xmcof;
+    private final double[] delM0;
+    private final double[] sinM0;
+    private final double[] d2;
+    private final double[] d3;
+    private final double[] d4;
+    private final double[] t3cof;
+    private final double[] t4cof;
+    private final double[] t5cof;
+    // false for the deep-space satellites, never propagated
+    private final boolean[] nearEarth;
+    // perigee under 220 km: linear drag terms only
+    private final boolean[] lessThan220;
+    // inclination terms of the periodics
+    private final double[] cosi0;
+    private final double[] sini0;
+    private final double[] x3thm1;
+    private final double[] x1mth2;
+    private final double[] x7thm1;
+    private final double[] xlcof;
+    private final double[] aycof;
+
+    /**
+     * Initializes SGP4 for every near-Earth TLE.
+     * @param tles The element sets, satellite k of the batch being tles.get(k).
+     */
+    public Sgp4Batch(List<TLE> tles) {
+        size = tles.size();
+        reference = size > 0 ? tles.get(0).getDate() : AbsoluteDate.J2000_EPOCH;
+        epoch = new double[size];
+        e0 = new double[size];
+        i0 = new double[size];
+        m0 = new double[size];
+        argp0 = new double[size];
+        raan0 = new double[size];
+        bstar = new double[size];
+        a0dp = new double[size];
+        xn0dp = new double[size];
+        xmdot = new double[size];
+        omgdot = new double[size];
+        xnodot = new double[size];
+        xnodcf = new double[size];
+        t2cof = new double[size];
+        c1 = new double[size];
+        c4 = new double[size];
+        c5 = new double[size];
+        eta = new double[size];
+        omgcof = new double[size];
+        xmcof = new double[size];
+        delM0 = new double[size];
+        sinM0 = new double[size];
+        d2 = new double[size];
+        d3 = new double[size];
+        d4 = new double[size];
+        t3cof = new double[size];
+        t4cof = new double[size];
+        t5cof = new double[size];
+        nearEarth = new boolean[size];
+        lessThan220 = new boolean[size];
+        cosi0 = new double[size];
+        sini0 = new double[size];
+        x3thm1 = new double[size];
+        x1mth2 = new double[size];
+        x7thm1 = new double[size];
+        xlcof = new double[size];
+        aycof = new double[size];
+
+        for (int k = 0; k < size; k++) {
+            TLE tle = tles.get(k);
+            nearEarth[k] = isNearEarth(tle);
+            if (nearEarth[k]) {
+                initialize(k, tle);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether satellite k is propagated by the batch, false for a deep-space one.
+     */
+    public boolean isNearEarth(int k) {
+        return nearEarth[k];
+    }
+
+    /**
+     * @return Whether SGP4 (rather than SDP4) propagates the TLE, the same test TLEPropagator.selectExtrapolator makes.
+     */
+    public static boolean isNearEarth(TLE tle) {
+        double a1 = Math.pow(XKE / (tle.getMeanMotion() * 60.0), TLEConstants.TWO_THIRD);
+        double cosi = Math.cos(tle.getI());
+        double temp = CK2 * 1.5 * (3 * cosi * cosi - 1.0) * Math.pow(1.0 - tle.getE() * tle.getE(), -1.5);
+        double delta1 = temp / (a1 * a1);
+        double a0 = a1 * (1.0 - delta1 * (TLEConstants.ONE_THIRD + delta1 * (delta1 * 134.0 / 81.0 + 1.0)));
+        double delta0 = temp / (a0 * a0);
+        double xn0dp = tle.getMeanMotion() * 60.0 / (delta0 + 1.0);
+        return TWO_PI / (xn0dp * TLEConstants.MINUTES_PER_DAY) < 1.0 / 6.4;
+    }
+
+    // TLEPropagator.initializeCommons and SGP4.sxpInitialize, for satellite k
+    private void initialize(int k, TLE tle) {
+        double e = tle.getE();
+        double i = tle.getI();
+        double meanMotion = tle.getMeanMotion() * 60.0;
+        epoch[k] = tle.getDate().durationFrom(reference);
+        e0[k] = e;
+        i0[k] = i;
+        m0[k] = tle.getMeanAnomaly();
+        argp0[k] = tle.getPerigeeArgument();
+        raan0[k] = tle.getRaan();
+        bstar[k] = tle.getBStar();
+
+        double a1 = Math.pow(XKE / meanMotion, TLEConstants.TWO_THIRD);
+        double cosi = Math.cos(i);
+        double sini = Math.sin(i);
+        double theta2 = cosi * cosi;
+        double x3thm1k = 3.0 * theta2 - 1.0;
+        double beta02 = 1.0 - e * e;
+        double beta0 = Math.sqrt(beta02);
+        double tval = CK2 * 1.5 * x3thm1k / (beta0 * beta02);
+        double delta1 = tval / (a1 * a1);
+        double a0 = a1 * (1.0 - delta1 * (TLEConstants.ONE_THIRD + delta1 * (1.0 + 134.0 / 81.0 * delta1)));
+        double delta0 = tval / (a0 * a0);
+
+        double xn0 = meanMotion / (delta0 + 1.0);
+        double a0d = a0 / (1.0 - delta0);
+
+        double s4 = TLEConstants.S;
+        double q0ms24 = TLEConstants.QOMS2T;
+        double perige = (a0d * (1 - e) - RE) * EARTH_RADIUS;
+        // for perigees below 156 km, s and qoms2t are changed
+        if (perige < 156.0) {
+            s4 = perige <= 98.0 ? 20.0 : perige - 78.0;
+            double tempVal = (120.0 - s4) * RE / EARTH_RADIUS;
+            double tempValSquared = tempVal * tempVal;
+            q0ms24 = tempValSquared * tempValSquared;
+            s4 = s4 / EARTH_RADIUS + RE;
+        }
+
+        double pinv = 1.0 / (a0d * beta02);
+        double pinvsq = pinv * pinv;
+        double tsi = 1.0 / (a0d - s4);
+        double etak = a0d * e * tsi;
+        double etasq = etak * etak;
+        double eeta = e * etak;
+        double psisq = Math.abs(1.0 - etasq);
+        double tsiSquared = tsi * tsi;
+        double coef = q0ms24 * tsiSquared * tsiSquared;
+        double coef1 = coef / Math.pow(psisq, 3.5);
+
+        double c2 = coef1 * xn0 * (a0d * (1.0 + 1.5 * etasq + eeta * (4.0 + etasq))
+                + 0.75 * CK2 * tsi / psisq * x3thm1k * (8.0 + 3.0 * etasq * (8.0 + etasq)));
+        double c1k = tle.getBStar() * c2;
+        double x1mth2k = 1.0 - theta2;
+        double c4k = 2.0 * xn0 * coef1 * a0d * beta02 * (etak * (2.0 + 0.5 * etasq) + e * (0.5 + 2.0 * etasq)
+                - 2 * CK2 * tsi / (a0d * psisq)
+                * (-3.0 * x3thm1k * (1.0 - 2.0 * eeta + etasq * (1.5 - 0.5 * eeta))
+                + 0.75 * x1mth2k * (2.0 * etasq - eeta * (1.0 + etasq)) * Math.cos(2.0 * tle.getPerigeeArgument())));
+
+        double theta4 = theta2 * theta2;
+        double temp1 = 3 * CK2 * pinvsq * xn0;
+        double temp2 = temp1 * CK2 * pinvsq;
+        double temp3 = 1.25 * CK4 * pinvsq * pinvsq * xn0;
+        double x1m5th = 1.0 - 5.0 * theta2;
+        double xhdot1 = -temp1 * cosi;
+
+        a0dp[k] = a0d;
+        xn0dp[k] = xn0;
+        xmdot[k] = xn0 + 0.5 * temp1 * beta0 * x3thm1k + 0.0625 * temp2 * beta0 * (13.0 - 78.0 * theta2 + 137.0 * theta4);
+        omgdot[k] = -0.5 * temp1 * x1m5th + 0.0625 * temp2 * (7.0 - 114.0 * theta2 + 395.0 * theta4)
+                + temp3 * (3.0 - 36.0 * theta2 + 49.0 * theta4);
+        xnodot[k] = xhdot1 + (0.5 * temp2 * (4.0 - 19.0 * theta2) + 2.0 * temp3 * (3.0 - 7.0 * theta2)) * cosi;
+        xnodcf[k] = 3.5 * beta02 * xhdot1 * c1k;
+        t2cof[k] = 1.5 * c1k;
+        c1[k] = c1k;
+        c4[k] = c4k;
+        eta[k] = etak;
+        cosi0[k] = cosi;
+        sini0[k] = sini;
+        x3thm1[k] = x3thm1k;
+        x1mth2[k] = x1mth2k;
+        x7thm1[k] = 7.0 * theta2 - 1.0;
+        xlcof[k] = 0.125 * A3OVK2 * sini * (3.0 + 5.0 * cosi) / (1.0 + cosi);
+        aycof[k] = 0.25 * A3OVK2 * sini;
+
+        // below 220 km the c3, delta omega and delta M terms are dropped
+        lessThan220[k] = perige < 220;
+        if (!lessThan220[k]) {
+            double c1sq = c1k * c1k;
+            double delM = 1.0 + etak * Math.cos(tle.getMeanAnomaly());
+            delM0[k] = delM * delM * delM;
+            d2[k] = 4 * a0d * tsi * c1sq;
+            double temp = d2[k] * tsi * c1k / 3.0;
+            d3[k] = (17 * a0d + s4) * temp;
+            d4[k] = 0.5 * temp * a0d * tsi * (221 * a0d + 31 * s4) * c1k;
+            t3cof[k] = d2[k] + 2 * c1sq;
+            t4cof[k] = 0.25 * (3 * d3[k] + c1k * (12 * d2[k] + 10 * c1sq));
+            t5cof[k] = 0.2 * (3 * d4[k] + 12 * c1k * d3[k] + 6 * d2[k] * d2[k] + 15 * c1sq * (2 * d2[k] + c1sq));
+            sinM0[k] = Math.sin(tle.getMeanAnomaly());
+            if (e >= 1e-4) {
+                double c3 = coef * tsi * A3OVK2 * xn0 * RE * sini / e;
+                xmcof[k] = -TLEConstants.TWO_THIRD * coef * tle.getBStar() * RE / eeta;
+                omgcof[k] = tle.getBStar() * c3 * Math.cos(tle.getPerigeeArgument());
+            }
+            c5[k] = 2 * coef1 * a0d * beta02 * (1 + 2.75 * (etasq + eeta) + eeta * etasq);
+        }
+    }
+
+    /**
+     * Propagates the satellites [from, to) of the batch to a date.
+     * Deep-space satellites, and the ones SGP4 cannot propagate (eccentricity driven to 1 by drag), get NaN
+     * coordinates.
+     * @param date The date to propagate to.
+     * @param from The first satellite.
+     * @param to The satellite after the last one.
+     * @param xyz Receives the TEME position in meters of satellite k at 3 * k, 3 * k + 1 and 3 * k + 2.
+     * @param vxyz Receives the TEME velocity in m/s the same way, or null if not needed.
+     */
+    public void propagate(AbsoluteDate date, int from, int to, double[] xyz, double[] vxyz) {
+        double sinceReference = date.durationFrom(reference);
+        for (int k = from; k < to; k++) {
+            if (nearEarth[k]) {
+                propagate(k, (sinceReference - epoch[k]) / 60.0, xyz, vxyz);
+            } else {
+                fail(k, xyz, vxyz);
+            }
+        }
+    }
+
+    // SGP4.sxpPropagate and TLEPropagator.computePVCoordinates, for satellite k and tSince minutes from its epoch
+    private void propagate(int k, double tSince, double[] xyz, double[] vxyz) {
+        // secular gravity and atmospheric drag
+        double xmdf = m0[k] + xmdot[k] * tSince;
+        double omgadf = argp0[k] + omgdot[k] * tSince;
+        double xn0ddf = raan0[k] + xnodot[k] * tSince;
+        double omega = omgadf;
+        double xmp = xmdf;
+        double tsq = tSince * tSince;
+        double xnode = xn0ddf + xnodcf[k] * tsq;
+        double tempa = 1 - c1[k] * tSince;
+        double tempe = bstar[k] * c4[k] * tSince;
+        double templ = t2cof[k] * tsq;
+        if (!lessThan220[k]) {
+            double delomg = omgcof[k] * tSince;
+            double delm = 1. + eta[k] * Math.cos(xmdf);
+            delm = xmcof[k] * (delm * delm * delm - delM0[k]);
+            double temp = delomg + delm;
+            xmp = xmdf + temp;
+            omega = omgadf - temp;
+            double tcube = tsq * tSince;
+            double tfour = tSince * tcube;
+            tempa = tempa - d2[k] * tsq - d3[k] * tcube - d4[k] * tfour;
+            tempe = tempe + bstar[k] * c5[k] * (Math.sin(xmp) - sinM0[k]);
+            templ = templ + t3cof[k] * tcube + tfour * (t4cof[k] + tSince * t5cof[k]);
+        }
+        double a = a0dp[k] * tempa * tempa;
+        double e = e0[k] - tempe;
+        // a highly arbitrary lower limit on e of 1e-6
+        if (e < 1e-6) {
+            e = 1e-6;
+        }
+        double xl = xmp + omega + xnode + xn0dp[k] * templ;
+
+        if (e > (1 - 1e-6)) {
+            fail(k, xyz, vxyz);
+            return;
+        }
+
+        // long period periodics
+        double axn = e * Math.cos(omega);
+        double temp = 1.0 / (a * (1.0 - e * e));
+        double xll = temp * xlcof[k] * axn;
+        double aynl = temp * aycof[k];
+        double xlt = xl + xll;
+        double ayn = e * Math.sin(omega) + aynl;
+        double elsq = axn * axn + ayn * ayn;
+        double capu = normalizeAngle(xlt - xnode);
+
+        // Kepler's equation, Newton-Raphson with a first step bounded by 1.25 e
+        double epw = capu;
+        double ecosE = 0;
+        double esinE = 0;
+        double sinEPW = 0;
+        double cosEPW = 0;
+        for (int j = 0; j < 10; j++) {
+            boolean secondOrder = true;
+            sinEPW = Math.sin(epw);
+            cosEPW = Math.cos(epw);
+            ecosE = axn * cosEPW + ayn * sinEPW;
+            esinE = axn * sinEPW - ayn * cosEPW;
+            double f = capu - epw + esinE;
+            if (Math.abs(f) < 1e-12) {
+                break;
+            }
+            double fdot = 1.0 - ecosE;
+            double deltaEpw = f / fdot;
+            if (j == 0) {
+                double maxNewtonRaphson = 1.25 * Math.abs(e);
+                secondOrder = false;
+                if (deltaEpw > maxNewtonRaphson) {
+                    deltaEpw = maxNewtonRaphson;
+                } else if (deltaEpw < -maxNewtonRaphson) {
+                    deltaEpw = -maxNewtonRaphson;
+                } else {
+                    secondOrder = true;
+                }
+            }
+            if (secondOrder) {
+                deltaEpw = f / (fdot + 0.5 * esinE * deltaEpw);
+            }
+            epw += deltaEpw;
+        }
+
+        // short period preliminary quantities
+        temp = 1.0 - elsq;
+        double pl = a * temp;
+        double r = a * (1.0 - ecosE);
+        double temp2 = a / r;
+        double betal = Math.sqrt(temp);
+        temp = esinE / (1.0 + betal);
+        double cosu = temp2 * (cosEPW - axn + ayn * temp);
+        double sinu = temp2 * (sinEPW - ayn - axn * temp);
+        double u = Math.atan2(sinu, cosu);
+        double sin2u = Math.sin(2.0 * u);
+        double cos2u = Math.cos(2.0 * u);
+        double temp1 = CK2 / pl;
+        temp2 = temp1 / pl;
+
+        // short periodics
+        double rk = r * (1.0 - 1.5 * temp2 * betal * x3thm1[k]) + 0.5 * temp1 * x1mth2[k] * cos2u;
+        double uk = u - 0.25 * temp2 * x7thm1[k] * sin2u;
+        double xnodek = xnode + 1.5 * temp2 * cosi0[k] * sin2u;
+        double xinck = i0[k] + 1.5 * temp2 * cosi0[k] * sini0[k] * cos2u;
+
+        // orientation vectors
+        double sinuk = Math.sin(uk);
+        double cosuk = Math.cos(uk);
+        double sinik = Math.sin(xinck);
+        double cosik = Math.cos(xinck);
+        double sinnok = Math.sin(xnodek);
+        double cosnok = Math.cos(xnodek);
+        double xmx = -sinnok * cosik;
+        double xmy = cosnok * cosik;
+        double ux = xmx * sinuk + cosnok * cosuk;
+        double uy = xmy * sinuk + sinnok * cosuk;
+        double uz = sinik * sinuk;
+
+        double cr = POSITION_SCALE * rk;
+        xyz[3 * k] = cr * ux;
+        xyz[3 * k + 1] = cr * uy;
+        xyz[3 * k + 2] = cr * uz;
+        if (vxyz == null) {
+            return;
+        }
+
+        double sqrtA = Math.sqrt(a);
+        double rdot = XKE * sqrtA * esinE / r;
+        double rfdot = XKE * Math.sqrt(pl) / r;
+        double xn = XKE / (a * sqrtA);
+        double rdotk = rdot - xn * temp1 * x1mth2[k] * sin2u;
+        double rfdotk = rfdot + xn * temp1 * (x1mth2[k] * cos2u + 1.5 * x3thm1[k]);
+        double vx = xmx * cosuk - cosnok * sinuk;
+        double vy = xmy * cosuk - sinnok * sinuk;
+        double vz = sinik * cosuk;
+        vxyz[3 * k] = VELOCITY_SCALE * (rdotk * ux + rfdotk * vx);
+        vxyz[3 * k + 1] = VELOCITY_SCALE * (rdotk * uy + rfdotk * vy);
+        vxyz[3 * k + 2] = VELOCITY_SCALE * (rdotk * uz + rfdotk * vz);
+    }
+
+    private static void fail(int k, double[] xyz, double[] vxyz) {
+        xyz[3 * k] = xyz[3 * k + 1] = xyz[3 * k + 2] = Double.NaN;
+        if (vxyz != null) {
+            vxyz[3 * k] = vxyz[3 * k + 1] = vxyz[3 * k + 2] = Double.NaN;
+        }
+    }
+
+    // MathUtils.normalizeAngle(angle, PI): the same angle in [0, 2 PI)
+    private static double normalizeAngle(double angle) {
+        return angle - TWO_PI * Math.floor(angle / TWO_PI);
+    }
+}
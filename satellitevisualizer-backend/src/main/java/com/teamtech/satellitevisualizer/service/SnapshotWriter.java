@@ -0,0 +1,182 @@
+/**
+ * SnapshotWriter persists the last computed coordinates of the satellites in the background, so position reads
+ * only compute and never wait on (or race each other over) a MongoDB write.
+ *
+ * Reads hand their result to offer(), which keeps at most one pending snapshot per satellite: a newer snapshot
+ * of the same satellite is merged into the pending one (the latest geodetic and cartesian coordinates win), so a
+ * satellite read a thousand times between two flushes is written once. At most satellite.snapshot.max-pending
+ * satellites wait at a time, snapshots of further satellites are dropped, they are offered again on their next read.
+ * Every satellite.snapshot.flush-ms the pending snapshots are written with unordered bulk updates of at most
+ * satellite.snapshot.batch-size documents, and once more on shutdown. The written coordinates are copied into the
+ * SatelliteCache entries, which are neither dropped nor made younger by it.
+ *
+ * With satellite.snapshot.enabled=false nothing is persisted and the stored coordinates keep whatever the TLE
+ * refresh last wrote.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Service
+public class SnapshotWriter {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotWriter.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final SatelliteCache satelliteCache;
+    private final SatelliteMetrics metrics;
+    private final boolean enabled;
+    private final int maxPending;
+    private final int batchSize;
+
+    private final Map<Integer, Snapshot> pending = new ConcurrentHashMap<>();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    public SnapshotWriter(MongoTemplate mongoTemplate,
+                          SatelliteCache satelliteCache,
+                          SatelliteMetrics metrics,
+                          @Value("${satellite.snapshot.enabled:true}") boolean enabled,
+                          @Value("${satellite.snapshot.max-pending:10000}") int maxPending,
+                          @Value("${satellite.snapshot.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.satelliteCache = satelliteCache;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.batchSize = Math.max(1, batchSize);
+        metrics.bindSnapshotWriter(this);
+    }
+
+    /**
+     * Queues the coordinates of a satellite to be written with the next flush.
+     * @param satId The satellite NORAD ID.
+     * @param geodeticCoordinates The new geodetic coordinates, or null to keep the pending / stored ones.
+     * @param xyzCoordinates The new cartesian coordinates, or null to keep the pending / stored ones.
+     * @return false if the snapshot was dropped because the queue is full or persistence is disabled.
+     */
+    public boolean offer(int satId, PositionSamples geodeticCoordinates, PositionSamples xyzCoordinates) {
+        if (!enabled) return false;
+        Snapshot snapshot = new Snapshot(geodeticCoordinates, xyzCoordinates);
+        // merged into the pending snapshot of the satellite if there is one, the bound only applies to new satellites
+        Snapshot previous = pending.computeIfPresent(satId, (id, current) -> current.mergedWith(snapshot));
+        if (previous != null) {
+            merged.incrementAndGet();
+            return true;
+        }
+        if (pending.size() >= maxPending) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (pending.merge(satId, snapshot, Snapshot::mergedWith) == snapshot) {
+            queued.incrementAndGet();
+        } else {
+            merged.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Writes every pending snapshot. Snapshots offered while a flush runs wait for the next one.
+     */
+    @Scheduled(fixedDelayString = "${satellite.snapshot.flush-ms:5000}")
+    public void flush() {
+        if (pending.isEmpty()) return;
+        long start = System.nanoTime();
+        Map<Integer, Snapshot> batch = new LinkedHashMap<>();
+        BulkOperations bulk = null;
+        for (Integer satId : pending.keySet()) {
+            Snapshot snapshot = pending.remove(satId);
+            if (snapshot == null) continue;
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SatelliteData.class);
+            }
+            bulk.updateOne(new Query(where("satid").is(satId)), snapshot.toUpdate());
+            batch.put(satId, snapshot);
+            if (batch.size() >= batchSize) {
+                execute(bulk, batch);
+                bulk = null;
+            }
+        }
+        if (bulk != null) {
+            execute(bulk, batch);
+        }
+        metrics.recordSnapshotFlush(System.nanoTime() - start);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    public long getMerged() {
+        return merged.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    private void execute(BulkOperations bulk, Map<Integer, Snapshot> batch) {
+        try {
+            bulk.execute();
+            written.addAndGet(batch.size());
+            // cached documents still hold the coordinates from before the write
+            batch.forEach((satId, snapshot) -> satelliteCache.updateCoordinates(satId,
+                    snapshot.geodeticCoordinates(), snapshot.xyzCoordinates()));
+        } catch (RuntimeException e) {
+            // the coordinates are recomputed on every read, losing one batch only delays the stored ones
+            log.warn("Failed to write {} position snapshots: {}", batch.size(), e.getMessage());
+            dropped.addAndGet(batch.size());
+        }
+        batch.clear();
+    }
+
+    private record Snapshot(PositionSamples geodeticCoordinates, PositionSamples xyzCoordinates) {
+
+        Snapshot mergedWith(Snapshot newer) {
+            return new Snapshot(
+                    newer.geodeticCoordinates != null ? newer.geodeticCoordinates : geodeticCoordinates,
+                    newer.xyzCoordinates != null ? newer.xyzCoordinates : xyzCoordinates);
+        }
+
+        Update toUpdate() {
+            Update update = new Update();
+            if (geodeticCoordinates != null) update.set("geodeticCoordinates", geodeticCoordinates);
+            if (xyzCoordinates != null) update.set("xyzCoordinates", xyzCoordinates);
+            return update;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * SubpointIndex answers "which satellites are over this area" from the current sub-satellite points of the whole
+ * catalog, without reading the database or propagating anything per request.
+ *
+ * A scheduled tick (every satellite.region.tick-ms) computes the position of every satellite of the catalog at the
+ * same instant, the way the /positions endpoint does (SGP4 batches, see SatellitePositionService.computePositions),
+ * and files them in a latitude / longitude grid of satellite.region.cell-degrees cells: the satellites are sorted by
+ * cell into one array and every cell is the range [cellStart[c], cellStart[c + 1]) of it. A query only visits the
+ * cells overlapping the area and tests the satellites in them exactly, so it takes a few microseconds for a region
+ * and stays well under a millisecond for the whole Earth.
+ *
+ * Every tick builds a new grid and swaps it in at once: queries never lock and always see the positions of a single
+ * instant, at most one tick old. The catalog itself is only read again from the database after a TleUpdatedEvent,
+ * and its TLEs are parsed and initialized for SGP4 once per reload (see SatellitePositionService.prepare), so a
+ * tick only propagates and rotates.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import org.orekit.time.AbsoluteDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class SubpointIndex {
+    private static final Logger log = LoggerFactory.getLogger(SubpointIndex.class);
+
+    // mean Earth radius, the subpoints are compared on a sphere
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final SatellitePositionService satellitePositionService;
+    private final SatelliteRepository satelliteRepository;
+    private final SatelliteMetrics metrics;
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+
+    private final AtomicBoolean catalogChanged = new AtomicBoolean(true);
+    private SatellitePositionService.PreparedSatellites catalog;
+    private volatile Grid grid;
+
+    public SubpointIndex(SatellitePositionService satellitePositionService,
+                         SatelliteRepository satelliteRepository,
+                         SatelliteMetrics metrics,
+                         @Value("${satellite.region.cell-degrees:2}") double cellDegrees) {
+        this.satellitePositionService = satellitePositionService;
+        this.satelliteRepository = satelliteRepository;
+        this.metrics = metrics;
+        this.rows = (int) Math.ceil(180 / cellDegrees);
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+        this.cellDegrees = cellDegrees;
+        metrics.bindSubpointIndex(this);
+    }
+
+    /**
+     * Computes the current position of every satellite and swaps the grid, reloading and preparing the catalog first
+     * if a TLE changed since the last tick.
+     */
+    @Scheduled(fixedRateString = "${satellite.region.tick-ms:1000}")
+    public void tick() {
+        try {
+            Instant epoch = Instant.now();
+            AbsoluteDate date = satellitePositionService.toAbsoluteDate(epoch);
+            if (catalogChanged.getAndSet(false)) {
+                catalog = satellitePositionService.prepare(satelliteRepository.findAll(), date);
+            }
+            update(epoch, satellitePositionService.computePositionsOf(catalog, date));
+        } catch (DataAccessException e) {
+            catalogChanged.set(true);
+            log.warn("Failed to load the catalog for the subpoint index: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onTleUpdated(TleUpdatedEvent event) {
+        catalogChanged.set(true);
+    }
+
+    /**
+     * Replaces the indexed positions.
+     * @param epoch The instant of the positions.
+     * @param positions The positions of every satellite at that instant.
+     */
+    public void update(Instant epoch, List<SatellitePosition> positions) {
+        long start = System.nanoTime();
+        int n = positions.size();
+        int[] cellOf = new int[n];
+        int[] cellStart = new int[rows * columns + 1];
+        for (int i = 0; i < n; i++) {
+            double[] lla = positions.get(i).getLla();
+            cellOf[i] = cell(row(lla[0]), column(lla[1]));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < rows * columns; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        // counting sort by cell, keeping the latitudes and longitudes next to each other for the exact tests
+        SatellitePosition[] sorted = new SatellitePosition[n];
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        int[] next = cellStart.clone();
+        for (int i = 0; i < n; i++) {
+            int slot = next[cellOf[i]]++;
+            SatellitePosition position = positions.get(i);
+            sorted[slot] = position;
+            latitudes[slot] = position.getLla()[0];
+            longitudes[slot] = position.getLla()[1];
+        }
+        grid = new Grid(epoch, sorted, latitudes, longitudes, cellStart);
+        metrics.recordRegionIndex(System.nanoTime() - start);
+    }
+
+    /**
+     * @return The instant of the indexed positions, or null before the first tick.
+     */
+    public Instant getEpoch() {
+        Grid current = grid;
+        return current == null ? null : current.epoch;
+    }
+
+    public int size() {
+        Grid current = grid;
+        return current == null ? 0 : current.positions.length;
+    }
+
+    /**
+     * Finds the satellites whose subpoint is inside a latitude / longitude box.
+     * @param minLat The southern edge in degrees.
+     * @param maxLat The northern edge in degrees.
+     * @param minLon The western edge in degrees.
+     * @param maxLon The eastern edge in degrees, less than minLon for a box across the antimeridian.
+     * Both longitudes are in [-180, 180].
+     * @return The satellites in the box, or null before the first tick.
+     */
+    public Matches withinBox(double minLat, double maxLat, double minLon, double maxLon) {
+        Grid current = grid;
+        if (current == null) return null;
+        List<SatellitePosition> found = new ArrayList<>();
+        if (minLat > maxLat) return new Matches(current.epoch, found);
+
+        boolean wraps = minLon > maxLon;
+        int firstRow = row(minLat);
+        int lastRow = row(maxLat);
+        int firstColumn = column(minLon);
+        int lastColumn = column(maxLon);
+        for (int r = firstRow; r <= lastRow; r++) {
+            if (wraps && firstColumn <= lastColumn) {
+                // both ends in the same column, the whole row is a candidate
+                scanBox(current, r, 0, columns - 1, minLat, maxLat, minLon, maxLon, true, found);
+            } else if (wraps) {
+                scanBox(current, r, firstColumn, columns - 1, minLat, maxLat, minLon, maxLon, true, found);
+                scanBox(current, r, 0, lastColumn, minLat, maxLat, minLon, maxLon, true, found);
+            } else {
+                scanBox(current, r, firstColumn, lastColumn, minLat, maxLat, minLon, maxLon, false, found);
+            }
+        }
+        return new Matches(current.epoch, found);
+    }
+
+    /**
+     * Finds the satellites whose subpoint is within a great-circle distance of a point.
+     * @param lat The latitude of the center in degrees.
+     * @param lon The longitude of the center in degrees.
+     * @param radiusKm The distance on the ground in km, on a sphere of the mean Earth radius.
+     * @return The satellites within the distance, or null before the first tick.
+     */
+    public Matches withinRadius(double lat, double lon, double radiusKm) {
+        Grid current = grid;
+        if (current == null) return null;
+        List<SatellitePosition> found = new ArrayList<>();
+        if (radiusKm < 0) return new Matches(current.epoch, found);
+
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        double angleDegrees = Math.toDegrees(angle);
+        double minLat = lat - angleDegrees;
+        double maxLat = lat + angleDegrees;
+        // the longitudes the circle spans at its widest, all of them if it contains a pole
+        double halfWidth = 180;
+        if (minLat > -90 && maxLat < 90 && angle < Math.PI / 2) {
+            halfWidth = Math.toDegrees(Math.asin(Math.min(1, Math.sin(angle) / Math.cos(Math.toRadians(lat)))));
+        }
+
+        double latRad = Math.toRadians(lat);
+        double cosLat = Math.cos(latRad);
+        // compared through the haversine of the angle, no trigonometric inverse per satellite
+        double maxHaversine = Math.pow(Math.sin(Math.min(angle, Math.PI) / 2), 2);
+        int firstRow = row(Math.max(-90, minLat));
+        int lastRow = row(Math.min(90, maxLat));
+        for (int r = firstRow; r <= lastRow; r++) {
+            // within a cell of the whole circle, both ends could fall in one column
+            if (halfWidth >= 180 - cellDegrees) {
+                scanRadius(current, r, 0, columns - 1, latRad, cosLat, lon, maxHaversine, found);
+            } else {
+                int firstColumn = column(normalizeLongitude(lon - halfWidth));
+                int lastColumn = column(normalizeLongitude(lon + halfWidth));
+                if (firstColumn <= lastColumn) {
+                    scanRadius(current, r, firstColumn, lastColumn, latRad, cosLat, lon, maxHaversine, found);
+                } else {
+                    scanRadius(current, r, firstColumn, columns - 1, latRad, cosLat, lon, maxHaversine, found);
+                    scanRadius(current, r, 0, lastColumn, latRad, cosLat, lon, maxHaversine, found);
+                }
+            }
+        }
+        return new Matches(current.epoch, found);
+    }
+
+    private void scanBox(Grid grid, int row, int firstColumn, int lastColumn, double minLat, double maxLat,
+                         double minLon, double maxLon, boolean wraps, List<SatellitePosition> found) {
+        for (int i = grid.cellStart[cell(row, firstColumn)]; i < grid.cellStart[cell(row, lastColumn) + 1]; i++) {
+            double lat = grid.latitudes[i];
+            double lon = grid.longitudes[i];
+            boolean inLongitude = wraps ? lon >= minLon || lon <= maxLon : lon >= minLon && lon <= maxLon;
+            if (lat >= minLat && lat <= maxLat && inLongitude) {
+                found.add(grid.positions[i]);
+            }
+        }
+    }
+
+    private void scanRadius(Grid grid, int row, int firstColumn, int lastColumn, double latRad, double cosLat,
+                            double lon, double maxHaversine, List<SatellitePosition> found) {
+        for (int i = grid.cellStart[cell(row, firstColumn)]; i < grid.cellStart[cell(row, lastColumn) + 1]; i++) {
+            double satLat = Math.toRadians(grid.latitudes[i]);
+            double sinHalfLat = Math.sin((satLat - latRad) / 2);
+            double sinHalfLon = Math.sin(Math.toRadians(grid.longitudes[i] - lon) / 2);
+            double haversine = sinHalfLat * sinHalfLat + cosLat * Math.cos(satLat) * sinHalfLon * sinHalfLon;
+            if (haversine <= maxHaversine) {
+                found.add(grid.positions[i]);
+            }
+        }
+    }
+
+    // the cells of a row are consecutive, so a run of columns is one range of the sorted satellites
+    private int cell(int row, int column) {
+        return row * columns + column;
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90) / cellDegrees)));
+    }
+
+    // longitudes in [-180, 180], 180 falls in the last column
+    private int column(double lon) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180) / cellDegrees)));
+    }
+
+    private static double normalizeLongitude(double lon) {
+        return lon - 360 * Math.floor((lon + 180) / 360);
+    }
+
+    /**
+     * The satellites a query found, with the instant of their positions.
+     */
+    public record Matches(Instant epoch, List<SatellitePosition> positions) {
+    }
+
+    private record Grid(Instant epoch, SatellitePosition[] positions, double[] latitudes, double[] longitudes,
+                        int[] cellStart) {
+    }
+}
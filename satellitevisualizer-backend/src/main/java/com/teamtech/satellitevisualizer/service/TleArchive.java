@@ -0,0 +1,203 @@
+/**
+ * TleArchive keeps every element set a satellite ever had in the append-only tle_archive collection, so a position
+ * in the past is propagated from the TLE of that time instead of the current one propagated backwards.
+ *
+ * Every TLE written to the satellites collection (fetchAndSaveTLE, the TLE refresh, the catalog ingest) is archived
+ * along with the one it replaces, with an upsert that only inserts: an element set already archived is left as is.
+ * The collection has a unique index on (satid, epoch), created with the first write.
+ *
+ * Lookups go through a small in-memory index of the archived epochs of recently used satellites (at most
+ * satellite.tle-archive.index-size of them, least recently used evicted first). A satellite's epochs are loaded
+ * with one indexed query the first time it is needed, then the nearest element set is found by binary search.
+ * Archiving a TLE drops the satellite from the index so it is reloaded with the new epoch.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.teamtech.satellitevisualizer.models.TleRecord;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Service
+public class TleArchive {
+    private static final Logger log = LoggerFactory.getLogger(TleArchive.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final TimeScale utc;
+    private final int indexSize;
+
+    // access-ordered so the eldest entry is always the least recently used one, guarded by synchronized methods
+    private final Map<Integer, Timeline> timelines;
+    // bumped by every write, a load only indexes its result if nothing was archived while it ran
+    private long generation;
+    private volatile boolean indexReady;
+
+    /**
+     * A TLE to archive.
+     * @param tle The TLE in the format stored in the database, "line1\r\nline2".
+     */
+    public record Entry(int satId, String tle) {
+    }
+
+    public TleArchive(MongoTemplate mongoTemplate,
+                      TimeScale utc,
+                      @Value("${satellite.tle-archive.index-size:1000}") int indexSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.utc = utc;
+        this.indexSize = indexSize;
+        this.timelines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Timeline> eldest) {
+                return size() > TleArchive.this.indexSize;
+            }
+        };
+    }
+
+    public void archive(int satId, String tle) {
+        archiveAll(List.of(new Entry(satId, tle)));
+    }
+
+    /**
+     * Archives TLEs with a single unordered bulk upsert. TLEs that are blank or whose epoch cannot be read are
+     * skipped, and a failed write is only logged: the archive never gets in the way of storing the current TLE.
+     * @param entries The TLEs to archive, possibly several per satellite.
+     * @return The number of satellites whose TLEs were sent to the database (already archived ones included).
+     */
+    public int archiveAll(Collection<Entry> entries) {
+        BulkOperations bulk = null;
+        Set<Integer> satIds = new HashSet<>();
+        for (Entry entry : entries) {
+            Instant epoch = TleParser.epoch(TleParser.line(entry.tle(), 0));
+            if (epoch == null) continue;
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TleRecord.class);
+            }
+            bulk.upsert(new Query(where("satid").is(entry.satId()).and("epoch").is(epoch)),
+                    new Update().setOnInsert("tle", entry.tle()));
+            satIds.add(entry.satId());
+        }
+        if (bulk == null) return 0;
+
+        try {
+            ensureIndex();
+            bulk.execute();
+        } catch (RuntimeException e) {
+            log.warn("Failed to archive the TLEs of {} satellites: {}", satIds.size(), e.getMessage());
+        }
+        synchronized (this) {
+            generation++;
+            timelines.keySet().removeAll(satIds);
+        }
+        return satIds.size();
+    }
+
+    /**
+     * Finds the archived element set of a satellite whose epoch is the nearest to the given date.
+     * @param satId The satellite NORAD ID.
+     * @param date The date the satellite will be propagated to.
+     * @return The TLE, or an empty Optional if nothing is archived for the satellite.
+     */
+    public Optional<TLE> nearest(int satId, AbsoluteDate date) {
+        return Optional.ofNullable(timeline(satId).nearest(date.toDate(utc).getTime()));
+    }
+
+    public synchronized int getIndexedSatellites() {
+        return timelines.size();
+    }
+
+    private Timeline timeline(int satId) {
+        long loadGeneration;
+        synchronized (this) {
+            Timeline timeline = timelines.get(satId);
+            if (timeline != null) return timeline;
+            loadGeneration = generation;
+        }
+
+        Query query = new Query(where("satid").is(satId)).with(Sort.by("epoch"));
+        query.fields().include("epoch").include("tle");
+        List<TleRecord> records = mongoTemplate.find(query, TleRecord.class);
+        long[] epochs = new long[records.size()];
+        String[] tles = new String[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            epochs[i] = records.get(i).getEpoch().toEpochMilli();
+            tles[i] = records.get(i).getTle();
+        }
+        Timeline loaded = new Timeline(epochs, tles);
+
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                timelines.put(satId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    private void ensureIndex() {
+        if (indexReady) return;
+        mongoTemplate.indexOps(TleRecord.class).ensureIndex(new Index()
+                .on("satid", Sort.Direction.ASC)
+                .on("epoch", Sort.Direction.ASC)
+                .unique());
+        indexReady = true;
+    }
+
+    /**
+     * The archived epochs of one satellite in increasing order, each element set only parsed once it is used.
+     */
+    private static final class Timeline {
+        private final long[] epochs;
+        private final String[] tles;
+        private final TLE[] parsed;
+
+        Timeline(long[] epochs, String[] tles) {
+            this.epochs = epochs;
+            this.tles = tles;
+            this.parsed = new TLE[epochs.length];
+        }
+
+        TLE nearest(long millis) {
+            if (epochs.length == 0) return null;
+            int i = Arrays.binarySearch(epochs, millis);
+            if (i < 0) {
+                int next = -i - 1;
+                if (next == 0) i = 0;
+                else if (next == epochs.length) i = epochs.length - 1;
+                else i = millis - epochs[next - 1] <= epochs[next] - millis ? next - 1 : next;
+            }
+            return parse(i);
+        }
+
+        // parsing twice under contention is harmless, TLEs are immutable
+        private TLE parse(int i) {
+            TLE tle = parsed[i];
+            if (tle == null) {
+                tle = SatellitePositionService.parseTLE(tles[i]).orElse(null);
+                parsed[i] = tle;
+            }
+            return tle;
+        }
+    }
+}
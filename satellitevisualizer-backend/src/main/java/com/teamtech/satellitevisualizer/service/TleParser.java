@@ -0,0 +1,207 @@
+/**
+ * TleParser reads two-line element sets without regular expressions.
+ *
+ * The static helpers split the "line1\r\nline2" strings stored in the database and check single lines
+ * (checksum, catalog number, epoch). An instance reads a whole catalog file (CelesTrak-style 2LE or 3LE text,
+ * the name line being optional and possibly prefixed with "0 ") one entry at a time, so a file of any size is parsed
+ * in constant memory. Lines are only scanned character by character, the only strings allocated are the lines
+ * themselves, and entries with a bad checksum or a malformed line are counted and skipped.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+public class TleParser {
+
+    // a TLE line is 68 characters followed by its checksum digit
+    public static final int LINE_LENGTH = 69;
+    private static final int EPOCH_START = 18;
+    private static final int EPOCH_END = 32;
+
+    private final BufferedReader reader;
+    private long lines;
+    private long checksumErrors;
+    private long malformed;
+
+    /**
+     * One satellite of a catalog file.
+     * @param satId The NORAD catalog number.
+     * @param name The satellite name, or null for 2LE files.
+     */
+    public record Entry(int satId, String name, String line1, String line2) {
+        /**
+         * @return The TLE in the format stored in the database (the one N2YO returns).
+         */
+        public String tle() {
+            return line1 + "\r\n" + line2;
+        }
+    }
+
+    public TleParser(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next valid entry of the file.
+     * @return The entry, or null once the end of the file is reached.
+     * @throws IOException If the file cannot be read.
+     */
+    public Entry next() throws IOException {
+        String name = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines++;
+            if (isBlank(line)) continue;
+
+            if (!isLine(line, '1')) {
+                // anything that is not an element line is the name of the next satellite
+                name = line.startsWith("0 ") ? line.substring(2).trim() : line.trim();
+                continue;
+            }
+
+            String line2 = reader.readLine();
+            if (line2 == null) {
+                malformed++;
+                return null;
+            }
+            lines++;
+            if (!isLine(line2, '2')) {
+                malformed++;
+                name = null;
+                continue;
+            }
+
+            String line1 = clip(line);
+            line2 = clip(line2);
+            if (!checksumValid(line1) || !checksumValid(line2)) {
+                checksumErrors++;
+                name = null;
+                continue;
+            }
+            int satId = catalogNumber(line1);
+            if (satId < 0 || satId != catalogNumber(line2)) {
+                malformed++;
+                name = null;
+                continue;
+            }
+            return new Entry(satId, name, line1, line2);
+        }
+        return null;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getChecksumErrors() {
+        return checksumErrors;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * Returns one line of a TLE string as stored in the database ("line1\r\nline2" or "line1\nline2").
+     * @param tleData The TLE data of the satellite.
+     * @param index 0 for the first line, 1 for the second one.
+     * @return The trimmed line, or null if the data is blank or has less lines.
+     */
+    public static String line(String tleData, int index) {
+        if (tleData == null || tleData.isBlank()) return null;
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            int newline = tleData.indexOf('\n', start);
+            if (newline < 0) return null;
+            start = newline + 1;
+        }
+        int end = tleData.indexOf('\n', start);
+        return tleData.substring(start, end < 0 ? tleData.length() : end).trim();
+    }
+
+    /**
+     * Verifies the modulo 10 checksum of a TLE line: the sum of all digits, minus signs counting as 1.
+     */
+    public static boolean checksumValid(CharSequence line) {
+        if (line.length() < LINE_LENGTH) return false;
+        int sum = 0;
+        for (int i = 0; i < LINE_LENGTH - 1; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sum += c - '0';
+            } else if (c == '-') {
+                sum++;
+            }
+        }
+        return line.charAt(LINE_LENGTH - 1) - '0' == sum % 10;
+    }
+
+    /**
+     * Reads the catalog number of a TLE line, including the Alpha-5 form (A0000 = 100000) used past 99999.
+     * @return The catalog number, or -1 if the field is not a number.
+     */
+    public static int catalogNumber(CharSequence line) {
+        int value = 0;
+        for (int i = 2; i < 7; i++) {
+            char c = line.charAt(i);
+            if (c == ' ') continue;
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (i == 2 && c >= 'A' && c <= 'Z' && c != 'I' && c != 'O') {
+                // Alpha-5 skips I and O
+                digit = c - 'A' + 10 - (c > 'O' ? 2 : c > 'I' ? 1 : 0);
+            } else {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Compares the epoch fields of two first lines without allocating.
+     */
+    public static boolean sameEpoch(String line1, String otherLine1) {
+        return line1 != null && otherLine1 != null
+                && line1.length() >= EPOCH_END && otherLine1.length() >= EPOCH_END
+                && line1.regionMatches(EPOCH_START, otherLine1, EPOCH_START, EPOCH_END - EPOCH_START);
+    }
+
+    /**
+     * Reads the epoch field of a first line (two-digit year, 57-99 being 1957-1999, and fractional day of year).
+     * @return The epoch in UTC, to the millisecond, or null if the field is not a number.
+     */
+    public static Instant epoch(String line1) {
+        if (line1 == null || line1.length() < EPOCH_END) return null;
+        try {
+            int year = Integer.parseInt(line1, EPOCH_START, EPOCH_START + 2, 10);
+            double day = Double.parseDouble(line1.substring(EPOCH_START + 2, EPOCH_END).trim());
+            long startOfYear = LocalDate.of(year < 57 ? 2000 + year : 1900 + year, 1, 1)
+                    .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            return Instant.ofEpochMilli(startOfYear + Math.round((day - 1) * 86_400_000));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isLine(String line, char number) {
+        return line.length() >= LINE_LENGTH && line.charAt(0) == number && line.charAt(1) == ' ';
+    }
+
+    private static String clip(String line) {
+        return line.length() == LINE_LENGTH ? line : line.substring(0, LINE_LENGTH);
+    }
+
+    private static boolean isBlank(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isWhitespace(line.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * TleRefreshService fetches a new TLE from the N2YO API for every satellite of the database once a day.
+ *
+ * The refresh runs on its own thread so it never holds the scheduler, and the requests are spread over
+ * n2yo.refresh.concurrency worker threads sharing one HTTP client. Every request takes a token from the
+ * n2yoRateLimiter bucket, which is also lowered to what N2YO reports is left of the hourly quota (transactionscount),
+ * so a refresh never goes over the limit of the API key. Failed requests are retried with exponential backoff.
+ *
+ * Only satellites whose TLE epoch changed are written: their new TLE and current position are saved together with
+ * unordered Mongo bulk updates of n2yo.refresh.batch-size satellites, then a TleUpdatedEvent is published for each.
+ * Both the new and the replaced TLEs are added to the TleArchive with each batch.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtech.satellitevisualizer.config.N2yoProperties;
+import com.teamtech.satellitevisualizer.controller.SatelliteResponse;
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.RefreshReport;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.AbsoluteDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Service
+public class TleRefreshService {
+    private static final Logger log = LoggerFactory.getLogger(TleRefreshService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RestTemplate n2yoRestTemplate;
+
+    @Autowired
+    private TokenBucket n2yoRateLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("n2yoRefreshExecutor")
+    private ExecutorService refreshExecutor;
+
+    @Autowired
+    private N2yoProperties properties;
+
+    @Autowired
+    private SatellitePositionService satellitePositionService;
+
+    @Autowired
+    private TleArchive tleArchive;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private SatelliteMetrics satelliteMetrics;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile RefreshReport lastReport;
+
+    /**
+     * Starts a refresh of every satellite every 24 hours. The refresh runs on its own thread,
+     * and nothing is started if the previous one is still running.
+     * @return Whether the refresh was started, false if another one is running.
+     */
+    @Scheduled(fixedRate = 86400000) // 24 hours in ms
+    public boolean refreshTLEs() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("TLE refresh already running, skipping");
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                refreshAll();
+            } catch (RuntimeException e) {
+                log.error("TLE refresh failed", e);
+            } finally {
+                running.set(false);
+            }
+        }, "tle-refresh");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Refreshes the TLE of every satellite in the database and waits for the refresh to finish.
+     * @return The report of the run.
+     */
+    public RefreshReport refreshAll() {
+        long start = System.nanoTime();
+        Query query = new Query();
+        query.fields().include("tle");
+        List<SatelliteData> satellites = mongoTemplate.find(query, SatelliteData.class);
+
+        Run run = new Run();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(satellites.size());
+        for (SatelliteData satellite : satellites) {
+            futures.add(CompletableFuture.runAsync(() -> refresh(satellite, run), refreshExecutor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        run.flush();
+
+        RefreshReport report = new RefreshReport(satellites.size(), run.changed.get(), run.unchanged.get(),
+                run.failed.get(), run.requests.get(), run.retries.get(), (System.nanoTime() - start) / 1_000_000);
+        lastReport = report;
+        satelliteMetrics.recordRefresh(report.getElapsedMs(), report.getChanged(), report.getUnchanged(), report.getFailed());
+        log.info("Refreshed TLEs checked={} changed={} unchanged={} failed={} requests={} retries={} elapsedMs={}",
+                report.getChecked(), report.getChanged(), report.getUnchanged(), report.getFailed(),
+                report.getRequests(), report.getRetries(), report.getElapsedMs());
+        return report;
+    }
+
+    public RefreshReport getLastReport() {
+        return lastReport;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void refresh(SatelliteData satellite, Run run) {
+        int satId = satellite.getSatid();
+        try {
+            SatelliteResponse response = fetch(satId, run);
+            String newTle = response == null ? null : response.getTle();
+            if (newTle == null || newTle.isBlank()) {
+                run.failed.incrementAndGet();
+                return;
+            }
+            if (TleParser.sameEpoch(TleParser.line(newTle, 0), TleParser.line(satellite.getTle(), 0))) {
+                run.unchanged.incrementAndGet();
+                return;
+            }
+
+            Update update = new Update().set("tle", newTle);
+            Optional<TLE> tle = SatellitePositionService.parseTLE(newTle);
+            if (tle.isPresent()) {
+                AbsoluteDate now = satellitePositionService.toAbsoluteDate(Instant.now());
+                SatellitePosition position = satellitePositionService.computePosition(tle.get(), satId, now);
+                update.set("geodeticCoordinates", PositionSamples.of(position.getLla()));
+                update.set("xyzCoordinates", PositionSamples.of(position.getXyz()));
+            }
+            run.add(satId, update, satellite.getTle(), newTle);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.failed.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("TLE refresh failed for satellite {}: {}", satId, e.getMessage());
+            run.failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Requests the TLE of a satellite, retrying server errors, rate limiting (429) and I/O errors
+     * up to n2yo.refresh.max-attempts times with exponential backoff and jitter.
+     * @return The response, or null if every attempt failed or the request was rejected.
+     */
+    private SatelliteResponse fetch(int satId, Run run) throws Exception {
+        // a URI template, so the request metrics are tagged without the ID or the API key
+        String url = properties.getApi().getBaseUrl() + "tle/{satId}&apiKey={apiKey}";
+        int maxAttempts = Math.max(1, properties.getRefresh().getMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            n2yoRateLimiter.acquire();
+            run.requests.incrementAndGet();
+            try {
+                ResponseEntity<String> response = n2yoRestTemplate.getForEntity(url, String.class,
+                        satId, properties.getApi().getKey());
+                if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+                    SatelliteResponse body = objectMapper.readValue(response.getBody(), SatelliteResponse.class);
+                    if (body.getInfo() != null) {
+                        n2yoRateLimiter.limitTo(properties.getApi().getRequestsPerHour()
+                                - body.getInfo().getTransactionscount());
+                    }
+                    return body;
+                }
+            } catch (HttpStatusCodeException e) {
+                satelliteMetrics.recordN2yoError(String.valueOf(e.getStatusCode().value()));
+                boolean retryable = e.getStatusCode().is5xxServerError()
+                        || e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+                if (!retryable) {
+                    log.warn("TLE request rejected for satellite {}: {}", satId, e.getStatusCode());
+                    return null;
+                }
+            } catch (RestClientException e) {
+                // connection or read error, worth another try
+                satelliteMetrics.recordN2yoError("io");
+            }
+
+            if (attempt >= maxAttempts) return null;
+            run.retries.incrementAndGet();
+            satelliteMetrics.recordN2yoRetry();
+            long backoff = properties.getRefresh().getBackoffMs() << (attempt - 1);
+            Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+        }
+    }
+
+    /**
+     * State of one refresh: the counters and the updates waiting to be written.
+     */
+    private class Run {
+        final AtomicLong changed = new AtomicLong();
+        final AtomicLong unchanged = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        private final List<Integer> pendingIds = new ArrayList<>();
+        private final List<Update> pendingUpdates = new ArrayList<>();
+        private final List<TleArchive.Entry> pendingArchive = new ArrayList<>();
+
+        synchronized void add(int satId, Update update, String oldTle, String newTle) {
+            pendingIds.add(satId);
+            pendingUpdates.add(update);
+            if (oldTle != null) {
+                pendingArchive.add(new TleArchive.Entry(satId, oldTle));
+            }
+            pendingArchive.add(new TleArchive.Entry(satId, newTle));
+            if (pendingIds.size() >= properties.getRefresh().getBatchSize()) {
+                flush();
+            }
+        }
+
+        // writes the pending updates, called with the lock held so batches are written one at a time
+        synchronized void flush() {
+            if (pendingIds.isEmpty()) return;
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SatelliteData.class);
+            for (int i = 0; i < pendingIds.size(); i++) {
+                bulk.updateOne(new Query(where("satid").is(pendingIds.get(i))), pendingUpdates.get(i));
+            }
+            bulk.execute();
+            tleArchive.archiveAll(List.copyOf(pendingArchive));
+            changed.addAndGet(pendingIds.size());
+            for (Integer satId : pendingIds) {
+                eventPublisher.publishEvent(new TleUpdatedEvent(satId));
+            }
+            pendingIds.clear();
+            pendingUpdates.clear();
+            pendingArchive.clear();
+        }
+    }
+}
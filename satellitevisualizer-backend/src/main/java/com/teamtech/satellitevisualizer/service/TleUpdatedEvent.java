@@ -0,0 +1,9 @@
+/**
+ * TleUpdatedEvent is published whenever a new TLE is stored for a satellite (fetchAndSaveTLE, refreshTLEs).
+ * Anything that caches data derived from a TLE (propagators, ephemerides, ...) listens to it to drop stale entries.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+public record TleUpdatedEvent(int satId) {
+}
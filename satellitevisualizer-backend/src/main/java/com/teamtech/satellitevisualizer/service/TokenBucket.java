@@ -0,0 +1,73 @@
+/**
+ * TokenBucket is a thread-safe rate limiter: it holds up to capacity tokens, refilled continuously at a fixed rate,
+ * and every request takes one token, waiting for the next one when the bucket is empty.
+ * limitTo lets the caller lower the available tokens when the server reports that part of the quota was
+ * already used elsewhere (e.g. N2YO's transactionscount).
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1e9;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1 - tokens) / refillPerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Caps the available tokens to what is left of the quota according to the server.
+     * @param remaining The number of requests the server still allows.
+     */
+    public synchronized void limitTo(double remaining) {
+        refill();
+        tokens = Math.min(tokens, Math.max(0, remaining));
+    }
+
+    public synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
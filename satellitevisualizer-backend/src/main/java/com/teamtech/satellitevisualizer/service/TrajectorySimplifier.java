@@ -0,0 +1,82 @@
+/**
+ * TrajectorySimplifier reduces a time-tagged trajectory to the points needed to redraw it within a given error.
+ *
+ * It is the Douglas-Peucker algorithm with the synchronized euclidean distance: a point is dropped when the
+ * position linearly interpolated at its time between the kept points around it is within the tolerance of the
+ * real one. Comparing positions at the same time (rather than the distance to the segment) keeps the timing of
+ * the trajectory right as well as its shape, which is what a replay needs.
+ */
+
+package com.teamtech.satellitevisualizer.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+public final class TrajectorySimplifier {
+
+    private TrajectorySimplifier() {
+    }
+
+    /**
+     * @param times The time of every point, increasing.
+     * @param xyz The x, y, z coordinates of every point one after the other.
+     * @param tolerance The largest distance allowed between a dropped point and the interpolated position.
+     * @return The indices of the points to keep, in increasing order. The first and last points are always kept.
+     */
+    public static int[] simplify(double[] times, double[] xyz, double tolerance) {
+        int n = times.length;
+        if (n <= 2) return indices(n);
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int kept = 2;
+        double toleranceSquared = tolerance * tolerance;
+
+        // explicit stack instead of recursion, a week of samples would go too deep on a straight stretch
+        Deque<int[]> spans = new ArrayDeque<>();
+        spans.push(new int[] {0, n - 1});
+        while (!spans.isEmpty()) {
+            int[] span = spans.pop();
+            int first = span[0];
+            int last = span[1];
+            if (last - first < 2) continue;
+
+            double t0 = times[first];
+            double dt = times[last] - t0;
+            int worst = -1;
+            double worstSquared = toleranceSquared;
+            for (int k = first + 1; k < last; k++) {
+                double f = dt > 0 ? (times[k] - t0) / dt : 0;
+                double distanceSquared = 0;
+                for (int c = 0; c < 3; c++) {
+                    double start = xyz[3 * first + c];
+                    double d = xyz[3 * k + c] - (start + f * (xyz[3 * last + c] - start));
+                    distanceSquared += d * d;
+                }
+                if (distanceSquared > worstSquared) {
+                    worstSquared = distanceSquared;
+                    worst = k;
+                }
+            }
+            if (worst >= 0) {
+                keep[worst] = true;
+                kept++;
+                spans.push(new int[] {first, worst});
+                spans.push(new int[] {worst, last});
+            }
+        }
+
+        int[] result = new int[kept];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) result[j++] = i;
+        }
+        return result;
+    }
+
+    private static int[] indices(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) result[i] = i;
+        return result;
+    }
+}
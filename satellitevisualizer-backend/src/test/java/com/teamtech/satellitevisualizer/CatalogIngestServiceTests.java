@@ -0,0 +1,164 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.models.IngestReport;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.service.CatalogIngestService;
+import com.teamtech.satellitevisualizer.service.TleArchive;
+import com.teamtech.satellitevisualizer.service.TleUpdatedEvent;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogIngestServiceTests {
+
+    private static final String OLD_ISS = "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994\r\n" +
+            "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656";
+    private static final String NEW_ISS = "1 25544U 98067A   25077.86855735  .00037299  00000-0  66721-3 0  9993\r\n" +
+            "2 25544  51.6402  34.3664 0004296  19.8911  61.0593 15.49618050501151";
+    private static final String STARLINK = "1 44945U 20001AH  25104.58335648  .00211921  00000-0  87018-3 0  9996\r\n" +
+            "2 44945  53.0431 302.8405 0003981 211.2664 213.7415 15.84888341291374";
+    private static final String GEO = "1 51850U 22021A   25093.54661021  .00000085  00000-0  00000+0 0  9992\r\n" +
+            "2 51850   0.0419  20.9525 0000029 187.1507  43.7843  1.00272382 11396";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private TleArchive tleArchive;
+
+    @TempDir
+    private Path ingestDirectory;
+
+    private CatalogIngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        ingestService = new CatalogIngestService();
+        ReflectionTestUtils.setField(ingestService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(ingestService, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(ingestService, "tleArchive", tleArchive);
+        ReflectionTestUtils.setField(ingestService, "ingestDirectory", ingestDirectory.toString());
+        ReflectionTestUtils.setField(ingestService, "batchSize", 2);
+    }
+
+    private static SatelliteData stored(int satId, String tle) {
+        SatelliteData satellite = new SatelliteData();
+        satellite.setSatid(satId);
+        satellite.setTle(tle);
+        return satellite;
+    }
+
+    // the ISS has a new epoch, the Starlink entry is unchanged and the GEO satellite is new, in batches of two
+    @Test
+    void testIngestUpsertsChangedEntriesInBatches() throws IOException {
+        Path file = Files.writeString(ingestDirectory.resolve("catalog.txt"),
+                "ISS (ZARYA)\n" + NEW_ISS + "\nSTARLINK-1130\n" + STARLINK + "\n" + GEO + "\n");
+        when(mongoTemplate.find(any(Query.class), eq(SatelliteData.class)))
+                .thenReturn(List.of(stored(25544, OLD_ISS), stored(44945, STARLINK)))
+                .thenReturn(List.of());
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SatelliteData.class)).thenReturn(bulkOperations);
+
+        IngestReport report = ingestService.ingest(file);
+
+        assertEquals(3, report.getEntries());
+        assertEquals(2, report.getBatches());
+        assertEquals(2, report.getUpserted());
+        assertEquals(1, report.getUnchanged());
+        assertFalse(report.isRunning());
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(2)).upsert(queries.capture(), updates.capture());
+        verify(bulkOperations, times(2)).execute();
+        assertEquals(List.of(25544, 51850), queries.getAllValues().stream()
+                .map(query -> query.getQueryObject().getInteger("satid")).toList());
+        Document set = (Document) updates.getAllValues().get(0).getUpdateObject().get("$set");
+        assertEquals(NEW_ISS, set.get("tle"));
+        assertEquals("ISS (ZARYA)", set.get("satname"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<TleArchive.Entry>> archived = ArgumentCaptor.forClass(Collection.class);
+        verify(tleArchive, times(2)).archiveAll(archived.capture());
+        assertEquals(Set.of(new TleArchive.Entry(25544, OLD_ISS), new TleArchive.Entry(25544, NEW_ISS)),
+                Set.copyOf(archived.getAllValues().get(0)));
+        assertEquals(Set.of(new TleArchive.Entry(51850, GEO)), Set.copyOf(archived.getAllValues().get(1)));
+
+        ArgumentCaptor<TleUpdatedEvent> events = ArgumentCaptor.forClass(TleUpdatedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(Set.of(25544, 51850),
+                events.getAllValues().stream().map(TleUpdatedEvent::satId).collect(Collectors.toSet()));
+    }
+
+    // a batch where every epoch is unchanged writes nothing
+    @Test
+    void testIngestSkipsUnchangedBatch() throws IOException {
+        Path file = Files.writeString(ingestDirectory.resolve("catalog.txt"), STARLINK + "\n");
+        when(mongoTemplate.find(any(Query.class), eq(SatelliteData.class)))
+                .thenReturn(List.of(stored(44945, STARLINK)));
+
+        IngestReport report = ingestService.ingest(file);
+
+        assertEquals(1, report.getUnchanged());
+        assertEquals(0, report.getUpserted());
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(SatelliteData.class));
+        verifyNoInteractions(tleArchive, eventPublisher);
+    }
+
+    // the report read while an ingest runs is a copy, the ingest thread does not keep changing it
+    @Test
+    void testLastReportIsASnapshot() throws IOException {
+        Path file = Files.writeString(ingestDirectory.resolve("catalog.txt"), STARLINK + "\n");
+        IngestReport[] duringIngest = new IngestReport[1];
+        when(mongoTemplate.find(any(Query.class), eq(SatelliteData.class))).thenAnswer(invocation -> {
+            duringIngest[0] = ingestService.getLastReport();
+            return List.of(stored(44945, STARLINK));
+        });
+
+        IngestReport report = ingestService.ingest(file);
+
+        assertTrue(duringIngest[0].isRunning());
+        assertEquals(0, duringIngest[0].getUnchanged());
+        assertFalse(report.isRunning());
+        assertEquals(1, report.getUnchanged());
+        assertSame(report, ingestService.getLastReport());
+    }
+
+    @Test
+    void testResolveStaysInsideIngestDirectory() {
+        assertEquals(ingestDirectory.toAbsolutePath().normalize().resolve("active.txt"),
+                ingestService.resolve("active.txt"));
+        assertThrows(IllegalArgumentException.class, () -> ingestService.resolve("../secrets.txt"));
+        assertThrows(IllegalArgumentException.class, () -> ingestService.resolve("nested/../../secrets.txt"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.config.ComputeProperties;
+import com.teamtech.satellitevisualizer.service.ComputeLanes;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class ComputeLanesTests {
+
+    private ThreadPoolExecutor executor;
+    private SimpleMeterRegistry meterRegistry;
+    private ComputeLanes lanes;
+    // holds the only compute thread until released
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ComputeProperties properties = new ComputeProperties();
+        properties.getLanes().put("heavy", lane(2, 60_000, 2));
+        properties.getLanes().put("cheap", lane(10, 60_000, 0));
+        properties.getLanes().put("impatient", lane(10, 50, 1));
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+        meterRegistry = new SimpleMeterRegistry();
+        lanes = new ComputeLanes(executor, properties, new SatelliteMetrics(meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private static ComputeProperties.Lane lane(int maxQueued, long maxWaitMs, int priority) {
+        ComputeProperties.Lane lane = new ComputeProperties.Lane();
+        lane.setMaxQueued(maxQueued);
+        lane.setMaxWaitMs(maxWaitMs);
+        lane.setPriority(priority);
+        return lane;
+    }
+
+    private CompletableFuture<String> block(String lane) {
+        return lanes.submit(lane, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "blocked";
+        });
+    }
+
+    // a full lane rejects with a 429 at once, without affecting the other lanes
+    @Test
+    void testFullLaneIsRejected() throws Exception {
+        CompletableFuture<String> running = block("heavy");
+        CompletableFuture<String> queued = lanes.submit("heavy", () -> "queued");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> lanes.submit("heavy", () -> "rejected"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatusCode());
+        CompletableFuture<String> cheap = lanes.submit("cheap", () -> "cheap");
+        assertEquals(2, lanes.inFlight("heavy"));
+
+        release.countDown();
+        assertEquals("blocked", running.get(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        assertEquals("cheap", cheap.get(5, TimeUnit.SECONDS));
+        assertEquals(0, lanes.inFlight("heavy"));
+        assertEquals(1, meterRegistry.get("satellite.compute.rejected").tags("lane", "heavy", "reason", "full").counter().count());
+        assertEquals(3, meterRegistry.get("satellite.compute.time").tags("lane", "heavy").timer().count()
+                + meterRegistry.get("satellite.compute.time").tags("lane", "cheap").timer().count());
+    }
+
+    // waiting requests of a lower priority lane run first, in submission order within a lane
+    @Test
+    void testPriorityOrder() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> running = block("heavy");
+        CompletableFuture<Boolean> heavy = lanes.submit("heavy", () -> order.add("heavy"));
+        CompletableFuture<Boolean> cheap1 = lanes.submit("cheap", () -> order.add("cheap1"));
+        CompletableFuture<Boolean> cheap2 = lanes.submit("cheap", () -> order.add("cheap2"));
+
+        release.countDown();
+        CompletableFuture.allOf(running, heavy, cheap1, cheap2).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("cheap1", "cheap2", "heavy"), order);
+    }
+
+    // a request that waited longer than its lane allows fails with a 503 instead of running
+    @Test
+    void testStaleRequestIsShed() throws Exception {
+        CompletableFuture<String> running = block("heavy");
+        CompletableFuture<String> stale = lanes.submit("impatient", () -> "computed");
+        Thread.sleep(100);
+
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> stale.get(5, TimeUnit.SECONDS));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ResponseStatusException) e.getCause()).getStatusCode());
+        assertEquals(0, lanes.inFlight("impatient"));
+        assertEquals(1, meterRegistry.get("satellite.compute.rejected").tags("lane", "impatient", "reason", "timeout").counter().count());
+        assertEquals(1, meterRegistry.get("satellite.compute.wait").tags("lane", "impatient").timer().count());
+    }
+
+    // the exception thrown by the work completes the result, and frees the lane
+    @Test
+    void testWorkFailure() {
+        CompletableFuture<String> failed = lanes.submit("heavy", () -> {
+            throw new IllegalStateException("boom");
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(0, lanes.inFlight("heavy"));
+    }
+}
@@ -0,0 +1,164 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.ConjunctionScreener;
+import org.hipparchus.util.FastMath;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.utils.PVCoordinates;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+class ConjunctionScreenerTests {
+
+    private static final double THRESHOLD = 20_000;
+    private static final double WINDOW = 3 * 3600;
+
+    private static ForkJoinPool POOL;
+    private static TLE ISS;
+    private static TLE GEO;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        POOL = new ForkJoinPool(4);
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+        GEO = new TLE("1 51850U 22021A   25093.54661021  .00000085  00000-0  00000+0 0  9992",
+                "2 51850   0.0419  20.9525 0000029 187.1507  43.7843  1.00272382 11396");
+    }
+
+    @AfterAll
+    static void shutdown() {
+        POOL.shutdown();
+    }
+
+    // the satellites of a crowded shell around the ISS orbit, a few crossing it, two close GEO satellites and a lone
+    // GPS-like one: every local minimum under the threshold found by sampling every second is found, to the millimeter
+    @Test
+    void testMatchesExhaustiveSearch() {
+        List<Integer> ids = new ArrayList<>();
+        List<TLE> tles = new ArrayList<>();
+        Random random = new Random(7);
+        for (int k = 0; k < 30; k++) {
+            double spread = FastMath.toRadians(0.3);
+            double inclination = k < 26 ? ISS.getI() + spread * random.nextGaussian() : FastMath.toRadians(97.5);
+            tles.add(copy(ISS, 90000 + k, ISS.getMeanMotion() * (1 + 1e-4 * random.nextGaussian()), ISS.getE(),
+                    inclination, ISS.getRaan() + spread * random.nextGaussian() + (k < 26 ? 0 : k),
+                    ISS.getMeanAnomaly() + spread * random.nextGaussian()));
+        }
+        tles.add(copy(GEO, 91000, GEO.getMeanMotion(), GEO.getE(), GEO.getI() + FastMath.toRadians(0.02), GEO.getRaan(),
+                GEO.getMeanAnomaly() + FastMath.toRadians(0.005)));
+        tles.add(GEO);
+        tles.add(copy(GEO, 92000, 2.005 * 2 * FastMath.PI / 86400, 0.01, FastMath.toRadians(55), 1, 2));
+        for (TLE tle : tles) {
+            ids.add(tle.getSatelliteNumber());
+        }
+        AbsoluteDate start = ISS.getDate().shiftedBy(3600);
+
+        ConjunctionScreener.Result result = new ConjunctionScreener(POOL).screen(ids, tles, start, WINDOW, THRESHOLD, 20);
+        assertEquals(tles.size(), result.satellites());
+        assertEquals(tles.size() - 1, result.screened(), "the GPS-like satellite meets nobody");
+        assertTrue(result.candidates() < result.gridPairs());
+
+        List<ConjunctionScreener.Conjunction> expected = exhaustiveSearch(ids, tles, start);
+        assertTrue(expected.size() > 20, "a crowded shell has close approaches, found " + expected.size());
+        assertEquals(expected.size(), result.conjunctions().size());
+        for (ConjunctionScreener.Conjunction conjunction : expected) {
+            assertTrue(result.conjunctions().stream().anyMatch(found -> found.satId1() == conjunction.satId1()
+                    && found.satId2() == conjunction.satId2()
+                    && Math.abs(found.tca().durationFrom(conjunction.tca())) < 1e-4
+                    && Math.abs(found.missDistance() - conjunction.missDistance()) < 1e-3), "missing " + conjunction);
+        }
+        for (int c = 1; c < result.conjunctions().size(); c++) {
+            assertTrue(result.conjunctions().get(c).tca().compareTo(result.conjunctions().get(c - 1).tca()) >= 0);
+        }
+    }
+
+    @Test
+    void testEmptyCatalog() {
+        ConjunctionScreener.Result result = new ConjunctionScreener(POOL).screen(List.of(), List.of(), ISS.getDate(),
+                WINDOW, THRESHOLD, 20);
+        assertTrue(result.conjunctions().isEmpty());
+        assertEquals(0, result.screened());
+    }
+
+    // every pair at every second, each local minimum refined by bisection of the range rate
+    private static List<ConjunctionScreener.Conjunction> exhaustiveSearch(List<Integer> ids, List<TLE> tles,
+                                                                          AbsoluteDate start) {
+        int n = tles.size();
+        int seconds = (int) WINDOW;
+        List<TLEPropagator> propagators = new ArrayList<>();
+        double[][][] positions = new double[n][seconds + 1][];
+        for (int k = 0; k < n; k++) {
+            TLEPropagator propagator = TLEPropagator.selectExtrapolator(tles.get(k));
+            propagators.add(propagator);
+            for (int t = 0; t <= seconds; t++) {
+                positions[k][t] = propagator.getPVCoordinates(start.shiftedBy(t)).getPosition().toArray();
+            }
+        }
+
+        List<ConjunctionScreener.Conjunction> conjunctions = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double[] distance = new double[seconds + 1];
+                for (int t = 0; t <= seconds; t++) {
+                    distance[t] = distance(positions[i][t], positions[j][t]);
+                }
+                for (int t = 1; t < seconds; t++) {
+                    if (distance[t] > distance[t - 1] || distance[t] > distance[t + 1]) continue;
+                    if (distance[t] > THRESHOLD + 100) continue;
+                    TLEPropagator first = propagators.get(i);
+                    TLEPropagator second = propagators.get(j);
+                    double lower = t - 1;
+                    double upper = t + 1;
+                    while (upper - lower > 1e-7) {
+                        double middle = (lower + upper) / 2;
+                        if (rangeRate(first, second, start.shiftedBy(middle)) < 0) {
+                            lower = middle;
+                        } else {
+                            upper = middle;
+                        }
+                    }
+                    AbsoluteDate tca = start.shiftedBy((lower + upper) / 2);
+                    PVCoordinates relative = new PVCoordinates(first.getPVCoordinates(tca), second.getPVCoordinates(tca));
+                    if (relative.getPosition().getNorm() <= THRESHOLD) {
+                        conjunctions.add(new ConjunctionScreener.Conjunction(ids.get(i), ids.get(j), tca,
+                                relative.getPosition().getNorm(), relative.getVelocity().getNorm()));
+                    }
+                }
+            }
+        }
+        return conjunctions;
+    }
+
+    private static double rangeRate(TLEPropagator first, TLEPropagator second, AbsoluteDate date) {
+        PVCoordinates relative = new PVCoordinates(first.getPVCoordinates(date), second.getPVCoordinates(date));
+        return relative.getPosition().dotProduct(relative.getVelocity());
+    }
+
+    private static double distance(double[] a, double[] b) {
+        return Math.sqrt((a[0] - b[0]) * (a[0] - b[0]) + (a[1] - b[1]) * (a[1] - b[1]) + (a[2] - b[2]) * (a[2] - b[2]));
+    }
+
+    private static TLE copy(TLE tle, int satNum, double meanMotion, double e, double i, double raan, double anomaly) {
+        return new TLE(satNum, 'U', 2025, 1, "A", 0, 999, tle.getDate(), meanMotion, 0, 0, e, i,
+                tle.getPerigeeArgument(), raan, anomaly, 1, tle.getBStar());
+    }
+}
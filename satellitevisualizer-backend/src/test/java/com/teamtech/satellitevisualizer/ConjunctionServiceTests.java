@@ -0,0 +1,129 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+import com.teamtech.satellitevisualizer.models.ConjunctionEvent;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.ScreeningReport;
+import com.teamtech.satellitevisualizer.service.ConjunctionService;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.hipparchus.util.FastMath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.orekit.time.TimeScalesFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+class ConjunctionServiceTests {
+
+    private static TLE ISS;
+    private static TimeScale UTC;
+
+    private MongoTemplate mongoTemplate;
+    private SatellitePositionService satellitePositionService;
+    private SimpleMeterRegistry meterRegistry;
+    private ConjunctionService conjunctionService;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        UTC = TimeScalesFactory.getUTC();
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        satellitePositionService = mock(SatellitePositionService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        when(mongoTemplate.indexOps(ConjunctionEvent.class)).thenReturn(mock(IndexOperations.class));
+        when(satellitePositionService.toAbsoluteDate(any()))
+                .thenAnswer(invocation -> new AbsoluteDate(Date.from(invocation.getArgument(0)), UTC));
+        when(satellitePositionService.selectTLE(anyInt(), any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        conjunctionService = new ConjunctionService(mongoTemplate, satellitePositionService,
+                new SatelliteMetrics(meterRegistry), UTC, 5, 24, 48, 20, 2, 2);
+    }
+
+    // a satellite on the ISS orbit tilted by 0.2 degrees meets it at every node, the ISS itself with the lower ID;
+    // the events of the window are replaced by the new ones, in batches
+    @Test
+    @SuppressWarnings("unchecked")
+    void testScreenStoresTheCloseApproachesOfTheWindow() {
+        TLE tilted = new TLE(25545, 'U', 2025, 1, "A", 0, 999, ISS.getDate(), ISS.getMeanMotion(), 0, 0, ISS.getE(),
+                ISS.getI() + FastMath.toRadians(0.2), ISS.getPerigeeArgument(), ISS.getRaan(), ISS.getMeanAnomaly(), 1,
+                ISS.getBStar());
+        when(mongoTemplate.find(any(Query.class), eq(SatelliteData.class))).thenReturn(List.of(
+                new SatelliteData(25545, "TILTED", tilted.getLine1() + "\r\n" + tilted.getLine2(), null, null),
+                new SatelliteData(25544, "ISS", ISS.getLine1() + "\r\n" + ISS.getLine2(), null, null),
+                new SatelliteData(1, "NO TLE", null, null, null)));
+
+        Instant from = ISS.getDate().toDate(UTC).toInstant();
+        ScreeningReport report = conjunctionService.screen(from, 3, 5);
+        assertFalse(report.isRunning());
+        assertEquals(2, report.getSatellites());
+        assertEquals(from.plusSeconds(3 * 3600).toString(), report.getTo());
+        assertSame(report, conjunctionService.getLastReport());
+        // two nodes an orbit, the ISS flies a little over 2 orbits in 3 hours
+        assertTrue(report.getConjunctions() >= 3, "found " + report.getConjunctions());
+
+        // the new events are inserted before the older ones of the window are removed, the window is never empty
+        InOrder order = inOrder(mongoTemplate);
+        ArgumentCaptor<Collection<ConjunctionEvent>> inserted = ArgumentCaptor.forClass(Collection.class);
+        order.verify(mongoTemplate, times((int) (report.getConjunctions() + 1) / 2))
+                .insert(inserted.capture(), eq(ConjunctionEvent.class));
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        order.verify(mongoTemplate).remove(removed.capture(), eq(ConjunctionEvent.class));
+        List<ConjunctionEvent> events = inserted.getAllValues().stream().flatMap(Collection::stream).toList();
+        assertEquals(report.getConjunctions(), events.size());
+        Document query = removed.getValue().getQueryObject();
+        assertEquals(from, query.get("tca", Document.class).get("$gte"));
+        assertEquals(events.get(0).getScreenedAt(), query.get("screenedAt", Document.class).get("$lt"));
+        for (ConjunctionEvent event : events) {
+            assertEquals(25544, event.getSatid1());
+            assertEquals(25545, event.getSatid2());
+            assertTrue(event.getMissDistanceKm() <= 5);
+            assertFalse(event.getTca().isBefore(from));
+            // the orbits cross at about 27 m/s
+            assertEquals(0.027, event.getRelativeSpeedKms(), 0.005);
+        }
+        assertEquals(report.getConjunctions(), meterRegistry.counter("satellite.conjunction.pairs", "stage", "conjunction").count());
+    }
+
+    @Test
+    void testRejectsOutOfBoundsRequests() {
+        Instant now = Instant.now();
+        assertThrows(IllegalArgumentException.class, () -> conjunctionService.screen(now, 49, 5));
+        assertThrows(IllegalArgumentException.class, () -> conjunctionService.screen(now, 0, 5));
+        assertThrows(IllegalArgumentException.class, () -> conjunctionService.start(now, 24.0, 0.0));
+        assertThrows(IllegalArgumentException.class, () -> conjunctionService.start(null, null, 1000.0));
+        assertFalse(conjunctionService.isRunning());
+        verifyNoInteractions(mongoTemplate);
+    }
+}
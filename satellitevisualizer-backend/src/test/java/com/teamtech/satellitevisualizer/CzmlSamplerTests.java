@@ -0,0 +1,122 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.CzmlSampler;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.PropagatorCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScalesFactory;
+import org.orekit.utils.IERSConventions;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+class CzmlSamplerTests {
+
+    private static TLE ISS;
+    private static TLE GEO;
+    private static Frame ITRF;
+
+    private CzmlSampler sampler;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+        GEO = new TLE("1 51850U 22021A   25093.54661021  .00000085  00000-0  00000+0 0  9992",
+                "2 51850   0.0419  20.9525 0000029 187.1507  43.7843  1.00272382 11396");
+        ITRF = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+    }
+
+    @BeforeEach
+    void setUp() {
+        SatelliteMetrics metrics = new SatelliteMetrics(new SimpleMeterRegistry());
+        EphemerisStore store = new EphemerisStore(new PropagatorCache(10, 2),
+                new FrameTransforms(FramesFactory.getTEME(), ITRF, metrics, 4096), ITRF, TimeScalesFactory.getUTC(),
+                ForkJoinPool.commonPool(), metrics, 60, 120, 64, 30);
+        sampler = new CzmlSampler(store, 1, 100_000);
+    }
+
+    // positions interpolated the way Cesium does between the samples stay within the tolerance anywhere in the window
+    @Test
+    void testInterpolationWithinTolerance() {
+        AbsoluteDate start = ISS.getDate().shiftedBy(3600);
+        double window = CzmlSampler.defaultWindow(ISS);
+        CzmlSampler.Samples samples = sampler.sample(25544, ISS, start, window, 1, 5);
+
+        assertTrue(samples.maxError() <= 1);
+        assertEquals(window, samples.offsets()[samples.size() - 1], 1e-9);
+        // a fixed 60 second step needs about twice as many samples
+        assertTrue(samples.size() < 0.6 * window / 60, samples.size() + " samples");
+
+        TLEPropagator propagator = TLEPropagator.selectExtrapolator(ISS);
+        double step = samples.offsets()[1];
+        for (double t = step / 3; t < window; t += step / 3) {
+            Vector3D expected = propagator.propagate(start.shiftedBy(t)).getPVCoordinates(ITRF).getPosition();
+            assertEquals(0, expected.distance(lagrange(samples, t, 5)), 1.0, "t = " + t);
+        }
+    }
+
+    // a geostationary satellite barely moves in the Earth-fixed frame, a whole day takes a handful of samples
+    @Test
+    void testGeostationaryNeedsFewSamples() {
+        double window = CzmlSampler.defaultWindow(GEO);
+        assertEquals(86164, window, 60);
+
+        CzmlSampler.Samples samples = sampler.sample(51850, GEO, GEO.getDate(), window, 1, 5);
+        assertTrue(samples.maxError() <= 1);
+        assertTrue(samples.size() <= 17, samples.size() + " samples");
+        // instead of 1437 with a 60 second step
+        assertTrue(samples.propagations() < 60, samples.propagations() + " propagations");
+    }
+
+    // a tighter tolerance or a lower degree needs more samples
+    @Test
+    void testToleranceAndDegree() {
+        AbsoluteDate start = ISS.getDate();
+        int loose = sampler.sample(25544, ISS, start, 5400, 100, 5).size();
+        int tight = sampler.sample(25544, ISS, start, 5400, 0.01, 5).size();
+        int linear = sampler.sample(25544, ISS, start, 5400, 100, 1).size();
+        assertTrue(loose < tight, loose + " vs " + tight);
+        assertTrue(loose < linear, loose + " vs " + linear);
+    }
+
+    // Lagrange interpolation over the degree + 1 samples around t, picked the way Cesium picks them
+    private static Vector3D lagrange(CzmlSampler.Samples samples, double t, int degree) {
+        double[] offsets = samples.offsets();
+        int next = 1;
+        while (next < offsets.length - 1 && offsets[next] < t) next++;
+        int first = Math.max(0, Math.min(next - degree / 2 - 1, offsets.length - (degree + 1)));
+        double[] xyz = new double[3];
+        for (int j = first; j <= first + degree; j++) {
+            double w = 1;
+            for (int k = first; k <= first + degree; k++) {
+                if (k != j) w *= (t - offsets[k]) / (offsets[j] - offsets[k]);
+            }
+            for (int c = 0; c < 3; c++) {
+                xyz[c] += w * samples.xyz()[3 * j + c];
+            }
+        }
+        return new Vector3D(xyz);
+    }
+}
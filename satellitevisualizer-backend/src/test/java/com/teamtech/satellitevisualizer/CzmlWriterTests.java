@@ -0,0 +1,42 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtech.satellitevisualizer.service.CzmlWriter;
+import org.junit.jupiter.api.Test;
+import org.orekit.time.AbsoluteDate;
+
+import java.io.ByteArrayOutputStream;
+
+class CzmlWriterTests {
+
+    private final CzmlWriter czmlWriter = new CzmlWriter();
+
+    // the streamed document has the document packet and the satellite packet with every sample
+    @Test
+    void testWriteFromArrays() throws Exception {
+        double[] offsets = {0, 60, 120};
+        double[] xyz = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        czmlWriter.write(out, 25544, AbsoluteDate.J2000_EPOCH, AbsoluteDate.J2000_EPOCH.shiftedBy(120), offsets, xyz);
+
+        JsonNode czml = new ObjectMapper().readTree(out.toByteArray());
+        assertEquals(2, czml.size());
+        assertEquals("document", czml.get(0).get("id").asText());
+        assertEquals("Satellite 25544", czml.get(1).get("id").asText());
+
+        JsonNode cartesian = czml.get(1).get("position").get("cartesian");
+        assertEquals(12, cartesian.size());
+        assertEquals(60, cartesian.get(4).asDouble());
+        assertEquals(9, cartesian.get(11).asDouble());
+    }
+
+    @Test
+    void testRejectsMismatchedArrays() {
+        assertThrows(IllegalArgumentException.class, () -> czmlWriter.write(new ByteArrayOutputStream(), 25544,
+                AbsoluteDate.J2000_EPOCH, AbsoluteDate.J2000_EPOCH, new double[2], new double[3]));
+    }
+}
@@ -0,0 +1,154 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.CzmlSampler;
+import com.teamtech.satellitevisualizer.service.EphemerisPayloadCache;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.PropagatorCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.TleUpdatedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.orekit.time.TimeScalesFactory;
+import org.orekit.utils.IERSConventions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+
+class EphemerisPayloadCacheTests {
+
+    private static TLE ISS;
+    private static TLE NEW_ISS;
+    private static Frame ITRF;
+    private static TimeScale UTC;
+
+    private EphemerisStore store;
+    private EphemerisPayloadCache cache;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+        NEW_ISS = new TLE("1 25544U 98067A   25077.86855735  .00037299  00000-0  66721-3 0  9993",
+                "2 25544  51.6402  34.3664 0004296  19.8911  61.0593 15.49618050501151");
+        ITRF = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+        UTC = TimeScalesFactory.getUTC();
+    }
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        SatelliteMetrics metrics = new SatelliteMetrics(meterRegistry);
+        store = new EphemerisStore(new PropagatorCache(10, 2),
+                new FrameTransforms(FramesFactory.getTEME(), ITRF, metrics, 4096), ITRF, UTC, ForkJoinPool.commonPool(), metrics,
+                60, 120, 64, 30);
+        cache = new EphemerisPayloadCache(store, new CzmlSampler(store, 1, 100_000), UTC, metrics, 60, 32);
+    }
+
+    private static Instant start() {
+        return ISS.getDate().toDate(UTC).toInstant().plusSeconds(3600);
+    }
+
+    // the header describes the samples, and the samples are the positions the ephemeris store gives
+    @Test
+    void testPayloadLayout() throws IOException {
+        Instant start = cache.align(start());
+        EphemerisPayloadCache.Payload payload = cache.get(
+                new EphemerisPayloadCache.Request(25544, ISS, start, 600, 60.0, 1, 5, false));
+        byte[] data = EphemerisPayloadCache.uncompressed(payload).readAllBytes();
+        assertEquals(payload.length(), data.length);
+        assertEquals(EphemerisPayloadCache.HEADER_BYTES + 11 * 3 * Double.BYTES, data.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        assertEquals("SVEP", new String(magic, StandardCharsets.US_ASCII));
+        assertEquals(1, buffer.get());
+        assertEquals(8, buffer.get());
+        assertEquals(5, buffer.getShort());
+        assertEquals(25544, buffer.getInt());
+        assertEquals(11, buffer.getInt());
+        assertEquals(start.toEpochMilli(), buffer.getDouble());
+        assertEquals(60, buffer.getDouble());
+        assertEquals(ISS.getDate().toDate(UTC).getTime(), buffer.getDouble());
+
+        double[] expected = store.positions(25544, ISS, new AbsoluteDate(Date.from(start), UTC), 60, 11);
+        for (double value : expected) {
+            assertEquals(value, buffer.getDouble());
+        }
+    }
+
+    // float32 halves the samples and rounds them to about a meter
+    @Test
+    void testSinglePrecision() throws IOException {
+        Instant start = cache.align(start());
+        EphemerisPayloadCache.Payload doubles = cache.get(
+                new EphemerisPayloadCache.Request(25544, ISS, start, 5400, null, 1, 5, false));
+        EphemerisPayloadCache.Payload floats = cache.get(
+                new EphemerisPayloadCache.Request(25544, ISS, start, 5400, null, 1, 5, true));
+
+        assertEquals(doubles.samples(), floats.samples());
+        assertEquals(EphemerisPayloadCache.HEADER_BYTES + doubles.samples() * 3 * Float.BYTES, floats.length());
+        ByteBuffer d = ByteBuffer.wrap(EphemerisPayloadCache.uncompressed(doubles).readAllBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer f = ByteBuffer.wrap(EphemerisPayloadCache.uncompressed(floats).readAllBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 3 * doubles.samples(); i++) {
+            assertEquals(d.getDouble(EphemerisPayloadCache.HEADER_BYTES + 8 * i),
+                    f.getFloat(EphemerisPayloadCache.HEADER_BYTES + 4 * i), 1.0);
+        }
+    }
+
+    // a payload is built once per ETag, which changes with the TLE, and a TLE update drops the satellite's payloads
+    @Test
+    void testPayloadsAreCachedByEtag() {
+        Instant start = cache.align(start());
+        EphemerisPayloadCache.Request request = new EphemerisPayloadCache.Request(25544, ISS, start, 5400, null, 1, 5, false);
+        EphemerisPayloadCache.Payload first = cache.get(request);
+        long propagations = meterRegistry.get("satellite.propagation").timer().count();
+
+        assertSame(first, cache.get(new EphemerisPayloadCache.Request(25544, ISS, start, 5400, null, 1, 5, false)));
+        assertEquals(propagations, meterRegistry.get("satellite.propagation").timer().count());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(first.gzipped().length, cache.getBytes());
+
+        EphemerisPayloadCache.Request updated = new EphemerisPayloadCache.Request(25544, NEW_ISS, start, 5400, null, 1, 5, false);
+        assertNotEquals(cache.etag(request), cache.etag(updated));
+        assertNotEquals(cache.etag(request, false), cache.etag(request, true));
+        cache.onTleUpdated(new TleUpdatedEvent(25544));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    // requests within the same minute share the start of their window
+    @Test
+    void testAlignment() {
+        Instant now = Instant.parse("2025-04-14T12:34:56.789Z");
+        assertEquals(Instant.parse("2025-04-14T12:34:00Z"), cache.align(now));
+        assertEquals(cache.align(now), cache.align(now.plusSeconds(3)));
+        assertEquals(3, cache.secondsUntilRealigned(now));
+    }
+}
@@ -0,0 +1,138 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.PropagatorCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.TleUpdatedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScalesFactory;
+import org.orekit.utils.IERSConventions;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+
+class EphemerisStoreTests {
+
+    private static TLE ISS;
+    private static Frame ITRF;
+
+    private PropagatorCache propagatorCache;
+    private FrameTransforms frameTransforms;
+    private EphemerisStore store;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+        ITRF = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+    }
+
+    @BeforeEach
+    void setUp() {
+        propagatorCache = new PropagatorCache(10, 2);
+        meterRegistry = new SimpleMeterRegistry();
+        SatelliteMetrics metrics = new SatelliteMetrics(meterRegistry);
+        frameTransforms = new FrameTransforms(FramesFactory.getTEME(), ITRF, metrics, 4096);
+        store = new EphemerisStore(propagatorCache, frameTransforms, ITRF, TimeScalesFactory.getUTC(),
+                ForkJoinPool.commonPool(), metrics, 60, 120, 64, 30);
+    }
+
+    // positions between samples stay within a meter of a direct SGP4 propagation
+    @Test
+    void testInterpolationMatchesPropagation() {
+        AbsoluteDate start = ISS.getDate().shiftedBy(600);
+        double[] xyz = store.positions(25544, ISS, start, 7.5, 700);
+        assertEquals(1, store.size());
+
+        TLEPropagator propagator = TLEPropagator.selectExtrapolator(ISS);
+        for (int i = 0; i < 700; i++) {
+            Vector3D expected = propagator.propagate(start.shiftedBy(7.5 * i)).getPVCoordinates(ITRF).getPosition();
+            Vector3D actual = new Vector3D(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+            assertEquals(0, expected.distance(actual), 1.0, "sample " + i);
+        }
+
+        Vector3D single = store.position(25544, ISS, start.shiftedBy(1234.5));
+        Vector3D expected = propagator.propagate(start.shiftedBy(1234.5)).getPVCoordinates(ITRF).getPosition();
+        assertEquals(0, expected.distance(single), 1.0);
+
+        // every sample of the window was propagated and transformed once
+        long propagations = meterRegistry.get("satellite.propagation").timer().count();
+        assertTrue(propagations > 0);
+        assertEquals(propagations, meterRegistry.get("satellite.frame.transform").timer().count());
+    }
+
+    // windows are on one grid, the second satellite reuses every transform the first one computed
+    @Test
+    void testWindowsShareFrameTransforms() {
+        TLE geo = new TLE("1 51850U 22021A   25093.54661021  .00000085  00000-0  00000+0 0  9992",
+                "2 51850   0.0419  20.9525 0000029 187.1507  43.7843  1.00272382 11396");
+        AbsoluteDate start = ISS.getDate().shiftedBy(600);
+        store.positions(25544, ISS, start, 60, 10);
+        long computed = frameTransforms.misses();
+        assertTrue(computed > 100, computed + " transforms");
+        assertEquals(0, frameTransforms.hits());
+
+        double[] xyz = store.positions(51850, geo, start, 60, 10);
+        assertEquals(computed, frameTransforms.misses());
+        assertEquals(computed, frameTransforms.hits());
+
+        Vector3D expected = TLEPropagator.selectExtrapolator(geo).propagate(start).getPVCoordinates(ITRF).getPosition();
+        assertEquals(0, expected.distance(new Vector3D(xyz[0], xyz[1], xyz[2])), 1.0);
+    }
+
+    // single position reads never build the window themselves, the background refresh does, and only around now
+    @Test
+    void testPositionQueuesSatelliteForRefresh() {
+        store.position(25544, ISS, ISS.getDate().shiftedBy(-30 * 86400));
+        store.refresh();
+        assertEquals(0, store.size());
+
+        store.position(25544, ISS, new AbsoluteDate(new Date(), TimeScalesFactory.getUTC()));
+        assertEquals(0, store.size());
+
+        store.refresh();
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testTleUpdateDropsSamples() {
+        store.positions(25544, ISS, ISS.getDate(), 60, 10);
+        store.onTleUpdated(new TleUpdatedEvent(25544));
+
+        assertEquals(0, store.size());
+        assertEquals(0, store.getStoredSamples());
+    }
+
+    // a budget that cannot hold a single window means nothing is stored but positions are still computed
+    @Test
+    void testMemoryBudget() {
+        EphemerisStore tiny = new EphemerisStore(propagatorCache, frameTransforms, ITRF, TimeScalesFactory.getUTC(),
+                ForkJoinPool.commonPool(), new SatelliteMetrics(meterRegistry), 0.01, 120, 0, 30);
+        double[] xyz = tiny.positions(25544, ISS, ISS.getDate(), 60, 3);
+
+        assertEquals(0, tiny.size());
+        assertTrue(new Vector3D(xyz[0], xyz[1], xyz[2]).getNorm() > 6.6e6);
+    }
+}
@@ -0,0 +1,87 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.propagation.SpacecraftState;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.utils.IERSConventions;
+import org.orekit.utils.PVCoordinates;
+
+import java.io.File;
+
+class FrameTransformsTests {
+
+    private static TLE ISS;
+    private static Frame ITRF;
+
+    private FrameTransforms frameTransforms;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+        ITRF = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+    }
+
+    @BeforeEach
+    void setUp() {
+        frameTransforms = new FrameTransforms(FramesFactory.getTEME(), ITRF, new SatelliteMetrics(new SimpleMeterRegistry()), 2);
+    }
+
+    // the matrix form gives what Orekit's frame tree gives, velocity relative to the rotating Earth included
+    @Test
+    void testMatchesOrekitTransform() {
+        TLEPropagator propagator = TLEPropagator.selectExtrapolator(ISS);
+        for (int i = 0; i < 10; i++) {
+            AbsoluteDate date = ISS.getDate().shiftedBy(i * 3600.5);
+            SpacecraftState state = propagator.propagate(date);
+            assertSame(frameTransforms.getTeme(), state.getFrame());
+            PVCoordinates expected = state.getPVCoordinates(ITRF);
+
+            double[] pv = new double[6];
+            PVCoordinates teme = state.getPVCoordinates();
+            frameTransforms.temeToItrf(date).toItrf(teme.getPosition(), teme.getVelocity(), pv, 0);
+            assertEquals(0, expected.getPosition().distance(new Vector3D(pv[0], pv[1], pv[2])), 1e-6);
+            assertEquals(0, expected.getVelocity().distance(new Vector3D(pv[3], pv[4], pv[5])), 1e-9);
+
+            double[] xyz = {0, 0, 0, teme.getPosition().getX(), teme.getPosition().getY(), teme.getPosition().getZ()};
+            frameTransforms.temeToItrf(date).rotatePositions(xyz, 3, 1);
+            assertEquals(0, expected.getPosition().distance(new Vector3D(xyz[3], xyz[4], xyz[5])), 1e-6);
+        }
+    }
+
+    // a date is transformed once, the least recently used dates are dropped beyond the cache size
+    @Test
+    void testTransformsAreCachedByDate() {
+        AbsoluteDate date = ISS.getDate();
+        FrameTransforms.InstantTransform first = frameTransforms.temeToItrf(date);
+        assertSame(first, frameTransforms.temeToItrf(new AbsoluteDate(date, 0)));
+        assertEquals(1, frameTransforms.hits());
+        assertEquals(1, frameTransforms.misses());
+
+        frameTransforms.temeToItrf(date.shiftedBy(60));
+        frameTransforms.temeToItrf(date.shiftedBy(120));
+        assertEquals(2, frameTransforms.size());
+        assertNotSame(first, frameTransforms.temeToItrf(date));
+        assertEquals(4, frameTransforms.misses());
+    }
+}
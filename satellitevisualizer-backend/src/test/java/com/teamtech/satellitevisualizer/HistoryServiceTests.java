@@ -0,0 +1,143 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.models.PositionHistory;
+import com.teamtech.satellitevisualizer.models.PositionRecord;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.service.HistoryService;
+import com.teamtech.satellitevisualizer.service.PositionStreamService;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.TrajectorySimplifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+@ExtendWith(MockitoExtension.class)
+class HistoryServiceTests {
+
+    private static final Instant START = Instant.parse("2025-04-14T00:00:00Z");
+    // circular orbit of a LEO satellite, 7000 km radius and 90 minutes period
+    private static final double RADIUS = 7.0e6;
+    private static final double PERIOD = 5400;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private SatellitePositionService satellitePositionService;
+
+    @Mock
+    private PositionStreamService positionStreamService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HistoryService historyService(int batchSize) {
+        return new HistoryService(mongoTemplate, satellitePositionService, positionStreamService,
+                new SatelliteMetrics(meterRegistry), true, Set.of(25544), 60, batchSize, 30);
+    }
+
+    private static List<PositionRecord> orbit(int points, long stepSeconds) {
+        List<PositionRecord> records = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            double angle = 2 * Math.PI * i * stepSeconds / PERIOD;
+            records.add(new PositionRecord(START.plusSeconds(i * stepSeconds), 25544, 0, 0, 600,
+                    RADIUS * Math.cos(angle), RADIUS * Math.sin(angle), 0));
+        }
+        return records;
+    }
+
+    // the configured and the watched satellites are recorded, and written once a batch is full
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRecordsTrackedSatellitesInBatches() {
+        when(positionStreamService.getWatchedSatellites()).thenReturn(Set.of(44945));
+        when(satellitePositionService.computePositions(eq(Set.of(25544, 44945)), any())).thenReturn(List.of(
+                new SatellitePosition(25544, new double[] {1, 2, 400}, new double[] {1, 2, 3}),
+                new SatellitePosition(44945, new double[] {4, 5, 550}, new double[] {4, 5, 6})));
+        when(mongoTemplate.collectionExists(PositionRecord.class)).thenReturn(false);
+        HistoryService history = historyService(3);
+
+        history.record();
+        assertEquals(2, history.getBufferedRecords());
+        verifyNoMoreInteractions(mongoTemplate);
+
+        history.record();
+        assertEquals(0, history.getBufferedRecords());
+        verify(mongoTemplate).createCollection(eq(PositionRecord.class), any(CollectionOptions.class));
+        ArgumentCaptor<Collection<PositionRecord>> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(mongoTemplate, times(2)).insert(batches.capture(), eq(PositionRecord.class));
+        assertEquals(3, batches.getAllValues().get(0).size());
+        assertEquals(1, batches.getAllValues().get(1).size());
+        // every record of one tick is on the same step of the time grid
+        PositionRecord first = batches.getAllValues().get(0).iterator().next();
+        assertEquals(0, first.getT().toEpochMilli() % 60_000);
+        assertEquals(4, meterRegistry.get("satellite.history.records").tag("result", "written").counter().count());
+    }
+
+    // a week recorded every minute comes back as at most maxPoints evenly spread points
+    @Test
+    void testStrideBoundsWeekLongRange() {
+        List<PositionRecord> week = orbit(7 * 24 * 60, 60);
+        when(mongoTemplate.stream(any(Query.class), eq(PositionRecord.class))).thenReturn(week.stream());
+
+        PositionHistory result = historyService(1000).history(25544, START, START.plusSeconds(7 * 86400), 500, null);
+
+        assertEquals("stride", result.getDownsampling());
+        assertEquals(week.size(), result.getRecordedPoints());
+        assertTrue(result.getXyz().size() <= 500 && result.getXyz().size() >= 450, "got " + result.getXyz().size());
+        assertEquals(0, result.getXyz().time(0));
+        assertEquals(RADIUS, result.getXyz().get(0, 0));
+        for (int i = 1; i < result.getLla().size(); i++) {
+            assertTrue(result.getLla().time(i) > result.getLla().time(i - 1));
+        }
+    }
+
+    // every dropped point is within the tolerance of the trajectory interpolated between the kept ones
+    @Test
+    void testErrorBoundedDownsampling() {
+        List<PositionRecord> records = orbit(3 * 60 * 6, 10);
+        double[] times = new double[records.size()];
+        double[] xyz = new double[3 * records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            times[i] = i * 10;
+            xyz[3 * i] = records.get(i).getX();
+            xyz[3 * i + 1] = records.get(i).getY();
+        }
+
+        int[] kept = TrajectorySimplifier.simplify(times, xyz, 10_000);
+        assertTrue(kept.length < records.size() / 4, "kept " + kept.length + " of " + records.size());
+        assertEquals(0, kept[0]);
+        assertEquals(records.size() - 1, kept[kept.length - 1]);
+        for (int k = 0; k + 1 < kept.length; k++) {
+            int a = kept[k];
+            int b = kept[k + 1];
+            for (int i = a + 1; i < b; i++) {
+                double f = (times[i] - times[a]) / (times[b] - times[a]);
+                double dx = xyz[3 * i] - (xyz[3 * a] + f * (xyz[3 * b] - xyz[3 * a]));
+                double dy = xyz[3 * i + 1] - (xyz[3 * a + 1] + f * (xyz[3 * b + 1] - xyz[3 * a + 1]));
+                assertTrue(Math.hypot(dx, dy) <= 10_000, "point " + i + " is off by " + Math.hypot(dx, dy));
+            }
+        }
+
+        when(mongoTemplate.stream(any(Query.class), eq(PositionRecord.class))).thenReturn(records.stream());
+        PositionHistory result = historyService(1000).history(25544, START, START.plusSeconds(3 * 3600), 1000, 10_000.0);
+        assertEquals("error", result.getDownsampling());
+        assertEquals(kept.length, result.getXyz().size());
+    }
+}
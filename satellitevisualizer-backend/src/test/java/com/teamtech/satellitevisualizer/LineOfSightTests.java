@@ -0,0 +1,117 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.LineOfSight;
+import org.hipparchus.geometry.euclidean.threed.Line;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.junit.jupiter.api.Test;
+import org.orekit.bodies.OneAxisEllipsoid;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.utils.Constants;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class LineOfSightTests {
+
+    private static final double A = Constants.WGS84_EARTH_EQUATORIAL_RADIUS;
+    private static final double F = Constants.WGS84_EARTH_FLATTENING;
+
+    // random pairs from LEO to GEO agree with Orekit's line / ellipsoid intersection, on the surface and on the
+    // ellipsoid raised by a grazing height
+    @Test
+    void testMatchesEllipsoidIntersection() {
+        Frame frame = FramesFactory.getGCRF();
+        Random random = new Random(3);
+        for (double grazingHeight : new double[] {0, 100_000}) {
+            LineOfSight lineOfSight = new LineOfSight(A, F, grazingHeight);
+            double b = A * (1 - F) + grazingHeight;
+            OneAxisEllipsoid raised = new OneAxisEllipsoid(A + grazingHeight, 1 - b / (A + grazingHeight), frame);
+            int clear = 0;
+            for (int n = 0; n < 20_000; n++) {
+                Vector3D p1 = randomPoint(random, grazingHeight);
+                Vector3D p2 = randomPoint(random, grazingHeight);
+                // both ends are outside the ellipsoid, so the segment crosses it if the nearest crossing is between them
+                Vector3D crossing = raised.getCartesianIntersectionPoint(new Line(p1, p2, 1e-10), p1, frame,
+                        AbsoluteDate.J2000_EPOCH);
+                boolean expected = crossing == null
+                        || crossing.subtract(p1).dotProduct(crossing.subtract(p2)) > 0;
+                assertEquals(expected, lineOfSight.isClear(p1.getX(), p1.getY(), p1.getZ(), p2.getX(), p2.getY(), p2.getZ()),
+                        p1 + " to " + p2 + " at " + grazingHeight + " m");
+                if (expected) clear++;
+            }
+            assertTrue(clear > 2_000 && clear < 18_000, clear + " clear lines");
+        }
+    }
+
+    // just over the poles the flattening matters: a sphere of the equatorial radius would hide these
+    @Test
+    void testUsesTheEllipsoid() {
+        LineOfSight lineOfSight = new LineOfSight(A, F, 0);
+        double b = A * (1 - F);
+        // two points 100 km either side of the north pole, the line between them 1 km above it
+        assertTrue(lineOfSight.isClear(-100_000, 0, b + 1_000, 100_000, 0, b + 1_000));
+        assertFalse(lineOfSight.isClear(-100_000, 0, A, 100_000, 0, -A));
+        // the same line 20 km above the pole is under a grazing height of 30 km
+        assertFalse(new LineOfSight(A, F, 30_000).isClear(-100_000, 0, b + 20_000, 100_000, 0, b + 20_000));
+        // under the surface nothing is seen, not even a point right above
+        assertFalse(lineOfSight.isClear(A - 10, 0, 0, A + 1_000_000, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new LineOfSight(A, F, -1));
+    }
+
+    // the pruned matrix of LEO shells, MEO and GEO satellites is the one of testing every pair
+    @Test
+    void testAdjacencyMatchesEveryPair() {
+        Random random = new Random(11);
+        int count = 1_500;
+        double[] xyz = new double[3 * count];
+        for (int k = 0; k < count; k++) {
+            double radius = A + switch (k % 10) {
+                case 0 -> 20_200_000;
+                case 1 -> 35_786_000;
+                default -> 340_000 + 1_000_000 * random.nextDouble();
+            };
+            Vector3D direction = new Vector3D(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+            System.arraycopy(direction.scalarMultiply(radius).toArray(), 0, xyz, 3 * k, 3);
+        }
+        // one satellite failed to propagate and one is under the surface
+        Arrays.fill(xyz, 0, 3, Double.NaN);
+        xyz[3] = A - 1_000;
+        xyz[4] = 0;
+        xyz[5] = 0;
+
+        for (double grazingHeight : new double[] {0, 80_000}) {
+            LineOfSight lineOfSight = new LineOfSight(A, F, grazingHeight);
+            int[][] adjacency = lineOfSight.adjacency(xyz, count);
+            assertEquals(count, adjacency.length);
+            assertEquals(0, adjacency[0].length);
+            assertEquals(0, adjacency[1].length);
+            long links = 0;
+            for (int i = 0; i < count; i++) {
+                int[] expected = new int[count];
+                int visible = 0;
+                for (int j = 0; j < count; j++) {
+                    if (j != i && lineOfSight.isClear(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2],
+                            xyz[3 * j], xyz[3 * j + 1], xyz[3 * j + 2])) {
+                        expected[visible++] = j;
+                    }
+                }
+                int[] found = adjacency[i].clone();
+                Arrays.sort(found);
+                assertArrayEquals(Arrays.copyOf(expected, visible), found, "satellite " + i);
+                links += visible;
+            }
+            assertTrue(links > count * 100L, links + " links");
+        }
+        assertEquals(0, new LineOfSight(A, F, 0).adjacency(xyz, 1)[0].length);
+    }
+
+    private static Vector3D randomPoint(Random random, double grazingHeight) {
+        Vector3D direction = new Vector3D(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+        double altitude = grazingHeight + 1_000 + (random.nextBoolean() ? 2_000_000 : 40_000_000) * random.nextDouble();
+        return direction.scalarMultiply(A + altitude);
+    }
+}
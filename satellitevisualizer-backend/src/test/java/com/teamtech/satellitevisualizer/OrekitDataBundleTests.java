@@ -0,0 +1,118 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.config.OrekitDataBundle;
+import org.hipparchus.geometry.euclidean.threed.Rotation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.data.LazyLoadedDataContext;
+import org.orekit.frames.EOPEntry;
+import org.orekit.frames.Frame;
+import org.orekit.frames.Transform;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScale;
+import org.orekit.utils.IERSConventions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+class OrekitDataBundleTests {
+
+    private static final File OREKIT_DATA = new File("src/main/resources/orekit-data");
+
+    // the data as Orekit parses it from the text files, in a context of its own
+    private static LazyLoadedDataContext PARSED;
+    private static OrekitDataBundle BUNDLE;
+
+    @BeforeAll
+    static void buildBundle() throws IOException {
+        PARSED = new LazyLoadedDataContext();
+        PARSED.getDataProvidersManager().addProvider(new DirectoryCrawler(OREKIT_DATA));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OrekitDataBundle.write(PARSED, OREKIT_DATA.toPath(), out);
+        BUNDLE = OrekitDataBundle.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static LazyLoadedDataContext fromBundle(OrekitDataBundle bundle) {
+        LazyLoadedDataContext context = new LazyLoadedDataContext();
+        context.getTimeScales().addUTCTAIOffsetsLoader(bundle.offsetsLoader());
+        context.getFrames().addEOPHistoryLoader(OrekitDataBundle.CONVENTIONS,
+                bundle.eopLoader(context.getTimeScales()::getUTC));
+        return context;
+    }
+
+    // without any data provider, the bundle gives the time scale and the frames of the text files, bit for bit
+    @Test
+    void testBundleMatchesParsedData() {
+        LazyLoadedDataContext bundled = fromBundle(BUNDLE);
+        assertEquals(List.of("Earth-Orientation-Parameters/IAU-2000/finals2000A.all", "itrf-versions.conf",
+                "tai-utc.dat"), List.of(BUNDLE.getSource().split(", ")));
+
+        TimeScale utc = bundled.getTimeScales().getUTC();
+        TimeScale expectedUtc = PARSED.getTimeScales().getUTC();
+        // before 1972 (linear offsets), around the 2016 leap second, and now
+        for (AbsoluteDate date : new AbsoluteDate[] {
+                new AbsoluteDate(1965, 3, 1, 0, 0, 0.0, expectedUtc),
+                new AbsoluteDate(2016, 12, 31, 23, 59, 59.5, expectedUtc),
+                new AbsoluteDate(2017, 1, 1, 0, 0, 0.5, expectedUtc),
+                new AbsoluteDate(2025, 4, 14, 12, 0, 0.0, expectedUtc)}) {
+            assertEquals(expectedUtc.offsetFromTAI(date), utc.offsetFromTAI(date));
+        }
+
+        List<EOPEntry> expected = PARSED.getFrames().getEOPHistory(IERSConventions.IERS_2010, true).getEntries();
+        List<EOPEntry> entries = bundled.getFrames().getEOPHistory(IERSConventions.IERS_2010, true).getEntries();
+        assertEquals(expected.size(), entries.size());
+        for (int i = 0; i < entries.size(); i += 97) {
+            assertEquals(expected.get(i).getDate(), entries.get(i).getDate());
+            assertEquals(expected.get(i).getUT1MinusUTC(), entries.get(i).getUT1MinusUTC());
+            assertEquals(expected.get(i).getX(), entries.get(i).getX());
+            assertEquals(expected.get(i).getDx(), entries.get(i).getDx());
+            assertEquals(expected.get(i).getITRFType(), entries.get(i).getITRFType());
+        }
+
+        Frame teme = bundled.getFrames().getTEME();
+        Frame itrf = bundled.getFrames().getITRF(IERSConventions.IERS_2010, true);
+        Frame expectedTeme = PARSED.getFrames().getTEME();
+        Frame expectedItrf = PARSED.getFrames().getITRF(IERSConventions.IERS_2010, true);
+        for (int day = 0; day < 5; day++) {
+            AbsoluteDate date = new AbsoluteDate(2025, 2, 17, 20, 40, 33.7, expectedUtc).shiftedBy(day * 86400.25);
+            Transform transform = teme.getTransformTo(itrf, date);
+            Transform expectedTransform = expectedTeme.getTransformTo(expectedItrf, date);
+            assertEquals(0, Rotation.distance(expectedTransform.getRotation(), transform.getRotation()), 1e-15);
+            assertEquals(0, expectedTransform.getRotationRate().distance(transform.getRotationRate()), 1e-20);
+        }
+        assertTrue(bundled.getDataProvidersManager().getLoadedDataNames().isEmpty());
+    }
+
+    // the committed bundle is regenerated with the data, a refreshed orekit-data without it fails here
+    @Test
+    void testCommittedBundleIsUpToDate() throws IOException {
+        OrekitDataBundle committed;
+        try (InputStream in = new FileInputStream("src/main/resources/orekit-bundle.bin")) {
+            committed = OrekitDataBundle.read(in);
+        }
+        assertEquals(BUNDLE.getOffsetCount(), committed.getOffsetCount());
+        assertEquals(BUNDLE.getEopCount(), committed.getEopCount());
+        assertEquals(BUNDLE.getSource(), committed.getSource());
+
+        List<EOPEntry> entries = fromBundle(committed).getFrames().getEOPHistory(IERSConventions.IERS_2010, true).getEntries();
+        EOPEntry last = PARSED.getFrames().getEOPHistory(IERSConventions.IERS_2010, true).getEntries().get(entries.size() - 1);
+        assertEquals(last.getMjd(), entries.get(entries.size() - 1).getMjd());
+        assertEquals(last.getUT1MinusUTC(), entries.get(entries.size() - 1).getUT1MinusUTC());
+    }
+
+    @Test
+    void testRejectsOtherFiles() {
+        IOException e = assertThrows(IOException.class,
+                () -> OrekitDataBundle.read(new FileInputStream(Path.of(OREKIT_DATA.getPath(), "tai-utc.dat").toFile())));
+        assertTrue(e.getMessage().contains("Not an Orekit data bundle"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtech.satellitevisualizer.config.MongoConfig;
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+
+class PositionSamplesTests {
+
+    private MongoMappingContext mappingContext;
+    private MappingMongoConverter converter;
+
+    // the converter Spring Data uses, with the application's conversions but no database
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = new MongoConfig().mongoCustomConversions();
+        mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+    }
+
+    @Test
+    void testWritesPackedBinaryAndReadsItBack() {
+        SatelliteData satellite = new SatelliteData(25544, "ISS", "tle",
+                PositionSamples.of(51.6, -12.5, 420.1),
+                new PositionSamples(3, new double[] {0, 60}, new double[] {1, 2, 3, 4, 5, 6}));
+
+        Document document = new Document();
+        converter.write(satellite, document);
+        Document geodetic = document.get("geodeticCoordinates", Document.class);
+        assertEquals(3, geodetic.getInteger("dim"));
+        assertEquals(3 * Double.BYTES, geodetic.get("values", Binary.class).getData().length);
+        assertFalse(geodetic.containsKey("times"));
+
+        SatelliteData read = converter.read(SatelliteData.class, document);
+        assertEquals(satellite.getGeodeticCoordinates(), read.getGeodeticCoordinates());
+        assertEquals(satellite.getXyzCoordinates(), read.getXyzCoordinates());
+        assertEquals(60, read.getXyzCoordinates().time(1));
+    }
+
+    // documents written before the coordinates were packed hold nested arrays of doubles
+    @Test
+    void testReadsLegacyNestedArrays() {
+        Document document = new Document("_id", 25544)
+                .append("tle", "tle")
+                .append("geodeticCoordinates", List.of(List.of(51.6, -12.5, 420.1)))
+                .append("xyzCoordinates", List.of(List.of(1.0, 2.0, 3.0), List.of(4.0, 5.0, 6.0)));
+
+        SatelliteData read = converter.read(SatelliteData.class, document);
+        assertEquals(PositionSamples.of(51.6, -12.5, 420.1), read.getGeodeticCoordinates());
+        assertEquals(2, read.getXyzCoordinates().size());
+        assertEquals(5.0, read.getXyzCoordinates().get(1, 1));
+    }
+
+    // partial updates (e.g. the TLE refresh) must store the same packed layout
+    @Test
+    void testUpdateIsPacked() {
+        Update update = new Update().set("xyzCoordinates", PositionSamples.of(1, 2, 3));
+        Document mapped = new UpdateMapper(converter).getMappedObject(update.getUpdateObject(),
+                mappingContext.getPersistentEntity(SatelliteData.class));
+
+        Document xyz = mapped.get("$set", Document.class).get("xyzCoordinates", Document.class);
+        assertNotNull(xyz.get("values", Binary.class));
+    }
+
+    // the API keeps returning coordinates as nested arrays
+    @Test
+    void testJsonKeepsNestedArrayLayout() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals("[[51.6,-12.5,420.1]]", objectMapper.writeValueAsString(PositionSamples.of(51.6, -12.5, 420.1)));
+        assertEquals("[[0.0,1.0,2.0,3.0]]", objectMapper.writeValueAsString(
+                new PositionSamples(3, new double[] {0}, new double[] {1, 2, 3})));
+    }
+}
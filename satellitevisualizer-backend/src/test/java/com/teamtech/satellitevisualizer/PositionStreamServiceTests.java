@@ -0,0 +1,118 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import com.teamtech.satellitevisualizer.service.PositionStreamService;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.TleUpdatedEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@ExtendWith(MockitoExtension.class)
+class PositionStreamServiceTests {
+
+    @Mock
+    private SatellitePositionService satellitePositionService;
+    @Mock
+    private SatelliteRepository satelliteRepository;
+    @Mock
+    private SatellitePositionService.PreparedSatellites prepared;
+
+    // every watched satellite is computed once per tick however many clients watch it
+    @Test
+    void testTickComputesEachSatelliteOnce() {
+        PositionStreamService streamService = new PositionStreamService(satellitePositionService, satelliteRepository,
+                Executors.newSingleThreadExecutor(), 10, 1);
+        when(satellitePositionService.prepare(any(), any())).thenReturn(prepared);
+        when(satellitePositionService.computePositionsOf(eq(prepared), any())).thenReturn(List.of(
+                new SatellitePosition(25544, new double[3], new double[3]),
+                new SatellitePosition(44945, new double[3], new double[3])));
+
+        assertNotNull(streamService.subscribe(Set.of(25544)));
+        assertNotNull(streamService.subscribe(Set.of(25544, 44945)));
+        assertNotNull(streamService.subscribe(Set.of(44945)));
+        streamService.tick();
+
+        verify(satelliteRepository, times(1)).findBySatidIn(Set.of(25544, 44945));
+        verify(satellitePositionService, times(1)).computePositionsOf(eq(prepared), any());
+    }
+
+    // the watched satellites are only loaded and prepared again when the watched set or a TLE changes
+    @Test
+    void testTickPreparesWatchedSatellitesOncePerChange() {
+        PositionStreamService streamService = new PositionStreamService(satellitePositionService, satelliteRepository,
+                Executors.newSingleThreadExecutor(), 10, 1);
+        List<SatelliteData> satellites = List.of(new SatelliteData());
+        when(satelliteRepository.findBySatidIn(any())).thenReturn(satellites);
+        when(satellitePositionService.prepare(eq(satellites), any())).thenReturn(prepared);
+        when(satellitePositionService.computePositionsOf(eq(prepared), any())).thenReturn(List.of());
+
+        assertNotNull(streamService.subscribe(Set.of(25544)));
+        streamService.tick();
+        streamService.tick();
+        verify(satellitePositionService, times(1)).prepare(eq(satellites), any());
+
+        streamService.onTleUpdated(new TleUpdatedEvent(25544));
+        streamService.tick();
+        verify(satellitePositionService, times(2)).prepare(eq(satellites), any());
+
+        assertNotNull(streamService.subscribe(Set.of(44945)));
+        streamService.tick();
+        verify(satelliteRepository).findBySatidIn(Set.of(25544, 44945));
+        verify(satellitePositionService, times(3)).prepare(eq(satellites), any());
+        verify(satellitePositionService, times(4)).computePositionsOf(eq(prepared), any());
+    }
+
+    @Test
+    void testRejectsSubscribersOverLimit() {
+        PositionStreamService streamService = new PositionStreamService(satellitePositionService, satelliteRepository,
+                Executors.newSingleThreadExecutor(), 1, 1);
+
+        assertNotNull(streamService.subscribe(Set.of(25544)));
+        assertNull(streamService.subscribe(Set.of(25544)));
+        assertEquals(1, streamService.getSubscriberCount());
+    }
+
+    // concurrent subscribes cannot take more than the limit between checking it and adding
+    @Test
+    void testConcurrentSubscribersStayUnderLimit() throws Exception {
+        PositionStreamService streamService = new PositionStreamService(satellitePositionService, satelliteRepository,
+                Executors.newSingleThreadExecutor(), 5, 1);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SseEmitter>> emitters = new ArrayList<>();
+        for (int n = 0; n < 64; n++) {
+            emitters.add(clients.submit(() -> {
+                start.await();
+                return streamService.subscribe(Set.of(25544));
+            }));
+        }
+        start.countDown();
+        int accepted = 0;
+        for (Future<SseEmitter> emitter : emitters) {
+            if (emitter.get() != null) accepted++;
+        }
+        clients.shutdown();
+
+        assertEquals(5, accepted);
+        assertEquals(5, streamService.getSubscriberCount());
+    }
+}
@@ -0,0 +1,92 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.PropagatorCache;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class PropagatorCacheTests {
+
+    private static TLE ISS;
+    private static TLE STARLINK;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        // TLE epochs need the UTC time scale, so they can only be built once the data is loaded
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+        STARLINK = new TLE("1 44945U 20001AH  25104.58335648  .00211921  00000-0  87018-3 0  9996",
+                "2 44945  53.0431 302.8405 0003981 211.2664 213.7415 15.84888341291374");
+    }
+
+    // the same propagator is handed out again once it has been returned
+    @Test
+    void testReusesPropagator() {
+        PropagatorCache cache = new PropagatorCache(10, 2);
+        TLEPropagator first = cache.withPropagator(25544, ISS, propagator -> propagator);
+        TLEPropagator second = cache.withPropagator(25544, ISS, propagator -> propagator);
+        assertSame(first, second);
+    }
+
+    @Test
+    void testInvalidateDropsSatellite() {
+        PropagatorCache cache = new PropagatorCache(10, 2);
+        TLEPropagator first = cache.withPropagator(25544, ISS, propagator -> propagator);
+        cache.withPropagator(44945, STARLINK, propagator -> propagator);
+
+        cache.invalidate(25544);
+
+        assertEquals(1, cache.size());
+        assertNotSame(first, cache.withPropagator(25544, ISS, propagator -> propagator));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        PropagatorCache cache = new PropagatorCache(1, 2);
+        TLEPropagator iss = cache.withPropagator(25544, ISS, propagator -> propagator);
+        cache.withPropagator(44945, STARLINK, propagator -> propagator);
+
+        assertEquals(1, cache.size());
+        assertNotSame(iss, cache.withPropagator(25544, ISS, propagator -> propagator));
+    }
+
+    // concurrent callers never share a propagator and all get the same answer
+    @Test
+    void testConcurrentPropagation() throws Exception {
+        PropagatorCache cache = new PropagatorCache(10, 2);
+        double expected = cache.withPropagator(25544, ISS,
+                propagator -> propagator.propagate(ISS.getDate().shiftedBy(3600)).getPVCoordinates().getPosition().getNorm());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Double>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> cache.withPropagator(25544, ISS,
+                        propagator -> propagator.propagate(ISS.getDate().shiftedBy(3600)).getPVCoordinates().getPosition().getNorm())));
+            }
+            for (Future<Double> result : results) {
+                assertEquals(expected, result.get(), 1e-6);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.models.CacheStats;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import com.teamtech.satellitevisualizer.service.SatelliteCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.TleUpdatedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.propagation.analytical.tle.TLE;
+
+import java.io.File;
+
+@ExtendWith(MockitoExtension.class)
+class SatelliteCacheTests {
+
+    private static final String ISS = "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994\n" +
+            "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656";
+    private static final String NEW_ISS = "1 25544U 98067A   25077.86855735  .00037299  00000-0  66721-3 0  9993\n" +
+            "2 25544  51.6402  34.3664 0004296  19.8911  61.0593 15.49618050501151";
+
+    @Mock
+    private SatelliteRepository satelliteRepository;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+    }
+
+    // every cache gets its own registry, the gauges of a second cache would otherwise read the first one
+    private SatelliteCache cache(int maxSize, double ttlSeconds) {
+        return cache(new SimpleMeterRegistry(), maxSize, ttlSeconds);
+    }
+
+    private SatelliteCache cache(SimpleMeterRegistry meterRegistry, int maxSize, double ttlSeconds) {
+        return new SatelliteCache(satelliteRepository, new SatelliteMetrics(meterRegistry), maxSize, ttlSeconds);
+    }
+
+    // the document is loaded and its TLE parsed once, and unknown satellites are not looked up again either
+    @Test
+    void testReadsThrough() {
+        when(satelliteRepository.findBySatid(25544)).thenReturn(new SatelliteData(25544, "ISS", ISS, null, null));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SatelliteCache cache = cache(meterRegistry, 10, 60);
+
+        SatelliteData first = cache.get(25544);
+        TLE tle = cache.getTLE(25544).orElseThrow();
+        assertSame(first, cache.get(25544));
+        assertSame(tle, cache.getTLE(25544).orElseThrow());
+        assertNull(cache.get(99999));
+        assertNull(cache.get(99999));
+
+        verify(satelliteRepository, times(1)).findBySatid(25544);
+        verify(satelliteRepository, times(1)).findBySatid(99999);
+        CacheStats stats = cache.getStats();
+        assertEquals(4, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(4, meterRegistry.get("satellite.cache.requests").tag("result", "hit").functionCounter().count());
+    }
+
+    // saving replaces the entry, and keeps the parsed TLE unless the TLE itself changed
+    @Test
+    void testSaveUpdatesEntry() {
+        when(satelliteRepository.findBySatid(25544)).thenReturn(new SatelliteData(25544, "ISS", ISS, null, null));
+        when(satelliteRepository.save(any())).then(returnsFirstArg());
+        SatelliteCache cache = cache(10, 60);
+        TLE tle = cache.getTLE(25544).orElseThrow();
+
+        cache.save(new SatelliteData(25544, "ISS", ISS, null, null));
+        assertSame(tle, cache.getTLE(25544).orElseThrow());
+
+        cache.save(new SatelliteData(25544, "ISS", NEW_ISS, null, null));
+        assertEquals(NEW_ISS.substring(0, NEW_ISS.indexOf('\n')), cache.getTLE(25544).orElseThrow().getLine1());
+        verify(satelliteRepository, times(1)).findBySatid(25544);
+    }
+
+    // a TLE update, the least recently used entry when full and an expired entry are all loaded again
+    @Test
+    void testInvalidationEvictionAndExpiry() throws InterruptedException {
+        when(satelliteRepository.findBySatid(anyInt()))
+                .thenAnswer(invocation -> new SatelliteData(invocation.getArgument(0), "SAT", ISS, null, null));
+        SatelliteCache cache = cache(2, 60);
+
+        cache.get(1);
+        cache.get(2);
+        cache.onTleUpdated(new TleUpdatedEvent(1));
+        cache.get(1);
+        cache.get(3);
+        assertEquals(2, cache.size());
+        cache.get(2);
+        verify(satelliteRepository, times(2)).findBySatid(1);
+        verify(satelliteRepository, times(2)).findBySatid(2);
+        assertEquals(1, cache.getStats().getInvalidations());
+        assertEquals(2, cache.getStats().getEvictions());
+
+        SatelliteCache expiring = cache(10, 0.05);
+        expiring.get(4);
+        Thread.sleep(100);
+        expiring.get(4);
+        verify(satelliteRepository, times(2)).findBySatid(4);
+        assertEquals(1, expiring.getStats().getExpirations());
+    }
+}
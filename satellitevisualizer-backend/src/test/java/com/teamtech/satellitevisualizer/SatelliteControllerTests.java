@@ -0,0 +1,174 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtech.satellitevisualizer.controller.SatelliteController;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.service.ComputeLanes;
+import com.teamtech.satellitevisualizer.service.CzmlSampler;
+import com.teamtech.satellitevisualizer.service.CzmlWriter;
+import com.teamtech.satellitevisualizer.service.EphemerisPayloadCache;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.PropagatorCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.SatelliteService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
+import org.orekit.time.TimeScalesFactory;
+import org.orekit.utils.IERSConventions;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+class SatelliteControllerTests {
+
+    private static final String ISS_TLE = "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994\n"
+            + "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656";
+
+    private SatelliteService satelliteService;
+    private SatellitePositionService satellitePositionService;
+    private EphemerisStore store;
+    private MockMvc mockMvc;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        Frame itrf = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+        SatelliteMetrics metrics = new SatelliteMetrics(new SimpleMeterRegistry());
+        satelliteService = mock(SatelliteService.class);
+        satellitePositionService = mock(SatellitePositionService.class);
+        // the work runs right away on the request thread instead of a compute thread
+        ComputeLanes computeLanes = mock(ComputeLanes.class);
+        when(computeLanes.submit(anyString(), any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(((Supplier<Object>) invocation.getArgument(1)).get()));
+
+        SatelliteController controller = new SatelliteController();
+        ReflectionTestUtils.setField(controller, "satelliteService", satelliteService);
+        ReflectionTestUtils.setField(controller, "computeLanes", computeLanes);
+        ReflectionTestUtils.setField(controller, "czmlWriter", new CzmlWriter());
+        ReflectionTestUtils.setField(controller, "satelliteMetrics", metrics);
+        ReflectionTestUtils.setField(controller, "utc", TimeScalesFactory.getUTC());
+        store = spy(new EphemerisStore(new PropagatorCache(10, 2),
+                new FrameTransforms(FramesFactory.getTEME(), itrf, metrics, 4096), itrf, TimeScalesFactory.getUTC(),
+                ForkJoinPool.commonPool(), metrics, 60, 120, 64, 30));
+        ReflectionTestUtils.setField(controller, "ephemerisStore", store);
+        CzmlSampler sampler = new CzmlSampler(store, 1, 100_000);
+        ReflectionTestUtils.setField(controller, "czmlSampler", sampler);
+        ReflectionTestUtils.setField(controller, "satellitePositionService", satellitePositionService);
+        ReflectionTestUtils.setField(controller, "ephemerisPayloadCache",
+                new EphemerisPayloadCache(store, sampler, TimeScalesFactory.getUTC(), metrics, 60, 32));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    // the CZML document is written into the response by the StreamingResponseBody, not serialized as JSON
+    @Test
+    void testCzmlIsStreamed() throws Exception {
+        when(satelliteService.getSatelliteBySatid(25544)).thenReturn(new SatelliteData(25544, "ISS", ISS_TLE, null, null));
+
+        MvcResult started = mockMvc.perform(get("/api/satellite/25544/czml").param("minutes", "10").param("step", "60"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult streamed = mockMvc.perform(asyncDispatch(started)).andReturn();
+        streamed.getAsyncResult();
+
+        assertEquals(200, streamed.getResponse().getStatus());
+        JsonNode czml = new ObjectMapper().readTree(streamed.getResponse().getContentAsString());
+        assertEquals(2, czml.size());
+        assertEquals("document", czml.get(0).get("id").asText());
+        assertEquals("Satellite 25544", czml.get(1).get("id").asText());
+        // 11 samples of a time offset and x, y, z
+        assertEquals(44, czml.get(1).get("position").get("cartesian").size());
+    }
+
+    // fixed-step samples are computed in the czml lane, the response body only writes them
+    @Test
+    void testFixedStepCzmlIsSampledInTheLane() throws Exception {
+        when(satelliteService.getSatelliteBySatid(25544)).thenReturn(new SatelliteData(25544, "ISS", ISS_TLE, null, null));
+
+        MvcResult started = mockMvc.perform(get("/api/satellite/25544/czml").param("minutes", "10").param("step", "60"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertInstanceOf(ResponseEntity.class, started.getAsyncResult());
+        verify(store).positions(eq(25544), any(), any(), eq(60.0), eq(11));
+    }
+
+    @Test
+    void testCzmlOfUnknownSatellite() throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/satellite/99999/czml"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult streamed = mockMvc.perform(asyncDispatch(started)).andExpect(status().isNotFound()).andReturn();
+        streamed.getAsyncResult();
+        assertEquals("TLE not found for: 99999", streamed.getResponse().getContentAsString());
+    }
+
+    // the gzipped and the identity payloads are different bytes, so they do not share an ETag
+    @Test
+    void testEphemerisRepresentationsHaveTheirOwnEtag() throws Exception {
+        when(satellitePositionService.fetchTLE(25544)).thenReturn(SatellitePositionService.parseTLE(ISS_TLE));
+
+        MockHttpServletResponse gzipped = ephemeris(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        assertEquals(200, gzipped.getStatus());
+        assertEquals("gzip", gzipped.getHeader(HttpHeaders.CONTENT_ENCODING));
+        String gzipEtag = gzipped.getHeader(HttpHeaders.ETAG);
+        assertTrue(gzipEtag.endsWith("-gz\""), gzipEtag);
+
+        // the gzipped ETag does not validate the identity representation
+        MockHttpServletResponse identity = ephemeris(HttpHeaders.IF_NONE_MATCH, gzipEtag);
+        assertEquals(200, identity.getStatus());
+        assertNull(identity.getHeader(HttpHeaders.CONTENT_ENCODING));
+        String etag = identity.getHeader(HttpHeaders.ETAG);
+        assertNotEquals(gzipEtag, etag);
+        // 11 samples of x, y, z after the header
+        int length = EphemerisPayloadCache.HEADER_BYTES + 11 * 3 * Double.BYTES;
+        assertEquals(length, identity.getContentAsByteArray().length);
+        assertEquals(length, identity.getContentLength());
+
+        assertEquals(304, ephemeris(HttpHeaders.IF_NONE_MATCH, etag).getStatus());
+    }
+
+    private MockHttpServletResponse ephemeris(String header, String value) throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/satellite/25544/ephemeris").param("minutes", "10")
+                        .param("step", "60").header(header, value))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started)).andReturn().getResponse();
+    }
+}
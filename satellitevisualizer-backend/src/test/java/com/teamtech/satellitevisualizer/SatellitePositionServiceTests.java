@@ -1,11 +1,26 @@
 package com.teamtech.satellitevisualizer;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.PositionSeries;
 import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.models.VisibilityMatrix;
 import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import com.teamtech.satellitevisualizer.service.EphemerisStore;
+import com.teamtech.satellitevisualizer.service.FrameTransforms;
+import com.teamtech.satellitevisualizer.service.PropagatorCache;
+import com.teamtech.satellitevisualizer.service.SatelliteCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
 import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.SnapshotWriter;
+import com.teamtech.satellitevisualizer.service.TleArchive;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hipparchus.geometry.euclidean.threed.Vector3D;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,12 +28,25 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.orekit.bodies.GeodeticPoint;
+import org.orekit.bodies.OneAxisEllipsoid;
+import org.orekit.frames.Frame;
+import org.orekit.frames.FramesFactory;
 import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.time.TimeScalesFactory;
+import org.orekit.utils.Constants;
+import org.orekit.utils.IERSConventions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.File;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import org.orekit.data.DataContext;
 import org.orekit.data.DataProvidersManager;
 import org.orekit.data.DirectoryCrawler;
@@ -29,9 +57,17 @@ class SatellitePositionServiceTests {
     @Mock
     private SatelliteRepository satelliteRepository;
 
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private TleArchive tleArchive;
+
     @InjectMocks
     private SatellitePositionService satellitePositionService;
 
+    private SnapshotWriter snapshotWriter;
+
     private final String validTLE =
             // database test:
             "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994\n" +
@@ -41,14 +77,37 @@ class SatellitePositionServiceTests {
     //"1 25544U 98067A   25077.86855735  .00037299  00000-0  66721-3 0  9993\n"+
     //"2 25544  51.6402  34.3664 0004296  19.8911  61.0593 15.49618050501151";
 
-    @BeforeEach
-    void setUp() {
-        // loads orekit data
+    @BeforeAll
+    static void loadOrekitData() {
+        // loads orekit data once, the same way OrekitConfig does at startup
         File orekitData = new File("src/main/resources/orekit-data");
         DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
         manager.addProvider(new DirectoryCrawler(orekitData));
+    }
 
+    @BeforeEach
+    void setUp() {
         MockitoAnnotations.openMocks(this);
+
+        // shared Orekit beans normally injected from OrekitConfig
+        Frame itrf = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+        ReflectionTestUtils.setField(satellitePositionService, "utc", TimeScalesFactory.getUTC());
+        ReflectionTestUtils.setField(satellitePositionService, "itrf", itrf);
+        ReflectionTestUtils.setField(satellitePositionService, "earth", new OneAxisEllipsoid(
+                Constants.WGS84_EARTH_EQUATORIAL_RADIUS, Constants.WGS84_EARTH_FLATTENING, itrf));
+        ReflectionTestUtils.setField(satellitePositionService, "propagationExecutor", ForkJoinPool.commonPool());
+        SatelliteMetrics metrics = new SatelliteMetrics(new SimpleMeterRegistry());
+        FrameTransforms frameTransforms = new FrameTransforms(FramesFactory.getTEME(), itrf, metrics, 4096);
+        ReflectionTestUtils.setField(satellitePositionService, "frameTransforms", frameTransforms);
+        ReflectionTestUtils.setField(satellitePositionService, "ephemerisStore", new EphemerisStore(
+                new PropagatorCache(10, 2), frameTransforms, itrf,
+                TimeScalesFactory.getUTC(), ForkJoinPool.commonPool(), metrics, 60, 120, 64, 30));
+        SatelliteCache satelliteCache = new SatelliteCache(satelliteRepository, metrics, 10, 60);
+        snapshotWriter = new SnapshotWriter(mongoTemplate, satelliteCache, metrics, true, 100, 10);
+        ReflectionTestUtils.setField(satellitePositionService, "satelliteCache", satelliteCache);
+        ReflectionTestUtils.setField(satellitePositionService, "snapshotWriter", snapshotWriter);
+        ReflectionTestUtils.setField(satellitePositionService, "maxVisibilitySatellites", 3);
     }
 
 
@@ -68,7 +127,7 @@ class SatellitePositionServiceTests {
     void testFetchTLE() {
         SatelliteData mockSatelliteData = mock(SatelliteData.class);
         when(mockSatelliteData.getTle()).thenReturn(validTLE);
-        when(satelliteRepository.findById("25544")).thenReturn(Optional.of(mockSatelliteData));
+        when(satelliteRepository.findBySatid(25544)).thenReturn(mockSatelliteData);
 
         Optional<TLE> tleOptional = satellitePositionService.fetchTLE(25544);
 
@@ -82,20 +141,198 @@ class SatellitePositionServiceTests {
     void testGetCurrentLLA() {
         SatelliteData mockSatelliteData = mock(SatelliteData.class);
         when(mockSatelliteData.getTle()).thenReturn(validTLE);
-        when(satelliteRepository.findById("25544")).thenReturn(Optional.of(mockSatelliteData));
+        when(satelliteRepository.findBySatid(25544)).thenReturn(mockSatelliteData);
         System.out.println("--- CurrentLLA Orekit Output ---");
         satellitePositionService.getCurrentLLA(25544);
     }
 
-    // fetches the future LLA for iss 25544
-//    // todo: i dont think this is accurate
-//    @Test
-//    void testGetFutureLLA() {
-//        SatelliteData mockSatelliteData = mock(SatelliteData.class);
-//        when(mockSatelliteData.getTle()).thenReturn(validTLE);
-//        when(satelliteRepository.findById("25544")).thenReturn(Optional.of(mockSatelliteData));
-//        ZonedDateTime futureTime = ZonedDateTime.now(ZoneOffset.UTC).plusHours(5);
-//        System.out.println("--- FutureLLA Orekit Output ---");
-//        satellitePositionService.getFutureLLA(25544, futureTime);
-//    }
-}
\ No newline at end of file
+    // a geodetic point has no date, so its Cartesian sample is untimed
+    @Test
+    void testConvertToCartesian() {
+        PositionSamples xyz = satellitePositionService.convertToCartesian(new GeodeticPoint(0, 0, 0));
+        assertFalse(xyz.hasTimes());
+        assertEquals(Constants.WGS84_EARTH_EQUATORIAL_RADIUS, xyz.get(0, 0), 1e-6);
+        assertEquals(0, xyz.get(0, 1), 1e-6);
+        assertEquals(0, xyz.get(0, 2), 1e-6);
+    }
+
+    // one request reads the satellite from the database once, later lookups and the TLE come from the cache,
+    // and the computed coordinates are queued as a single snapshot instead of being saved
+    @Test
+    void testPositionReadsHaveNoSideEffects() {
+        SatelliteData iss = new SatelliteData(25544, "ISS", validTLE, null, null);
+        when(satelliteRepository.findBySatid(25544)).thenReturn(iss);
+
+        SatelliteData lla = satellitePositionService.getCurrentLLA(25544);
+        SatelliteData updated = satellitePositionService.getXYZ(lla);
+
+        assertNotNull(updated.getGeodeticCoordinates());
+        assertNotNull(updated.getXyzCoordinates());
+        assertNull(iss.getGeodeticCoordinates(), "the cached document should not be changed");
+        assertTrue(satellitePositionService.fetchTLE(25544).isPresent());
+        verify(satelliteRepository, times(1)).findBySatid(25544);
+        verify(satelliteRepository, never()).save(any());
+        assertEquals(1, snapshotWriter.getQueueDepth());
+        assertEquals(1, snapshotWriter.getMerged());
+    }
+
+    // computes the position of several satellites at one epoch with a single query and no writes
+    @Test
+    void testComputePositions() {
+        SatelliteData iss = new SatelliteData(25544, "ISS", validTLE, null, null);
+        when(satelliteRepository.findBySatidIn(List.of(25544, 99999))).thenReturn(List.of(iss));
+
+        AbsoluteDate date = SatellitePositionService.parseTLE(validTLE).get().getDate().shiftedBy(3600);
+        List<SatellitePosition> positions = satellitePositionService.computePositions(List.of(25544, 99999), date);
+
+        assertEquals(1, positions.size());
+        SatellitePosition position = positions.get(0);
+        assertEquals(25544, position.getSatid());
+        assertTrue(position.getLla()[2] > 350 && position.getLla()[2] < 450, "iss altitude should be around 400 km");
+        double radius = Math.sqrt(position.getXyz()[0] * position.getXyz()[0]
+                + position.getXyz()[1] * position.getXyz()[1]
+                + position.getXyz()[2] * position.getXyz()[2]);
+        assertTrue(radius > 6.6e6 && radius < 6.9e6, "iss should be ~6.8e6 m from earth's center");
+        verify(satelliteRepository, never()).save(any());
+    }
+
+    // the fleet is propagated by the SGP4 batch, the geostationary satellite (SDP4) by Orekit, both like computePosition
+    @Test
+    void testComputePositionsMatchesSingleSatellite() {
+        String geoTLE = "1 51850U 22021A   25093.54661021  .00000085  00000-0  00000+0 0  9992\n" +
+                "2 51850   0.0419  20.9525 0000029 187.1507  43.7843  1.00272382 11396";
+        SatelliteData iss = new SatelliteData(25544, "ISS", validTLE, null, null);
+        SatelliteData geo = new SatelliteData(51850, "GEO", geoTLE, null, null);
+        when(satelliteRepository.findBySatidIn(List.of(25544, 51850))).thenReturn(List.of(iss, geo));
+
+        AbsoluteDate date = SatellitePositionService.parseTLE(geoTLE).get().getDate().shiftedBy(600.5);
+        List<SatellitePosition> positions = satellitePositionService.computePositions(List.of(25544, 51850), date);
+
+        assertEquals(2, positions.size());
+        for (SatellitePosition position : positions) {
+            SatelliteData satellite = position.getSatid() == 25544 ? iss : geo;
+            SatellitePosition expected = satellitePositionService.computePosition(
+                    SatellitePositionService.parseTLE(satellite.getTle()).get(), position.getSatid(), date);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected.getXyz()[i], position.getXyz()[i], 1e-3);
+            }
+            assertEquals(expected.getLla()[2], position.getLla()[2], 1e-6);
+        }
+    }
+
+    // satellites prepared once give the positions computePositionsOf gives at every later date, invalid TLEs left out
+    @Test
+    void testPreparedSatellitesMatchComputePositions() {
+        List<SatelliteData> satellites = List.of(new SatelliteData(25544, "ISS", validTLE, null, null),
+                new SatelliteData(99999, "BROKEN", "not a tle", null, null));
+        AbsoluteDate date = SatellitePositionService.parseTLE(validTLE).get().getDate().shiftedBy(3600);
+        SatellitePositionService.PreparedSatellites prepared = satellitePositionService.prepare(satellites, date);
+        assertEquals(1, prepared.size());
+
+        for (double offset : new double[] {0, 1, 600}) {
+            AbsoluteDate later = date.shiftedBy(offset);
+            List<SatellitePosition> positions = satellitePositionService.computePositionsOf(prepared, later);
+            List<SatellitePosition> expected = satellitePositionService.computePositionsOf(satellites, later);
+            assertEquals(1, positions.size());
+            assertEquals(25544, positions.get(0).getSatid());
+            assertArrayEquals(expected.get(0).getXyz(), positions.get(0).getXyz());
+            assertArrayEquals(expected.get(0).getLla(), positions.get(0).getLla());
+        }
+    }
+
+    // a date before the current TLE's epoch is propagated from the archived TLE of that time
+    @Test
+    void testPastPositionsUseArchivedTle() {
+        String newTLE = "1 25544U 98067A   25077.86855735  .00037299  00000-0  66721-3 0  9993\n" +
+                "2 25544  51.6402  34.3664 0004296  19.8911  61.0593 15.49618050501151";
+        TLE oldTle = SatellitePositionService.parseTLE(validTLE).get();
+        TLE newTle = SatellitePositionService.parseTLE(newTLE).get();
+        AbsoluteDate past = oldTle.getDate().shiftedBy(3600);
+        when(satelliteRepository.findBySatid(25544)).thenReturn(new SatelliteData(25544, "ISS", newTLE, null, null));
+        when(tleArchive.nearest(25544, past)).thenReturn(Optional.of(oldTle));
+
+        assertEquals(oldTle.getDate(), satellitePositionService.fetchTLE(25544, past).get().getDate());
+        // from the current epoch on, the archive is not looked up
+        assertSame(newTle.getDate(), satellitePositionService.selectTLE(25544, newTle, newTle.getDate().shiftedBy(60)).getDate());
+        verify(tleArchive, times(1)).nearest(anyInt(), any());
+    }
+
+    // positions at many future dates, sub-second ones included, match a direct propagation of each of them
+    @Test
+    void testComputeSeries() {
+        when(satelliteRepository.findBySatid(25544)).thenReturn(new SatelliteData(25544, "ISS", validTLE, null, null));
+        TLE tle = SatellitePositionService.parseTLE(validTLE).get();
+        Instant epoch = tle.getDate().toDate(TimeScalesFactory.getUTC()).toInstant().plusSeconds(5 * 3600);
+        double[] offsets = {0, 0.25, 0.5, 7200.125, 3600, 86400.75};
+
+        PositionSeries series = satellitePositionService.computeSeries(25544, epoch, offsets);
+
+        assertEquals(epoch.toString(), series.getEpoch());
+        assertArrayEquals(offsets, series.getTimes());
+        Frame itrf = FramesFactory.getITRF(IERSConventions.IERS_2010, true);
+        TLEPropagator propagator = TLEPropagator.selectExtrapolator(tle);
+        AbsoluteDate start = satellitePositionService.toAbsoluteDate(epoch);
+        for (int i = 0; i < offsets.length; i++) {
+            Vector3D expected = propagator.propagate(start.shiftedBy(offsets[i])).getPVCoordinates(itrf).getPosition();
+            assertEquals(0, expected.distance(new Vector3D(series.getX()[i], series.getY()[i], series.getZ()[i])), 1e-6);
+            assertTrue(series.getAlt()[i] > 350 && series.getAlt()[i] < 450, "iss altitude should be around 400 km");
+        }
+        // a quarter of a second apart is about 2 km along the orbit
+        double moved = Math.hypot(Math.hypot(series.getX()[1] - series.getX()[0], series.getY()[1] - series.getY()[0]),
+                series.getZ()[1] - series.getZ()[0]);
+        assertTrue(moved > 1500 && moved < 2500, "moved " + moved + " m");
+        verify(satelliteRepository, never()).save(any());
+    }
+
+    // the ISS sees a satellite 20 degrees ahead on its orbit but not one on the other side of the Earth, nor the first
+    // one through 400 km of atmosphere; the matrix of the three agrees with the pair checks
+    @Test
+    void testComputeVisibility() {
+        TLE iss = SatellitePositionService.parseTLE(validTLE).get();
+        SatelliteData ahead = shifted(iss, 90001, 20);
+        SatelliteData behind = shifted(iss, 90002, 180);
+        SatelliteData issData = new SatelliteData(25544, "ISS", validTLE, null, null);
+        List<SatelliteData> satellites = List.of(issData, ahead, behind);
+        for (SatelliteData satellite : satellites) {
+            when(satelliteRepository.findBySatid(satellite.getSatid())).thenReturn(satellite);
+        }
+        List<Integer> satIds = List.of(25544, 90001, 90002);
+        when(satelliteRepository.findBySatidIn(satIds)).thenReturn(satellites);
+
+        AbsoluteDate date = iss.getDate().shiftedBy(1800);
+        assertTrue(satellitePositionService.isVisible(25544, 90001, date, 0));
+        assertFalse(satellitePositionService.isVisible(25544, 90002, date, 0));
+        assertFalse(satellitePositionService.isVisible(25544, 90001, date, 400_000));
+
+        VisibilityMatrix matrix = satellitePositionService.computeVisibility(satIds, date, 0);
+        assertArrayEquals(new int[] {25544, 90001, 90002}, matrix.getSatids());
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (i == j) continue;
+                int other = j;
+                boolean listed = Arrays.stream(matrix.getAdjacency()[i]).anyMatch(k -> k == other);
+                assertEquals(satellitePositionService.isVisible(satIds.get(i), satIds.get(j), date, 0), listed,
+                        satIds.get(i) + " sees " + satIds.get(j));
+            }
+        }
+        assertEquals(matrix.getAdjacency()[0].length + matrix.getAdjacency()[1].length + matrix.getAdjacency()[2].length,
+                2 * matrix.getLinks());
+        assertEquals(0, satellitePositionService.computeVisibility(satIds, date, 400_000).getAdjacency()[0].length);
+
+        // too many satellites are rejected before any is loaded
+        when(satelliteRepository.count()).thenReturn(4L);
+        assertThrows(IllegalArgumentException.class, () -> satellitePositionService.computeVisibility(null, date, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> satellitePositionService.computeVisibility(List.of(1, 2, 3, 4), date, 0));
+        verify(satelliteRepository, never()).findAll();
+        verify(satelliteRepository, never()).findBySatidIn(List.of(1, 2, 3, 4));
+        verify(satelliteRepository, never()).save(any());
+    }
+
+    private static SatelliteData shifted(TLE tle, int satId, double degrees) {
+        TLE shifted = new TLE(satId, 'U', 2025, 1, "A", 0, 999, tle.getDate(), tle.getMeanMotion(), 0, 0, tle.getE(),
+                tle.getI(), tle.getPerigeeArgument(), tle.getRaan(), tle.getMeanAnomaly() + Math.toRadians(degrees), 1,
+                tle.getBStar());
+        return new SatelliteData(satId, "SAT " + satId, shifted.getLine1() + "\n" + shifted.getLine2(), null, null);
+    }
+}
@@ -0,0 +1,131 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.Sgp4Batch;
+import org.hipparchus.util.FastMath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.errors.OrekitException;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.propagation.analytical.tle.TLEPropagator;
+import org.orekit.time.AbsoluteDate;
+import org.orekit.utils.PVCoordinates;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+class Sgp4BatchTests {
+
+    // the batch is a port of Orekit's SGP4, only the rounding of the operations may differ
+    private static final double POSITION_TOLERANCE = 1e-3;
+    private static final double VELOCITY_TOLERANCE = 1e-6;
+
+    private static TLE ISS;
+    private static TLE STARLINK;
+    private static TLE GEO;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+
+        ISS = new TLE("1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994",
+                "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656");
+        STARLINK = new TLE("1 44945U 20001AH  25104.58335648  .00211921  00000-0  87018-3 0  9996",
+                "2 44945  53.0431 302.8405 0003981 211.2664 213.7415 15.84888341291374");
+        GEO = new TLE("1 51850U 22021A   25093.54661021  .00000085  00000-0  00000+0 0  9992",
+                "2 51850   0.0419  20.9525 0000029 187.1507  43.7843  1.00272382 11396");
+    }
+
+    // every branch of SGP4 (perigee under 156 km and 220 km, near-circular orbits, drag or not, retrograde)
+    // gives the positions and velocities of TLEPropagator, over days before and after the epoch
+    @Test
+    void testMatchesTlePropagator() {
+        List<TLE> tles = new ArrayList<>(List.of(ISS, STARLINK));
+        AbsoluteDate epoch = ISS.getDate();
+        int satNum = 90000;
+        for (double revsPerDay : new double[] {16.4, 15.9, 15.5, 14.2, 12.0, 6.5}) {
+            for (double e : new double[] {0, 5e-5, 1e-3, 0.02, 0.2}) {
+                for (double i : new double[] {0.05, 51.6, 97.5, 142}) {
+                    for (double bstar : new double[] {0, 1e-4, 3e-3}) {
+                        double meanMotion = revsPerDay * 2 * FastMath.PI / 86400;
+                        double anomaly = FastMath.toRadians(satNum * 37 % 360);
+                        tles.add(new TLE(satNum++, 'U', 2025, 1, "A", 0, 999,
+                                epoch.shiftedBy(satNum * 611.0 % 86400), meanMotion, 0, 0, e,
+                                FastMath.toRadians(i), anomaly * 0.7, anomaly * 1.3, anomaly, 1, bstar));
+                    }
+                }
+            }
+        }
+
+        Sgp4Batch batch = new Sgp4Batch(tles);
+        double[] xyz = new double[3 * batch.size()];
+        double[] vxyz = new double[3 * batch.size()];
+        int compared = 0;
+        for (double minutes = -1440; minutes <= 4320; minutes += 97.3) {
+            AbsoluteDate date = epoch.shiftedBy(minutes * 60);
+            batch.propagate(date, 0, batch.size(), xyz, vxyz);
+            for (int k = 0; k < batch.size(); k++) {
+                assertTrue(batch.isNearEarth(k), "every orbit of the test is under 225 minutes");
+                PVCoordinates expected;
+                try {
+                    expected = TLEPropagator.selectExtrapolator(tles.get(k)).getPVCoordinates(date);
+                } catch (OrekitException ex) {
+                    // drag drove the eccentricity out of range, the batch gives up as well
+                    assertTrue(Double.isNaN(xyz[3 * k]), "satellite " + tles.get(k).getSatelliteNumber());
+                    continue;
+                }
+                if (expected.getPosition().getNorm() > 1e8) {
+                    // long decayed, the drag terms blow the orbit up and only the rounding of that is compared
+                    continue;
+                }
+                assertEquals(expected.getPosition().getX(), xyz[3 * k], POSITION_TOLERANCE);
+                assertEquals(expected.getPosition().getY(), xyz[3 * k + 1], POSITION_TOLERANCE);
+                assertEquals(expected.getPosition().getZ(), xyz[3 * k + 2], POSITION_TOLERANCE);
+                assertEquals(expected.getVelocity().getX(), vxyz[3 * k], VELOCITY_TOLERANCE);
+                assertEquals(expected.getVelocity().getY(), vxyz[3 * k + 1], VELOCITY_TOLERANCE);
+                assertEquals(expected.getVelocity().getZ(), vxyz[3 * k + 2], VELOCITY_TOLERANCE);
+                compared++;
+            }
+        }
+        // most states are meaningful, the test is not passing by skipping them
+        assertTrue(compared > 20_000);
+    }
+
+    // a range of the batch only writes its own satellites, positions alone can be asked for
+    @Test
+    void testPropagatesRange() {
+        Sgp4Batch batch = new Sgp4Batch(List.of(ISS, STARLINK, ISS));
+        double[] xyz = new double[9];
+        AbsoluteDate date = ISS.getDate().shiftedBy(3600);
+        batch.propagate(date, 1, 2, xyz, null);
+
+        assertEquals(0, xyz[0]);
+        assertEquals(0, xyz[6]);
+        PVCoordinates expected = TLEPropagator.selectExtrapolator(STARLINK).getPVCoordinates(date);
+        assertEquals(expected.getPosition().getX(), xyz[3], POSITION_TOLERANCE);
+        assertEquals(expected.getPosition().getZ(), xyz[5], POSITION_TOLERANCE);
+    }
+
+    // deep-space satellites are left to SDP4: selected like TLEPropagator does, and NaN from the batch
+    @Test
+    void testDeepSpaceIsLeftToOrekit() {
+        assertTrue(Sgp4Batch.isNearEarth(ISS));
+        assertFalse(Sgp4Batch.isNearEarth(GEO));
+
+        Sgp4Batch batch = new Sgp4Batch(List.of(GEO, ISS));
+        assertFalse(batch.isNearEarth(0));
+        assertTrue(batch.isNearEarth(1));
+        double[] xyz = new double[6];
+        batch.propagate(ISS.getDate(), 0, 2, xyz, null);
+        assertTrue(Double.isNaN(xyz[0]));
+        assertFalse(Double.isNaN(xyz[3]));
+    }
+}
@@ -0,0 +1,119 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.models.PositionSamples;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import com.teamtech.satellitevisualizer.service.SatelliteCache;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.SnapshotWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+@ExtendWith(MockitoExtension.class)
+class SnapshotWriterTests {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private SatelliteRepository satelliteRepository;
+
+    private SatelliteCache satelliteCache;
+
+    @BeforeEach
+    void setUp() {
+        satelliteCache = new SatelliteCache(satelliteRepository, new SatelliteMetrics(new SimpleMeterRegistry()), 10, 60);
+    }
+
+    // every writer gets its own registry, its gauges and function counters would otherwise read another writer
+    private SnapshotWriter writer(SimpleMeterRegistry meterRegistry, boolean enabled, int maxPending) {
+        return new SnapshotWriter(mongoTemplate, satelliteCache, new SatelliteMetrics(meterRegistry),
+                enabled, maxPending, 100);
+    }
+
+    // snapshots of the same satellite are merged, the latest coordinates of each kind win
+    @Test
+    void testCoalescesPerSatellite() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SatelliteData.class)).thenReturn(bulkOperations);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SnapshotWriter writer = writer(meterRegistry, true, 10);
+
+        writer.offer(25544, PositionSamples.of(1, 2, 3), null);
+        writer.offer(25544, null, PositionSamples.of(4, 5, 6));
+        writer.offer(25544, PositionSamples.of(7, 8, 9), null);
+        writer.offer(44945, PositionSamples.of(10, 11, 12), null);
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(2, meterRegistry.get("satellite.snapshot.queue.depth").gauge().value());
+
+        writer.flush();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(2)).updateOne(queries.capture(), updates.capture());
+        verify(bulkOperations, times(1)).execute();
+        int iss = queries.getAllValues().get(0).getQueryObject().getInteger("satid") == 25544 ? 0 : 1;
+        Document set = (Document) updates.getAllValues().get(iss).getUpdateObject().get("$set");
+        assertEquals(PositionSamples.of(7, 8, 9), set.get("geodeticCoordinates"));
+        assertEquals(PositionSamples.of(4, 5, 6), set.get("xyzCoordinates"));
+
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(2, writer.getWritten());
+        assertEquals(2, writer.getMerged());
+        assertEquals(1, meterRegistry.get("satellite.snapshot.flush").timer().count());
+    }
+
+    // once max-pending satellites wait, new satellites are dropped but pending ones still merge
+    @Test
+    void testDropsWhenFull() {
+        SnapshotWriter writer = writer(new SimpleMeterRegistry(), true, 2);
+
+        assertTrue(writer.offer(1, PositionSamples.of(1, 2, 3), null));
+        assertTrue(writer.offer(2, PositionSamples.of(1, 2, 3), null));
+        assertFalse(writer.offer(3, PositionSamples.of(1, 2, 3), null));
+        assertTrue(writer.offer(1, PositionSamples.of(4, 5, 6), null));
+
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(1, writer.getDropped());
+        assertEquals(1, writer.getMerged());
+    }
+
+    // the flushed coordinates replace the cached ones without reloading the document, and nothing is queued when
+    // disabled
+    @Test
+    void testFlushUpdatesCacheAndDisabledWriterDoesNothing() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SatelliteData.class)).thenReturn(bulkOperations);
+        when(satelliteRepository.findBySatid(25544)).thenReturn(
+                new SatelliteData(25544, "ISS", null, null, PositionSamples.of(4, 5, 6)));
+        SnapshotWriter writer = writer(new SimpleMeterRegistry(), true, 10);
+
+        satelliteCache.get(25544);
+        writer.offer(25544, PositionSamples.of(1, 2, 3), null);
+        writer.flush();
+        SatelliteData cached = satelliteCache.get(25544);
+        assertEquals(PositionSamples.of(1, 2, 3), cached.getGeodeticCoordinates());
+        assertEquals(PositionSamples.of(4, 5, 6), cached.getXyzCoordinates());
+        verify(satelliteRepository, times(1)).findBySatid(25544);
+
+        SnapshotWriter disabled = writer(new SimpleMeterRegistry(), false, 10);
+        assertFalse(disabled.offer(25544, PositionSamples.of(1, 2, 3), null));
+        disabled.flush();
+        verify(mongoTemplate, times(1)).bulkOps(any(BulkOperations.BulkMode.class), eq(SatelliteData.class));
+    }
+}
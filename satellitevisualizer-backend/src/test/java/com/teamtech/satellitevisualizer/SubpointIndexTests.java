@@ -0,0 +1,137 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.repository.SatelliteRepository;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.SubpointIndex;
+import com.teamtech.satellitevisualizer.service.TleUpdatedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+class SubpointIndexTests {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private SatellitePositionService satellitePositionService;
+    private SatelliteRepository satelliteRepository;
+    private SubpointIndex index;
+    private List<SatellitePosition> positions;
+
+    @BeforeEach
+    void setUp() {
+        satellitePositionService = mock(SatellitePositionService.class);
+        satelliteRepository = mock(SatelliteRepository.class);
+        index = new SubpointIndex(satellitePositionService, satelliteRepository,
+                new SatelliteMetrics(new SimpleMeterRegistry()), 2);
+
+        // uniform over the sphere, plus the edges of the grid
+        Random random = new Random(42);
+        positions = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            double lat = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            double lon = 360 * random.nextDouble() - 180;
+            positions.add(new SatellitePosition(i, new double[] {lat, lon, 550}, new double[3]));
+        }
+        positions.add(new SatellitePosition(20_000, new double[] {90, 0, 550}, new double[3]));
+        positions.add(new SatellitePosition(20_001, new double[] {-90, 180, 550}, new double[3]));
+        positions.add(new SatellitePosition(20_002, new double[] {0, 180, 550}, new double[3]));
+        positions.add(new SatellitePosition(20_003, new double[] {0, -180, 550}, new double[3]));
+    }
+
+    // every box, across the antimeridian or up to the poles included, finds what a scan of all the satellites finds
+    @Test
+    void testBoxMatchesScan() {
+        assertNull(index.withinBox(-10, 10, -10, 10));
+        Instant epoch = Instant.parse("2025-04-14T12:00:00Z");
+        index.update(epoch, positions);
+        assertEquals(positions.size(), index.size());
+
+        double[][] boxes = {
+                {-10, 10, -10, 10}, {35.5, 47.25, 5.1, 19.9}, {-90, 90, -180, 180}, {80, 90, -180, 180},
+                {-5, 5, 170, -170}, {-5, 5, 179.5, 179}, {-1, 1, 180, 180}, {-90, -89, -180, 180}, {12, 12, 0, 0}};
+        for (double[] box : boxes) {
+            SubpointIndex.Matches matches = index.withinBox(box[0], box[1], box[2], box[3]);
+            assertEquals(epoch, matches.epoch());
+            boolean wraps = box[2] > box[3];
+            assertEquals(scan(p -> p.getLla()[0] >= box[0] && p.getLla()[0] <= box[1]
+                    && (wraps ? p.getLla()[1] >= box[2] || p.getLla()[1] <= box[3]
+                    : p.getLla()[1] >= box[2] && p.getLla()[1] <= box[3])), ids(matches), "box " + List.of(box));
+        }
+        assertEquals(positions.size(), index.withinBox(-90, 90, -180, 180).positions().size());
+    }
+
+    // every circle, near a pole, across the antimeridian or larger than a hemisphere, finds what a scan finds
+    @Test
+    void testRadiusMatchesScan() {
+        index.update(Instant.now(), positions);
+
+        double[][] circles = {
+                {48.85, 2.35, 1000}, {0, 179.5, 800}, {0, -179.5, 2500}, {88, 40, 600}, {-85, -120, 1500},
+                {10, 20, 12000}, {0, 0, 20100}, {30, 60, 0}, {-60, 150, 9900}, {0, 179, 19800}};
+        for (double[] circle : circles) {
+            double lat = Math.toRadians(circle[0]);
+            double angle = circle[2] / EARTH_RADIUS_KM;
+            assertEquals(scan(p -> {
+                double satLat = Math.toRadians(p.getLla()[0]);
+                double cosAngle = Math.sin(lat) * Math.sin(satLat)
+                        + Math.cos(lat) * Math.cos(satLat) * Math.cos(Math.toRadians(p.getLla()[1] - circle[1]));
+                return Math.acos(Math.max(-1, Math.min(1, cosAngle))) <= angle;
+            }), ids(index.withinRadius(circle[0], circle[1], circle[2])), "circle " + List.of(circle));
+        }
+    }
+
+    // the catalog is read and prepared once, then again only after a TLE changed, every tick only propagates it
+    @Test
+    void testTickReloadsCatalogAfterTleUpdates() {
+        List<SatelliteData> catalog = List.of(new SatelliteData(25544, "ISS", "tle", null, null));
+        SatellitePositionService.PreparedSatellites prepared = mock(SatellitePositionService.PreparedSatellites.class);
+        when(satelliteRepository.findAll()).thenReturn(catalog);
+        when(satellitePositionService.prepare(eq(catalog), any())).thenReturn(prepared);
+        when(satellitePositionService.computePositionsOf(eq(prepared), any())).thenReturn(positions.subList(0, 10));
+
+        index.tick();
+        index.tick();
+        verify(satelliteRepository, times(1)).findAll();
+        verify(satellitePositionService, times(1)).prepare(eq(catalog), any());
+        verify(satellitePositionService, times(2)).computePositionsOf(eq(prepared), any());
+        verify(satellitePositionService, never()).computePositionsOf(anyList(), any());
+        assertEquals(10, index.size());
+
+        index.onTleUpdated(new TleUpdatedEvent(25544));
+        index.tick();
+        verify(satelliteRepository, times(2)).findAll();
+        verify(satellitePositionService, times(2)).prepare(eq(catalog), any());
+    }
+
+    private Set<Integer> scan(Predicate<SatellitePosition> inside) {
+        Set<Integer> ids = new TreeSet<>();
+        for (SatellitePosition position : positions) {
+            if (inside.test(position)) ids.add(position.getSatid());
+        }
+        return ids;
+    }
+
+    private static Set<Integer> ids(SubpointIndex.Matches matches) {
+        Set<Integer> ids = new TreeSet<>();
+        for (SatellitePosition position : matches.positions()) {
+            assertTrue(ids.add(position.getSatid()), "satellite " + position.getSatid() + " found twice");
+        }
+        return ids;
+    }
+}
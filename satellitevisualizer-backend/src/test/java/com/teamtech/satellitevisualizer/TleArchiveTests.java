@@ -0,0 +1,106 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.models.TleRecord;
+import com.teamtech.satellitevisualizer.service.TleArchive;
+import com.teamtech.satellitevisualizer.service.TleParser;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.orekit.propagation.analytical.tle.TLE;
+import org.orekit.time.TimeScale;
+import org.orekit.time.TimeScalesFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.File;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class TleArchiveTests {
+
+    private static final String FEB = "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994\r\n" +
+            "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656";
+    private static final String MAR = "1 25544U 98067A   25077.86855735  .00037299  00000-0  66721-3 0  9993\r\n" +
+            "2 25544  51.6402  34.3664 0004296  19.8911  61.0593 15.49618050501151";
+
+    private static TimeScale utc;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+        utc = TimeScalesFactory.getUTC();
+    }
+
+    private static TleRecord record(String tle) {
+        return new TleRecord(null, 25544, TleParser.epoch(TleParser.line(tle, 0)), tle);
+    }
+
+    // the epoch read from the first line matches the one Orekit parses, to the millisecond
+    @Test
+    void testEpochMatchesOrekit() {
+        TLE tle = new TLE(TleParser.line(FEB, 0), TleParser.line(FEB, 1));
+        assertEquals(tle.getDate().toDate(utc).getTime(), TleParser.epoch(TleParser.line(FEB, 0)).toEpochMilli(), 1);
+        assertNull(TleParser.epoch("1 25544U 98067A   2504x.86150170"));
+    }
+
+    // the element set with the nearest epoch is picked, and the satellite's epochs are loaded only once
+    @Test
+    void testNearestEpoch() {
+        when(mongoTemplate.find(any(Query.class), eq(TleRecord.class))).thenReturn(List.of(record(FEB), record(MAR)));
+        TleArchive archive = new TleArchive(mongoTemplate, utc, 10);
+        TLE feb = new TLE(TleParser.line(FEB, 0), TleParser.line(FEB, 1));
+        TLE mar = new TLE(TleParser.line(MAR, 0), TleParser.line(MAR, 1));
+
+        assertEquals(feb.getDate(), archive.nearest(25544, feb.getDate().shiftedBy(-30 * 86400)).orElseThrow().getDate());
+        assertEquals(feb.getDate(), archive.nearest(25544, feb.getDate().shiftedBy(10 * 86400)).orElseThrow().getDate());
+        assertEquals(mar.getDate(), archive.nearest(25544, mar.getDate().shiftedBy(-10 * 86400)).orElseThrow().getDate());
+        assertEquals(mar.getDate(), archive.nearest(25544, mar.getDate().shiftedBy(365 * 86400)).orElseThrow().getDate());
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(TleRecord.class));
+    }
+
+    // archiving only inserts, one upsert per element set, and drops the satellite from the index
+    @Test
+    void testArchiveIsAppendOnly() {
+        when(mongoTemplate.find(any(Query.class), eq(TleRecord.class)))
+                .thenReturn(List.of(record(FEB)))
+                .thenReturn(List.of(record(FEB), record(MAR)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TleRecord.class)).thenReturn(bulkOperations);
+        when(mongoTemplate.indexOps(TleRecord.class)).thenReturn(indexOperations);
+        TleArchive archive = new TleArchive(mongoTemplate, utc, 10);
+        TLE mar = new TLE(TleParser.line(MAR, 0), TleParser.line(MAR, 1));
+
+        assertNotEquals(mar.getDate(), archive.nearest(25544, mar.getDate()).orElseThrow().getDate());
+        assertEquals(1, archive.archiveAll(List.of(new TleArchive.Entry(25544, FEB), new TleArchive.Entry(25544, MAR),
+                new TleArchive.Entry(25544, "not a tle"))));
+        assertEquals(mar.getDate(), archive.nearest(25544, mar.getDate()).orElseThrow().getDate());
+
+        verify(bulkOperations, times(2)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOperations).execute();
+        verify(indexOperations).ensureIndex(any());
+        verify(mongoTemplate, never()).save(any());
+    }
+}
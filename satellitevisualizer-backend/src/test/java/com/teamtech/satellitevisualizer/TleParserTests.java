@@ -0,0 +1,68 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.teamtech.satellitevisualizer.service.TleParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+class TleParserTests {
+
+    private static final String ISS_LINE1 = "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994";
+    private static final String ISS_LINE2 = "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656";
+    private static final String STARLINK_LINE1 = "1 44945U 20001AH  25104.58335648  .00211921  00000-0  87018-3 0  9996";
+    private static final String STARLINK_LINE2 = "2 44945  53.0431 302.8405 0003981 211.2664 213.7415 15.84888341291374";
+
+    @Test
+    void testChecksum() {
+        assertTrue(TleParser.checksumValid(ISS_LINE1));
+        assertTrue(TleParser.checksumValid(ISS_LINE2));
+        assertFalse(TleParser.checksumValid(ISS_LINE1.substring(0, 68) + "5"));
+        assertFalse(TleParser.checksumValid("1 25544U"));
+    }
+
+    @Test
+    void testCatalogNumber() {
+        assertEquals(25544, TleParser.catalogNumber(ISS_LINE1));
+        assertEquals(100000, TleParser.catalogNumber("1 A0000U"));
+        assertEquals(180001, TleParser.catalogNumber("1 J0001U"));
+        assertEquals(339999, TleParser.catalogNumber("1 Z9999U"));
+        assertEquals(-1, TleParser.catalogNumber("1 2X544U"));
+    }
+
+    // 3LE names (with or without the "0 " prefix) and 2LE entries can be mixed, bad entries are counted and skipped
+    @Test
+    void testReadCatalog() throws Exception {
+        String catalog = "0 ISS (ZARYA)\r\n" + ISS_LINE1 + "\r\n" + ISS_LINE2 + "\r\n"
+                + "BROKEN\n" + ISS_LINE1.substring(0, 68) + "0\n" + ISS_LINE2 + "\n"
+                + "\n"
+                + STARLINK_LINE1 + "\n" + STARLINK_LINE2 + "\n";
+        TleParser parser = new TleParser(new BufferedReader(new StringReader(catalog)));
+
+        TleParser.Entry iss = parser.next();
+        assertEquals(25544, iss.satId());
+        assertEquals("ISS (ZARYA)", iss.name());
+        assertEquals(ISS_LINE1 + "\r\n" + ISS_LINE2, iss.tle());
+
+        TleParser.Entry starlink = parser.next();
+        assertEquals(44945, starlink.satId());
+        assertNull(starlink.name());
+
+        assertNull(parser.next());
+        assertEquals(1, parser.getChecksumErrors());
+        assertEquals(9, parser.getLines());
+    }
+
+    @Test
+    void testLineAndEpoch() {
+        String tle = ISS_LINE1 + "\r\n" + ISS_LINE2;
+        assertEquals(ISS_LINE1, TleParser.line(tle, 0));
+        assertEquals(ISS_LINE2, TleParser.line(tle, 1));
+        assertNull(TleParser.line(ISS_LINE1, 1));
+
+        assertTrue(TleParser.sameEpoch(ISS_LINE1, ISS_LINE1));
+        assertFalse(TleParser.sameEpoch(ISS_LINE1, STARLINK_LINE1));
+    }
+}
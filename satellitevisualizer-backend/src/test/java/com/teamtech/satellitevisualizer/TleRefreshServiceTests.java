@@ -0,0 +1,188 @@
+package com.teamtech.satellitevisualizer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+import com.teamtech.satellitevisualizer.config.N2yoProperties;
+import com.teamtech.satellitevisualizer.models.RefreshReport;
+import com.teamtech.satellitevisualizer.models.SatelliteData;
+import com.teamtech.satellitevisualizer.models.SatellitePosition;
+import com.teamtech.satellitevisualizer.service.SatelliteMetrics;
+import com.teamtech.satellitevisualizer.service.SatellitePositionService;
+import com.teamtech.satellitevisualizer.service.TleArchive;
+import com.teamtech.satellitevisualizer.service.TleRefreshService;
+import com.teamtech.satellitevisualizer.service.TleUpdatedEvent;
+import com.teamtech.satellitevisualizer.service.TokenBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.orekit.data.DataContext;
+import org.orekit.data.DataProvidersManager;
+import org.orekit.data.DirectoryCrawler;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ExtendWith(MockitoExtension.class)
+class TleRefreshServiceTests {
+
+    private static final String OLD_ISS = "1 25544U 98067A   25048.86150170  .00016610  00000-0  29603-3 0  9994\r\n" +
+            "2 25544  51.6391 178.0267 0004105 330.1473 172.8419 15.50222990496656";
+    private static final String NEW_ISS = "1 25544U 98067A   25077.86855735  .00037299  00000-0  66721-3 0  9993\r\n" +
+            "2 25544  51.6402  34.3664 0004296  19.8911  61.0593 15.49618050501151";
+    private static final String STARLINK = "1 44945U 20001AH  25104.58335648  .00211921  00000-0  87018-3 0  9996\r\n" +
+            "2 44945  53.0431 302.8405 0003981 211.2664 213.7415 15.84888341291374";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private SatellitePositionService satellitePositionService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private TleArchive tleArchive;
+
+    private HttpServer n2yo;
+    private ExecutorService refreshExecutor;
+    private final Map<Integer, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private TleRefreshService refreshService;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeAll
+    static void loadOrekitData() {
+        File orekitData = new File("src/main/resources/orekit-data");
+        DataProvidersManager manager = DataContext.getDefault().getDataProvidersManager();
+        manager.clearProviders();
+        manager.addProvider(new DirectoryCrawler(orekitData));
+    }
+
+    // stub of the N2YO TLE endpoint: 25544 has a new TLE, 44945 the stored one, 51850 fails once
+    // with a 503 before answering and 99999 does not exist
+    @BeforeEach
+    void setUp() throws IOException {
+        n2yo = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        n2yo.createContext("/rest/v1/satellite/tle/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int satId = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1, path.indexOf('&')));
+            int count = requests.computeIfAbsent(satId, id -> new AtomicInteger()).incrementAndGet();
+
+            String tle = switch (satId) {
+                case 25544 -> NEW_ISS;
+                case 44945, 51850 -> STARLINK;
+                default -> null;
+            };
+            int status = tle == null ? 404 : satId == 51850 && count == 1 ? 503 : 200;
+            byte[] body = (status == 200
+                    ? "{\"info\":{\"satid\":" + satId + ",\"satname\":\"SAT\",\"transactionscount\":" + count + "},"
+                        + "\"tle\":\"" + tle.replace("\r\n", "\\r\\n") + "\"}"
+                    : "{}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        n2yo.start();
+
+        N2yoProperties properties = new N2yoProperties();
+        properties.getApi().setBaseUrl("http://127.0.0.1:" + n2yo.getAddress().getPort() + "/rest/v1/satellite/");
+        properties.getApi().setKey("test");
+        properties.getRefresh().setBackoffMs(1);
+        properties.getRefresh().setBatchSize(1);
+
+        refreshExecutor = Executors.newFixedThreadPool(2);
+        refreshService = new TleRefreshService();
+        ReflectionTestUtils.setField(refreshService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(refreshService, "n2yoRestTemplate", new RestTemplate());
+        ReflectionTestUtils.setField(refreshService, "n2yoRateLimiter", new TokenBucket(100, 100));
+        ReflectionTestUtils.setField(refreshService, "objectMapper", Jackson2ObjectMapperBuilder.json().build());
+        ReflectionTestUtils.setField(refreshService, "refreshExecutor", refreshExecutor);
+        ReflectionTestUtils.setField(refreshService, "properties", properties);
+        ReflectionTestUtils.setField(refreshService, "satellitePositionService", satellitePositionService);
+        ReflectionTestUtils.setField(refreshService, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(refreshService, "tleArchive", tleArchive);
+        ReflectionTestUtils.setField(refreshService, "satelliteMetrics", new SatelliteMetrics(meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        n2yo.stop(0);
+        refreshExecutor.shutdown();
+    }
+
+    // only the satellite whose TLE changed is written and recomputed, the 503 is retried and the 404 is not
+    @Test
+    void testRefreshWritesOnlyChangedTles() {
+        when(mongoTemplate.find(any(Query.class), eq(SatelliteData.class))).thenReturn(List.of(
+                new SatelliteData(25544, "ISS", OLD_ISS, null, null),
+                new SatelliteData(44945, "STARLINK", STARLINK, null, null),
+                new SatelliteData(51850, "GEO", STARLINK, null, null),
+                new SatelliteData(99999, "UNKNOWN", null, null, null)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SatelliteData.class)).thenReturn(bulkOperations);
+        when(satellitePositionService.computePosition(any(), eq(25544), any()))
+                .thenReturn(new SatellitePosition(25544, new double[] {10, 20, 400}, new double[] {1, 2, 3}));
+
+        RefreshReport report = refreshService.refreshAll();
+
+        assertEquals(4, report.getChecked());
+        assertEquals(1, report.getChanged());
+        assertEquals(2, report.getUnchanged());
+        assertEquals(1, report.getFailed());
+        assertEquals(1, report.getRetries());
+        assertEquals(5, report.getRequests());
+        assertEquals(2, requests.get(51850).get());
+        assertEquals(1, requests.get(99999).get());
+        assertEquals(1, meterRegistry.get("satellite.n2yo.errors").tag("reason", "503").counter().count());
+        assertEquals(1, meterRegistry.get("satellite.n2yo.errors").tag("reason", "404").counter().count());
+        assertEquals(1, meterRegistry.get("satellite.refresh.duration").timer().count());
+
+        verify(bulkOperations, times(1)).updateOne(any(Query.class), any(Update.class));
+        verify(bulkOperations, times(1)).execute();
+        verify(satellitePositionService, times(1)).computePosition(any(), anyInt(), any());
+        verify(eventPublisher).publishEvent(new TleUpdatedEvent(25544));
+        verifyNoMoreInteractions(eventPublisher);
+        // the replaced TLE is archived along with the new one
+        verify(tleArchive).archiveAll(List.of(new TleArchive.Entry(25544, OLD_ISS), new TleArchive.Entry(25544, NEW_ISS)));
+    }
+
+    @Test
+    void testTokenBucketHonoursRemainingQuota() {
+        TokenBucket bucket = new TokenBucket(3, 0.001);
+        assertTrue(bucket.tryAcquire());
+
+        // the server reports that only one more request is allowed
+        bucket.limitTo(1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+}